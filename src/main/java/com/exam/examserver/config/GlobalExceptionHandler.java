@@ -1,6 +1,8 @@
 package com.exam.examserver.config;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.bind.annotation.*;
 
 @RestControllerAdvice
@@ -30,6 +32,14 @@ public class GlobalExceptionHandler {
         return new ApiError(413, "Payload Too Large", "File quá lớn", req.getRequestURI());
     }
 
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ApiError> handleStatus(ResponseStatusException ex, HttpServletRequest req) {
+        int code = ex.getStatusCode().value();
+        HttpStatus hs = HttpStatus.resolve(code);
+        String error = (hs != null ? hs.getReasonPhrase() : String.valueOf(code));
+        return ResponseEntity.status(code).body(new ApiError(code, error, ex.getReason(), req.getRequestURI()));
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ApiError handleGeneric(Exception ex, HttpServletRequest req) {
@@ -2,16 +2,27 @@ package com.exam.examserver.controller;
 
 import com.exam.examserver.dto.exam.CreateQuestionDTO;
 import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.dto.exam.QuestionFilter;
+import com.exam.examserver.dto.exam.QuestionPageDTO;
+import com.exam.examserver.dto.exporting.ExportJobStatus;
+import com.exam.examserver.dto.exporting.ExportSpec;
 import com.exam.examserver.dto.importing.CommitRequest;
+import com.exam.examserver.dto.importing.ImportJobStatus;
 import com.exam.examserver.dto.importing.PreviewResponse;
+import com.exam.examserver.dto.importing.UrlDTO;
 import com.exam.examserver.dto.importing.ImportResult;
+import com.exam.examserver.enums.Difficulty;
 import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
 import com.exam.examserver.model.exam.CloneRequest;
 import com.exam.examserver.model.exam.Subject;
 import com.exam.examserver.model.user.CustomUserDetails;
 import com.exam.examserver.dto.importing.ImportPreviewStore;
 import com.exam.examserver.service.SubjectService;
+import com.exam.examserver.service.import_export.DocumentWriter;
+import com.exam.examserver.service.import_export.ExportJobService;
 import com.exam.examserver.service.import_export.FileArchiveService;
+import com.exam.examserver.service.import_export.ImportJobService;
 import com.exam.examserver.service.import_export.ImportQuestionService;
 import com.exam.examserver.service.import_export.ExportQuestionService;
 import com.exam.examserver.service.QuestionService;
@@ -21,7 +32,13 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
 import java.util.*;
 
 @RestController
@@ -35,6 +52,8 @@ public class QuestionController {
     private final ImportQuestionService importService;
     private final ImportPreviewStore previewStore;
     private final FileArchiveService fileArchiveService;
+    private final ImportJobService importJobService;
+    private final ExportJobService exportJobService;
     private final Tika tika = new Tika();
 
     public QuestionController(QuestionService questionService,
@@ -42,13 +61,17 @@ public class QuestionController {
                               ExportQuestionService exportQuestionService,
                               ImportQuestionService importService,
                               ImportPreviewStore previewStore,
-                              FileArchiveService fileArchiveService) {
+                              FileArchiveService fileArchiveService,
+                              ImportJobService importJobService,
+                              ExportJobService exportJobService) {
         this.questionService = questionService;
         this.subjectService = subjectService;
         this.exportQuestionService = exportQuestionService;
         this.importService = importService;
         this.previewStore = previewStore;
         this.fileArchiveService = fileArchiveService;
+        this.importJobService = importJobService;
+        this.exportJobService = exportJobService;
     }
 
     @GetMapping
@@ -72,6 +95,22 @@ public class QuestionController {
         return items;
     }
 
+    /**
+     * Danh sách phân trang (keyset): chỉ cột tóm tắt, không đáp án; mới nhất trước.
+     * Trang sau: truyền lại {@code cursor} = nextCursor của trang trước.
+     */
+    @GetMapping("/page")
+    public QuestionPageDTO listQuestionPage(@PathVariable("subjectId") Long subjectId,
+                                            @RequestParam(name = "cursor", required = false) String cursor,
+                                            @RequestParam(name = "limit", defaultValue = "50") int limit,
+                                            @RequestParam(name = "label", required = false) QuestionLabel label,
+                                            @RequestParam(name = "difficulty", required = false) Difficulty difficulty,
+                                            @RequestParam(name = "chapter", required = false) Integer chapter,
+                                            @RequestParam(name = "type", required = false) QuestionType type) {
+        return questionService.listSummaries(subjectId,
+                new QuestionFilter(label, difficulty, chapter, type), cursor, limit);
+    }
+
     @GetMapping("/{questionId}")
     public ResponseEntity<QuestionDTO> getQuestion(@PathVariable("subjectId") Long subjectId,
                                                    @PathVariable("questionId") Long questionId,
@@ -113,7 +152,7 @@ public class QuestionController {
 
     // ===== Export =====
     @PostMapping("/export")
-    public ResponseEntity<byte[]> exportSelected(@PathVariable Long subjectId,
+    public ResponseEntity<?> exportSelected(@PathVariable Long subjectId,
                                                  @RequestBody List<Long> questionIds,
                                                  @AuthenticationPrincipal(expression = "id") Long userId,
                                                  Authentication auth,
@@ -132,77 +171,71 @@ public class QuestionController {
                                                  @RequestParam(required = false, name = "mau") String mauLabel,
                                                  @RequestParam(defaultValue = "Đại học chính quy") String level,
                                                  // NEW: PRACTICE có tùy chọn lưu
-                                                 @RequestParam(defaultValue = "false") boolean saveCopy
+                                                 @RequestParam(defaultValue = "false") boolean saveCopy,
+                                                 // stream=true: ghi thẳng ra response (không Content-Length), lưu GCS song song
+                                                 @RequestParam(defaultValue = "false") boolean stream
     ) throws Exception {
 
         System.out.println("program: " + program);
         Subject subj = subjectService.getSubjectById(subjectId);
 
-        // ---- Generate file (PDF/DOCX) giữ nguyên như cũ ----
-        byte[] data;
-        boolean isDocx = "docx".equalsIgnoreCase(format) || "word".equalsIgnoreCase(format);
-        String fileNameWithExt;
-
-        if (isDocx) {
-            if ("practice".equalsIgnoreCase(variant)) {
-                String bankTitle = "NGÂN HÀNG CÂU HỎI THI " +
-                        ("TRAC_NGHIEM".equalsIgnoreCase(form) ? "TRẮC NGHIỆM" : "TỰ LUẬN");
-
-                ExportQuestionService.PracticeHeader ph = new ExportQuestionService.PracticeHeader(
-                        bankTitle,
-                        subj.getName(),
-                        subj.getCode(),
-                        subj.getDepartment() != null ? subj.getDepartment().getName() : "",
-                        level
-                );
-                data = exportQuestionService.exportQuestionsToWordPractice(questionIds, includeAnswers, ph);
-            } else {
-                ExportQuestionService.ExamHeader eh = new ExportQuestionService.ExamHeader(
-                        "HỌC VIỆN CÔNG NGHỆ BƯU CHÍNH VIỄN THÔNG",
-                        (subj.getDepartment() != null ? subj.getDepartment().getName() : ""),
-                        (program == null ? "" : program),
-                        subj.getName(),
-                        subj.getCode(),
-                        (semester == null ? "" : semester),
-                        (academicYear == null ? "" : academicYear),
-                        (classes == null ? "" : classes),
-                        (duration == null ? "" : duration),
-                        paperNo,
-                        (examForm == null ? "" : examForm),
-                        (mauLabel == null ? "" : mauLabel)
-                );
-                data = exportQuestionService.exportQuestionsToWordExam(questionIds, includeAnswers, eh);
-            }
-            fileNameWithExt = fileName + ".docx";
-        } else {
-            data = exportQuestionService.exportQuestionsToPdf(questionIds, includeAnswers);
-            fileNameWithExt = fileName + ".pdf";
-        }
+        ExportSpec spec = new ExportSpec();
+        spec.questionIds = questionIds;
+        spec.fileName = fileName;
+        spec.includeAnswers = includeAnswers;
+        spec.format = format;
+        spec.variant = variant;
+        spec.form = form;
+        spec.semester = semester;
+        spec.academicYear = academicYear;
+        spec.classes = classes;
+        spec.duration = duration;
+        spec.paperNo = paperNo;
+        spec.examForm = examForm;
+        spec.program = program;
+        spec.mauLabel = mauLabel;
+        spec.level = level;
+        spec.saveCopy = saveCopy;
 
-        // Chuẩn hóa variant/format để đưa vào meta & quyết định luồng lưu
-        final boolean isExamVariant = "exam".equalsIgnoreCase(variant);
-        final String vUpper = isExamVariant ? "EXAM" : "PRACTICE";
-        final String fmtUpper = isDocx ? "DOCX" : "PDF";
-
-        String mime = isDocx
-                ? "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
-                : "application/pdf";
-
-        Map<String, Object> meta = new HashMap<>();
-        meta.put("variant", vUpper);          // EXAM | PRACTICE
-        meta.put("format", fmtUpper);         // PDF | DOCX
-        meta.put("includeAnswers", includeAnswers);
-        meta.put("form", form);
-        meta.put("semester", semester);
-        meta.put("academicYear", academicYear);
-        meta.put("classes", classes);
-        meta.put("duration", duration);
-        meta.put("paperNo", paperNo);
-        meta.put("examForm", examForm);
-        meta.put("program", program);
-        meta.put("mauLabel", mauLabel);
+        // ---- Chuẩn bị file (PDF/DOCX): nạp câu hỏi + ảnh, ghi ra byte[] hoặc stream ở dưới ----
+        DocumentWriter writer = exportQuestionService.writerFor(subj, spec);
+        final boolean isDocx = spec.docx();
+        final boolean isExamVariant = spec.exam();
+        final String fileNameWithExt = spec.fileNameWithExt();
+        final String mime = spec.mimeType();
+        final Map<String, Object> meta = spec.meta();
 
         // === Chính sách lưu ===
+        // EXAM → luôn lưu (HEAD/ADMIN: APPROVED, TEACHER: PENDING); PRACTICE → chỉ khi saveCopy
+        final boolean archive = isExamVariant || saveCopy;
+        final boolean pending = isExamVariant && !isHeadOrAdmin(auth);
+        MediaType contentType = isDocx
+                ? MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.wordprocessingml.document")
+                : MediaType.APPLICATION_PDF;
+
+        if (stream) {
+            FileArchiveService.ExportUpload upload = archive
+                    ? fileArchiveService.openExportUpload(pending, subjectId, userId, fileNameWithExt, mime, meta)
+                    : null;
+            StreamingResponseBody body = out -> {
+                if (upload == null) {
+                    writer.writeTo(out);
+                    return;
+                }
+                writer.writeTo(upload.tee(out));
+                try {
+                    upload.finish(); // lỗi lưu → abort response, không để đề EXAM tải về mà không được lưu
+                } catch (Exception e) {
+                    throw new IOException("Archive export failed", e);
+                }
+            };
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentDispositionFormData("attachment", fileNameWithExt);
+            headers.setContentType(contentType);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        }
+
+        byte[] data = DocumentWriter.toBytes(writer);
         if (isExamVariant) {
             // EXAM → luôn lưu (FE bỏ nút saveCopy với EXAM)
             boolean privileged = isHeadOrAdmin(auth);
@@ -222,14 +255,48 @@ public class QuestionController {
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentDispositionFormData("attachment", fileNameWithExt);
-        headers.setContentType(isDocx
-                ? MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.wordprocessingml.document")
-                : MediaType.APPLICATION_PDF);
+        headers.setContentType(contentType);
         headers.setContentLength(data.length);
 
         return new ResponseEntity<>(data, headers, HttpStatus.OK);
     }
 
+    // ====== Export bất đồng bộ (export job) ======
+    @PostMapping("/export/jobs")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ExportJobStatus submitExportJob(@PathVariable Long subjectId,
+                                           @RequestBody ExportSpec spec,
+                                           @AuthenticationPrincipal CustomUserDetails me,
+                                           Authentication auth) {
+        return exportJobService.submit(subjectId, me.getId(), isHeadOrAdmin(auth), spec);
+    }
+
+    @GetMapping("/export/jobs/{jobId}")
+    public ResponseEntity<ExportJobStatus> exportJobStatus(@PathVariable Long subjectId,
+                                                           @PathVariable String jobId,
+                                                           @AuthenticationPrincipal CustomUserDetails me) {
+        ExportJobStatus st = exportJobService.status(subjectId, me.getId(), jobId);
+        return (st == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(st);
+    }
+
+    @DeleteMapping("/export/jobs/{jobId}")
+    public ResponseEntity<ExportJobStatus> cancelExportJob(@PathVariable Long subjectId,
+                                                           @PathVariable String jobId,
+                                                           @AuthenticationPrincipal CustomUserDetails me) {
+        ExportJobStatus st = exportJobService.cancel(subjectId, me.getId(), jobId);
+        return (st == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(st);
+    }
+
+    @GetMapping("/export/jobs/{jobId}/download-url")
+    public ResponseEntity<UrlDTO> exportJobDownloadUrl(@PathVariable Long subjectId,
+                                                       @PathVariable String jobId,
+                                                       @RequestParam(defaultValue = "5") long minutes,
+                                                       @AuthenticationPrincipal CustomUserDetails me) {
+        minutes = Math.max(1, Math.min(minutes, 30));
+        String url = exportJobService.downloadUrl(subjectId, me.getId(), jobId, Duration.ofMinutes(minutes));
+        return (url == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(new UrlDTO(url));
+    }
+
     // ====== PREVIEW (import) ======
     @PostMapping(value = {"/preview", "/import/preview"}, consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public PreviewResponse preview(@PathVariable Long subjectId,
@@ -239,6 +306,33 @@ public class QuestionController {
         return importService.buildPreview(subjectId, file, saveCopy, defaultLabels);
     }
 
+    // ====== PREVIEW bất đồng bộ (import job) ======
+    @PostMapping(value = "/import/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ImportJobStatus submitImportJob(@PathVariable Long subjectId,
+                                           @RequestPart("file") MultipartFile file,
+                                           @RequestParam(defaultValue = "false") boolean saveCopy,
+                                           @RequestParam(name = "labels", required = false) Set<QuestionLabel> defaultLabels,
+                                           @AuthenticationPrincipal CustomUserDetails me) {
+        return importJobService.submit(subjectId, me.getId(), file, saveCopy, defaultLabels);
+    }
+
+    @GetMapping("/import/jobs/{jobId}")
+    public ResponseEntity<ImportJobStatus> importJobStatus(@PathVariable Long subjectId,
+                                                           @PathVariable String jobId,
+                                                           @AuthenticationPrincipal CustomUserDetails me) {
+        ImportJobStatus st = importJobService.status(subjectId, me.getId(), jobId);
+        return (st == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(st);
+    }
+
+    @DeleteMapping("/import/jobs/{jobId}")
+    public ResponseEntity<ImportJobStatus> cancelImportJob(@PathVariable Long subjectId,
+                                                           @PathVariable String jobId,
+                                                           @AuthenticationPrincipal CustomUserDetails me) {
+        ImportJobStatus st = importJobService.cancel(subjectId, me.getId(), jobId);
+        return (st == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(st);
+    }
+
     @PostMapping(value = {"/commit", "/import/commit"})
     public ImportResult commit(@PathVariable Long subjectId,
                                @RequestBody CommitRequest req,
@@ -248,14 +342,23 @@ public class QuestionController {
     }
 
     @GetMapping("/image/{sessionId}/{idx}")
-    public ResponseEntity<byte[]> previewImage(@PathVariable String sessionId,
-                                               @PathVariable int idx) {
+    public ResponseEntity<StreamingResponseBody> previewImage(@PathVariable String sessionId,
+                                                              @PathVariable int idx) {
         var s = previewStore.get(sessionId);
         if (s == null || idx < 0 || idx >= s.images.size()) return ResponseEntity.notFound().build();
-        byte[] bytes = s.images.get(idx);
-        String mime = tika.detect(bytes);
-        MediaType mt = MediaType.parseMediaType(mime);
-        return ResponseEntity.ok().contentType(mt).body(bytes);
+        ByteBuffer buf = s.images.buffer(idx); // view trên file mmap, không copy lên heap
+
+        // Tika chỉ cần vài KB đầu để nhận dạng magic bytes
+        byte[] head = new byte[Math.min(buf.remaining(), 4096)];
+        buf.duplicate().get(head);
+        MediaType mt = MediaType.parseMediaType(tika.detect(head));
+
+        long length = buf.remaining();
+        StreamingResponseBody body = out -> {
+            WritableByteChannel ch = Channels.newChannel(out);
+            while (buf.hasRemaining()) ch.write(buf);
+        };
+        return ResponseEntity.ok().contentType(mt).contentLength(length).body(body);
     }
 
     // ===== Clone endpoints =====
@@ -2,6 +2,7 @@ package com.exam.examserver.controller;
 
 import com.exam.examserver.dto.exam.*;
 import com.exam.examserver.model.user.CustomUserDetails;
+import com.exam.examserver.service.import_export.DocumentWriter;
 import com.exam.examserver.service.import_export.QuizExportService;
 import com.exam.examserver.service.QuizService;
 import org.springframework.http.HttpHeaders;
@@ -12,6 +13,7 @@ import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.List;
@@ -102,11 +104,13 @@ public class QuizController {
     }
 
     @GetMapping("/{quizId}/export")
-    public ResponseEntity<byte[]> exportQuizToPdf(
+    public ResponseEntity<?> exportQuizToPdf(
             @PathVariable("subjectId") Long subjectId,
             @PathVariable("quizId") Long quizId,
             @RequestParam(value = "includeAnswers", defaultValue = "false") boolean includeAnswers,
             @RequestParam(value = "format", defaultValue = "pdf") String format,
+            // stream=true: ghi thẳng ra response, không dựng byte[] cả file
+            @RequestParam(value = "stream", defaultValue = "false") boolean stream,
             Authentication auth) {
         // Kiểm tra quyền
         boolean isHead = auth.getAuthorities().stream()
@@ -120,16 +124,16 @@ public class QuizController {
         }
 
         try {
-            byte[] fileBytes;
+            DocumentWriter writer;
             HttpHeaders headers = new HttpHeaders();
             String fileName = "quiz_" + quizId;
 
             if ("pdf".equalsIgnoreCase(format)) {
-                fileBytes = quizExportService.exportQuizToPdf(quizId, includeAnswers);
+                writer = quizExportService.pdfWriter(quizId, includeAnswers);
                 headers.setContentType(MediaType.APPLICATION_PDF);
                 fileName += ".pdf";
             } else if ("word".equalsIgnoreCase(format)) {
-                fileBytes = quizExportService.exportQuizToWord(quizId, includeAnswers);
+                writer = quizExportService.wordWriter(quizId, includeAnswers);
                 headers.setContentType(MediaType.APPLICATION_OCTET_STREAM); // Hoặc MediaType.APPLICATION_MSWORD nếu cần
                 fileName += ".docx";
             } else {
@@ -137,6 +141,12 @@ public class QuizController {
             }
 
             headers.setContentDispositionFormData("attachment", fileName);
+            if (stream) {
+                StreamingResponseBody body = writer::writeTo;
+                return new ResponseEntity<>(body, headers, HttpStatus.OK);
+            }
+
+            byte[] fileBytes = DocumentWriter.toBytes(writer);
             headers.setContentLength(fileBytes.length);
 
             return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
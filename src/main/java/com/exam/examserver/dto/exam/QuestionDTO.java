@@ -24,6 +24,7 @@ public class QuestionDTO {
     private String answerText; // Cho tự luận
     private String imageUrl; // Cho câu hỏi hình ảnh
     private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
     private UserBasicDTO createdBy;
 
     private Set<QuestionLabel> labels;
@@ -112,6 +113,14 @@ public class QuestionDTO {
         this.createdAt = createdAt;
     }
 
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     public UserBasicDTO getCreatedBy() {
         return createdBy;
     }
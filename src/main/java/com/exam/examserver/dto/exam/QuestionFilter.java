@@ -0,0 +1,8 @@
+package com.exam.examserver.dto.exam;
+
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
+
+// Bộ lọc danh sách câu hỏi phân trang; null = không lọc theo trường đó
+public record QuestionFilter(QuestionLabel label, Difficulty difficulty, Integer chapter, QuestionType type) {}
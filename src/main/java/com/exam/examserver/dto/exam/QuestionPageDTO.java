@@ -0,0 +1,22 @@
+package com.exam.examserver.dto.exam;
+
+import java.util.List;
+
+// 1 trang danh sách câu hỏi; nextCursor = null khi đã hết
+public class QuestionPageDTO {
+    private List<QuestionSummaryDTO> items;
+    private String nextCursor;
+
+    public QuestionPageDTO() {}
+
+    public QuestionPageDTO(List<QuestionSummaryDTO> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<QuestionSummaryDTO> getItems() { return items; }
+    public void setItems(List<QuestionSummaryDTO> items) { this.items = items; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
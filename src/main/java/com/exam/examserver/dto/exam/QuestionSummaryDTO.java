@@ -0,0 +1,50 @@
+package com.exam.examserver.dto.exam;
+
+import com.exam.examserver.dto.user.UserBasicDTO;
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+// Dòng danh sách câu hỏi (phân trang): không có đáp án/phương án, nội dung chỉ là đoạn đầu.
+// Chi tiết đầy đủ lấy qua GET /subject/{subjectId}/questions/{questionId}
+public class QuestionSummaryDTO {
+    private Long id;
+    private QuestionType questionType;
+    private Difficulty difficulty;
+    private int chapter;
+    private String contentPreview;
+    private boolean hasImage;
+    private Set<QuestionLabel> labels;
+    private LocalDateTime createdAt;
+    private UserBasicDTO createdBy;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public QuestionType getQuestionType() { return questionType; }
+    public void setQuestionType(QuestionType questionType) { this.questionType = questionType; }
+
+    public Difficulty getDifficulty() { return difficulty; }
+    public void setDifficulty(Difficulty difficulty) { this.difficulty = difficulty; }
+
+    public int getChapter() { return chapter; }
+    public void setChapter(int chapter) { this.chapter = chapter; }
+
+    public String getContentPreview() { return contentPreview; }
+    public void setContentPreview(String contentPreview) { this.contentPreview = contentPreview; }
+
+    public boolean isHasImage() { return hasImage; }
+    public void setHasImage(boolean hasImage) { this.hasImage = hasImage; }
+
+    public Set<QuestionLabel> getLabels() { return labels; }
+    public void setLabels(Set<QuestionLabel> labels) { this.labels = labels; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public UserBasicDTO getCreatedBy() { return createdBy; }
+    public void setCreatedBy(UserBasicDTO createdBy) { this.createdBy = createdBy; }
+}
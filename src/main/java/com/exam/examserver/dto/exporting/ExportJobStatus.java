@@ -0,0 +1,12 @@
+package com.exam.examserver.dto.exporting;
+
+import com.exam.examserver.enums.ExportPhase;
+
+public class ExportJobStatus {
+    public String jobId;
+    public ExportPhase phase;
+    public int queuePosition;           // khi QUEUED: số job đứng trước (0 = sắp chạy)
+    public String error;                // khi FAILED
+    public Long archiveId;              // khi DONE: FileArchive chứa file
+    public String filename;
+}
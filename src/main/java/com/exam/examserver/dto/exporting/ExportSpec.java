@@ -0,0 +1,65 @@
+package com.exam.examserver.dto.exporting;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Tham số 1 lần export câu hỏi (dùng chung cho export đồng bộ và export job) */
+public class ExportSpec {
+    public List<Long> questionIds = new ArrayList<>();
+    public String fileName = "file";
+    public boolean includeAnswers;
+    public String format = "pdf";           // pdf | docx | word
+    public String variant = "practice";     // practice | exam
+    public String form = "TU_LUAN";         // TU_LUAN | TRAC_NGHIEM (tiêu đề ngân hàng ôn tập)
+    public String semester;
+    public String academicYear;
+    public String classes;
+    public String duration;
+    public Integer paperNo;
+    public String examForm;
+    public String program;
+    @JsonAlias("mau")
+    public String mauLabel;
+    public String level = "Đại học chính quy";
+    public boolean saveCopy;                // PRACTICE: có lưu bản sao không (EXAM luôn lưu)
+
+    public boolean docx() {
+        return "docx".equalsIgnoreCase(format) || "word".equalsIgnoreCase(format);
+    }
+
+    public boolean exam() {
+        return "exam".equalsIgnoreCase(variant);
+    }
+
+    public String fileNameWithExt() {
+        return fileName + (docx() ? ".docx" : ".pdf");
+    }
+
+    public String mimeType() {
+        return docx()
+                ? "application/vnd.openxmlformats-officedocument.wordprocessingml.document"
+                : "application/pdf";
+    }
+
+    /** metaJson của FileArchive */
+    public Map<String, Object> meta() {
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("variant", exam() ? "EXAM" : "PRACTICE");
+        meta.put("format", docx() ? "DOCX" : "PDF");
+        meta.put("includeAnswers", includeAnswers);
+        meta.put("form", form);
+        meta.put("semester", semester);
+        meta.put("academicYear", academicYear);
+        meta.put("classes", classes);
+        meta.put("duration", duration);
+        meta.put("paperNo", paperNo);
+        meta.put("examForm", examForm);
+        meta.put("program", program);
+        meta.put("mauLabel", mauLabel);
+        return meta;
+    }
+}
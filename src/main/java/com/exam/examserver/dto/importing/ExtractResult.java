@@ -5,10 +5,17 @@ import java.util.List;
 public class ExtractResult {
     private final String text;
     private final List<byte[]> images;
+    // true: thiếu nội dung do lỗi tạm thời (vd OCR không chạy được) → không nên cache
+    private final boolean partial;
 
     public ExtractResult(String text, List<byte[]> images) {
+        this(text, images, false);
+    }
+
+    public ExtractResult(String text, List<byte[]> images, boolean partial) {
         this.text = text;
         this.images = images;
+        this.partial = partial;
     }
 
     public String getText() {
@@ -19,5 +26,9 @@ public class ExtractResult {
         return images;
     }
 
+    public boolean isPartial() {
+        return partial;
+    }
+
 
 }
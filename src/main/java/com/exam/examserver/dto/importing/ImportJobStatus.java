@@ -0,0 +1,11 @@
+package com.exam.examserver.dto.importing;
+
+import com.exam.examserver.enums.ImportPhase;
+
+public class ImportJobStatus {
+    public String jobId;
+    public ImportPhase phase;
+    public int percent;                 // 0..100
+    public String error;                // khi FAILED
+    public PreviewResponse result;      // khi DONE
+}
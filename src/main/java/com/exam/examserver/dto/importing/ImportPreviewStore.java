@@ -1,15 +1,21 @@
 package com.exam.examserver.dto.importing;
 
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
 
 @Component
 public class ImportPreviewStore {
@@ -20,45 +26,173 @@ public class ImportPreviewStore {
     public static class Session {
         public String id;
         public Instant expiresAt;
-        public List<byte[]> images = new ArrayList<>();           // ảnh thô
+        public ImageSpill images = ImageSpill.EMPTY;              // ảnh thô (spill ra file, heap chỉ giữ offset)
         public List<PreviewBlock> blocks = new ArrayList<>();     // kết quả parse
 
         // === NEW: thông tin upload tạm (nếu saveCopy=true ở bước preview) ===
         public TempUpload tempUpload;
     }
 
-    private final Map<String, Session> map = new ConcurrentHashMap<>();
+    /**
+     * Ảnh của 1 session: ghi nối tiếp vào 1 file tạm rồi mmap read-only.
+     * Heap chỉ giữ offset/length; {@link #buffer(int)} trả view không copy.
+     * Dùng lại cho cache extract (ExtractionCache) để ảnh cache cũng nằm ngoài heap.
+     */
+    public static final class ImageSpill {
+        static final ImageSpill EMPTY = new ImageSpill(null, new long[0], new int[0], null, 0);
+
+        private final Path file;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final MappedByteBuffer mapped;
+        private final long totalBytes;
+
+        private ImageSpill(Path file, long[] offsets, int[] lengths, MappedByteBuffer mapped, long totalBytes) {
+            this.file = file;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.mapped = mapped;
+            this.totalBytes = totalBytes;
+        }
+
+        public static ImageSpill write(Path dir, List<byte[]> images) throws IOException {
+            int n = (images == null ? 0 : images.size());
+            long[] off = new long[n];
+            int[] len = new int[n];
+            long pos = 0;
+            for (int i = 0; i < n; i++) {
+                byte[] b = images.get(i);
+                off[i] = pos;
+                len[i] = (b == null ? 0 : b.length);
+                pos += len[i];
+            }
+            if (pos == 0) return new ImageSpill(null, off, len, null, 0);
+            if (pos > Integer.MAX_VALUE) throw new IOException("Preview images too large: " + pos + " bytes");
+
+            Path f = Files.createTempFile(dir, "preview-", ".img");
+            try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                for (byte[] b : images) {
+                    if (b == null) continue;
+                    ByteBuffer bb = ByteBuffer.wrap(b);
+                    while (bb.hasRemaining()) ch.write(bb);
+                }
+                // mapping vẫn hợp lệ sau khi đóng channel
+                MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, pos);
+                return new ImageSpill(f, off, len, m, pos);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(f);
+                throw e;
+            }
+        }
+
+        public int size() { return offsets.length; }
+
+        public long totalBytes() { return totalBytes; }
+
+        /** View read-only trên vùng mmap — không copy */
+        public ByteBuffer buffer(int i) {
+            if (lengths[i] == 0) return ByteBuffer.allocate(0);
+            return mapped.slice((int) offsets[i], lengths[i]).asReadOnlyBuffer();
+        }
+
+        /** Copy ra byte[] (cho API cần mảng, vd upload Cloudinary) */
+        public byte[] get(int i) {
+            byte[] out = new byte[lengths[i]];
+            if (out.length > 0) mapped.get((int) offsets[i], out);
+            return out;
+        }
+
+        public void delete() {
+            if (file == null) return;
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit(); // vd Windows không cho xoá file đang map
+            }
+        }
+    }
+
+    // access-order → duyệt từ đầu là session ít dùng nhất (LRU)
+    private final LinkedHashMap<String, Session> map = new LinkedHashMap<>(16, 0.75f, true);
     private static final Duration TTL = Duration.ofMinutes(30);
 
+    private final Path spillDir;
+    private final long maxBytes;
+    private long totalBytes;
+
+    public ImportPreviewStore(@Value("${import.preview.spill-dir:}") String spillDir,
+                              @Value("${import.preview.max-bytes:268435456}") long maxBytes) throws IOException {
+        this.spillDir = (spillDir == null || spillDir.isBlank())
+                ? Path.of(System.getProperty("java.io.tmpdir"))
+                : Files.createDirectories(Path.of(spillDir));
+        this.maxBytes = maxBytes;
+    }
+
     public Session create(List<byte[]> images, List<PreviewBlock> blocks) {
+        ImageSpill spill;
+        try {
+            spill = ImageSpill.write(spillDir, images); // IO ngoài lock
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill preview images", e);
+        }
+
         Session s = new Session();
         s.id = UUID.randomUUID().toString();
         s.expiresAt = Instant.now().plus(TTL);
-        s.images = images;
+        s.images = spill;
         s.blocks = blocks;
-        map.put(s.id, s);
+
+        synchronized (this) {
+            // Vượt ngân sách → bỏ các session ít dùng nhất (1 session quá lớn vẫn được nhận)
+            Iterator<Session> it = map.values().iterator();
+            while (totalBytes + spill.totalBytes() > maxBytes && it.hasNext()) {
+                Session old = it.next();
+                it.remove();
+                release(old);
+            }
+            map.put(s.id, s);
+            totalBytes += spill.totalBytes();
+        }
         return s;
     }
 
-    public Session get(String id) {
+    public synchronized Session get(String id) {
         Session s = map.get(id);
         if (s == null) return null;
-        if (Instant.now().isAfter(s.expiresAt)) { map.remove(id); return null; }
+        if (Instant.now().isAfter(s.expiresAt)) { map.remove(id); release(s); return null; }
         return s;
     }
 
-    public void remove(String id) { map.remove(id); }
+    public synchronized void remove(String id) {
+        Session s = map.remove(id);
+        if (s != null) release(s);
+    }
 
     @Scheduled(fixedDelay = 300_000) // 5 phút dọn rác
-    public void gc() {
+    public synchronized void gc() {
         Instant now = Instant.now();
-        map.entrySet().removeIf(e -> now.isAfter(e.getValue().expiresAt));
+        Iterator<Session> it = map.values().iterator();
+        while (it.hasNext()) {
+            Session s = it.next();
+            if (now.isAfter(s.expiresAt)) { it.remove(); release(s); }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void clear() {
+        map.values().forEach(this::release);
+        map.clear();
+    }
+
+    private void release(Session s) {
+        totalBytes -= s.images.totalBytes();
+        s.images.delete();
     }
 
     // ==================== NEW APIs cho flow 2-phase ====================
 
     /** Gắn thông tin upload tạm (tmp/) vào session preview */
-    public void attachTempUpload(String sessionId, String key, String originalName, String contentType, long sizeBytes) {
+    public synchronized void attachTempUpload(String sessionId, String key, String originalName, String contentType, long sizeBytes) {
         if (sessionId == null || key == null || key.isBlank()) return;
         Session s = map.get(sessionId);
         if (s == null) return;
@@ -66,14 +200,14 @@ public class ImportPreviewStore {
     }
 
     /** Lấy thông tin upload tạm (để commit promote sang archives/) */
-    public TempUpload getTempUpload(String sessionId) {
+    public synchronized TempUpload getTempUpload(String sessionId) {
         Session s = map.get(sessionId);
         if (s == null) return null;
         return s.tempUpload;
     }
 
     /** Xoá thông tin upload tạm khỏi session (sau khi promote xong hoặc cancel) */
-    public void clearTempUpload(String sessionId) {
+    public synchronized void clearTempUpload(String sessionId) {
         Session s = map.get(sessionId);
         if (s != null) s.tempUpload = null;
     }
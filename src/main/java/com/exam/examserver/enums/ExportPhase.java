@@ -0,0 +1,3 @@
+package com.exam.examserver.enums;
+
+public enum ExportPhase { QUEUED, RENDERING, DONE, FAILED, CANCELLED }
@@ -0,0 +1,3 @@
+package com.exam.examserver.enums;
+
+public enum ImportPhase { QUEUED, EXTRACTING, SPLITTING, PARSING, DONE, FAILED, CANCELLED }
@@ -24,6 +24,7 @@ public interface QuestionMapper {
     @Mapping(target = "subject", ignore = true)
     @Mapping(target = "createdBy", ignore = true)
     @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
     @Mapping(target = "images", ignore = true)
     // labels map thẳng từ DTO (nếu null sẽ xử lý ở service)
     @Mapping(target = "labels", source = "labels")
@@ -16,10 +16,15 @@ import java.util.List;
 import java.util.Set;
 
 @Entity
-@Table(name = "question")
+// Danh sách phân trang keyset: WHERE subject_id = ? AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC
+// → quét ngược index từ vị trí cursor (created_at NOT NULL nên không cần NULLS LAST)
+@Table(name = "question",
+        indexes = @Index(name = "idx_question_subject_created", columnList = "subject_id, created_at, id"))
 public class Question {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // Trùng tên/bước với sequence mà AUTO đã tạo → không đổi schema; pooled optimizer cấp 50 id / round-trip
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "question_seq")
+    @SequenceGenerator(name = "question_seq", sequenceName = "question_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -86,8 +91,13 @@ public class Question {
     @JoinColumn(name = "created_by")
     private User createdBy;
 
+    // Dữ liệu cũ thiếu giá trị được QuestionCreatedAtBackfill điền lúc khởi động
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
+    // Lần sửa cuối: fingerprint cache export. Dữ liệu cũ (null) → coi như createdAt
+    private LocalDateTime updatedAt;
+
     @OneToMany(mappedBy = "question", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     private Set<QuizQuestion> quizQuestions = new HashSet<>();
 
@@ -95,6 +105,14 @@ public class Question {
     @OneToMany(mappedBy = "parent", cascade = CascadeType.REMOVE, orphanRemoval = true)
     private List<Question> clones = new ArrayList<>();
 
+    /** Gọi cả khi chỉ đổi collection phía inverse (images) vì khi đó Hibernate không coi Question là dirty */
+    @PrePersist
+    @PreUpdate
+    public void touch() {
+        updatedAt = LocalDateTime.now();
+        if (createdAt == null) createdAt = updatedAt;
+    }
+
     public QuestionType getQuestionType() {
         return questionType;
     }
@@ -207,6 +225,14 @@ public class Question {
         this.createdAt = createdAt;
     }
 
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     public User getCreatedBy() {
         return createdBy;
     }
@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 public class QuestionImage {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // Trùng tên/bước với sequence mà AUTO đã tạo → không đổi schema; pooled optimizer cấp 50 id / round-trip
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "question_image_seq")
+    @SequenceGenerator(name = "question_image_seq", sequenceName = "question_image_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,76 @@
+package com.exam.examserver.model.stats;
+
+import com.exam.examserver.enums.ReviewStatus;
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+/**
+ * 1 dòng = số file lưu trữ (cnt) theo (khoa, môn, người nộp, ngày tạo, trạng thái duyệt), kèm số file
+ * đã duyệt và tổng thời gian duyệt (ms) để tính thời gian duyệt trung bình.
+ *
+ * Như {@link QuestionRollup}: chỉ INSERT dòng delta, đọc bằng sum(), gộp lại hằng đêm.
+ */
+@Entity
+@Table(name = "stats_archive_rollup", indexes = {
+        @Index(name = "idx_stats_archive_rollup_day", columnList = "stat_day"),
+        @Index(name = "idx_stats_archive_rollup_dept", columnList = "department_id, stat_day"),
+        @Index(name = "idx_stats_archive_rollup_user", columnList = "user_id, stat_day")
+})
+public class ArchiveRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "department_id")
+    private Long departmentId;
+
+    @Column(name = "subject_id")
+    private Long subjectId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "stat_day", nullable = false)
+    private LocalDate statDay;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "review_status", length = 16, nullable = false)
+    private ReviewStatus reviewStatus;
+
+    @Column(nullable = false)
+    private long cnt;
+
+    @Column(name = "reviewed_cnt", nullable = false)
+    private long reviewedCnt;
+
+    @Column(name = "review_ms", nullable = false)
+    private long reviewMs;
+
+    public ArchiveRollup() {
+    }
+
+    public ArchiveRollup(Long departmentId, Long subjectId, Long userId, LocalDate statDay,
+                         ReviewStatus reviewStatus, long cnt, long reviewedCnt, long reviewMs) {
+        this.departmentId = departmentId;
+        this.subjectId = subjectId;
+        this.userId = userId;
+        this.statDay = statDay;
+        this.reviewStatus = reviewStatus;
+        this.cnt = cnt;
+        this.reviewedCnt = reviewedCnt;
+        this.reviewMs = reviewMs;
+    }
+
+    // getters
+    public Long getId() { return id; }
+    public Long getDepartmentId() { return departmentId; }
+    public Long getSubjectId() { return subjectId; }
+    public Long getUserId() { return userId; }
+    public LocalDate getStatDay() { return statDay; }
+    public ReviewStatus getReviewStatus() { return reviewStatus; }
+    public long getCnt() { return cnt; }
+    public long getReviewedCnt() { return reviewedCnt; }
+    public long getReviewMs() { return reviewMs; }
+}
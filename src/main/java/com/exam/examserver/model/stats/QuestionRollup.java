@@ -0,0 +1,88 @@
+package com.exam.examserver.model.stats;
+
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+/**
+ * 1 dòng = số câu hỏi (cnt, có thể âm) theo (khoa, môn, người tạo, ngày tạo, loại, độ khó, chapter, nhãn).
+ * label = null: dòng đếm câu hỏi; label != null: dòng đếm số câu mang nhãn đó (1 câu nhiều nhãn → nhiều dòng).
+ *
+ * Chỉ INSERT dòng delta (+1 / -1) khi câu hỏi thay đổi, không update tại chỗ; StatsRollupService gộp lại
+ * hằng đêm. Cùng 1 key có thể có nhiều dòng → luôn đọc bằng sum(cnt).
+ */
+@Entity
+@Table(name = "stats_question_rollup", indexes = {
+        @Index(name = "idx_stats_question_rollup_day", columnList = "stat_day"),
+        @Index(name = "idx_stats_question_rollup_dept", columnList = "department_id, stat_day"),
+        @Index(name = "idx_stats_question_rollup_creator", columnList = "creator_id, stat_day"),
+        @Index(name = "idx_stats_question_rollup_subject", columnList = "subject_id")
+})
+public class QuestionRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "department_id")
+    private Long departmentId;
+
+    @Column(name = "subject_id", nullable = false)
+    private Long subjectId;
+
+    @Column(name = "creator_id")
+    private Long creatorId;
+
+    @Column(name = "stat_day")
+    private LocalDate statDay; // null: câu hỏi cũ trước khi QuestionCreatedAtBackfill điền createdAt
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "question_type", length = 32, nullable = false)
+    private QuestionType questionType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8, nullable = false)
+    private Difficulty difficulty;
+
+    @Column(nullable = false)
+    private int chapter;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private QuestionLabel label;
+
+    @Column(nullable = false)
+    private long cnt;
+
+    public QuestionRollup() {
+    }
+
+    public QuestionRollup(Long departmentId, Long subjectId, Long creatorId, LocalDate statDay,
+                          QuestionType questionType, Difficulty difficulty, int chapter,
+                          QuestionLabel label, long cnt) {
+        this.departmentId = departmentId;
+        this.subjectId = subjectId;
+        this.creatorId = creatorId;
+        this.statDay = statDay;
+        this.questionType = questionType;
+        this.difficulty = difficulty;
+        this.chapter = chapter;
+        this.label = label;
+        this.cnt = cnt;
+    }
+
+    // getters
+    public Long getId() { return id; }
+    public Long getDepartmentId() { return departmentId; }
+    public Long getSubjectId() { return subjectId; }
+    public Long getCreatorId() { return creatorId; }
+    public LocalDate getStatDay() { return statDay; }
+    public QuestionType getQuestionType() { return questionType; }
+    public Difficulty getDifficulty() { return difficulty; }
+    public int getChapter() { return chapter; }
+    public QuestionLabel getLabel() { return label; }
+    public long getCnt() { return cnt; }
+}
@@ -8,4 +8,5 @@ import java.util.List;
 public interface QuestionImageRepository extends JpaRepository<QuestionImage, Long> {
     List<QuestionImage> findByQuestionIdOrderByOrderIndexAsc(Long questionId);
     void deleteByQuestionId(Long questionId);
+    long countByUrl(String url);
 }
@@ -42,6 +42,17 @@ public interface QuestionRepository extends JpaRepository<Question, Long> {
     @EntityGraph(attributePaths = {"labels", "createdBy"})
     List<Question> findByIdIn(Collection<Long> ids);
 
+    // Khởi tạo labels / images cho các câu đã có trong persistence context: 1 câu SQL cho mỗi collection
+    @Query("SELECT DISTINCT q FROM Question q LEFT JOIN FETCH q.labels WHERE q.id IN :ids")
+    List<Question> fetchLabelsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT DISTINCT q FROM Question q LEFT JOIN FETCH q.images WHERE q.id IN :ids")
+    List<Question> fetchImagesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // [id, lần sửa cuối] cho fingerprint cache export; dữ liệu cũ chưa có updatedAt → createdAt
+    @Query("select q.id, coalesce(q.updatedAt, q.createdAt) from Question q where q.id in :ids")
+    List<Object[]> findVersionsByIdIn(@Param("ids") Collection<Long> ids);
+
     // Lấy clones của 1 bản gốc
     @EntityGraph(attributePaths = {"labels", "createdBy"})
     @Query("SELECT q FROM Question q WHERE q.parent.id = :parentId ORDER BY q.cloneIndex ASC")
@@ -50,6 +61,9 @@ public interface QuestionRepository extends JpaRepository<Question, Long> {
     @Query("select coalesce(max(q.cloneIndex), 0) from Question q where q.parent.id = :parentId")
     Integer findMaxCloneIndexByParentId(@Param("parentId") Long parentId);
 
+    // Ảnh bìa có thể dùng chung (clone giữ URL gốc) → đếm trước khi xoá trên Cloudinary
+    long countByImageUrl(String imageUrl);
+
     // Đếm theo createdAt (không null-param trong SQL)
     long countByCreatedAtBetween(LocalDateTime from, LocalDateTime to);
     long countByCreatedAtGreaterThanEqual(LocalDateTime from);
@@ -2,11 +2,24 @@ package com.exam.examserver.repo;
 
 import com.exam.examserver.model.exam.Quiz;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface QuizRepository extends JpaRepository<Quiz, Long> {
 
 
     List<Quiz> findBySubjectId(Long subjectId);
+
+    // Quiz + quizQuestions + câu hỏi + người tạo câu hỏi trong 1 câu SQL (labels/images nạp riêng theo lô)
+    @Query("""
+           SELECT DISTINCT qz FROM Quiz qz
+           LEFT JOIN FETCH qz.quizQuestions qq
+           LEFT JOIN FETCH qq.question q
+           LEFT JOIN FETCH q.createdBy
+           WHERE qz.id = :id
+           """)
+    Optional<Quiz> findWithQuestionsById(@Param("id") Long id);
 }
@@ -2,11 +2,16 @@ package com.exam.examserver.service;
 
 import com.exam.examserver.dto.exam.CreateQuestionDTO;
 import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.dto.exam.QuestionFilter;
+import com.exam.examserver.dto.exam.QuestionPageDTO;
 import com.exam.examserver.enums.QuestionLabel;
 import com.exam.examserver.model.exam.CloneRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface QuestionService {
@@ -15,20 +20,35 @@ public interface QuestionService {
     // Lọc theo nhãn (PRACTICE/EXAM), chỉ trả bản gốc (parent IS NULL)
     List<QuestionDTO> getAllBySubject(Long subjectId, Set<QuestionLabel> labelsFilter);
 
+    // Danh sách bản gốc phân trang keyset theo (createdAt, id) giảm dần; cursor = nextCursor của trang trước (null = trang đầu)
+    QuestionPageDTO listSummaries(Long subjectId, QuestionFilter filter, String cursor, int limit);
+
     QuestionDTO getById(Long questionId);
 
     QuestionDTO create(Long subjectId, CreateQuestionDTO payload, Long creatorUserId, MultipartFile image);
 
+    // Tạo nhiều câu gốc (import): subject/creator resolve 1 lần, insert theo lô JDBC; kết quả cùng thứ tự payloads
+    List<QuestionDTO> createBulk(Long subjectId, List<CreateQuestionDTO> payloads, Long creatorUserId);
+
+    // Kiểm tra payload theo loại câu (ném IllegalArgumentException) — dùng để báo lỗi từng block trước khi createBulk
+    void validatePayload(CreateQuestionDTO payload);
+
     QuestionDTO update(Long questionId, CreateQuestionDTO payload, MultipartFile image);
 
     void delete(Long questionId);
 
     List<QuestionDTO> findByIds(List<Long> questionIds);
 
+    // id → lần sửa cuối (không nạp nội dung); id không tồn tại thì vắng mặt
+    Map<Long, LocalDateTime> findVersions(Collection<Long> questionIds);
+
     void updateImageUrl(Long questionId, String imageUrl);
 
     void addImages(Long questionId, List<String> imageUrls);
 
+    // Gắn ảnh cho nhiều câu trong 1 lần load + 1 lần save (import)
+    void addImages(Map<Long, List<String>> imageUrlsByQuestion);
+
     // ===== Clone API =====
     List<QuestionDTO> getClones(Long questionId);
 
@@ -0,0 +1,46 @@
+package com.exam.examserver.service.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Điền created_at cho câu hỏi cũ (trước khi cột bắt buộc) rồi đặt NOT NULL, để danh sách keyset
+ * chỉ cần so sánh (created_at, id) < (?, ?) trên index (subject_id, created_at, id).
+ *
+ * Câu cũ nhận mốc {@link #LEGACY_CREATED_AT} → vẫn xếp cuối danh sách, trong nhóm đó theo id như trước.
+ * ddl-auto=update không tự thêm NOT NULL cho cột đã có nên đặt tay; chạy lại khi đã NOT NULL vẫn an toàn.
+ *
+ * Chạy trước ApplicationReadyEvent (CommandLineRunner) → trước khi StatsRollupService dựng rollup lần đầu.
+ */
+@Component
+public class QuestionCreatedAtBackfill implements CommandLineRunner {
+
+    static final LocalDateTime LEGACY_CREATED_AT = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final StatsRollupService rollup;
+
+    public QuestionCreatedAtBackfill(StatsRollupService rollup) {
+        this.rollup = rollup;
+    }
+
+    @Override
+    @Transactional
+    public void run(String... args) {
+        int filled = em.createQuery("update Question q set q.createdAt = :ts where q.createdAt is null")
+                .setParameter("ts", LEGACY_CREATED_AT)
+                .executeUpdate();
+        // cú pháp chung PostgreSQL / H2
+        em.createNativeQuery("alter table question alter column created_at set not null").executeUpdate();
+
+        // rollup cũ giữ các câu này ở ngày null → dựng lại theo ngày mới
+        if (filled > 0) rollup.rebuildAll();
+    }
+}
@@ -2,24 +2,33 @@ package com.exam.examserver.service.impl;
 
 import com.exam.examserver.dto.exam.CreateQuestionDTO;
 import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.dto.exam.QuestionFilter;
+import com.exam.examserver.dto.exam.QuestionPageDTO;
+import com.exam.examserver.dto.exam.QuestionSummaryDTO;
+import com.exam.examserver.dto.user.UserBasicDTO;
 import com.exam.examserver.enums.Difficulty;
 import com.exam.examserver.enums.QuestionLabel;
 import com.exam.examserver.enums.QuestionType;
 import com.exam.examserver.mapper.QuestionMapper;
 import com.exam.examserver.model.exam.*;
 import com.exam.examserver.model.user.User;
+import com.exam.examserver.repo.QuestionImageRepository;
 import com.exam.examserver.repo.QuestionRepository;
 import com.exam.examserver.repo.SubjectRepository;
 import com.exam.examserver.repo.UserRepository;
 import com.exam.examserver.storage.ImageStorageService;
 import com.exam.examserver.dto.importing.ImportPreviewStore;
 import com.exam.examserver.service.QuestionService;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -28,22 +37,37 @@ import java.util.stream.Collectors;
 @Transactional
 public class QuestionServiceImpl implements QuestionService {
 
+    /** = spring.jpa.properties.hibernate.jdbc.batch_size: mỗi lần flush là 1 batch JDBC */
+    private static final int BATCH_SIZE = 50;
+
+    @PersistenceContext
+    private EntityManager em;
+
     private final QuestionRepository questionRepo;
+    private final QuestionImageRepository imageRepo;
     private final SubjectRepository subjectRepo;
     private final UserRepository userRepo;
     private final QuestionMapper mapper;
     private final ImageStorageService imageStorageService;
+    private final StatsRollupService rollup;
+    private final ApplicationEventPublisher events;
 
     public QuestionServiceImpl(QuestionRepository questionRepo,
+                               QuestionImageRepository imageRepo,
                                SubjectRepository subjectRepo,
                                UserRepository userRepo,
                                QuestionMapper mapper,
-                               ImageStorageService imageStorageService) {
+                               ImageStorageService imageStorageService,
+                               StatsRollupService rollup,
+                               ApplicationEventPublisher events) {
         this.questionRepo = questionRepo;
+        this.imageRepo = imageRepo;
         this.subjectRepo = subjectRepo;
         this.userRepo = userRepo;
         this.mapper = mapper;
         this.imageStorageService = imageStorageService;
+        this.rollup = rollup;
+        this.events = events;
     }
 
     @Override
@@ -79,6 +103,115 @@ public class QuestionServiceImpl implements QuestionService {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public Map<Long, LocalDateTime> findVersions(Collection<Long> questionIds) {
+        if (questionIds == null || questionIds.isEmpty()) return Collections.emptyMap();
+        Map<Long, LocalDateTime> out = new HashMap<>();
+        for (Object[] row : questionRepo.findVersionsByIdIn(questionIds)) {
+            out.put((Long) row[0], (LocalDateTime) row[1]);
+        }
+        return out;
+    }
+
+    private static final int PREVIEW_CHARS = 200;
+    private static final int MAX_PAGE = 200;
+
+    @Override
+    @Transactional(readOnly = true)
+    public QuestionPageDTO listSummaries(Long subjectId, QuestionFilter filter, String cursor, int limit) {
+        subjectRepo.findById(subjectId)
+                .orElseThrow(() -> new EntityNotFoundException("Subject not found"));
+        if (limit < 1 || limit > MAX_PAGE) {
+            throw new IllegalArgumentException("limit phải trong khoảng 1.." + MAX_PAGE);
+        }
+        Cursor after = Cursor.decode(cursor);
+
+        // 1 query: cột nhẹ + cờ nhãn/ảnh bằng subquery, không nạp entity/collection
+        StringBuilder jpql = new StringBuilder("select q.id, q.questionType, q.difficulty, q.chapter, " +
+                "substring(q.content, 1, " + PREVIEW_CHARS + "), q.createdAt, " +
+                "case when q.imageUrl is not null or exists(select 1 from QuestionImage i where i.question = q) " +
+                "then true else false end, u.id, u.username, u.firstName, u.lastName");
+        QuestionLabel[] allLabels = QuestionLabel.values();
+        for (QuestionLabel l : allLabels) {
+            jpql.append(", case when :lbl_").append(l.name()).append(" member of q.labels then true else false end");
+        }
+        jpql.append(" from Question q left join q.createdBy u where q.subject.id = :subjectId and q.parent is null");
+        if (filter.label() != null)      jpql.append(" and :label member of q.labels");
+        if (filter.difficulty() != null) jpql.append(" and q.difficulty = :difficulty");
+        if (filter.chapter() != null)    jpql.append(" and q.chapter = :chapter");
+        if (filter.type() != null)       jpql.append(" and q.questionType = :type");
+        // seek theo tuple: quét ngược index (subject_id, created_at, id) bắt đầu ngay sau cursor
+        if (after != null) jpql.append(" and (q.createdAt, q.id) < (:afterTs, :afterId)");
+        jpql.append(" order by q.createdAt desc, q.id desc");
+
+        var query = em.createQuery(jpql.toString(), Object[].class)
+                .setParameter("subjectId", subjectId)
+                .setMaxResults(limit + 1); // thừa 1 dòng → biết còn trang sau
+        for (QuestionLabel l : allLabels) query.setParameter("lbl_" + l.name(), l);
+        if (filter.label() != null)      query.setParameter("label", filter.label());
+        if (filter.difficulty() != null) query.setParameter("difficulty", filter.difficulty());
+        if (filter.chapter() != null)    query.setParameter("chapter", filter.chapter());
+        if (filter.type() != null)       query.setParameter("type", filter.type());
+        if (after != null) {
+            query.setParameter("afterTs", after.createdAt());
+            query.setParameter("afterId", after.id());
+        }
+
+        List<Object[]> rows = query.getResultList();
+        List<QuestionSummaryDTO> items = new ArrayList<>(Math.min(rows.size(), limit));
+        for (int i = 0; i < rows.size() && i < limit; i++) {
+            Object[] r = rows.get(i);
+            QuestionSummaryDTO dto = new QuestionSummaryDTO();
+            dto.setId((Long) r[0]);
+            dto.setQuestionType((QuestionType) r[1]);
+            dto.setDifficulty((Difficulty) r[2]);
+            dto.setChapter(((Number) r[3]).intValue());
+            dto.setContentPreview((String) r[4]);
+            dto.setCreatedAt((LocalDateTime) r[5]);
+            dto.setHasImage(Boolean.TRUE.equals(r[6]));
+            if (r[7] != null) {
+                UserBasicDTO by = new UserBasicDTO();
+                by.setId((Long) r[7]);
+                by.setUsername((String) r[8]);
+                by.setFirstName((String) r[9]);
+                by.setLastName((String) r[10]);
+                dto.setCreatedBy(by);
+            }
+            Set<QuestionLabel> labels = EnumSet.noneOf(QuestionLabel.class);
+            for (int k = 0; k < allLabels.length; k++) {
+                if (Boolean.TRUE.equals(r[11 + k])) labels.add(allLabels[k]);
+            }
+            dto.setLabels(labels);
+            items.add(dto);
+        }
+
+        String next = null;
+        if (rows.size() > limit) {
+            QuestionSummaryDTO last = items.get(items.size() - 1);
+            next = new Cursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new QuestionPageDTO(items, next);
+    }
+
+    /** Vị trí keyset (createdAt, id) của dòng cuối trang; base64url "createdAt|id" */
+    private record Cursor(LocalDateTime createdAt, Long id) {
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String s) {
+            if (s == null || s.isBlank()) return null;
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(s), StandardCharsets.UTF_8);
+                int bar = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, bar)), Long.parseLong(raw.substring(bar + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("cursor không hợp lệ");
+            }
+        }
+    }
+
     @Override
     public QuestionDTO getById(Long questionId) {
         Question q = questionRepo.findById(questionId)
@@ -125,6 +258,8 @@ public class QuestionServiceImpl implements QuestionService {
         }
 
         Question saved = questionRepo.save(q);
+        rollup.questionsAdded(List.of(saved));
+        events.publishEvent(StatsChangedEvent.of(saved));
 
         if (image != null && !image.isEmpty()) {
             try {
@@ -139,6 +274,56 @@ public class QuestionServiceImpl implements QuestionService {
         return mapper.toDto(saved);
     }
 
+    @Override
+    public List<QuestionDTO> createBulk(Long subjectId, List<CreateQuestionDTO> payloads, Long creatorUserId) {
+        if (payloads == null || payloads.isEmpty()) return Collections.emptyList();
+
+        Subject subject = subjectRepo.findById(subjectId)
+                .orElseThrow(() -> new EntityNotFoundException("Subject not found"));
+        User creator = userRepo.findById(creatorUserId)
+                .orElseThrow(() -> new EntityNotFoundException("User not found"));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Question> questions = new ArrayList<>(payloads.size());
+        for (CreateQuestionDTO payload : payloads) {
+            validateQuestionPayload(payload);
+            if (payload.getParentId() != null) {
+                throw new IllegalArgumentException("Bulk create only supports root questions");
+            }
+            Question q = mapper.toEntity(payload);
+            q.setSubject(subject);
+            q.setCreatedBy(creator);
+            q.setCreatedAt(now);
+            q.setLabels(normalizeLabels(payload.getLabels()));
+            questions.add(q);
+        }
+        return persistInChunks(questions);
+    }
+
+    @Override
+    public void validatePayload(CreateQuestionDTO payload) {
+        validateQuestionPayload(payload);
+    }
+
+    /**
+     * saveAll + flush theo lô {@link #BATCH_SIZE}: Hibernate gom INSERT question / question_labels /
+     * question_image thành batch JDBC, id lấy từ sequence pooled (1 round-trip / 50 id).
+     * Map DTO trước khi clear để persistence context không phình theo số câu.
+     */
+    private List<QuestionDTO> persistInChunks(List<Question> questions) {
+        List<QuestionDTO> out = new ArrayList<>(questions.size());
+        for (int from = 0; from < questions.size(); from += BATCH_SIZE) {
+            List<Question> chunk = questions.subList(from, Math.min(questions.size(), from + BATCH_SIZE));
+            questionRepo.saveAll(chunk);
+            rollup.questionsAdded(chunk);
+            chunk.stream().map(StatsChangedEvent::of).distinct().forEach(events::publishEvent);
+            em.flush();
+            for (Question q : chunk) out.add(mapper.toDto(q));
+            em.clear();
+        }
+        return out;
+    }
+
     @Override
     public QuestionDTO update(Long questionId, CreateQuestionDTO payload, MultipartFile image) {
         Question q = questionRepo.findById(questionId)
@@ -146,6 +331,7 @@ public class QuestionServiceImpl implements QuestionService {
 
         // Không cho sửa parent/cloneIndex qua update
         validateQuestionPayload(payload);
+        StatsRollupService.QuestionSnapshot before = rollup.snapshot(q);
 
         q.setQuestionType(payload.getQuestionType());
         q.setContent(payload.getContent());
@@ -160,12 +346,11 @@ public class QuestionServiceImpl implements QuestionService {
 
         q.setLabels(normalizeLabels(payload.getLabels()));
 
+        String replacedImageUrl = null;
         if (image != null && !image.isEmpty()) {
             try {
-                if (q.getImageUrl() != null) {
-                    imageStorageService.deleteImage(q.getImageUrl());
-                }
                 String imageUrl = imageStorageService.storeImage(image, q.getId());
+                replacedImageUrl = q.getImageUrl();
                 q.setImageUrl(imageUrl);
             } catch (IOException e) {
                 throw new RuntimeException("Failed to upload image", e);
@@ -173,6 +358,9 @@ public class QuestionServiceImpl implements QuestionService {
         }
 
         Question updated = questionRepo.save(q);
+        rollup.questionChanged(before, updated);
+        events.publishEvent(StatsChangedEvent.of(updated));
+        if (replacedImageUrl != null) deleteUnusedImages(List.of(replacedImageUrl));
         return mapper.toDto(updated);
     }
 
@@ -217,7 +405,7 @@ public class QuestionServiceImpl implements QuestionService {
         Question q = questionRepo.findById(questionId)
                 .orElseThrow(() -> new EntityNotFoundException("Question not found"));
 
-        // Xoá ảnh cover + gallery (không fail toàn bộ nếu 1 ảnh lỗi)
+        // Ảnh cover + gallery: xoá sau khi xoá câu, chỉ những ảnh không còn câu nào dùng
         Set<String> urls = new LinkedHashSet<>();
         if (q.getImageUrl() != null && !q.getImageUrl().isEmpty()) urls.add(q.getImageUrl());
         if (q.getImages() != null) {
@@ -225,11 +413,27 @@ public class QuestionServiceImpl implements QuestionService {
                 if (img.getUrl() != null && !img.getUrl().isEmpty()) urls.add(img.getUrl());
             }
         }
+
+        // clone bị xoá theo cascade
+        List<Question> removed = new ArrayList<>(q.getClones());
+        removed.add(q);
+        rollup.questionsRemoved(removed);
+        removed.stream().map(StatsChangedEvent::of).distinct().forEach(events::publishEvent);
+        questionRepo.delete(q);
+        deleteUnusedImages(urls);
+    }
+
+    /**
+     * Ảnh có thể dùng chung giữa các câu (clone giữ URL ảnh gốc, gallery clone tái dùng URL) → flush
+     * thay đổi rồi chỉ xoá trên Cloudinary ảnh không còn câu nào trỏ tới. Không fail nếu 1 ảnh xoá lỗi.
+     */
+    private void deleteUnusedImages(Collection<String> urls) {
+        if (urls.isEmpty()) return;
+        em.flush();
         for (String url : urls) {
+            if (questionRepo.countByImageUrl(url) + imageRepo.countByUrl(url) > 0) continue;
             try { imageStorageService.deleteImage(url); } catch (Exception ignored) {}
         }
-
-        questionRepo.delete(q);
     }
 
     @Override
@@ -245,7 +449,26 @@ public class QuestionServiceImpl implements QuestionService {
         if (imageUrls == null || imageUrls.isEmpty()) return;
         Question q = questionRepo.findById(questionId)
                 .orElseThrow(() -> new EntityNotFoundException("Question not found: " + questionId));
+        appendImages(q, imageUrls);
+        questionRepo.save(q);
+    }
+
+    @Override
+    public void addImages(Map<Long, List<String>> imageUrlsByQuestion) {
+        if (imageUrlsByQuestion == null || imageUrlsByQuestion.isEmpty()) return;
+        // images có @BatchSize → chạm q.getImages() không gây N+1
+        List<Question> questions = questionRepo.findByIdIn(imageUrlsByQuestion.keySet());
+        if (questions.size() != imageUrlsByQuestion.size()) {
+            throw new EntityNotFoundException("Question not found");
+        }
+        for (Question q : questions) {
+            List<String> urls = imageUrlsByQuestion.get(q.getId());
+            if (urls != null && !urls.isEmpty()) appendImages(q, urls);
+        }
+        questionRepo.saveAll(questions);
+    }
 
+    private void appendImages(Question q, List<String> imageUrls) {
         int startIndex = q.getImages().size() + 1;
         for (int i = 0; i < imageUrls.size(); i++) {
             QuestionImage img = new QuestionImage();
@@ -255,7 +478,7 @@ public class QuestionServiceImpl implements QuestionService {
             q.getImages().add(img);
         }
         if (q.getImageUrl() == null) q.setImageUrl(imageUrls.get(0));
-        questionRepo.save(q);
+        q.touch(); // images là phía inverse: không tự làm Question dirty
     }
 
     // ===== Clone APIs =====
@@ -296,7 +519,7 @@ public class QuestionServiceImpl implements QuestionService {
         User creator = userRepo.findById(creatorUserId)
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
 
-        List<QuestionDTO> out = new ArrayList<>();
+        List<Question> clones = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
             Question clone = new Question();
             clone.setSubject(source.getSubject());
@@ -346,10 +569,9 @@ public class QuestionServiceImpl implements QuestionService {
             shadow.setAnswerText(clone.getAnswerText());
             validateQuestionPayload(shadow);
 
-            Question saved = questionRepo.save(clone);
-            out.add(mapper.toDto(saved));
+            clones.add(clone);
         }
 
-        return out;
+        return persistInChunks(clones);
     }
 }
@@ -15,6 +15,7 @@ import com.exam.examserver.repo.SubjectRepository;
 import com.exam.examserver.repo.UserRepository;
 import com.exam.examserver.service.QuizService;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -33,6 +34,8 @@ public class QuizServiceImpl implements QuizService {
     private final QuizMapper mapper;
     private final QuestionMapper questionMapper;
     private final QuizQuestionMapper quizQuestionMapper;
+    private final StatsRollupService rollup;
+    private final ApplicationEventPublisher events;
 
     public QuizServiceImpl(QuizRepository quizRepo,
                            SubjectRepository subjectRepo,
@@ -40,7 +43,9 @@ public class QuizServiceImpl implements QuizService {
                            QuestionRepository questionRepo,
                            QuizMapper mapper,
                            QuestionMapper questionMapper,
-                           QuizQuestionMapper quizQuestionMapper) {
+                           QuizQuestionMapper quizQuestionMapper,
+                           StatsRollupService rollup,
+                           ApplicationEventPublisher events) {
         this.quizRepo = quizRepo;
         this.subjectRepo = subjectRepo;
         this.userRepo = userRepo;
@@ -48,6 +53,8 @@ public class QuizServiceImpl implements QuizService {
         this.mapper = mapper;
         this.questionMapper = questionMapper;
         this.quizQuestionMapper = quizQuestionMapper;
+        this.rollup = rollup;
+        this.events = events;
     }
 
     @Override
@@ -73,14 +80,11 @@ public class QuizServiceImpl implements QuizService {
         quiz.setNumOfQuestions(0);
 
         if (payload.getQuestions() != null && !payload.getQuestions().isEmpty()) {
+            Map<Long, Question> questionsById = loadQuestions(payload.getQuestions(), subjectId);
             List<QuizQuestion> quizQuestions = new ArrayList<>(); // Sử dụng List để giữ thứ tự
             int autoIndex = 1;
             for (AddQuizQuestionDTO questionDTO : payload.getQuestions()) {
-                Question question = questionRepo.findById(questionDTO.getQuestionId())
-                        .orElseThrow(() -> new EntityNotFoundException("Question not found"));
-                if (!question.getSubject().getId().equals(subjectId)) {
-                    throw new IllegalArgumentException("Question does not belong to the specified subject");
-                }
+                Question question = questionsById.get(questionDTO.getQuestionId());
                 QuizQuestion qq = mapper.toQuizQuestionEntity(questionDTO);
                 qq.setQuiz(quiz);
                 qq.setQuestion(question);
@@ -99,8 +103,7 @@ public class QuizServiceImpl implements QuizService {
 
     @Override
     public QuizDTO getById(Long quizId, Long subjectId) {
-        Quiz quiz = quizRepo.findById(quizId)
-                .orElseThrow(() -> new EntityNotFoundException("Quiz not found"));
+        Quiz quiz = loadQuizWithQuestions(quizId);
         if (!quiz.getSubject().getId().equals(subjectId)) {
             throw new IllegalArgumentException("Quiz does not belong to the specified subject");
         }
@@ -136,8 +139,7 @@ public class QuizServiceImpl implements QuizService {
     @Override
     @Transactional(readOnly = true)
     public List<QuestionDTO> getQuestionsByQuiz(Long quizId, boolean hideAnswer) {
-        Quiz quiz = quizRepo.findById(quizId)
-                .orElseThrow(() -> new EntityNotFoundException("Quiz not found"));
+        Quiz quiz = loadQuizWithQuestions(quizId);
 
         return quiz.getQuizQuestions().stream()
                 .sorted(Comparator.comparingInt(QuizQuestion::getOrderIndex))
@@ -154,7 +156,7 @@ public class QuizServiceImpl implements QuizService {
 
     // Phương thức mới: Thêm câu hỏi vào quiz
     public List<QuizQuestionDTO> addQuestionsToQuiz(Long quizId, Long subjectId, AddQuizQuestionsDTO payload, Long userId) {
-        Quiz quiz = quizRepo.findById(quizId)
+        Quiz quiz = quizRepo.findWithQuestionsById(quizId)
                 .orElseThrow(() -> new EntityNotFoundException("Quiz not found"));
 
         if (!quiz.getSubject().getId().equals(subjectId)) {
@@ -165,19 +167,16 @@ public class QuizServiceImpl implements QuizService {
                 .orElseThrow(() -> new EntityNotFoundException("User not found"));
 
         Set<QuizQuestion> quizQuestions = quiz.getQuizQuestions();
+        Set<Long> existingIds = quizQuestions.stream()
+                .map(qq -> qq.getQuestion().getId())
+                .collect(Collectors.toSet());
+        Map<Long, Question> questionsById = loadQuestions(payload.getQuestions(), subjectId);
         List<QuizQuestion> newQuizQuestions = new ArrayList<>();
         int autoIndex = quiz.getNumOfQuestions() + 1; // Bắt đầu từ số câu hỏi hiện tại
 
         for (AddQuizQuestionDTO questionDTO : payload.getQuestions()) {
-            Question question = questionRepo.findById(questionDTO.getQuestionId())
-                    .orElseThrow(() -> new EntityNotFoundException("Question not found"));
-            if (!question.getSubject().getId().equals(subjectId)) {
-                throw new IllegalArgumentException("Question does not belong to the specified subject");
-            }
-
-            boolean exists = quizQuestions.stream()
-                    .anyMatch(qq -> qq.getQuestion().getId().equals(questionDTO.getQuestionId()));
-            if (exists) {
+            Question question = questionsById.get(questionDTO.getQuestionId());
+            if (existingIds.contains(questionDTO.getQuestionId())) {
                 throw new IllegalArgumentException("Question already exists in quiz");
             }
 
@@ -214,7 +213,7 @@ public class QuizServiceImpl implements QuizService {
 
     @Override
     public QuizDTO updateQuestions(Long quizId, Long subjectId, List<AddQuizQuestionDTO> questions, Long userId) {
-        Quiz quiz = quizRepo.findById(quizId)
+        Quiz quiz = quizRepo.findWithQuestionsById(quizId)
                 .orElseThrow(() -> new EntityNotFoundException("Quiz not found"));
 
         if (!quiz.getSubject().getId().equals(subjectId)) {
@@ -235,20 +234,18 @@ public class QuizServiceImpl implements QuizService {
         // Xóa các QuizQuestion không còn trong danh sách mới
         currentQuizQuestions.removeIf(qq -> !newQuestionIds.contains(qq.getQuestion().getId()));
 
+        // questionId → QuizQuestion còn lại, tra O(1) thay vì duyệt cả tập cho mỗi câu
+        Map<Long, QuizQuestion> currentByQuestionId = new HashMap<>();
+        for (QuizQuestion qq : currentQuizQuestions) currentByQuestionId.put(qq.getQuestion().getId(), qq);
+        Map<Long, Question> questionsById = loadQuestions(questions, subjectId);
+
         // Thêm hoặc cập nhật các QuizQuestion mới
         int autoIndex = 1; // Bắt đầu từ 1
         for (AddQuizQuestionDTO questionDTO : questions) {
-            Question question = questionRepo.findById(questionDTO.getQuestionId())
-                    .orElseThrow(() -> new EntityNotFoundException("Question not found"));
-            if (!question.getSubject().getId().equals(subjectId)) {
-                throw new IllegalArgumentException("Question does not belong to the specified subject");
-            }
+            Question question = questionsById.get(questionDTO.getQuestionId());
 
             // Tìm QuizQuestion hiện có (nếu có) để cập nhật orderIndex
-            QuizQuestion existingQq = currentQuizQuestions.stream()
-                    .filter(qq -> qq.getQuestion().getId().equals(questionDTO.getQuestionId()))
-                    .findFirst()
-                    .orElse(null);
+            QuizQuestion existingQq = currentByQuestionId.get(questionDTO.getQuestionId());
 
             QuizQuestion qq;
             if (existingQq != null) {
@@ -258,6 +255,7 @@ public class QuizServiceImpl implements QuizService {
                 qq.setQuiz(quiz);
                 qq.setQuestion(question);
                 currentQuizQuestions.add(qq); // Thêm vào tập hợp hiện tại
+                currentByQuestionId.put(question.getId(), qq);
             }
             qq.setOrderIndex(questionDTO.getOrderIndex() != null ? questionDTO.getOrderIndex() : autoIndex++);
         }
@@ -269,6 +267,37 @@ public class QuizServiceImpl implements QuizService {
         return mapper.toDto(updated);
     }
 
+    /** 1 query cho mọi câu trong payload (kèm labels + người tạo cho mapper); thiếu câu → 404, khác môn → 400 */
+    private Map<Long, Question> loadQuestions(Collection<AddQuizQuestionDTO> items, Long subjectId) {
+        Set<Long> ids = items.stream()
+                .map(AddQuizQuestionDTO::getQuestionId)
+                .collect(Collectors.toSet());
+        Map<Long, Question> byId = new HashMap<>();
+        for (Question q : questionRepo.findByIdIn(ids)) byId.put(q.getId(), q);
+        for (AddQuizQuestionDTO item : items) {
+            Question q = byId.get(item.getQuestionId());
+            if (q == null) throw new EntityNotFoundException("Question not found");
+            if (!q.getSubject().getId().equals(subjectId)) {
+                throw new IllegalArgumentException("Question does not belong to the specified subject");
+            }
+        }
+        return byId;
+    }
+
+    /** Quiz + câu hỏi (1 câu SQL) rồi labels, images (mỗi loại 1 câu SQL): số câu SQL không phụ thuộc số câu hỏi */
+    private Quiz loadQuizWithQuestions(Long quizId) {
+        Quiz quiz = quizRepo.findWithQuestionsById(quizId)
+                .orElseThrow(() -> new EntityNotFoundException("Quiz not found"));
+        List<Long> ids = quiz.getQuizQuestions().stream()
+                .map(qq -> qq.getQuestion().getId())
+                .toList();
+        if (!ids.isEmpty()) {
+            questionRepo.fetchLabelsByIdIn(ids);
+            questionRepo.fetchImagesByIdIn(ids);
+        }
+        return quiz;
+    }
+
     @Override
     public Long saveQuestion(CreateQuestionDTO dto, Long subjectId, Long userId) {
         Subject subject = subjectRepo.findById(subjectId)
@@ -282,6 +311,8 @@ public class QuizServiceImpl implements QuizService {
         question.setCreatedAt(LocalDateTime.now());
 
         Question savedQuestion = questionRepo.save(question);
+        rollup.questionsAdded(List.of(savedQuestion));
+        events.publishEvent(StatsChangedEvent.of(savedQuestion));
         return savedQuestion.getId();
     }
 
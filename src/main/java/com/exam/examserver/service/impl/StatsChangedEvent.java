@@ -0,0 +1,25 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.model.exam.Question;
+import com.exam.examserver.model.exam.Subject;
+
+/**
+ * Sự kiện: dữ liệu dashboard thống kê đã đổi → {@link StatsOverviewCache} bỏ các overview bị ảnh hưởng
+ * (sau khi transaction commit). Overview ADMIN luôn bị bỏ; HEAD của {@code departmentId}, TEACHER của
+ * {@code userId}. null = không biết → bỏ mọi overview HEAD / TEACHER.
+ */
+public record StatsChangedEvent(Long departmentId, Long userId) {
+
+    /** Đổi user / vai trò / khoa: ảnh hưởng số liệu tổ chức của mọi dashboard */
+    public static StatsChangedEvent all() {
+        return new StatsChangedEvent(null, null);
+    }
+
+    /** Thêm / sửa / xoá câu hỏi: khoa của môn + người tạo */
+    public static StatsChangedEvent of(Question q) {
+        Subject s = q.getSubject();
+        return new StatsChangedEvent(
+                (s != null && s.getDepartment() != null) ? s.getDepartment().getId() : null,
+                (q.getCreatedBy() != null) ? q.getCreatedBy().getId() : null);
+    }
+}
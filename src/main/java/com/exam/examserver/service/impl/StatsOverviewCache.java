@@ -0,0 +1,133 @@
+package com.exam.examserver.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache DTO overview của StatsService theo (dashboard, id khoa / giáo viên, from, to), sống
+ * {@code stats.cache.ttl-seconds} giây kể từ lúc tính xong. ttl = 0 → tắt.
+ *
+ * Single-flight: nhiều request cùng key lúc cache trống chỉ 1 request chạy query, các request còn lại
+ * chờ chung kết quả đó. Lỗi khi tính → không cache, request sau tính lại.
+ *
+ * Bỏ entry khi nhận {@link StatsChangedEvent} (sau commit, nên lần tính lại đọc được dữ liệu mới).
+ * Entry đang tính dở cũng bị bỏ khỏi map: request đang chờ vẫn nhận kết quả đó, request sau tính lại.
+ * Thay đổi không phát sự kiện (file mới nộp, phân công môn...) hiện ra sau tối đa 1 TTL.
+ *
+ * DTO trả về dùng chung giữa các request → chỉ đọc / serialize, không sửa.
+ *
+ * Metrics (Micrometer global registry):
+ *  - stats.overview.cache{result=hit|miss} : số lần tra cache
+ *  - stats.overview.cache.hit.ratio        : hit / (hit + miss) từ lúc khởi động
+ *  - stats.overview.cache.size             : số entry đang giữ
+ *  - stats.overview.load{overview=...}     : thời gian tính 1 overview khi miss
+ */
+@Component
+class StatsOverviewCache {
+
+    enum Overview { ADMIN, HEAD, TEACHER }
+
+    /** id: khoa (HEAD), giáo viên (TEACHER), null (ADMIN) */
+    record Key(Overview overview, Long id, LocalDate from, LocalDate to) {}
+
+    private static final class Entry {
+        final CompletableFuture<Object> value = new CompletableFuture<>();
+        volatile long expiresAt = Long.MAX_VALUE; // chưa tính xong → chưa hết hạn
+
+        boolean expired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Counter hits, misses;
+    private final Map<Overview, Timer> loadTimers = new ConcurrentHashMap<>();
+
+    StatsOverviewCache(@Value("${stats.cache.ttl-seconds:30}") long ttlSeconds,
+                       @Value("${stats.cache.max-entries:1000}") int maxEntries) {
+        this.ttlNanos = Math.max(0, ttlSeconds) * 1_000_000_000L;
+        this.maxEntries = Math.max(1, maxEntries);
+
+        this.hits = lookupCounter("hit");
+        this.misses = lookupCounter("miss");
+        Gauge.builder("stats.overview.cache.hit.ratio", this, StatsOverviewCache::hitRatio)
+                .description("Tỉ lệ overview lấy từ cache").register(Metrics.globalRegistry);
+        Gauge.builder("stats.overview.cache.size", entries, Map::size)
+                .description("Số overview đang cache").register(Metrics.globalRegistry);
+    }
+
+    private static Counter lookupCounter(String result) {
+        return Counter.builder("stats.overview.cache").tag("result", result)
+                .description("Tra cache overview thống kê").register(Metrics.globalRegistry);
+    }
+
+    private Timer loadTimer(Overview o) {
+        return loadTimers.computeIfAbsent(o, k -> Timer.builder("stats.overview.load")
+                .tag("overview", k.name().toLowerCase())
+                .description("Thời gian tính overview thống kê khi cache miss")
+                .register(Metrics.globalRegistry));
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(Key key, Supplier<T> loader) {
+        if (ttlNanos == 0) return loadTimer(key.overview()).record(loader);
+
+        long now = System.nanoTime();
+        Entry mine = new Entry();
+        Entry cur = entries.compute(key, (k, old) -> (old != null && !old.expired(now)) ? old : mine);
+        if (cur != mine) {
+            hits.increment();
+            return (T) StatsQueryExecutor.join(cur.value);
+        }
+
+        misses.increment();
+        if (entries.size() > maxEntries) evict(now);
+        T v;
+        try {
+            v = loadTimer(key.overview()).record(loader);
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, mine);
+            mine.value.completeExceptionally(e);
+            throw e;
+        }
+        mine.expiresAt = System.nanoTime() + ttlNanos;
+        mine.value.complete(v);
+        return v;
+    }
+
+    /** Bỏ entry hết hạn; vẫn quá giới hạn (nhiều khoảng ngày khác nhau) → bỏ hết */
+    private void evict(long now) {
+        entries.values().removeIf(e -> e.expired(now));
+        if (entries.size() > maxEntries) entries.clear();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onStatsChanged(StatsChangedEvent ev) {
+        entries.keySet().removeIf(k -> switch (k.overview()) {
+            case ADMIN -> true;
+            case HEAD -> ev.departmentId() == null || Objects.equals(ev.departmentId(), k.id());
+            case TEACHER -> ev.userId() == null || Objects.equals(ev.userId(), k.id());
+        });
+    }
+
+    private double hitRatio() {
+        double h = hits.count(), total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+}
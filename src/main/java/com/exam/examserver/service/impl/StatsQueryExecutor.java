@@ -0,0 +1,87 @@
+package com.exam.examserver.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Chạy song song các câu query độc lập của 1 dashboard (StatsService). Mỗi query chạy trong
+ * transaction read-only riêng → mỗi query đang chạy giữ 1 connection.
+ *
+ * Giới hạn connection: 1 Semaphore chung cả process, {@code stats.parallelism} permit, lấy trước khi mở
+ * transaction (cả query chạy trên pool lẫn query chạy trên thread gọi) → mọi dashboard đang mở cộng lại
+ * giữ tối đa parallelism connection. Mặc định (0) = nửa pool Hikari, phần còn lại cho request khác
+ * (import/export, CRUD).
+ *
+ * Hàng đợi đầy → query chạy luôn trên thread gọi (vẫn chờ permit). parallelism 1 → chạy tuần tự trên thread gọi.
+ */
+@Component
+class StatsQueryExecutor {
+
+    private final TransactionTemplate tx;
+    private final Semaphore connections;
+    private final ThreadPoolExecutor executor; // null → chạy tuần tự
+
+    StatsQueryExecutor(PlatformTransactionManager txManager,
+                       @Value("${stats.parallelism:0}") int parallelism,
+                       @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this.tx = new TransactionTemplate(txManager);
+        this.tx.setReadOnly(true);
+        if (parallelism <= 0) parallelism = Math.max(1, poolSize / 2);
+        this.connections = new Semaphore(parallelism);
+
+        if (parallelism <= 1) {
+            this.executor = null;
+            return;
+        }
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(64), r -> {
+                    Thread t = new Thread(r, "stats-query-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<T> query) {
+        Supplier<T> inTx = () -> {
+            connections.acquireUninterruptibly();
+            try {
+                return tx.execute(status -> query.get());
+            } finally {
+                connections.release();
+            }
+        };
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(inTx.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(inTx, executor);
+    }
+
+    /** Đợi kết quả; ném lại đúng exception gốc của query (không bọc CompletionException) */
+    static <T> T join(CompletableFuture<T> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -0,0 +1,271 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.enums.ReviewStatus;
+import com.exam.examserver.model.exam.FileArchive;
+import com.exam.examserver.model.exam.Question;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.model.stats.ArchiveRollup;
+import com.exam.examserver.model.stats.QuestionRollup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.*;
+import java.util.*;
+
+/**
+ * Duy trì bảng rollup thống kê ({@link QuestionRollup}, {@link ArchiveRollup}) để dashboard cộng vài
+ * nghìn dòng rollup thay vì quét cả bảng question / file_archive.
+ *
+ * Ghi tăng dần: service nghiệp vụ gọi questionsAdded / questionChanged / questionsRemoved / archive... ngay
+ * khi ghi entity → INSERT dòng delta (+/-), không update dòng có sẵn nên không tranh chấp khoá giữa các
+ * request. Câu hỏi ghi trong cùng transaction của QuestionServiceImpl; file lưu trữ ghi ngay sau khi lưu
+ * (transaction riêng, lỗi chỉ log → ngày đó lệch tới lần đối soát kế tiếp).
+ *
+ * Đối soát hằng đêm ({@code stats.rollup.reconcile-cron}): dựng lại các ngày trước hôm nay từ bảng gốc
+ * (sửa mọi lệch, vd xoá câu hỏi theo cascade ngoài service, đổi khoa của môn) và gộp dòng delta thành
+ * 1 dòng / key. Ngày hôm nay chỉ có delta nên không đụng tới khi người dùng đang ghi.
+ * Lần khởi động đầu (rollup rỗng) dựng lại toàn bộ.
+ */
+@Service
+public class StatsRollupService {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private record QuestionKey(Long departmentId, Long subjectId, Long creatorId, LocalDate day,
+                               QuestionType type, Difficulty difficulty, int chapter, QuestionLabel label) {
+        QuestionKey withLabel(QuestionLabel l) {
+            return new QuestionKey(departmentId, subjectId, creatorId, day, type, difficulty, chapter, l);
+        }
+    }
+
+    private record ArchiveKey(Long departmentId, Long subjectId, Long userId, LocalDate day, ReviewStatus status) {}
+
+    /** Đóng góp của 1 file: 1 file ở key, đã duyệt hay chưa, thời gian duyệt */
+    private record ArchiveFact(ArchiveKey key, long reviewed, long reviewMs) {}
+
+    /** Các dòng rollup 1 câu hỏi đang đóng góp; chụp trước khi sửa để trừ ra trong {@link #questionChanged} */
+    public static final class QuestionSnapshot {
+        private final Map<QuestionKey, Long> rows = new HashMap<>();
+    }
+
+    /** Đóng góp của 1 file lưu trữ trước khi duyệt/từ chối */
+    public static final class ArchiveSnapshot {
+        private final ArchiveFact fact;
+
+        private ArchiveSnapshot(ArchiveFact fact) { this.fact = fact; }
+
+        /** Khoa của môn chứa file (null nếu môn không thuộc khoa) */
+        public Long departmentId() { return fact.key().departmentId(); }
+    }
+
+    // =====================================================================
+    // Câu hỏi
+    // =====================================================================
+
+    public QuestionSnapshot snapshot(Question q) {
+        QuestionSnapshot s = new QuestionSnapshot();
+        addFacts(s.rows, q, 1);
+        return s;
+    }
+
+    @Transactional
+    public void questionsAdded(Collection<Question> questions) {
+        Map<QuestionKey, Long> delta = new HashMap<>();
+        for (Question q : questions) addFacts(delta, q, 1);
+        persistQuestions(delta);
+    }
+
+    @Transactional
+    public void questionsRemoved(Collection<Question> questions) {
+        Map<QuestionKey, Long> delta = new HashMap<>();
+        for (Question q : questions) addFacts(delta, q, -1);
+        persistQuestions(delta);
+    }
+
+    /** Đổi loại / độ khó / chapter / nhãn: trừ key cũ, cộng key mới (không đổi gì → không ghi) */
+    @Transactional
+    public void questionChanged(QuestionSnapshot before, Question after) {
+        Map<QuestionKey, Long> delta = new HashMap<>();
+        addFacts(delta, after, 1);
+        before.rows.forEach((k, n) -> delta.merge(k, -n, Long::sum));
+        persistQuestions(delta);
+    }
+
+    /** Môn bị xoá kéo theo câu hỏi (cascade) → bỏ luôn rollup của môn */
+    @Transactional
+    public void subjectRemoved(Long subjectId) {
+        em.createQuery("delete from QuestionRollup r where r.subjectId = :id")
+                .setParameter("id", subjectId)
+                .executeUpdate();
+    }
+
+    private static void addFacts(Map<QuestionKey, Long> acc, Question q, long sign) {
+        Subject s = q.getSubject();
+        QuestionKey key = new QuestionKey(
+                (s.getDepartment() != null) ? s.getDepartment().getId() : null,
+                s.getId(),
+                (q.getCreatedBy() != null) ? q.getCreatedBy().getId() : null,
+                (q.getCreatedAt() != null) ? q.getCreatedAt().toLocalDate() : null,
+                q.getQuestionType(), q.getDifficulty(), q.getChapter(), null);
+        acc.merge(key, sign, Long::sum);
+        if (q.getLabels() != null) {
+            for (QuestionLabel l : q.getLabels()) acc.merge(key.withLabel(l), sign, Long::sum);
+        }
+    }
+
+    private void persistQuestions(Map<QuestionKey, Long> delta) {
+        delta.forEach((k, n) -> {
+            if (n == 0) return;
+            em.persist(new QuestionRollup(k.departmentId(), k.subjectId(), k.creatorId(), k.day(),
+                    k.type(), k.difficulty(), k.chapter(), k.label(), n));
+        });
+    }
+
+    // =====================================================================
+    // File lưu trữ
+    // =====================================================================
+
+    @Transactional(readOnly = true)
+    public ArchiveSnapshot snapshot(FileArchive fa) {
+        return new ArchiveSnapshot(fact(fa, departmentOf(fa.getSubjectId())));
+    }
+
+    @Transactional
+    public void archiveAdded(FileArchive fa) {
+        persistArchive(fact(fa, departmentOf(fa.getSubjectId())), 1);
+    }
+
+    @Transactional
+    public void archiveRemoved(ArchiveSnapshot before) {
+        persistArchive(before.fact, -1);
+    }
+
+    /** Duyệt / từ chối: chuyển file sang trạng thái mới, cộng thời gian duyệt nếu có */
+    @Transactional
+    public void archiveChanged(ArchiveSnapshot before, FileArchive after) {
+        Long dept = Objects.equals(before.fact.key().subjectId(), after.getSubjectId())
+                ? before.fact.key().departmentId()
+                : departmentOf(after.getSubjectId());
+        ArchiveFact now = fact(after, dept);
+        if (now.equals(before.fact)) return;
+        persistArchive(before.fact, -1);
+        persistArchive(now, 1);
+    }
+
+    private Long departmentOf(Long subjectId) {
+        if (subjectId == null) return null;
+        return em.createQuery("select s.department.id from Subject s where s.id = :id", Long.class)
+                .setParameter("id", subjectId)
+                .getResultStream().findFirst().orElse(null);
+    }
+
+    // ngày theo múi giờ hệ thống như khoảng from/to của dashboard
+    private static ArchiveFact fact(FileArchive fa, Long departmentId) {
+        return fact(departmentId, fa.getSubjectId(), fa.getUserId(), fa.getCreatedAt(),
+                fa.getReviewStatus(), fa.getReviewedAt());
+    }
+
+    private static ArchiveFact fact(Long departmentId, Long subjectId, Long userId,
+                                    Instant createdAt, ReviewStatus status, Instant reviewedAt) {
+        ArchiveKey key = new ArchiveKey(departmentId, subjectId, userId,
+                LocalDate.ofInstant(createdAt, ZoneId.systemDefault()), status);
+        if (reviewedAt == null) return new ArchiveFact(key, 0, 0);
+        return new ArchiveFact(key, 1, Duration.between(createdAt, reviewedAt).toMillis());
+    }
+
+    private void persistArchive(ArchiveFact f, long sign) {
+        ArchiveKey k = f.key();
+        em.persist(new ArchiveRollup(k.departmentId(), k.subjectId(), k.userId(), k.day(), k.status(),
+                sign, sign * f.reviewed(), sign * f.reviewMs()));
+    }
+
+    // =====================================================================
+    // Đối soát
+    // =====================================================================
+
+    @Scheduled(cron = "${stats.rollup.reconcile-cron:0 30 2 * * *}")
+    @Transactional
+    public void reconcile() {
+        rebuild(LocalDate.now());
+    }
+
+    /** Dựng lại toàn bộ kể cả hôm nay (dữ liệu nạp ngoài service, chạy tay) */
+    @Transactional
+    public void rebuildAll() {
+        rebuild(null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void buildIfEmpty() {
+        long rows = em.createQuery("select count(r) from QuestionRollup r", Long.class).getSingleResult()
+                + em.createQuery("select count(a) from ArchiveRollup a", Long.class).getSingleResult();
+        if (rows == 0) rebuild(null);
+    }
+
+    /** Xoá rollup các ngày trước {@code before} (null = tất cả) rồi tính lại từ bảng gốc */
+    private void rebuild(LocalDate before) {
+        rebuildQuestions(before);
+        rebuildArchives(before);
+    }
+
+    private void rebuildQuestions(LocalDate before) {
+        var del = em.createQuery("delete from QuestionRollup r" +
+                (before == null ? "" : " where r.statDay < :day or r.statDay is null"));
+        if (before != null) del.setParameter("day", before);
+        del.executeUpdate();
+
+        // INSERT ... SELECT trong DB, không kéo câu hỏi về app
+        String dims = "s.department.id, s.id, u.id, cast(q.createdAt as LocalDate), " +
+                "q.questionType, q.difficulty, q.chapter";
+        String where = (before == null) ? "" : " where q.createdAt < :ts or q.createdAt is null";
+        String cols = "departmentId, subjectId, creatorId, statDay, questionType, difficulty, chapter";
+
+        var questions = em.createQuery("insert into QuestionRollup (" + cols + ", cnt) " +
+                "select " + dims + ", count(q) from Question q join q.subject s left join q.createdBy u" +
+                where + " group by " + dims);
+        var labels = em.createQuery("insert into QuestionRollup (" + cols + ", label, cnt) " +
+                "select " + dims + ", l, count(q) from Question q join q.subject s left join q.createdBy u " +
+                "join q.labels l" + where + " group by " + dims + ", l");
+        if (before != null) {
+            questions.setParameter("ts", before.atStartOfDay());
+            labels.setParameter("ts", before.atStartOfDay());
+        }
+        questions.executeUpdate();
+        labels.executeUpdate();
+    }
+
+    // thời gian duyệt tính bằng Java như delta (đúng múi giờ ngày, đúng ms) — bảng file nhỏ hơn question nhiều
+    private void rebuildArchives(LocalDate before) {
+        var del = em.createQuery("delete from ArchiveRollup a" +
+                (before == null ? "" : " where a.statDay < :day"));
+        if (before != null) del.setParameter("day", before);
+        del.executeUpdate();
+
+        var q = em.createQuery("select f.subjectId, s.department.id, f.userId, f.createdAt, f.reviewStatus, " +
+                "f.reviewedAt from FileArchive f left join Subject s on s.id = f.subjectId" +
+                (before == null ? "" : " where f.createdAt < :ts"), Object[].class);
+        if (before != null) q.setParameter("ts", before.atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        Map<ArchiveKey, long[]> acc = new HashMap<>(); // cnt, reviewed, reviewMs
+        q.getResultStream().forEach(r -> {
+            ArchiveFact f = fact((Long) r[1], (Long) r[0], (Long) r[2],
+                    (Instant) r[3], (ReviewStatus) r[4], (Instant) r[5]);
+            long[] sum = acc.computeIfAbsent(f.key(), k -> new long[3]);
+            sum[0]++;
+            sum[1] += f.reviewed();
+            sum[2] += f.reviewMs();
+        });
+        acc.forEach((k, s) -> em.persist(new ArchiveRollup(k.departmentId(), k.subjectId(), k.userId(),
+                k.day(), k.status(), s[0], s[1], s[2])));
+    }
+}
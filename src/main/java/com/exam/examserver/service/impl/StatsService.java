@@ -4,13 +4,9 @@ import com.exam.examserver.dto.importing.AdminOverviewDto;
 import com.exam.examserver.dto.importing.HeadOverviewDto;
 import com.exam.examserver.dto.importing.TeacherOverviewDto;
 import com.exam.examserver.enums.Difficulty;
-import com.exam.examserver.enums.QuestionLabel;
 import com.exam.examserver.enums.ReviewStatus;
 import com.exam.examserver.enums.RoleType;
 import com.exam.examserver.repo.DepartmentRepository;
-import com.exam.examserver.repo.FileArchiveRepository;
-import com.exam.examserver.repo.QuestionRepository;
-import com.exam.examserver.repo.SubjectRepository;
 import com.exam.examserver.repo.UserRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -18,158 +14,168 @@ import jakarta.persistence.TypedQuery;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.*;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Số liệu dashboard ADMIN / HEAD / TEACHER.
+ *
+ * Số câu hỏi / file lưu trữ đọc từ bảng rollup theo ngày ({@link StatsRollupService}): cộng các dòng
+ * rollup trong khoảng ngày thay vì quét bảng question / file_archive, nên chi phí không tăng theo số câu.
+ * Số user/khoa/môn (bảng nhỏ) vẫn đếm trực tiếp bằng subquery trong 1 câu. Các câu độc lập chạy song song
+ * qua {@link StatsQueryExecutor}, mỗi câu 1 transaction read-only riêng → các phương thức overview không
+ * tự mở transaction (tránh giữ 1 connection chờ các connection khác).
+ *
+ * Kết quả cache ngắn hạn theo (dashboard, khoa / giáo viên, from, to) qua {@link StatsOverviewCache};
+ * id khoa / giáo viên được xác định từ user hiện tại trước khi tra cache.
+ */
 @Service
 public class StatsService {
 
+    private static final int CHAPTERS = 8; // coverage chapter0..chapter7
+
     private final UserRepository userRepo;
     private final DepartmentRepository deptRepo;
-    private final SubjectRepository subjRepo;
-    private final QuestionRepository questionRepo;
-    private final FileArchiveRepository faRepo;
+    private final StatsQueryExecutor queries;
+    private final StatsOverviewCache cache;
 
     @PersistenceContext
     private EntityManager em;
 
     public StatsService(UserRepository userRepo,
                         DepartmentRepository deptRepo,
-                        SubjectRepository subjRepo,
-                        QuestionRepository questionRepo,
-                        FileArchiveRepository faRepo) {
+                        StatsQueryExecutor queries,
+                        StatsOverviewCache cache) {
         this.userRepo = userRepo;
         this.deptRepo = deptRepo;
-        this.subjRepo = subjRepo;
-        this.questionRepo = questionRepo;
-        this.faRepo = faRepo;
+        this.queries = queries;
+        this.cache = cache;
     }
 
-    @Transactional(readOnly = true)
-    public AdminOverviewDto getAdminOverview(LocalDate fromDate, LocalDate toDate) {
-        // ===== Chuẩn hoá khoảng thời gian =====
-        // Question.createdAt = LocalDateTime -> dùng [fromLdt, toLdt)
-        // FileArchive.createdAt = Instant     -> dùng [fromInst, toInst)
-        LocalDateTime fromLdt = (fromDate != null) ? fromDate.atStartOfDay() : null;
-        LocalDateTime toLdt   = (toDate   != null) ? toDate.plusDays(1).atStartOfDay() : null;
+    // ===== Khoảng ngày & phạm vi =====
 
-        ZoneId zone = ZoneId.systemDefault();
-        Instant fromInst = (fromLdt != null) ? fromLdt.atZone(zone).toInstant() : null;
-        Instant toInst   = (toLdt   != null) ? toLdt.atZone(zone).toInstant()   : null;
+    /**
+     * [from, to] tính theo ngày, khớp với [from 00:00, to+1 00:00) trên createdAt
+     * (rollup lưu ngày tạo; FileArchive.createdAt quy về ngày theo múi giờ hệ thống)
+     */
+    private record Window(LocalDate from, LocalDate to) {}
 
-        var dto = new AdminOverviewDto();
+    /** Điều kiện lọc QuestionRollup r / ArchiveRollup a của 1 dashboard; tham số :sid (nếu có) */
+    private record Scope(String question, String archive, Long sid) {
+        static final Scope ALL = new Scope("1=1", "1=1", null);
 
-        // ===== Users =====
-        dto.users.total = userRepo.count();
-        dto.users.byRole.put("ADMIN",   safeRoleCount(RoleType.ADMIN));
-        dto.users.byRole.put("HEAD",    safeRoleCount(RoleType.HEAD));
-        dto.users.byRole.put("TEACHER", safeRoleCount(RoleType.TEACHER));
-
-        // ===== Departments =====
-        dto.departments.count = deptRepo.count();
-        dto.departments.withoutHead = countDepartmentsWithoutHead();
-
-        // ===== Subjects =====
-        dto.subjects.count = subjRepo.count();
-        dto.subjects.withoutTeachers = countSubjectsWithoutTeachers();
-
-        // ===== Questions =====
-        // Tổng số (theo khoảng thời gian nếu có)
-        dto.questions.total = countQuestions(fromLdt, toLdt);
-
-        // Theo loại câu hỏi (MULTIPLE_CHOICE / ESSAY) — group-by bằng EntityManager
-        Map<String, Long> byType = groupQuestionsByType(fromLdt, toLdt);
-        dto.questions.byType.putAll(byType);
-
-        // Theo nhãn (PRACTICE / EXAM) — group-by bằng EntityManager (join labels)
-        Map<String, Long> byLabel = groupQuestionsByLabel(fromLdt, toLdt);
-        dto.questions.byLabel.putAll(byLabel);
-
-        // Coverage theo chapter 0..7 — group-by chapter
-        Map<Integer, Long> byChapter = groupQuestionsByChapter(fromLdt, toLdt);
-        for (int c = 0; c <= 7; c++) {
-            long cnt = byChapter.getOrDefault(c, 0L);
-            dto.coverage.put("chapter" + c, cnt);
+        static Scope dept(Long deptId) {
+            return new Scope("r.departmentId = :sid", "a.departmentId = :sid", deptId);
         }
 
-        // (Tuỳ chọn) Nếu bạn cần breakdown theo độ khó:
-        // Không bắt buộc cho FE hiện tại, nhưng để sẵn ví dụ:
-        dto.questions.byDifficulty = new EnumMap<>(Difficulty.class);
-        for (Difficulty d : Difficulty.values()) {
-            dto.questions.byDifficulty.put(d, countQuestionsByDifficulty(d, fromLdt, toLdt));
+        static Scope teacher(Long userId) {
+            return new Scope("r.creatorId = :sid", "a.userId = :sid", userId);
         }
+    }
 
-        // ===== Archive (FileArchive) =====
-        dto.archive.pending  = countArchiveByStatus(ReviewStatus.PENDING,  fromInst, toInst);
-        dto.archive.approved = countArchiveByStatus(ReviewStatus.APPROVED, fromInst, toInst);
-        dto.archive.rejected = countArchiveByStatus(ReviewStatus.REJECTED, fromInst, toInst);
+    /** Cộng rollup câu hỏi trong phạm vi */
+    private record QuestionCounts(long total, Map<String, Long> byType, Map<String, Long> byLabel,
+                                  Map<Difficulty, Long> byDifficulty, Map<String, Long> coverage) {}
 
-        // Thời gian duyệt trung bình (giờ)
-        double avgHours = averageReviewHours(fromInst, toInst);
-        dto.archive.avgReviewHours = Math.round(avgHours * 10.0) / 10.0;
+    /** Cộng rollup file lưu trữ trong phạm vi */
+    private record ArchiveCounts(long pending, long approved, long rejected, double avgReviewHours) {}
 
-        return dto;
+    public AdminOverviewDto getAdminOverview(LocalDate fromDate, LocalDate toDate) {
+        return cache.get(new StatsOverviewCache.Key(StatsOverviewCache.Overview.ADMIN, null, fromDate, toDate),
+                () -> loadAdminOverview(fromDate, toDate));
     }
 
-    @Transactional(readOnly = true)
     public HeadOverviewDto getHeadOverview(Long deptId, LocalDate fromDate, LocalDate toDate) {
         Long finalDeptId = resolveDeptId(deptId);
         if (finalDeptId == null) throw new IllegalStateException("Không tìm thấy khoa cho HEAD hiện tại");
+        return cache.get(new StatsOverviewCache.Key(StatsOverviewCache.Overview.HEAD, finalDeptId, fromDate, toDate),
+                () -> loadHeadOverview(finalDeptId, fromDate, toDate));
+    }
+
+    public TeacherOverviewDto getTeacherOverview(Long userIdParam, LocalDate fromDate, LocalDate toDate) {
+        Long userId = resolveUserId(userIdParam);
+        if (userId == null) throw new IllegalStateException("Không xác định được giáo viên");
+        return cache.get(new StatsOverviewCache.Key(StatsOverviewCache.Overview.TEACHER, userId, fromDate, toDate),
+                () -> loadTeacherOverview(userId, fromDate, toDate));
+    }
+
+    private AdminOverviewDto loadAdminOverview(LocalDate fromDate, LocalDate toDate) {
+        Window w = new Window(fromDate, toDate);
+        Scope scope = Scope.ALL;
+
+        var org       = queries.submit(this::adminOrgCounts);
+        var questions = queries.submit(() -> questionCounts(scope, w));
+        var archive   = queries.submit(() -> archiveCounts(scope, w));
+
+        var dto = new AdminOverviewDto();
+        fillOrg(dto, StatsQueryExecutor.join(org));
+
+        QuestionCounts qc = StatsQueryExecutor.join(questions);
+        fillQuestions(dto, qc);
+        dto.questions.byDifficulty = new EnumMap<>(qc.byDifficulty());
+
+        fillArchive(dto.archive, StatsQueryExecutor.join(archive));
+        return dto;
+    }
 
-        // Chuẩn hoá khoảng thời gian
-        LocalDateTime fromLdt = (fromDate != null) ? fromDate.atStartOfDay() : null;
-        LocalDateTime toLdt   = (toDate   != null) ? toDate.plusDays(1).atStartOfDay() : null;
-        ZoneId zone = ZoneId.systemDefault();
-        Instant fromInst = (fromLdt != null) ? fromLdt.atZone(zone).toInstant() : null;
-        Instant toInst   = (toLdt   != null) ? toLdt.atZone(zone).toInstant()   : null;
+    private HeadOverviewDto loadHeadOverview(Long finalDeptId, LocalDate fromDate, LocalDate toDate) {
+        Window w = new Window(fromDate, toDate);
+        Scope scope = Scope.dept(finalDeptId);
+
+        var org         = queries.submit(() -> headOrgCounts(finalDeptId));
+        var questions   = queries.submit(() -> questionCounts(scope, w));
+        var archive     = queries.submit(() -> archiveCounts(scope, w));
+        var topSubjects = queries.submit(() -> topSubjects(scope, w, 5));
+        var topTeachers = queries.submit(() -> topTeachers(scope, w, 5));
 
         HeadOverviewDto dto = new HeadOverviewDto();
+        fillOrg(dto, StatsQueryExecutor.join(org));
+        dto.departments.count = 1; // chỉ 1 khoa
 
-        // ===== Users (trong khoa) =====
-        dto.users.total = userRepo.countByDepartment_Id(finalDeptId);
-        dto.users.byRole.put("ADMIN",   userRepo.countByRoleAndDepartment(RoleType.ADMIN,   finalDeptId));
-        dto.users.byRole.put("HEAD",    userRepo.countByRoleAndDepartment(RoleType.HEAD,    finalDeptId));
-        dto.users.byRole.put("TEACHER", userRepo.countByRoleAndDepartment(RoleType.TEACHER, finalDeptId));
-
-        // ===== Departments (chỉ 1 khoa) =====
-        dto.departments.count = 1;
-        dto.departments.withoutHead = deptHasHead(finalDeptId) ? 0 : 1;
-
-        // ===== Subjects (trong khoa) =====
-        dto.subjects.count = subjRepo.countByDepartmentId(finalDeptId);
-        dto.subjects.withoutTeachers = subjRepo.countUnassignedByDepartmentId(finalDeptId);
-
-        // ===== Questions (giới hạn theo khoa) =====
-        dto.questions.total = countQuestionsInDept(finalDeptId, fromLdt, toLdt);
-        dto.questions.byType.putAll(groupQuestionsByTypeInDept(finalDeptId, fromLdt, toLdt));
-        dto.questions.byLabel.putAll(groupQuestionsByLabelInDept(finalDeptId, fromLdt, toLdt));
-        Map<Integer, Long> byChapter = groupQuestionsByChapterInDept(finalDeptId, fromLdt, toLdt);
-        for (int c = 0; c <= 7; c++) dto.coverage.put("chapter" + c, byChapter.getOrDefault(c, 0L));
-
-        // (tuỳ chọn) theo độ khó
-        for (Difficulty d : Difficulty.values()) {
-            dto.questions.byDifficulty.put(d, countQuestionsByDifficultyInDept(finalDeptId, d, fromLdt, toLdt));
-        }
+        QuestionCounts qc = StatsQueryExecutor.join(questions);
+        fillQuestions(dto, qc);
+        dto.questions.byDifficulty.putAll(qc.byDifficulty());
 
-        // ===== Archive (FileArchive) trong khoa =====
-        List<Long> subjectIds = findSubjectIdsByDept(finalDeptId);
-        if (subjectIds.isEmpty()) {
-            dto.archive.pending = dto.archive.approved = dto.archive.rejected = 0;
-            dto.archive.avgReviewHours = 0;
-        } else {
-            dto.archive.pending  = countArchiveByStatusForSubjects(ReviewStatus.PENDING,  subjectIds, fromInst, toInst);
-            dto.archive.approved = countArchiveByStatusForSubjects(ReviewStatus.APPROVED, subjectIds, fromInst, toInst);
-            dto.archive.rejected = countArchiveByStatusForSubjects(ReviewStatus.REJECTED, subjectIds, fromInst, toInst);
-            dto.archive.avgReviewHours = Math.round(
-                    averageReviewHoursForSubjects(subjectIds, fromInst, toInst) * 10.0) / 10.0;
-        }
+        fillArchive(dto.archive, StatsQueryExecutor.join(archive));
+
+        dto.topSubjects = StatsQueryExecutor.join(topSubjects);
+        dto.topTeachers = StatsQueryExecutor.join(topTeachers);
+        return dto;
+    }
+
+    private TeacherOverviewDto loadTeacherOverview(Long userId, LocalDate fromDate, LocalDate toDate) {
+        Window w = new Window(fromDate, toDate);
+        Scope scope = Scope.teacher(userId);
+
+        var assigned    = queries.submit(() -> countAssignedSubjects(userId));
+        var contrib     = queries.submit(() -> topSubjectContrib(scope, w, 5));
+        var questions   = queries.submit(() -> questionCounts(scope, w));
+        var archive     = queries.submit(() -> archiveCounts(scope, w));
+        var pendingSoon = queries.submit(() -> findMyPendingSoon(userId, 5));
+
+        TeacherOverviewDto dto = new TeacherOverviewDto();
 
-        // ===== Top lists =====
-        dto.topSubjects = topSubjectsInDept(finalDeptId, fromLdt, toLdt, 5);
-        dto.topTeachers = topTeachersInDept(finalDeptId, fromLdt, toLdt, 5);
+        // ===== Subjects assigned =====
+        dto.subjects.assigned = StatsQueryExecutor.join(assigned);
+        dto.subjects.myContribTop = StatsQueryExecutor.join(contrib);
+
+        // ===== Questions (createdBy = user) =====
+        QuestionCounts qc = StatsQueryExecutor.join(questions);
+        dto.questions.total = qc.total();
+        dto.questions.byType.putAll(qc.byType());
+        dto.questions.byLabel.putAll(qc.byLabel());
+        dto.questions.byDifficulty.putAll(qc.byDifficulty());
+        dto.coverage.putAll(qc.coverage());
+
+        // ===== My archives =====
+        ArchiveCounts ac = StatsQueryExecutor.join(archive);
+        dto.archive.pending  = ac.pending();
+        dto.archive.approved = ac.approved();
+        dto.archive.rejected = ac.rejected();
+        dto.archive.avgReviewHours = ac.avgReviewHours();
+        dto.archive.pendingSoon = StatsQueryExecutor.join(pendingSoon);
 
         return dto;
     }
@@ -188,157 +194,117 @@ public class StatsService {
                 .orElse(null);
     }
 
-    private boolean deptHasHead(Long deptId) {
-        return deptRepo.findById(deptId).map(d -> d.getHeadUser() != null).orElse(false);
-    }
-
-    private List<Long> findSubjectIdsByDept(Long deptId) {
-        return em.createQuery("select s.id from Subject s where s.department.id = :deptId", Long.class)
-                .setParameter("deptId", deptId)
-                .getResultList();
+    // -------------------- resolve current user id --------------------
+    private Long resolveUserId(Long userIdParam) {
+        if (userIdParam != null) return userIdParam;
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null) return null;
+        return userRepo.findByUsername(auth.getName()).map(u -> u.getId()).orElse(null);
     }
 
-    // ---------- Questions (by dept) ----------
-    private long countQuestionsInDept(Long deptId, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(q) from Question q where q.subject.department.id = :deptId");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class)
-                .setParameter("deptId", deptId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
-    }
+    // =====================================================================
+    // Users/Departments/Subjects: 1 câu, mỗi chỉ số 1 subquery
+    // =====================================================================
 
-    private Map<String, Long> groupQuestionsByTypeInDept(Long deptId, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select q.questionType, count(q) from Question q " +
-                        "where q.subject.department.id = :deptId");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.questionType");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("deptId", deptId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        Map<String, Long> res = new HashMap<>();
-        for (Object[] r : q.getResultList()) res.put(String.valueOf(r[0]), ((Number) r[1]).longValue());
-        return res;
+    // thứ tự cột: users total, ADMIN, HEAD, TEACHER, departments, withoutHead, subjects, withoutTeachers
+    private long[] adminOrgCounts() {
+        String jpql = "select (select count(u) from User u), " +
+                roleCount("count(u)", "", RoleType.ADMIN) + ", " +
+                roleCount("count(u)", "", RoleType.HEAD) + ", " +
+                roleCount("count(u)", "", RoleType.TEACHER) + ", " +
+                "(select count(d) from Department d), " +
+                "(select count(d) from Department d where d.headUser is null), " +
+                "(select count(s) from Subject s), " +
+                "(select count(s) from Subject s left join s.teacherSubjects ts where ts.id is null)";
+        return longs(em.createQuery(jpql, Object[].class).getSingleResult());
+    }
+
+    private long[] headOrgCounts(Long deptId) {
+        String inDept = " and u.department.id = :sid";
+        String jpql = "select (select count(u) from User u where u.department.id = :sid), " +
+                roleCount("count(distinct u)", inDept, RoleType.ADMIN) + ", " +
+                roleCount("count(distinct u)", inDept, RoleType.HEAD) + ", " +
+                roleCount("count(distinct u)", inDept, RoleType.TEACHER) + ", " +
+                "1, " +
+                "(select count(d) from Department d where d.id = :sid and d.headUser is not null), " +
+                "(select count(s) from Subject s where s.department.id = :sid), " +
+                "(select count(distinct s) from Subject s left join s.teacherSubjects ts " +
+                "where s.department.id = :sid and ts.id is null)";
+        long[] r = longs(em.createQuery(jpql, Object[].class).setParameter("sid", deptId).getSingleResult());
+        r[5] = (r[5] > 0) ? 0 : 1; // cột 5 = có trưởng khoa → withoutHead
+        return r;
+    }
+
+    private static String roleCount(String count, String extraWhere, RoleType role) {
+        return "(select " + count + " from User u join u.userRoles ur join ur.role r " +
+                "where r.roleName = " + literal(role) + extraWhere + ")";
+    }
+
+    private static void fillOrg(AdminOverviewDto dto, long[] r) {
+        dto.users.total = r[0];
+        dto.users.byRole.put("ADMIN",   r[1]);
+        dto.users.byRole.put("HEAD",    r[2]);
+        dto.users.byRole.put("TEACHER", r[3]);
+        dto.departments.count = r[4];
+        dto.departments.withoutHead = r[5];
+        dto.subjects.count = r[6];
+        dto.subjects.withoutTeachers = r[7];
     }
 
-    private Map<String, Long> groupQuestionsByLabelInDept(Long deptId, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select l, count(q) from Question q join q.labels l " +
-                        "where q.subject.department.id = :deptId");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by l");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("deptId", deptId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        Map<String, Long> res = new HashMap<>();
-        for (Object[] r : q.getResultList()) res.put(String.valueOf(r[0]), ((Number) r[1]).longValue());
-        return res;
-    }
+    // =====================================================================
+    // Questions: cộng rollup theo (loại, độ khó, chapter, nhãn) trong 1 câu
+    // =====================================================================
 
-    private Map<Integer, Long> groupQuestionsByChapterInDept(Long deptId, LocalDateTime from, LocalDateTime to) {
+    private QuestionCounts questionCounts(Scope scope, Window w) {
         StringBuilder jpql = new StringBuilder(
-                "select q.chapter, count(q) from Question q " +
-                        "where q.subject.department.id = :deptId");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.chapter");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("deptId", deptId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        Map<Integer, Long> res = new HashMap<>();
-        for (Object[] r : q.getResultList()) {
-            Integer chap = (r[0] == null) ? 0 : ((Number) r[0]).intValue();
-            res.put(chap, ((Number) r[1]).longValue());
+                "select r.questionType, r.difficulty, r.chapter, r.label, sum(r.cnt) " +
+                        "from QuestionRollup r where ").append(scope.question());
+
+        long total = 0;
+        Map<String, Long> byType = new HashMap<>();
+        Map<String, Long> byLabel = new HashMap<>();
+        Map<Difficulty, Long> byDifficulty = new EnumMap<>(Difficulty.class);
+        for (Difficulty d : Difficulty.values()) byDifficulty.put(d, 0L);
+        Map<String, Long> coverage = new HashMap<>();
+        for (int c = 0; c < CHAPTERS; c++) coverage.put("chapter" + c, 0L);
+
+        for (Object[] r : rollupQuery(jpql, scope, w,
+                " group by r.questionType, r.difficulty, r.chapter, r.label", Object[].class).getResultList()) {
+            long n = ((Number) r[4]).longValue();
+            if (r[3] != null) { // dòng đếm nhãn: PRACTICE / EXAM
+                byLabel.merge(String.valueOf(r[3]), n, Long::sum);
+                continue;
+            }
+            total += n;
+            byType.merge(String.valueOf(r[0]), n, Long::sum); // MULTIPLE_CHOICE / ESSAY
+            byDifficulty.merge((Difficulty) r[1], n, Long::sum);
+            int chap = ((Number) r[2]).intValue();
+            if (chap >= 0 && chap < CHAPTERS) coverage.merge("chapter" + chap, n, Long::sum);
         }
-        return res;
-    }
-
-    private long countQuestionsByDifficultyInDept(Long deptId, Difficulty diff, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(q) from Question q where q.subject.department.id = :deptId and q.difficulty = :d");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class)
-                .setParameter("deptId", deptId)
-                .setParameter("d", diff);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
-    }
+        // như group-by trên bảng gốc: loại/nhãn không còn câu nào thì không có key
+        byType.values().removeIf(n -> n == 0);
+        byLabel.values().removeIf(n -> n == 0);
 
-    // ---------- FileArchive (by subjectIds in dept) ----------
-    private long countArchiveByStatusForSubjects(ReviewStatus st, List<Long> subjectIds, Instant from, Instant to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(f) from FileArchive f where f.reviewStatus = :st and f.subjectId in :ids");
-        if (from != null) jpql.append(" and f.createdAt >= :from");
-        if (to != null)   jpql.append(" and f.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class)
-                .setParameter("st", st)
-                .setParameter("ids", subjectIds);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
+        return new QuestionCounts(total, byType, byLabel, byDifficulty, coverage);
     }
 
-    private double averageReviewHoursForSubjects(List<Long> subjectIds, Instant from, Instant to) {
-        StringBuilder jpql = new StringBuilder(
-                "select f.createdAt, f.reviewedAt from FileArchive f " +
-                        "where f.reviewedAt is not null and f.subjectId in :ids");
-        if (from != null) jpql.append(" and f.createdAt >= :from");
-        if (to != null)   jpql.append(" and f.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("ids", subjectIds);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        List<Object[]> rows = q.getResultList();
-        if (rows.isEmpty()) return 0d;
-
-        double sum = 0d; int n = 0;
-        for (Object[] r : rows) {
-            Instant c = (Instant) r[0];
-            Instant rv = (Instant) r[1];
-            if (c != null && rv != null) { sum += Duration.between(c, rv).toMillis() / 3600000.0; n++; }
-        }
-        return (n == 0) ? 0d : sum / n;
+    private static void fillQuestions(AdminOverviewDto dto, QuestionCounts qc) {
+        dto.questions.total = qc.total();
+        dto.questions.byType.putAll(qc.byType());
+        dto.questions.byLabel.putAll(qc.byLabel());
+        dto.coverage.putAll(qc.coverage());
     }
 
     // ---------- Top lists ----------
-    private List<HeadOverviewDto.TopSubject> topSubjectsInDept(Long deptId, LocalDateTime from, LocalDateTime to, int limit) {
+    private List<HeadOverviewDto.TopSubject> topSubjects(Scope scope, Window w, int limit) {
         StringBuilder jpql = new StringBuilder(
-                "select q.subject.id, q.subject.name, count(q) " +
-                        "from Question q where q.subject.department.id = :deptId");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.subject.id, q.subject.name order by count(q) desc");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("deptId", deptId)
-                .setMaxResults(limit);
+                "select r.subjectId, s.name, sum(r.cnt) from QuestionRollup r join Subject s on s.id = r.subjectId " +
+                        "where r.label is null and ").append(scope.question());
 
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        return q.getResultList().stream()
+        return rollupQuery(jpql, scope, w,
+                " group by r.subjectId, s.name having sum(r.cnt) > 0 order by sum(r.cnt) desc", Object[].class)
+                .setMaxResults(limit)
+                .getResultList().stream()
                 .map(r -> new HeadOverviewDto.TopSubject(
                         ((Number) r[0]).longValue(),
                         (String) r[1],
@@ -346,25 +312,17 @@ public class StatsService {
                 .collect(Collectors.toList());
     }
 
-    private List<HeadOverviewDto.TopTeacher> topTeachersInDept(Long deptId, LocalDateTime from, LocalDateTime to, int limit) {
+    private List<HeadOverviewDto.TopTeacher> topTeachers(Scope scope, Window w, int limit) {
         StringBuilder jpql = new StringBuilder(
-                "select q.createdBy.id, " +
-                        "concat(coalesce(q.createdBy.firstName,''),' ',coalesce(q.createdBy.lastName,'')), " +
-                        "count(q) from Question q " +
-                        "where q.subject.department.id = :deptId and q.createdBy.id is not null");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.createdBy.id, q.createdBy.firstName, q.createdBy.lastName " +
-                "order by count(q) desc");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("deptId", deptId)
-                .setMaxResults(limit);
-
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        return q.getResultList().stream()
+                "select u.id, concat(coalesce(u.firstName,''),' ',coalesce(u.lastName,'')), sum(r.cnt) " +
+                        "from QuestionRollup r join User u on u.id = r.creatorId " +
+                        "where r.label is null and ").append(scope.question());
+
+        return rollupQuery(jpql, scope, w,
+                " group by u.id, u.firstName, u.lastName having sum(r.cnt) > 0 order by sum(r.cnt) desc",
+                Object[].class)
+                .setMaxResults(limit)
+                .getResultList().stream()
                 .map(r -> new HeadOverviewDto.TopTeacher(
                         ((Number) r[0]).longValue(),
                         (String) r[1],
@@ -372,52 +330,6 @@ public class StatsService {
                 .collect(Collectors.toList());
     }
 
-    @Transactional(readOnly = true)
-    public TeacherOverviewDto getTeacherOverview(Long userIdParam, LocalDate fromDate, LocalDate toDate) {
-        Long userId = resolveUserId(userIdParam);
-        if (userId == null) throw new IllegalStateException("Không xác định được giáo viên");
-
-        // chuẩn hoá thời gian
-        LocalDateTime fromLdt = (fromDate != null) ? fromDate.atStartOfDay() : null;
-        LocalDateTime toLdt   = (toDate   != null) ? toDate.plusDays(1).atStartOfDay() : null;
-        ZoneId zone = ZoneId.systemDefault();
-        Instant fromInst = (fromLdt != null) ? fromLdt.atZone(zone).toInstant() : null;
-        Instant toInst   = (toLdt   != null) ? toLdt.atZone(zone).toInstant()   : null;
-
-        TeacherOverviewDto dto = new TeacherOverviewDto();
-
-        // ===== Subjects assigned =====
-        dto.subjects.assigned = countAssignedSubjects(userId);
-        dto.subjects.myContribTop = topSubjectContrib(userId, fromLdt, toLdt, 5);
-
-        // ===== Questions (createdBy = user) =====
-        dto.questions.total = countMyQuestions(userId, fromLdt, toLdt);
-        dto.questions.byType.putAll(groupMyQuestionsByType(userId, fromLdt, toLdt));
-        dto.questions.byLabel.putAll(groupMyQuestionsByLabel(userId, fromLdt, toLdt));
-        for (var d : Difficulty.values()) {
-            dto.questions.byDifficulty.put(d, countMyQuestionsByDifficulty(userId, d, fromLdt, toLdt));
-        }
-        Map<Integer, Long> byChap = groupMyQuestionsByChapter(userId, fromLdt, toLdt);
-        for (int c = 0; c <= 7; c++) dto.coverage.put("chapter" + c, byChap.getOrDefault(c, 0L));
-
-        // ===== My archives =====
-        dto.archive.pending  = countMyArchiveByStatus(userId, ReviewStatus.PENDING,  fromInst, toInst);
-        dto.archive.approved = countMyArchiveByStatus(userId, ReviewStatus.APPROVED, fromInst, toInst);
-        dto.archive.rejected = countMyArchiveByStatus(userId, ReviewStatus.REJECTED, fromInst, toInst);
-        dto.archive.avgReviewHours = Math.round(averageMyReviewHours(userId, fromInst, toInst) * 10.0) / 10.0;
-        dto.archive.pendingSoon = findMyPendingSoon(userId, 5);
-
-        return dto;
-    }
-
-    // -------------------- resolve current user id --------------------
-    private Long resolveUserId(Long userIdParam) {
-        if (userIdParam != null) return userIdParam;
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        if (auth == null) return null;
-        return userRepo.findByUsername(auth.getName()).map(u -> u.getId()).orElse(null);
-    }
-
     // -------------------- Subjects assigned count & contrib --------------------
     private long countAssignedSubjects(Long userId) {
         // đếm số môn có TeacherSubject.teacher = userId
@@ -425,149 +337,57 @@ public class StatsService {
         return em.createQuery(jpql, Long.class).setParameter("uid", userId).getSingleResult();
     }
 
-    private List<TeacherOverviewDto.SubjectContribution> topSubjectContrib(
-            Long userId, LocalDateTime from, LocalDateTime to, int limit) {
-
+    private List<TeacherOverviewDto.SubjectContribution> topSubjectContrib(Scope scope, Window w, int limit) {
         StringBuilder jpql = new StringBuilder(
-                "select q.subject.id, q.subject.name, " +
-                        "count(q), (select count(q2) from Question q2 where q2.subject.id = q.subject.id) " +
-                        "from Question q where q.createdBy.id = :uid");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.subject.id, q.subject.name order by count(q) desc");
-
-        var q = em.createQuery(jpql.toString(), Object[].class)
-                .setParameter("uid", userId)
-                .setMaxResults(limit);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
+                "select r.subjectId, s.name, sum(r.cnt), " +
+                        "(select sum(r2.cnt) from QuestionRollup r2 where r2.subjectId = r.subjectId and r2.label is null) " +
+                        "from QuestionRollup r join Subject s on s.id = r.subjectId " +
+                        "where r.label is null and ").append(scope.question());
 
-        List<Object[]> rows = q.getResultList();
         List<TeacherOverviewDto.SubjectContribution> res = new ArrayList<>();
-        for (Object[] r : rows) {
+        for (Object[] r : rollupQuery(jpql, scope, w,
+                " group by r.subjectId, s.name having sum(r.cnt) > 0 order by sum(r.cnt) desc", Object[].class)
+                .setMaxResults(limit).getResultList()) {
             res.add(new TeacherOverviewDto.SubjectContribution(
                     ((Number) r[0]).longValue(),
                     (String) r[1],
                     ((Number) r[2]).longValue(),
-                    ((Number) r[3]).longValue()
+                    (r[3] == null) ? 0L : ((Number) r[3]).longValue()
             ));
         }
         return res;
     }
 
-    // -------------------- Questions (mine) --------------------
-    private long countMyQuestions(Long userId, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(q) from Question q where q.createdBy.id = :uid");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class).setParameter("uid", userId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
-    }
-
-    private Map<String, Long> groupMyQuestionsByType(Long userId, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select q.questionType, count(q) from Question q where q.createdBy.id = :uid");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.questionType");
-
-        var q = em.createQuery(jpql.toString(), Object[].class).setParameter("uid", userId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        Map<String, Long> res = new HashMap<>();
-        for (Object[] r : q.getResultList()) res.put(String.valueOf(r[0]), ((Number) r[1]).longValue());
-        return res;
-    }
-
-    private Map<String, Long> groupMyQuestionsByLabel(Long userId, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select l, count(q) from Question q join q.labels l where q.createdBy.id = :uid");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by l");
-
-        var q = em.createQuery(jpql.toString(), Object[].class).setParameter("uid", userId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        Map<String, Long> res = new HashMap<>();
-        for (Object[] r : q.getResultList()) res.put(String.valueOf(r[0]), ((Number) r[1]).longValue());
-        return res;
-    }
+    // =====================================================================
+    // FileArchive: cộng rollup theo trạng thái duyệt trong 1 câu
+    // =====================================================================
 
-    private Map<Integer, Long> groupMyQuestionsByChapter(Long userId, LocalDateTime from, LocalDateTime to) {
+    private ArchiveCounts archiveCounts(Scope scope, Window w) {
         StringBuilder jpql = new StringBuilder(
-                "select q.chapter, count(q) from Question q where q.createdBy.id = :uid");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.chapter");
-
-        var q = em.createQuery(jpql.toString(), Object[].class).setParameter("uid", userId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        Map<Integer, Long> res = new HashMap<>();
-        for (Object[] r : q.getResultList()) {
-            Integer chap = (r[0] == null) ? 0 : ((Number) r[0]).intValue();
-            res.put(chap, ((Number) r[1]).longValue());
+                "select a.reviewStatus, sum(a.cnt), sum(a.reviewedCnt), sum(a.reviewMs) " +
+                        "from ArchiveRollup a where ").append(scope.archive());
+
+        Map<ReviewStatus, Long> byStatus = new EnumMap<>(ReviewStatus.class);
+        long reviewed = 0, reviewMs = 0;
+        for (Object[] r : scoped(jpql, "a", scope, w, " group by a.reviewStatus", Object[].class).getResultList()) {
+            byStatus.put((ReviewStatus) r[0], ((Number) r[1]).longValue());
+            reviewed += ((Number) r[2]).longValue();
+            reviewMs += ((Number) r[3]).longValue();
         }
-        return res;
-    }
-
-    private long countMyQuestionsByDifficulty(Long userId, Difficulty d, LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(q) from Question q where q.createdBy.id = :uid and q.difficulty = :d");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class)
-                .setParameter("uid", userId)
-                .setParameter("d", d);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
-    }
-
-    // -------------------- FileArchive (mine) --------------------
-    private long countMyArchiveByStatus(Long userId, ReviewStatus st, Instant from, Instant to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(f) from FileArchive f where f.userId = :uid and f.reviewStatus = :st");
-        if (from != null) jpql.append(" and f.createdAt >= :from");
-        if (to != null)   jpql.append(" and f.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class)
-                .setParameter("uid", userId)
-                .setParameter("st", st);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
+        // Thời gian duyệt trung bình (giờ)
+        double avgHours = (reviewed <= 0) ? 0d : (reviewMs / 3600000.0) / reviewed;
+        return new ArchiveCounts(
+                byStatus.getOrDefault(ReviewStatus.PENDING, 0L),
+                byStatus.getOrDefault(ReviewStatus.APPROVED, 0L),
+                byStatus.getOrDefault(ReviewStatus.REJECTED, 0L),
+                Math.round(avgHours * 10.0) / 10.0);
     }
 
-    private double averageMyReviewHours(Long userId, Instant from, Instant to) {
-        StringBuilder jpql = new StringBuilder(
-                "select f.createdAt, f.reviewedAt from FileArchive f " +
-                        "where f.userId = :uid and f.reviewedAt is not null");
-        if (from != null) jpql.append(" and f.createdAt >= :from");
-        if (to != null)   jpql.append(" and f.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Object[].class).setParameter("uid", userId);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        var rows = q.getResultList();
-        if (rows.isEmpty()) return 0d;
-
-        double sumHours = 0d; int n = 0;
-        for (Object[] r : rows) {
-            Instant c = (Instant) r[0], rv = (Instant) r[1];
-            if (c != null && rv != null) { sumHours += Duration.between(c, rv).toMillis() / 3600000.0; n++; }
-        }
-        return (n == 0) ? 0d : sumHours / n;
+    private static void fillArchive(AdminOverviewDto.Archive archive, ArchiveCounts ac) {
+        archive.pending  = ac.pending();
+        archive.approved = ac.approved();
+        archive.rejected = ac.rejected();
+        archive.avgReviewHours = ac.avgReviewHours();
     }
 
     private List<TeacherOverviewDto.PendingItem> findMyPendingSoon(Long userId, int limit) {
@@ -598,150 +418,35 @@ public class StatsService {
     }
 
     // =====================================================================
-    // Users/Departments/Subjects helpers
-    // =====================================================================
-
-    private long safeRoleCount(RoleType role) {
-        try {
-            return userRepo.countByUserRoles_Role_RoleName(role);
-        } catch (Exception ex) {
-            return 0L; // tránh 500 nếu schema/seed role chưa khớp
-        }
-    }
-
-    private long countDepartmentsWithoutHead() {
-        // JPQL đơn giản để không phụ thuộc repo tuỳ biến
-        TypedQuery<Long> q = em.createQuery(
-                "select count(d) from Department d where d.headUser is null", Long.class);
-        return q.getSingleResult();
-    }
-
-    private long countSubjectsWithoutTeachers() {
-        // Subject không có TeacherSubject nào
-        TypedQuery<Long> q = em.createQuery(
-                "select count(s) from Subject s left join s.teacherSubjects ts where ts.id is null", Long.class);
-        return q.getSingleResult();
-    }
-
-    // =====================================================================
-    // Questions helpers
+    // JPQL helpers
     // =====================================================================
 
-    private long countQuestions(LocalDateTime from, LocalDateTime to) {
-        if (from == null && to == null) return questionRepo.count();
-        if (from != null && to != null) return questionRepo.countByCreatedAtBetween(from, to);
-        if (from != null) return questionRepo.countByCreatedAtGreaterThanEqual(from);
-        return questionRepo.countByCreatedAtLessThan(to);
-    }
-
-    private long countQuestionsByDifficulty(Difficulty d, LocalDateTime from, LocalDateTime to) {
-        if (from == null && to == null) return questionRepo.countByDifficulty(d);
-        if (from != null && to != null) return questionRepo.countByDifficultyAndCreatedAtBetween(d, from, to);
-        if (from != null) return questionRepo.countByDifficultyAndCreatedAtGreaterThanEqual(d, from);
-        return questionRepo.countByDifficultyAndCreatedAtLessThan(d, to);
-    }
-
-    private Map<String, Long> groupQuestionsByType(LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select q.questionType, count(q) from Question q where 1=1");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.questionType");
-
-        var query = em.createQuery(jpql.toString(), Object[].class);
-        if (from != null) query.setParameter("from", from);
-        if (to != null)   query.setParameter("to", to);
-
-        Map<String, Long> res = new HashMap<>();
-        for (Object[] row : query.getResultList()) {
-            String type = String.valueOf(row[0]);      // MULTIPLE_CHOICE / ESSAY
-            long cnt    = ((Number) row[1]).longValue();
-            res.put(type, cnt);
-        }
-        return res;
+    private <T> TypedQuery<T> rollupQuery(StringBuilder jpql, Scope scope, Window w, String tail, Class<T> type) {
+        return scoped(jpql, "r", scope, w, tail, type);
     }
 
-    private Map<String, Long> groupQuestionsByLabel(LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select l, count(q) from Question q join q.labels l where 1=1");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by l");
-
-        var query = em.createQuery(jpql.toString(), Object[].class);
-        if (from != null) query.setParameter("from", from);
-        if (to != null)   query.setParameter("to", to);
-
-        Map<String, Long> res = new HashMap<>();
-        for (Object[] row : query.getResultList()) {
-            String label = String.valueOf(row[0]);     // PRACTICE / EXAM
-            long cnt     = ((Number) row[1]).longValue();
-            res.put(label, cnt);
-        }
-        return res;
-    }
+    /** Thêm điều kiện ngày (chỉ khi có, tránh null param) rồi gắn tham số */
+    private <T> TypedQuery<T> scoped(StringBuilder jpql, String alias, Scope scope, Window w,
+                                     String tail, Class<T> type) {
+        if (w.from() != null) jpql.append(" and ").append(alias).append(".statDay >= :from");
+        if (w.to() != null)   jpql.append(" and ").append(alias).append(".statDay <= :to");
+        if (tail != null) jpql.append(tail);
 
-    private Map<Integer, Long> groupQuestionsByChapter(LocalDateTime from, LocalDateTime to) {
-        StringBuilder jpql = new StringBuilder(
-                "select q.chapter, count(q) from Question q where 1=1");
-        if (from != null) jpql.append(" and q.createdAt >= :from");
-        if (to != null)   jpql.append(" and q.createdAt < :to");
-        jpql.append(" group by q.chapter");
-
-        var query = em.createQuery(jpql.toString(), Object[].class);
-        if (from != null) query.setParameter("from", from);
-        if (to != null)   query.setParameter("to", to);
-
-        Map<Integer, Long> res = new HashMap<>();
-        for (Object[] row : query.getResultList()) {
-            Integer chap = (row[0] == null) ? 0 : ((Number) row[0]).intValue();
-            long cnt     = ((Number) row[1]).longValue();
-            res.put(chap, cnt);
-        }
-        return res;
+        TypedQuery<T> q = em.createQuery(jpql.toString(), type);
+        if (scope.sid() != null) q.setParameter("sid", scope.sid());
+        if (w.from() != null) q.setParameter("from", w.from());
+        if (w.to() != null)   q.setParameter("to", w.to());
+        return q;
     }
 
-    // =====================================================================
-    // FileArchive helpers (dùng EntityManager để tránh null-param pitfalls)
-    // =====================================================================
-
-    private long countArchiveByStatus(ReviewStatus st, Instant from, Instant to) {
-        StringBuilder jpql = new StringBuilder(
-                "select count(f) from FileArchive f where f.reviewStatus = :st");
-        if (from != null) jpql.append(" and f.createdAt >= :from");
-        if (to != null)   jpql.append(" and f.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Long.class)
-                .setParameter("st", st);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-        return q.getSingleResult();
+    private static String literal(Enum<?> e) {
+        return e.getDeclaringClass().getName() + "." + e.name();
     }
 
-    private double averageReviewHours(Instant from, Instant to) {
-        StringBuilder jpql = new StringBuilder(
-                "select f.createdAt, f.reviewedAt from FileArchive f where f.reviewedAt is not null");
-        if (from != null) jpql.append(" and f.createdAt >= :from");
-        if (to != null)   jpql.append(" and f.createdAt < :to");
-
-        var q = em.createQuery(jpql.toString(), Object[].class);
-        if (from != null) q.setParameter("from", from);
-        if (to != null)   q.setParameter("to", to);
-
-        List<Object[]> rows = q.getResultList();
-        if (rows.isEmpty()) return 0d;
-
-        double sumHours = 0d;
-        int n = 0;
-        for (Object[] r : rows) {
-            Instant created  = (Instant) r[0];
-            Instant reviewed = (Instant) r[1];
-            if (created != null && reviewed != null) {
-                long ms = Duration.between(created, reviewed).toMillis();
-                sumHours += (ms / 3600000.0);
-                n++;
-            }
-        }
-        return (n == 0) ? 0d : (sumHours / n);
+    // subquery count trả Long; hằng số trả Integer
+    private static long[] longs(Object[] row) {
+        long[] r = new long[row.length];
+        for (int i = 0; i < row.length; i++) r[i] = (row[i] == null) ? 0L : ((Number) row[i]).longValue();
+        return r;
     }
 }
@@ -21,6 +21,9 @@ public class SubjectServiceImpl implements SubjectService {
     @Autowired
     private DepartmentRepository departmentRepository;
 
+    @Autowired
+    private StatsRollupService rollup;
+
     public Subject createSubject(Subject subject) {
         // Validate và xử lý logic nghiệp vụ
         return subjectRepository.save(subject);
@@ -64,6 +67,7 @@ public class SubjectServiceImpl implements SubjectService {
     public void deleteSubject(Long id) {
         Subject subject = getSubjectById(id);
         subjectRepository.delete(subject);
+        rollup.subjectRemoved(id); // câu hỏi của môn bị xoá theo cascade
     }
 
     @Override
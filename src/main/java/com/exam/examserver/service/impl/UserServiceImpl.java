@@ -11,6 +11,7 @@ import com.exam.examserver.repo.*;
 import com.exam.examserver.service.UserService;
 import jakarta.persistence.EntityNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,6 +31,7 @@ public class UserServiceImpl implements UserService {
     @Autowired private UserMapper userMapper;
     @Autowired private DepartmentRepository departmentRepository;
     @Autowired private TeacherSubjectRepository teacherSubjectRepository;
+    @Autowired private ApplicationEventPublisher events;
 
     @Override
     public UserDTO createUser(CreateUserDTO userDto) throws Exception {
@@ -61,6 +63,7 @@ public class UserServiceImpl implements UserService {
 
         // lưu
         User saved = userRepository.save(user);
+        events.publishEvent(StatsChangedEvent.all());
         // Map Entity -> DTO
         return userMapper.toDto(saved);
     }
@@ -85,6 +88,7 @@ public class UserServiceImpl implements UserService {
         teacherSubjectRepository.deleteByTeacherId(userId);
         userRoleRepository.deleteByUserId(userId);
         userRepository.delete(user);
+        events.publishEvent(StatsChangedEvent.all());
     }
 
     @Override
@@ -133,7 +137,9 @@ public class UserServiceImpl implements UserService {
         if (dto.getStatus() != null) user.setStatus(dto.getStatus());
         // Enabled là boolean, nên cần xử lý riêng nếu cần
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        events.publishEvent(StatsChangedEvent.all()); // tên giáo viên trong top list
+        return saved;
     }
 
     @Override
@@ -158,6 +164,7 @@ public class UserServiceImpl implements UserService {
 
         user.getUserRoles().addAll(newUserRoles);
         userRepository.save(user);
+        events.publishEvent(StatsChangedEvent.all());
     }
 
     @Override
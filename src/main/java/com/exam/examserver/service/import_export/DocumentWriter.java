@@ -0,0 +1,23 @@
+package com.exam.examserver.service.import_export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Document export đã chuẩn bị xong (câu hỏi + ảnh đã nạp, lỗi dữ liệu đã ném ra lúc tạo),
+ * chỉ còn bước ghi ra stream. Controller dùng thẳng làm StreamingResponseBody để không giữ
+ * cả file trên heap. {@link #writeTo} không đóng {@code out}.
+ */
+@FunctionalInterface
+public interface DocumentWriter {
+
+    void writeTo(OutputStream out) throws IOException;
+
+    /** Cho các API cũ trả byte[] */
+    static byte[] toBytes(DocumentWriter w) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        w.writeTo(baos);
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,573 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.util.MathOmmlRenderer;
+import jakarta.annotation.PreDestroy;
+import org.apache.poi.util.Units;
+import org.apache.poi.xwpf.usermodel.*;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.exam.examserver.service.import_export.ExportText.*;
+
+/**
+ * Backend Word (POI XWPF): header/footer theo {@link ExportTemplate}, công thức thành OMML.
+ * Phần dựng từng câu (chuẩn hoá + parse OMML) chạy song song trên wordPool, ghi document tuần tự.
+ */
+@Component
+class DocxExportBackend implements ExportBackend {
+
+    private final ForkJoinPool wordPool;
+
+    DocxExportBackend(@Value("${export.word.parallelism:0}") int wordParallelism) {
+        this.wordPool = new ForkJoinPool(
+                wordParallelism > 0 ? wordParallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    t.setName("export-word-" + t.getPoolIndex());
+                    return t;
+                }, null, false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wordPool.shutdownNow();
+    }
+
+    @Override
+    public String imageUrl(String url) {
+        return forcePng(url); // POI nhúng PNG, tránh WebP
+    }
+
+    @Override
+    public void write(ExportTemplate template, List<QuestionDTO> questions, ExportImageFetcher.Prefetched images,
+                      boolean includeAnswers, OutputStream out) throws IOException {
+        switch (template) {
+            case ExportTemplate.Practice h -> writeWordPractice(questions, images, h, includeAnswers, out);
+            case ExportTemplate.Exam h -> writeWordExam(questions, images, h, includeAnswers, out);
+            case ExportTemplate.Quiz q -> writeWordQuiz(questions, images, q, includeAnswers, out);
+        }
+    }
+
+    private void writeWordPractice(List<QuestionDTO> questions, ExportImageFetcher.Prefetched images,
+                                   ExportTemplate.Practice header, boolean includeAnswers,
+                                   OutputStream out) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument()) {
+
+            // Header ôn tập
+            writePracticeHeader(doc, header);
+
+            // sort theo chapter rồi id (bản sao: không đụng list của caller)
+            questions = new ArrayList<>(questions);
+            questions.sort(Comparator.comparingInt(QuestionDTO::getChapter)
+                    .thenComparing(QuestionDTO::getId));
+
+            List<WordFragment> fragments = prepareFragments(questions, header, includeAnswers);
+
+            int globalIdx = 0;
+            Map<Integer,Integer> inChapterCounter = new HashMap<>();
+            Integer lastChapter = null;
+
+            for (int i = 0; i < questions.size(); i++) {
+                int chapter = questions.get(i).getChapter(); // int: 0 nghĩa là không thuộc chương
+                if (chapter > 0 && (lastChapter == null || !lastChapter.equals(chapter))) {
+                    writeChapterHeading(doc, chapter);
+                }
+
+                String title;
+                if (chapter > 0) {
+                    int idxInChap = inChapterCounter.merge(chapter, 1, Integer::sum);
+                    title = chapter + "." + idxInChap;
+                } else {
+                    title = "Câu " + (++globalIdx);
+                }
+                writeQuestionTitle(doc, title);
+                writeFragment(doc, images, fragments.get(i));
+
+                doc.createParagraph(); // spacer
+                lastChapter = chapter;
+            }
+
+            doc.write(out);
+        }
+    }
+
+    private void writeWordExam(List<QuestionDTO> questions, ExportImageFetcher.Prefetched images,
+                               ExportTemplate.Exam header, boolean includeAnswers,
+                               OutputStream out) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument()) {
+
+            // ===== Header đề thi =====
+            writeExamHeader(doc, header);
+
+            // ===== Nội dung câu hỏi (kiểu “Câu 1”, không theo chapter) =====
+            int idx = 0;
+            for (WordFragment f : prepareFragments(questions, header, includeAnswers)) {
+                writeQuestionTitle(doc, "Câu " + (++idx));
+                writeFragment(doc, images, f);
+
+                doc.createParagraph(); // 1 dòng trống giữa các câu
+            }
+
+            // ===== Footer đề thi =====
+            writeExamFooter(doc);
+
+            doc.write(out);
+        }
+    }
+
+    // Quiz: không header/footer, "Question n" theo thứ tự trong quiz
+    private void writeWordQuiz(List<QuestionDTO> questions, ExportImageFetcher.Prefetched images,
+                               ExportTemplate.Quiz template, boolean includeAnswers,
+                               OutputStream out) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument()) {
+            int idx = 0;
+            for (WordFragment f : prepareFragments(questions, template, includeAnswers)) {
+                writeQuestionTitle(doc, "Question " + (++idx));
+                writeFragment(doc, images, f);
+
+                doc.createParagraph();
+            }
+            doc.write(out);
+        }
+    }
+
+    // Nén chữ (Font Advanced → Spacing condensed -0.5pt)
+    private static void applyCondensed05pt(XWPFRun r) {
+        var rpr = r.getCTR().isSetRPr() ? r.getCTR().getRPr() : r.getCTR().addNewRPr();
+
+        // Safe approach - always create new spacing element
+        var sp = rpr.addNewSpacing();
+        sp.setVal(BigInteger.valueOf(-10));     // -0.5pt = -10 twips
+    }
+
+    // ===== helpers =====
+    private static String up(String s){ return s==null? "": s.toUpperCase(java.util.Locale.ROOT); }
+
+    private static void setParaSpacing(XWPFParagraph p, Integer beforePt, Integer afterPt, double lineMult){
+        var pr = p.getCTP().isSetPPr()? p.getCTP().getPPr(): p.getCTP().addNewPPr();
+        var sp = pr.isSetSpacing()? pr.getSpacing(): pr.addNewSpacing();
+        if (beforePt != null) sp.setBefore(BigInteger.valueOf(beforePt * 20L));
+        if (afterPt  != null) sp.setAfter (BigInteger.valueOf(afterPt  * 20L));
+        sp.setLine(BigInteger.valueOf(Math.round(lineMult * 240)));
+        sp.setLineRule(STLineSpacingRule.AUTO);
+    }
+
+    private static void addRun(XWPFParagraph p, String text, boolean bold, int fontPt, boolean upper){
+        XWPFRun r = p.createRun();
+        r.setFontFamily("Times New Roman");
+        r.setFontSize(fontPt);
+        r.setBold(bold);
+        r.setText(upper ? up(text) : (text==null? "" : text));
+        applyCondensed05pt(r);
+    }
+
+    // ===== HEADER ĐỀ THI (chuẩn theo yêu cầu) =====
+    private void writeExamHeader(XWPFDocument doc, ExportTemplate.Exam h) {
+        // "Mẫu 3a" – phải, 11pt
+        if (hasText(h.mauLabel())) {
+            XWPFParagraph p = doc.createParagraph();
+            p.setAlignment(ParagraphAlignment.RIGHT);
+            setParaSpacing(p, null, 8, 1.08);
+            XWPFRun r = p.createRun();
+            r.setFontFamily("Times New Roman"); r.setFontSize(11); r.setItalic(true);
+            r.setText(h.mauLabel());
+        }
+
+        // Bảng 2 cột 58/42, không viền
+        XWPFTable head = doc.createTable(1, 2);
+        head.setWidth("100%");
+        head.removeBorders();
+        XWPFTableRow r0 = head.getRow(0);
+        XWPFTableCell left  = r0.getCell(0); left.setWidth("52%"); left.removeParagraph(0);
+        XWPFTableCell right = r0.getCell(1); right.setWidth("48%"); right.removeParagraph(0);
+        left.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
+        right.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
+
+        // ==== CỘT TRÁI: HỌC VIỆN / KHOA / BỘ MÔN (font 11, 1.08, condensed −0.5pt) ====
+        XWPFParagraph pInst = left.addParagraph();
+        pInst.setAlignment(ParagraphAlignment.CENTER);
+        setParaSpacing(pInst, null, 8, 1.08);
+        addRun(pInst, up(h.institute()), false, 11, false);
+
+        XWPFParagraph pbm = left.addParagraph();
+        pbm.setAlignment(ParagraphAlignment.CENTER);
+        setParaSpacing(pbm, 6, 6, 1.08);
+        addRun(pbm, "KHOA: ", false, 11, true);
+        addRun(pbm, h.faculty(), false, 11, true);
+
+        XWPFParagraph pk = left.addParagraph();
+        pk.setAlignment(ParagraphAlignment.CENTER);
+        setParaSpacing(pk, 6, 6, 1.08);
+        addRun(pk, "BỘ MÔN: ", true, 11, true);
+        addRun(pk, h.program(), false, 11, true);
+        System.out.println("export header: " + h.program());
+
+        // ==== CỘT PHẢI: 2 dòng trống, Title + (Hình thức thi viết) ====
+        for (int i = 0; i < 2; i++) {
+            XWPFParagraph blank = right.addParagraph();
+            blank.setAlignment(ParagraphAlignment.CENTER);
+            setParaSpacing(blank, 0, 0, 1.08);
+            blank.createRun().setText("");
+        }
+
+        XWPFParagraph pt = right.addParagraph();
+        pt.setAlignment(ParagraphAlignment.CENTER);
+        setParaSpacing(pt, null, 8, 1.08);
+        XWPFRun rt = pt.createRun();
+        rt.setFontFamily("Times New Roman"); rt.setFontSize(14); rt.setBold(true);
+        rt.setText(up("ĐỀ THI KẾT THÚC HỌC PHẦN"));
+
+        XWPFParagraph pf = right.addParagraph();
+        pf.setAlignment(ParagraphAlignment.CENTER);
+        setParaSpacing(pf, 0, 8, 1.08); // remove space before
+        XWPFRun rf = pf.createRun();
+        rf.setFontFamily("Times New Roman"); rf.setFontSize(14); rf.setBold(true); // không italic, giữ nguyên chữ hoa đầu câu
+        rf.setText("(" + nullToEmpty(h.examForm()) + ")");
+
+        // ==== Học phần (bold cả câu) ====
+        // ==== Bảng thông tin: Row0 = Học phần (merge 2 cột), Row1 = Lớp | Thời gian thi ====
+        XWPFTable info = doc.createTable(2, 2);
+        info.setWidth("100%");
+        info.removeBorders();
+
+// --- Row 0: merge 2 cột cho "Học phần…" ---
+        XWPFTableRow rSubj = info.getRow(0);
+        XWPFTableCell subL = rSubj.getCell(0);
+        XWPFTableCell subR = rSubj.getCell(1);
+
+// merge ngang bằng HMerge
+        var prL = subL.getCTTc().getTcPr(); if (prL == null) prL = subL.getCTTc().addNewTcPr();
+        (prL.getHMerge() == null ? prL.addNewHMerge() : prL.getHMerge()).setVal(STMerge.RESTART);
+        var prR = subR.getCTTc().getTcPr(); if (prR == null) prR = subR.getCTTc().addNewTcPr();
+        (prR.getHMerge() == null ? prR.addNewHMerge() : prR.getHMerge()).setVal(STMerge.CONTINUE);
+
+// nội dung "Học phần" (bold cả câu) + tăng after để hàng cao hơn, center Oy
+        subL.removeParagraph(0);
+        XWPFParagraph pSubject = subL.addParagraph();
+        pSubject.setAlignment(ParagraphAlignment.LEFT);
+        setParaSpacing(pSubject, 8, 8, 1.08);           // trước 8pt, sau 8pt
+        XWPFRun rSub = pSubject.createRun();
+        rSub.setFontFamily("Times New Roman"); rSub.setFontSize(12); rSub.setBold(true);
+        rSub.setText("Học phần: " + nullToEmpty(h.subjectName())
+                + " (Học kỳ " + nullToEmpty(h.semester())
+                + " năm học " + nullToEmpty(h.academicYear()) + ")");
+
+        subL.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
+        subR.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
+
+// --- Row 1: "Lớp" (trái 58%) | "Thời gian thi" (phải 42%, center) ---
+        XWPFTableRow rInfo = info.getRow(1);
+        XWPFTableCell cL = rInfo.getCell(0);  cL.setWidth("52%");
+        XWPFTableCell cR = rInfo.getCell(1);  cR.setWidth("48%");
+        cL.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
+        cR.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
+
+// Lớp — bold cả câu, thêm khoảng trước/sau cho cân đối
+        cL.removeParagraph(0);
+        XWPFParagraph pL = cL.addParagraph();
+        pL.setAlignment(ParagraphAlignment.LEFT);
+        setParaSpacing(pL, 6, 6, 1.08);
+        XWPFRun rL = pL.createRun();
+        rL.setFontFamily("Times New Roman"); rL.setFontSize(12); rL.setBold(true);
+        rL.setText("Lớp: " + nullToEmpty(h.classes()));
+
+// Thời gian thi — label bold, giá trị thường; căn giữa
+        cR.removeParagraph(0);
+        XWPFParagraph pR = cR.addParagraph();
+        pR.setAlignment(ParagraphAlignment.CENTER);
+        setParaSpacing(pR, 6, 6, 1.08);
+        XWPFRun rR1 = pR.createRun();
+        rR1.setFontFamily("Times New Roman"); rR1.setFontSize(12); rR1.setBold(true);
+        rR1.setText("Thời gian thi:   ");
+        XWPFRun rR2 = pR.createRun();
+        rR2.setFontFamily("Times New Roman"); rR2.setFontSize(12); rR2.setBold(false);
+        rR2.setText(nullToEmpty(h.duration()));
+
+// Đề số — label bold, giá trị thường
+        if (h.paperNo() != null) {
+            XWPFParagraph pNo = doc.createParagraph();
+            pNo.setAlignment(ParagraphAlignment.CENTER);
+            setParaSpacing(pNo, 8, 8, 1.08);
+            XWPFRun rNo1 = pNo.createRun();
+            rNo1.setFontFamily("Times New Roman"); rNo1.setFontSize(12); rNo1.setBold(true);
+            rNo1.setText("Đề số: ");
+            XWPFRun rNo2 = pNo.createRun();
+            rNo2.setFontFamily("Times New Roman"); rNo2.setFontSize(12); rNo2.setBold(false);
+            rNo2.setText(String.valueOf(h.paperNo()));
+        }
+
+        // spacer nhỏ sau header
+        XWPFParagraph sp = doc.createParagraph();
+        setParaSpacing(sp, 4, 12, 1.08);
+    }
+
+    private String nullToEmpty(String s){ return s==null? "" : s; }
+
+    private void writeExamFooter(XWPFDocument doc) {
+        // Đường kẻ mảnh và “Ghi chú: …”
+        XWPFParagraph pRule = doc.createParagraph();
+        pRule.setBorderBottom(Borders.SINGLE);
+        setSpacing(pRule, 0, 120, 1.0);
+
+        XWPFParagraph pNote = doc.createParagraph();
+        setSpacing(pNote, 0, 200, 1.0);
+        newRun(pNote, true, 12).setText("Ghi chú: ");
+        XWPFRun rn = newRun(pNote, false, 12);
+        rn.setItalic(true);
+        rn.setText("Sinh viên không được tham khảo tài liệu");
+
+        // Họ tên SV … Lớp … Phòng thi …
+        XWPFParagraph pInfo1 = doc.createParagraph();
+        setSpacing(pInfo1, 120, 120, 1.0);
+        newRun(pInfo1, false, 12).setText("Họ tên SV: ...................................   Lớp: ........................   Phòng thi: ............");
+
+        // Ký tên …
+        XWPFParagraph pInfo2 = doc.createParagraph();
+        setSpacing(pInfo2, 0, 0, 1.0);
+        newRun(pInfo2, false, 12).setText("Ký tên: ........................................");
+    }
+
+    /* ---------- Word helpers ---------- */
+
+    // Title “Câu 1” / “1.1”
+    private void writePracticeHeader(XWPFDocument doc, ExportTemplate.Practice h) {
+        // Tiêu đề
+        XWPFParagraph title = doc.createParagraph();
+        title.setAlignment(ParagraphAlignment.CENTER);
+        setSpacing(title, 0, 600, 1.0); // after ~30pt
+        newRun(title, true, 16).setText(h.bankTitle());
+
+        // Bảng 2×3: [label+value] [gutter] [label+value]
+        XWPFTable tbl = doc.createTable(2, 3);
+        tbl.removeBorders();
+        setTableFixed3Cols(tbl, 5500, 100, 5500); // w1, gutter, w3 (twips)
+
+        // hàng 1
+        fillHeaderCell(tbl.getRow(0).getCell(0), "Tên học phần: ", h.subjectName());
+        makeGutter(tbl.getRow(0).getCell(1)); // ô trống đúng nghĩa
+        fillHeaderCell(tbl.getRow(0).getCell(2), "Mã học phần: ", h.subjectCode());
+
+        // hàng 2
+        fillHeaderCell(tbl.getRow(1).getCell(0), "Ngành đào tạo: ", h.faculty()==null? "" : h.faculty());
+        makeGutter(tbl.getRow(1).getCell(1));
+        fillHeaderCell(tbl.getRow(1).getCell(2), "Trình độ đào tạo: ", h.level());
+
+        // chừa khoảng dưới toàn khối header
+        XWPFParagraph spacer = doc.createParagraph();
+        setSpacing(spacer, 0, 600, 1.0);
+    }
+
+    private void setTableFixed3Cols(XWPFTable tbl, int w1, int gutter, int w3) {
+        CTTbl ctTbl = tbl.getCTTbl();
+
+        // tblPr
+        CTTblPr pr = ctTbl.getTblPr();
+        if (pr == null) pr = ctTbl.addNewTblPr();
+
+        // layout fixed => Word không auto-fit độ rộng cột
+        CTTblLayoutType layout = pr.getTblLayout();
+        if (layout == null) layout = pr.addNewTblLayout();
+        layout.setType(STTblLayoutType.FIXED);
+
+        // grid (xóa grid cũ nếu có, rồi set lại 3 cột)
+        CTTblGrid grid = ctTbl.getTblGrid();
+        if (grid == null) {
+            grid = ctTbl.addNewTblGrid();
+        } else {
+            while (grid.sizeOfGridColArray() > 0) grid.removeGridCol(0);
+        }
+        grid.addNewGridCol().setW(BigInteger.valueOf(w1));
+        grid.addNewGridCol().setW(BigInteger.valueOf(gutter));
+        grid.addNewGridCol().setW(BigInteger.valueOf(w3));
+
+        // set width cho từng ô khớp grid (an toàn)
+        for (int r = 0; r < tbl.getNumberOfRows(); r++) {
+            XWPFTableRow row = tbl.getRow(r);
+            setCellWidth(row.getCell(0), w1);
+            setCellWidth(row.getCell(1), gutter);
+            setCellWidth(row.getCell(2), w3);
+        }
+    }
+
+    private void setCellWidth(XWPFTableCell c, int twips) {
+        if (c == null) return;
+        CTTcPr tcPr = c.getCTTc().getTcPr();
+        if (tcPr == null) tcPr = c.getCTTc().addNewTcPr();
+        CTTblWidth w = tcPr.getTcW();
+        if (w == null) w = tcPr.addNewTcW();
+        w.setType(STTblWidth.DXA);
+        w.setW(BigInteger.valueOf(twips));
+    }
+
+    private void makeGutter(XWPFTableCell c) {
+        if (c == null) return;
+        // bỏ mọi paragraph để nó thực sự trống
+        while (c.getParagraphs().size() > 0) c.removeParagraph(0);
+    }
+
+    private void fillHeaderCell(XWPFTableCell cell, String label, String value) {
+        cell.removeParagraph(0);
+        XWPFParagraph p = cell.addParagraph();
+        p.setAlignment(ParagraphAlignment.LEFT);
+        setSpacing(p, 0, 0, 1.0);
+        newRun(p, true, 12).setText(label);
+        newRun(p, false, 12).setText(value == null ? "" : value);
+    }
+
+    // Giãn dòng/đệm cho paragraph theo twips (1pt = 20 twips)
+    private void setSpacing(XWPFParagraph p, int beforeTwips, int afterTwips, double line) {
+        var pr = p.getCTP().isSetPPr() ? p.getCTP().getPPr() : p.getCTP().addNewPPr();
+        var sp = pr.isSetSpacing() ? pr.getSpacing() : pr.addNewSpacing();
+        if (beforeTwips > 0) sp.setBefore(BigInteger.valueOf(beforeTwips)); else if (sp.isSetBefore()) sp.unsetBefore();
+        if (afterTwips  > 0) sp.setAfter (BigInteger.valueOf(afterTwips )); else if (sp.isSetAfter())  sp.unsetAfter();
+        // 1.0 = 240, 1.15 ≈ 276, 1.5 = 360
+        sp.setLine(BigInteger.valueOf(Math.round(line * 240)));
+        sp.setLineRule(org.openxmlformats.schemas.wordprocessingml.x2006.main.STLineSpacingRule.AUTO);
+    }
+
+    private void writeChapterHeading(XWPFDocument doc, int chapter) {
+        XWPFParagraph p = doc.createParagraph();
+        p.setAlignment(ParagraphAlignment.CENTER);
+        tuneParagraphSpacing(p);
+        XWPFRun r = newRun(p, true, 14);
+        r.setText("CHƯƠNG " + chapter);
+    }
+
+    private void writeQuestionTitle(XWPFDocument doc, String s) {
+        XWPFParagraph p = doc.createParagraph();
+        tuneParagraphSpacing(p);
+        XWPFRun r = newRun(p, true, 13);
+        r.setText(s);
+    }
+
+    // newRun: Times New Roman 13 mặc định (override khi truyền size)
+    private XWPFRun newRun(XWPFParagraph p, boolean bold, int fontSize) {
+        XWPFRun r = p.createRun();
+        r.setBold(bold);
+        if (fontSize > 0) r.setFontSize(fontSize);
+        r.setFontFamily("Times New Roman");
+        return r;
+    }
+
+    /**
+     * Phần của 1 câu hỏi dựng sẵn ngoài POI: các dòng đã chuẩn hoá + tách OMML (nội dung, phương án,
+     * đáp án) và URL ảnh theo thứ tự. Ảnh đã nằm trong Prefetched, POI nhúng nguyên byte nên không cần decode.
+     */
+    private record WordFragment(List<MathOmmlRenderer.Line> content, List<String> imageUrls,
+                                List<MathOmmlRenderer.Line> options, List<MathOmmlRenderer.Line> answer) {}
+
+    private static final int PARALLEL_MIN_QUESTIONS = 8;
+
+    /**
+     * Chuẩn bị fragment từng câu song song trên wordPool (giữ thứ tự), document vẫn chỉ do thread gọi ghi.
+     * Đề ít câu làm luôn trên thread gọi cho khỏi tốn công chia việc.
+     */
+    private List<WordFragment> prepareFragments(List<QuestionDTO> questions, ExportTemplate template,
+                                                boolean includeAnswers) {
+        if (questions.size() < PARALLEL_MIN_QUESTIONS) {
+            return questions.stream().map(q -> prepareFragment(q, template, includeAnswers)).toList();
+        }
+        List<ForkJoinTask<WordFragment>> tasks = new ArrayList<>(questions.size());
+        for (QuestionDTO q : questions) tasks.add(wordPool.submit(() -> prepareFragment(q, template, includeAnswers)));
+        List<WordFragment> out = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<WordFragment> t : tasks) out.add(t.join());
+        return out;
+    }
+
+    private WordFragment prepareFragment(QuestionDTO q, ExportTemplate template, boolean includeAnswers) {
+        // Nội dung: tách dòng, text TNR13; OMML Cambria Math 13; sqrt ẩn bậc căn
+        List<MathOmmlRenderer.Line> content =
+                prepareLines(template.contentPrefix() + prettyMathSpaces(safeText(q.getContent())));
+
+        List<String> imageUrls = new ArrayList<>();
+        if (q.getImages() != null && !q.getImages().isEmpty()) {
+            for (var imgDto : q.getImages()) imageUrls.add(imgDto.getUrl());
+        } else if (q.getImageUrl() != null) {
+            imageUrls.add(q.getImageUrl());
+        }
+
+        // Phương án
+        List<MathOmmlRenderer.Line> options = new ArrayList<>();
+        if (q.getQuestionType() == QuestionType.MULTIPLE_CHOICE) {
+            List<String> labels = template.optionLabels();
+            addOptionIfPresent(options, labels.get(0), q.getOptionA());
+            addOptionIfPresent(options, labels.get(1), q.getOptionB());
+            addOptionIfPresent(options, labels.get(2), q.getOptionC());
+            addOptionIfPresent(options, labels.get(3), q.getOptionD());
+        }
+
+        // Đáp án (nếu chọn)
+        List<MathOmmlRenderer.Line> answer = List.of();
+        if (includeAnswers) {
+            String ans = (q.getQuestionType() == QuestionType.MULTIPLE_CHOICE) ? q.getAnswer() : q.getAnswerText();
+            if (hasText(ans)) answer = prepareLines("Answer: " + prettyMathSpaces(safeText(ans)));
+        }
+        return new WordFragment(content, imageUrls, options, answer);
+    }
+
+    private List<MathOmmlRenderer.Line> prepareLines(String text) {
+        if (text == null) text = "";
+        List<MathOmmlRenderer.Line> lines = new ArrayList<>();
+        for (String line : text.split("\\R", -1)) lines.add(MathOmmlRenderer.prepare(line));
+        return lines;
+    }
+
+    private void addOptionIfPresent(List<MathOmmlRenderer.Line> out, String prefix, String val) {
+        if (!hasText(val)) return;
+        out.add(MathOmmlRenderer.prepare(prefix + prettyMathSpaces(safeText(val))));
+    }
+
+    private void writeFragment(XWPFDocument doc, ExportImageFetcher.Prefetched images, WordFragment f) {
+        writeLines(doc, f.content());
+        for (String url : f.imageUrls()) addWordImage(doc, images, url);
+        writeLines(doc, f.options());
+        writeLines(doc, f.answer());
+    }
+
+    // runFactory set TNR 13 để đồng bộ
+    private void writeLines(XWPFDocument doc, List<MathOmmlRenderer.Line> lines) {
+        for (MathOmmlRenderer.Line line : lines) {
+            XWPFParagraph p = doc.createParagraph();
+            tuneParagraphSpacing(p);
+            line.emit(p, (s) -> {
+                XWPFRun r = p.createRun();
+                r.setFontFamily("Times New Roman");
+                r.setFontSize(13);
+                return r;
+            });
+        }
+    }
+
+    private void tuneParagraphSpacing(XWPFParagraph p) {
+        setSpacing(p, 0, 0, 1.3); // after ~8pt, line spacing 1.3
+    }
+
+    private void addWordImage(XWPFDocument doc, ExportImageFetcher.Prefetched images, String url) {
+        String u = forcePng(url);
+        try (var is = images.open(u)) {
+            XWPFParagraph ip = doc.createParagraph();
+            tuneParagraphSpacing(ip);
+            XWPFRun ir = newRun(ip, false, 0);
+            ir.addPicture(is, XWPFDocument.PICTURE_TYPE_PNG, "image",
+                    Units.toEMU(400), Units.toEMU(300));
+        } catch (Exception e) {
+            XWPFParagraph ep = doc.createParagraph();
+            tuneParagraphSpacing(ep);
+            newRun(ep, false, 0).setText("Error loading image: " + url);
+        }
+    }
+}
@@ -428,41 +428,31 @@ public class DocxOmmlExtractor {
 
     private static void writeImagePartAsPngPlaceholder(BinaryPartAbstractImage part, StringBuilder sb, List<byte[]> images) {
         try {
-            String name = part.getPartName().getName().toLowerCase(Locale.ROOT);
-            byte[] raw = part.getBytes();
-            byte[] png;
-
-            if (name.endsWith(".png")) {
-                png = raw;
-            } else if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
-                try (ByteArrayInputStream in = new ByteArrayInputStream(raw);
-                     ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                    BufferedImage bi = ImageIO.read(in);
-                    if (bi == null) return;
-                    ImageIO.write(bi, "png", out);
-                    png = out.toByteArray();
-                }
-            } else if (name.endsWith(".wmf")) {
-                png = convertWmfToPng(raw);
-                if (png == null) return;
-            } else if (name.endsWith(".emf")) {
-                png = convertEmfToPng(raw);
-                if (png == null) return;
-            } else {
-                try (ByteArrayInputStream in = new ByteArrayInputStream(raw);
-                     ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                    BufferedImage bi = ImageIO.read(in);
-                    if (bi == null) return;
-                    ImageIO.write(bi, "png", out);
-                    png = out.toByteArray();
-                }
-            }
-
+            byte[] png = toPng(part.getPartName().getName(), part.getBytes());
+            if (png == null) return;
             images.add(png);
             sb.append("{{image").append(images.size()).append("}}");
         } catch (Exception ignore) { }
     }
 
+    /** Chuẩn hoá ảnh trong DOCX về PNG theo đuôi part name; null nếu không đọc được (dùng chung với engine StAX) */
+    static byte[] toPng(String partName, byte[] raw) {
+        try {
+            String name = partName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".png")) return raw;
+            if (name.endsWith(".wmf")) return convertWmfToPng(raw);
+            if (name.endsWith(".emf")) return convertEmfToPng(raw);
+            // jpg/jpeg và các định dạng ImageIO đọc được
+            try (ByteArrayInputStream in = new ByteArrayInputStream(raw);
+                 ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                BufferedImage bi = ImageIO.read(in);
+                if (bi == null) return null;
+                ImageIO.write(bi, "png", out);
+                return out.toByteArray();
+            }
+        } catch (Exception e) { return null; }
+    }
+
     private static byte[] convertWmfToPng(byte[] raw) {
         try (ByteArrayInputStream in = new ByteArrayInputStream(raw);
              ByteArrayOutputStream out = new ByteArrayOutputStream()) {
@@ -510,19 +500,23 @@ public class DocxOmmlExtractor {
 
     private static String collectAllMathTokens(Object omml) {
         try {
-            Document d = XmlUtils.marshaltoW3CDomDocument(omml);
-            NodeList ts = d.getElementsByTagNameNS(NS_MATH, "t");
-            if (ts == null || ts.getLength() == 0) return null;
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < ts.getLength(); i++) sb.append(ts.item(i).getTextContent());
-            String s = sb.toString();
-            s = TextNormalize.remapPUA(s);
-            s = TextNormalize.normalizePreserveNewlines(s);
-            s = TextNormalize.normalizeSuperSubRuns(s);
-            return s;
+            return mathTokens(XmlUtils.marshaltoW3CDomDocument(omml));
         } catch (Exception e) { return null; }
     }
 
+    /** Fallback khi OmmlConverter không ra gì: nối mọi m:t rồi chuẩn hoá */
+    static String mathTokens(Document d) {
+        NodeList ts = d.getElementsByTagNameNS(NS_MATH, "t");
+        if (ts == null || ts.getLength() == 0) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ts.getLength(); i++) sb.append(ts.item(i).getTextContent());
+        String s = sb.toString();
+        s = TextNormalize.remapPUA(s);
+        s = TextNormalize.normalizePreserveNewlines(s);
+        s = TextNormalize.normalizeSuperSubRuns(s);
+        return s;
+    }
+
     private static List<Object> childrenOf(Object u) {
         if (u == null) return Collections.emptyList();
 
@@ -0,0 +1,23 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/** Ghi 1 định dạng file (PDF/DOCX) từ danh sách câu hỏi đã nạp + ảnh đã tải trước */
+interface ExportBackend {
+
+    /** URL thực sự tải cho 1 ảnh (vd ép PNG qua Cloudinary) */
+    String imageUrl(String url);
+
+    /** Tuỳ chọn cấu hình làm đổi file render ra (vd chế độ công thức) → thành phần của khoá cache export */
+    default String renderVariant() {
+        return "";
+    }
+
+    /** Không đóng {@code out} */
+    void write(ExportTemplate template, List<QuestionDTO> questions, ExportImageFetcher.Prefetched images,
+               boolean includeAnswers, OutputStream out) throws IOException;
+}
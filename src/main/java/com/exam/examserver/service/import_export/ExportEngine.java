@@ -0,0 +1,68 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.service.QuestionService;
+import com.exam.examserver.service.QuizService;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Pipeline export dùng chung cho câu hỏi và quiz: nạp câu hỏi theo {@link ExportSource} → tải song song
+ * ảnh → backend theo định dạng ghi file theo {@link ExportTemplate}.
+ *
+ * Nạp dữ liệu + ảnh làm ngay khi gọi {@link #writer} (lỗi dữ liệu ném ra trước khi response bắt đầu),
+ * render khi gọi writeTo.
+ */
+@Service
+public class ExportEngine {
+
+    public enum Format { PDF, DOCX }
+
+    /** Writer đã chuẩn bị + complete = mọi ảnh đều tải được (false → file có placeholder, không nên cache) */
+    record Prepared(DocumentWriter writer, boolean complete) {}
+
+    private final QuestionService questionService;
+    private final QuizService quizService;
+    private final ExportImageFetcher imageFetcher;
+    private final PdfExportBackend pdf;
+    private final DocxExportBackend docx;
+
+    public ExportEngine(QuestionService questionService, QuizService quizService,
+                        ExportImageFetcher imageFetcher, PdfExportBackend pdf, DocxExportBackend docx) {
+        this.questionService = questionService;
+        this.quizService = quizService;
+        this.imageFetcher = imageFetcher;
+        this.pdf = pdf;
+        this.docx = docx;
+    }
+
+    public DocumentWriter writer(ExportSource source, ExportTemplate template, Format format, boolean includeAnswers) {
+        return prepare(source, template, format, includeAnswers).writer();
+    }
+
+    /** Biến thể render của backend theo định dạng (đưa vào fingerprint của ExportResultCache) */
+    String renderVariant(Format format) {
+        return ((format == Format.DOCX) ? docx : pdf).renderVariant();
+    }
+
+    Prepared prepare(ExportSource source, ExportTemplate template, Format format, boolean includeAnswers) {
+        List<QuestionDTO> questions = load(source, includeAnswers);
+        ExportBackend backend = (format == Format.DOCX) ? docx : pdf;
+        ExportImageFetcher.Prefetched images =
+                imageFetcher.fetchAll(ExportImageFetcher.imageUrls(questions, backend::imageUrl));
+        return new Prepared(out -> backend.write(template, questions, images, includeAnswers, out),
+                images.complete());
+    }
+
+    private List<QuestionDTO> load(ExportSource source, boolean includeAnswers) {
+        List<QuestionDTO> questions = switch (source) {
+            case ExportSource.Questions s -> questionService.findByIds(s.ids());
+            case ExportSource.Quiz s -> quizService.getQuestionsByQuiz(s.quizId(), !includeAnswers);
+        };
+        if (questions == null || questions.isEmpty()) {
+            throw new IllegalStateException("No questions found for " + source);
+        }
+        return questions;
+    }
+}
@@ -0,0 +1,318 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Tải trước toàn bộ ảnh của 1 lần export: gom URL từ danh sách câu hỏi, tải song song (có timeout) rồi
+ * mới dựng document, thay vì mở URL tuần tự trong vòng lặp.
+ *
+ * Cache 2 tầng theo URL: RAM (LRU theo byte) → đĩa (LRU theo byte, file tên = SHA-256 của URL).
+ * URL Cloudinary có version nên nội dung không đổi → không cần TTL.
+ * Ảnh lỗi / quá hạn {@code export.image.deadline-ms} vắng mặt trong kết quả; caller rơi vào
+ * nhánh placeholder "Error loading image" sẵn có, export không bị treo vì 1 ảnh chậm.
+ *
+ * Metrics (Micrometer global registry):
+ *  - export.image.fetch{source=memory|disk|network|failed} : số ảnh theo nguồn
+ *  - export.image.cache.bytes{tier=memory|disk}          : tổng byte đang giữ
+ */
+@Component
+class ExportImageFetcher {
+
+    /**
+     * Ảnh đã tải cho 1 document; URL không có → IOException để caller hiện placeholder.
+     * complete = mọi URL được yêu cầu đều có (không quá deadline, không lỗi).
+     */
+    record Prefetched(Map<String, byte[]> byUrl, boolean complete) {
+        Prefetched(Map<String, byte[]> byUrl) {
+            this(byUrl, true);
+        }
+
+        byte[] bytes(String url) throws IOException {
+            byte[] b = (url == null ? null : byUrl.get(url));
+            if (b == null) throw new IOException("Image unavailable: " + url);
+            return b;
+        }
+
+        InputStream open(String url) throws IOException {
+            return new ByteArrayInputStream(bytes(url));
+        }
+    }
+
+    private final ExecutorService pool;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final long deadlineMs;
+    private final int maxImageBytes;
+
+    // tải dở: 2 export cùng lúc cần 1 URL thì chờ chung 1 future
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    // access-order → duyệt từ đầu là entry ít dùng nhất (LRU)
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final long memoryMaxBytes;
+    private long memoryBytes;
+
+    private final Path diskDir;
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true); // sha → size
+    private final long diskMaxBytes;
+    private long diskBytes;
+
+    private final Counter fromMemory, fromDisk, fromNetwork, failed;
+
+    ExportImageFetcher(@Value("${export.image.concurrency:8}") int concurrency,
+                       @Value("${export.image.connect-timeout-ms:3000}") int connectTimeoutMs,
+                       @Value("${export.image.read-timeout-ms:10000}") int readTimeoutMs,
+                       @Value("${export.image.deadline-ms:20000}") long deadlineMs,
+                       @Value("${export.image.max-bytes:16777216}") int maxImageBytes,
+                       @Value("${export.image.cache.memory-bytes:33554432}") long memoryMaxBytes,
+                       @Value("${export.image.cache.disk-bytes:268435456}") long diskMaxBytes,
+                       @Value("${export.image.cache.dir:}") String diskDir) throws IOException {
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "export-image-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.deadlineMs = deadlineMs;
+        this.maxImageBytes = maxImageBytes;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        this.diskDir = Files.createDirectories((diskDir == null || diskDir.isBlank())
+                ? Path.of(System.getProperty("java.io.tmpdir"), "export-images")
+                : Path.of(diskDir));
+        indexDisk();
+
+        this.fromMemory = fetchCounter("memory");
+        this.fromDisk = fetchCounter("disk");
+        this.fromNetwork = fetchCounter("network");
+        this.failed = fetchCounter("failed");
+        Gauge.builder("export.image.cache.bytes", this, f -> f.memoryBytes()).tag("tier", "memory")
+                .description("Tổng byte ảnh export trong RAM").register(Metrics.globalRegistry);
+        Gauge.builder("export.image.cache.bytes", this, f -> f.diskBytes()).tag("tier", "disk")
+                .description("Tổng byte ảnh export trên đĩa").register(Metrics.globalRegistry);
+    }
+
+    private static Counter fetchCounter(String source) {
+        return Counter.builder("export.image.fetch").tag("source", source)
+                .description("Ảnh export theo nguồn lấy").register(Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /** URL ảnh theo thứ tự xuất hiện: danh sách images, không có thì ảnh cover (như các vòng lặp export) */
+    static List<String> imageUrls(List<QuestionDTO> questions, UnaryOperator<String> mapper) {
+        LinkedHashSet<String> urls = new LinkedHashSet<>();
+        for (QuestionDTO q : questions) {
+            if (q.getImages() != null && !q.getImages().isEmpty()) {
+                for (var img : q.getImages()) if (img.getUrl() != null) urls.add(mapper.apply(img.getUrl()));
+            } else if (q.getImageUrl() != null) {
+                urls.add(mapper.apply(q.getImageUrl()));
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /** Tải song song; chờ tối đa deadline cho cả lô, ảnh chưa xong thì bỏ (placeholder) */
+    Prefetched fetchAll(Collection<String> urls) {
+        Map<String, CompletableFuture<byte[]>> futures = new LinkedHashMap<>();
+        Map<String, byte[]> out = new HashMap<>();
+        for (String url : urls) {
+            if (url == null || futures.containsKey(url) || out.containsKey(url)) continue;
+            byte[] hit = memoryGet(url);
+            if (hit != null) { fromMemory.increment(); out.put(url, hit); continue; }
+            futures.put(url, loadShared(url));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+        for (var e : futures.entrySet()) {
+            try {
+                long left = Math.max(0, deadline - System.nanoTime());
+                byte[] b = e.getValue().get(left, TimeUnit.NANOSECONDS);
+                if (b != null) out.put(e.getKey(), b);
+                else failed.increment();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException | CancellationException ex) {
+                // không cancel: export khác có thể đang chờ cùng future, tải xong vẫn vào cache
+                failed.increment();
+            }
+        }
+        return new Prefetched(out, out.keySet().containsAll(futures.keySet()));
+    }
+
+    /**
+     * Future tải ảnh dùng chung giữa các export cùng lúc. Future được tạo và đưa vào map trước, gắn dọn dẹp,
+     * rồi mới bắt đầu tải → không có remove nào chạy khi map đang cập nhật; remove(u, f) chỉ bỏ đúng future
+     * này nên entry đã xong không bị giữ lại.
+     */
+    private CompletableFuture<byte[]> loadShared(String url) {
+        CompletableFuture<byte[]> existing = inFlight.get(url);
+        if (existing != null) return existing;
+
+        CompletableFuture<byte[]> f = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(url, f);
+        if (existing != null) return existing;
+
+        f.whenComplete((b, ex) -> inFlight.remove(url, f));
+        try {
+            pool.execute(() -> {
+                try {
+                    f.complete(load(url));
+                } catch (Throwable t) {
+                    f.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            f.completeExceptionally(ex); // pool đã tắt
+        }
+        return f;
+    }
+
+    /** Chạy trong pool: đĩa → mạng; null nếu lỗi */
+    private byte[] load(String url) {
+        String sha = DigestUtils.sha256Hex(url);
+        byte[] b = diskGet(sha);
+        if (b != null) {
+            fromDisk.increment();
+        } else {
+            try {
+                b = download(url);
+            } catch (IOException e) {
+                return null;
+            }
+            fromNetwork.increment();
+            diskPut(sha, b);
+        }
+        memoryPut(url, b);
+        return b;
+    }
+
+    private byte[] download(String url) throws IOException {
+        URLConnection c = new URL(url).openConnection();
+        c.setConnectTimeout(connectTimeoutMs);
+        c.setReadTimeout(readTimeoutMs);
+        try (InputStream in = c.getInputStream()) {
+            if (c instanceof HttpURLConnection h && h.getResponseCode() / 100 != 2) {
+                throw new IOException("HTTP " + h.getResponseCode() + " for " + url);
+            }
+            byte[] b = in.readNBytes(maxImageBytes + 1);
+            if (b.length > maxImageBytes) throw new IOException("Image too large: " + url);
+            return b;
+        }
+    }
+
+    /* ==================== RAM ==================== */
+
+    private synchronized byte[] memoryGet(String url) {
+        return memory.get(url);
+    }
+
+    private synchronized void memoryPut(String url, byte[] b) {
+        if (b.length > memoryMaxBytes) return;
+        byte[] old = memory.remove(url);
+        if (old != null) memoryBytes -= old.length;
+        Iterator<byte[]> it = memory.values().iterator();
+        while (memoryBytes + b.length > memoryMaxBytes && it.hasNext()) {
+            memoryBytes -= it.next().length;
+            it.remove();
+        }
+        memory.put(url, b);
+        memoryBytes += b.length;
+    }
+
+    synchronized long memoryBytes() { return memoryBytes; }
+
+    /* ==================== đĩa ==================== */
+
+    /** Nạp lại index các file còn từ lần chạy trước (cũ nhất trước → bị evict trước) */
+    private void indexDisk() throws IOException {
+        try (Stream<Path> files = Files.list(diskDir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".img"))
+                    .sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        long size = p.toFile().length();
+                        disk.put(name.substring(0, name.length() - 4), size);
+                        diskBytes += size;
+                    });
+        }
+    }
+
+    private Path diskFile(String sha) {
+        return diskDir.resolve(sha + ".img");
+    }
+
+    private byte[] diskGet(String sha) {
+        synchronized (this) {
+            if (disk.get(sha) == null) return null; // get() cũng cập nhật thứ tự LRU
+        }
+        try {
+            return Files.readAllBytes(diskFile(sha));
+        } catch (IOException e) {
+            synchronized (this) {
+                Long size = disk.remove(sha);
+                if (size != null) diskBytes -= size;
+            }
+            return null;
+        }
+    }
+
+    private void diskPut(String sha, byte[] b) {
+        if (b.length > diskMaxBytes) return;
+        try {
+            // ghi file tạm rồi move để luồng đọc không thấy file ghi dở
+            Path tmp = Files.createTempFile(diskDir, sha, ".part");
+            Files.write(tmp, b);
+            Files.move(tmp, diskFile(sha), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            return; // cache đĩa là tuỳ chọn
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = disk.remove(sha);
+            if (old != null) diskBytes -= old;
+            Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+            while (diskBytes + b.length > diskMaxBytes && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                diskBytes -= e.getValue();
+                evicted.add(e.getKey());
+                it.remove();
+            }
+            disk.put(sha, (long) b.length);
+            diskBytes += b.length;
+        }
+        for (String s : evicted) {
+            try { Files.deleteIfExists(diskFile(s)); } catch (IOException ignore) {}
+        }
+    }
+
+    synchronized long diskBytes() { return diskBytes; }
+}
@@ -0,0 +1,278 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exporting.ExportJobStatus;
+import com.exam.examserver.dto.exporting.ExportSpec;
+import com.exam.examserver.enums.ExportPhase;
+import com.exam.examserver.model.exam.FileArchive;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.service.SubjectService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export bất đồng bộ: POST trả jobId ngay, worker pool giới hạn render rồi ghi thẳng vào GCS
+ * (upload resumable, không giữ byte[] cả file) và tạo FileArchive; client poll trạng thái rồi
+ * xin signed URL tải về. Dùng cho mùa thi khi nhiều giáo viên export đề cùng lúc.
+ *
+ * Hàng đợi ưu tiên: HEAD/ADMIN chạy trước, cùng mức thì theo thứ tự nộp. Mỗi user tối đa
+ * {@code export.jobs.max-active-per-user} job chưa xong; hàng đợi đầy → 503.
+ *
+ * Lưu kết quả theo chính sách như export đồng bộ: EXAM của TEACHER → PENDING, còn lại APPROVED.
+ *
+ * Metrics (Micrometer global registry):
+ *  - export.job.queue                             : số job đang chờ
+ *  - export.job.active                            : số job đang render
+ *  - export.job.wait                              : thời gian chờ trong hàng đợi
+ *  - export.job.duration{format, result=done|failed|cancelled} : thời gian render + upload
+ */
+@Service
+public class ExportJobService {
+
+    private static final Duration TTL = Duration.ofMinutes(60);
+
+    private static class Job {
+        final String id;
+        final Long userId;
+        final Long subjectId;
+        final boolean privileged;
+        final ExportSpec spec;
+        final Subject subject;
+        final Instant submittedAt = Instant.now();
+        volatile ExportPhase phase = ExportPhase.QUEUED;
+        volatile String error;
+        volatile Long archiveId;
+        volatile boolean cancelRequested;
+        volatile Instant finishedAt;
+
+        Job(Long userId, Long subjectId, boolean privileged, ExportSpec spec, Subject subject) {
+            this.id = UUID.randomUUID().toString();
+            this.userId = userId;
+            this.subjectId = subjectId;
+            this.privileged = privileged;
+            this.spec = spec;
+            this.subject = subject;
+        }
+
+        boolean active() { return finishedAt == null; }
+    }
+
+    /** Task trong PriorityBlockingQueue: HEAD/ADMIN trước, cùng mức FIFO theo seq */
+    private final class Task implements Runnable, Comparable<Task> {
+        final Job job;
+        final long seq = SEQ.incrementAndGet();
+
+        Task(Job job) { this.job = job; }
+
+        @Override
+        public void run() { ExportJobService.this.run(job); }
+
+        @Override
+        public int compareTo(Task o) {
+            if (job.privileged != o.job.privileged) return job.privileged ? -1 : 1;
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    private static final AtomicLong SEQ = new AtomicLong();
+
+    private final ExportQuestionService exportService;
+    private final FileArchiveService fileArchiveService;
+    private final SubjectService subjectService;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final int maxActivePerUser;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Task> queued = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final Timer waitTimer;
+
+    public ExportJobService(ExportQuestionService exportService,
+                            FileArchiveService fileArchiveService,
+                            SubjectService subjectService,
+                            @Value("${export.jobs.workers:2}") int workers,
+                            @Value("${export.jobs.queue-capacity:32}") int queueCapacity,
+                            @Value("${export.jobs.max-active-per-user:2}") int maxActivePerUser) {
+        this.exportService = exportService;
+        this.fileArchiveService = fileArchiveService;
+        this.subjectService = subjectService;
+        this.queueCapacity = queueCapacity;
+        this.maxActivePerUser = maxActivePerUser;
+
+        AtomicInteger seq = new AtomicInteger();
+        // PriorityBlockingQueue không giới hạn → sức chứa kiểm tra trong submit()
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "export-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // tạo sẵn worker: task luôn vào hàng đợi ưu tiên thay vì chạy thẳng trên thread mới
+        this.executor.prestartAllCoreThreads();
+
+        Gauge.builder("export.job.queue", executor, e -> e.getQueue().size())
+                .description("Số export job đang chờ").register(Metrics.globalRegistry);
+        Gauge.builder("export.job.active", running, AtomicInteger::get)
+                .description("Số export job đang render").register(Metrics.globalRegistry);
+        this.waitTimer = Timer.builder("export.job.wait")
+                .description("Thời gian export job chờ trong hàng đợi").register(Metrics.globalRegistry);
+    }
+
+    public ExportJobStatus submit(Long subjectId, Long userId, boolean privileged, ExportSpec spec) {
+        if (spec == null || spec.questionIds == null || spec.questionIds.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chưa chọn câu hỏi để export");
+        }
+        // Subject.department là LAZY: nạp ngay trong request (còn session), worker chỉ đọc header
+        Subject subj = subjectService.getSubjectById(subjectId);
+        if (subj.getDepartment() != null) subj.getDepartment().getName();
+
+        Job job = new Job(userId, subjectId, privileged, spec, subj);
+        Task task = new Task(job);
+        synchronized (this) {
+            long active = jobs.values().stream()
+                    .filter(j -> j.active() && j.userId.equals(userId))
+                    .count();
+            if (active >= maxActivePerUser) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Bạn đang có " + active + " export chưa xong, vui lòng đợi");
+            }
+            if (executor.getQueue().size() >= queueCapacity) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Hệ thống export đang bận, thử lại sau");
+            }
+            jobs.put(job.id, job);
+            queued.put(job.id, task);
+        }
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            queued.remove(job.id);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Hệ thống export đang bận, thử lại sau");
+        }
+        return toStatus(job);
+    }
+
+    private void run(Job job) {
+        queued.remove(job.id);
+        if (job.cancelRequested) {
+            job.phase = ExportPhase.CANCELLED;
+            job.finishedAt = Instant.now();
+            return;
+        }
+        waitTimer.record(Duration.between(job.submittedAt, Instant.now()));
+
+        job.phase = ExportPhase.RENDERING;
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        String result = "failed";
+        try {
+            ExportSpec spec = job.spec;
+            DocumentWriter writer = exportService.writerFor(job.subject, spec);
+
+            boolean pending = spec.exam() && !job.privileged;
+            FileArchiveService.ExportUpload upload = fileArchiveService.openExportUpload(pending,
+                    job.subjectId, job.userId, spec.fileNameWithExt(), spec.mimeType(), spec.meta());
+            writer.writeTo(upload.tee(OutputStream.nullOutputStream())); // không có client: chỉ ghi GCS
+            if (job.cancelRequested) { // bỏ upload chưa chốt → không có object/record
+                job.phase = ExportPhase.CANCELLED;
+                result = "cancelled";
+                return;
+            }
+            FileArchive fa = upload.finish();
+
+            job.archiveId = fa.getId();
+            job.phase = ExportPhase.DONE;
+            result = "done";
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.phase = ExportPhase.FAILED;
+        } finally {
+            running.decrementAndGet();
+            job.finishedAt = Instant.now();
+            Timer.builder("export.job.duration")
+                    .tag("format", job.spec.docx() ? "docx" : "pdf")
+                    .tag("result", result)
+                    .description("Thời gian render + upload của export job")
+                    .register(Metrics.globalRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** null nếu không tồn tại hoặc không thuộc user/subject này */
+    public ExportJobStatus status(Long subjectId, Long userId, String jobId) {
+        Job job = find(subjectId, userId, jobId);
+        return job == null ? null : toStatus(job);
+    }
+
+    public ExportJobStatus cancel(Long subjectId, Long userId, String jobId) {
+        Job job = find(subjectId, userId, jobId);
+        if (job == null) return null;
+        if (job.active()) {
+            job.cancelRequested = true;
+            Task task = queued.remove(job.id);
+            // Chưa chạy (còn trong queue) → rút khỏi hàng đợi, tự đóng job
+            if (task != null && executor.remove(task)) {
+                job.phase = ExportPhase.CANCELLED;
+                job.finishedAt = Instant.now();
+            }
+        }
+        return toStatus(job);
+    }
+
+    /** Signed URL tải kết quả; null nếu job chưa DONE / không thuộc user */
+    public String downloadUrl(Long subjectId, Long userId, String jobId, Duration ttl) {
+        Job job = find(subjectId, userId, jobId);
+        if (job == null || job.archiveId == null) return null;
+        return fileArchiveService.signDownload(job.archiveId, ttl);
+    }
+
+    private Job find(Long subjectId, Long userId, String jobId) {
+        Job job = (jobId == null) ? null : jobs.get(jobId);
+        if (job == null || !job.userId.equals(userId) || !job.subjectId.equals(subjectId)) return null;
+        return job;
+    }
+
+    private ExportJobStatus toStatus(Job job) {
+        ExportJobStatus st = new ExportJobStatus();
+        st.jobId = job.id;
+        st.phase = job.phase;
+        st.error = job.error;
+        st.archiveId = job.archiveId;
+        st.filename = job.spec.fileNameWithExt();
+        Task task = queued.get(job.id);
+        if (task != null) {
+            st.queuePosition = (int) executor.getQueue().stream()
+                    .filter(r -> r instanceof Task t && t.compareTo(task) < 0)
+                    .count();
+        }
+        return st;
+    }
+
+    @Scheduled(fixedDelay = 300_000) // 5 phút dọn job đã xong
+    public void gc() {
+        Instant cutoff = Instant.now().minus(TTL);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,283 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exporting.ExportSpec;
+import com.exam.examserver.model.exam.Subject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Cache file export (PDF/DOCX) trên đĩa theo fingerprint của lần export: thứ tự id câu hỏi + lần sửa
+ * cuối của từng câu, định dạng, biến thể, includeAnswers và các trường header. Export lặp lại cùng lựa
+ * chọn → stream thẳng file cũ, không nạp câu hỏi/ảnh, không render.
+ *
+ * Không cần xoá chủ động: sửa 1 câu (hoặc thêm ảnh) đổi updatedAt → fingerprint mới, entry cũ không
+ * còn ai hỏi tới và bị LRU đẩy ra khi vượt {@code export.result-cache.max-bytes}. max-bytes = 0 → tắt.
+ *
+ * Metrics (Micrometer global registry):
+ *  - export.result.cache{result=hit|miss} : số lần tra cache
+ *  - export.result.cache.bytes           : tổng byte file đang giữ
+ */
+@Component
+class ExportResultCache {
+
+    /** Tăng khi đổi cách render (layout, font, OMML...) để bỏ toàn bộ file cũ */
+    private static final String RENDER_VERSION = "3";
+
+    private final Path dir;
+    private final long maxBytes;
+    // access-order → duyệt từ đầu là entry ít dùng nhất (LRU); key → size
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final Counter hits, misses;
+
+    ExportResultCache(@Value("${export.result-cache.max-bytes:536870912}") long maxBytes,
+                      @Value("${export.result-cache.dir:}") String dir) throws IOException {
+        this.maxBytes = maxBytes;
+        this.dir = Files.createDirectories((dir == null || dir.isBlank())
+                ? Path.of(System.getProperty("java.io.tmpdir"), "export-results")
+                : Path.of(dir));
+        indexDisk();
+
+        this.hits = lookupCounter("hit");
+        this.misses = lookupCounter("miss");
+        Gauge.builder("export.result.cache.bytes", this, ExportResultCache::bytes)
+                .description("Tổng byte file export đang cache").register(Metrics.globalRegistry);
+    }
+
+    private static Counter lookupCounter(String result) {
+        return Counter.builder("export.result.cache").tag("result", result)
+                .description("Tra cache file export").register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Khoá cache của 1 lần export. {@code versions}: id → lần sửa cuối (QuestionService.findVersions);
+     * id đã xoá vắng mặt nên cũng đổi khoá. Header chỉ tính cho Word (PDF không có header).
+     * {@code renderVariant}: cấu hình backend (vd export.pdf.formula-mode) → đổi cấu hình không dùng lại file cũ.
+     */
+    static String fingerprint(Subject subj, ExportSpec spec, Map<Long, LocalDateTime> versions, String renderVariant) {
+        StringBuilder b = new StringBuilder();
+        field(b, RENDER_VERSION);
+        field(b, spec.docx() ? "docx" : "pdf");
+        field(b, renderVariant);
+        field(b, spec.exam() ? "exam" : "practice");
+        field(b, String.valueOf(spec.includeAnswers));
+        if (spec.docx()) {
+            field(b, subj.getName());
+            field(b, subj.getCode());
+            field(b, subj.getDepartment() != null ? subj.getDepartment().getName() : "");
+            field(b, spec.form);
+            field(b, spec.level);
+            field(b, spec.semester);
+            field(b, spec.academicYear);
+            field(b, spec.classes);
+            field(b, spec.duration);
+            field(b, spec.paperNo == null ? null : spec.paperNo.toString());
+            field(b, spec.examForm);
+            field(b, spec.program);
+            field(b, spec.mauLabel);
+        }
+        for (Long id : spec.questionIds) {
+            field(b, id + "@" + (versions.containsKey(id) ? versions.get(id) : "-"));
+        }
+        return DigestUtils.sha256Hex(b.toString());
+    }
+
+    // độ dài + nội dung: không có 2 bộ trường khác nhau nối ra cùng 1 chuỗi
+    private static void field(StringBuilder b, String v) {
+        if (v == null) b.append("-1:");
+        else b.append(v.length()).append(':').append(v);
+    }
+
+    /**
+     * Hit → writer mở file cache ngay trong writeTo (writer không bao giờ được gọi — client huỷ, job bị huỷ —
+     * thì không giữ file descriptor; đã mở thì bị evict giữa chừng vẫn đọc được). File bị evict giữa lúc tạo
+     * writer và lúc ghi → render lại như miss.
+     * Miss → writer render như cũ, đồng thời chép ra file tạm và đưa vào cache khi ghi xong trọn vẹn.
+     * Render thiếu ảnh (quá deadline tải ảnh / ảnh lỗi → placeholder) không được cache, lần export sau render lại.
+     */
+    DocumentWriter writer(String key, Supplier<ExportEngine.Prepared> render) {
+        if (maxBytes <= 0) return render.get().writer();
+        if (!contains(key)) return miss(key, render);
+
+        return out -> {
+            InputStream in = open(key);
+            if (in == null) {
+                miss(key, render).writeTo(out);
+                return;
+            }
+            hits.increment();
+            try (in) {
+                in.transferTo(out);
+            }
+        };
+    }
+
+    private DocumentWriter miss(String key, Supplier<ExportEngine.Prepared> render) {
+        misses.increment();
+        ExportEngine.Prepared prepared = render.get();
+        DocumentWriter w = prepared.writer();
+        if (!prepared.complete()) return w;
+        return out -> {
+            Path tmp;
+            try {
+                tmp = Files.createTempFile(dir, key, ".part");
+            } catch (IOException e) {
+                w.writeTo(out); // cache đĩa là tuỳ chọn
+                return;
+            }
+            CopyingStream copy = new CopyingStream(out, tmp);
+            try {
+                w.writeTo(copy);
+            } catch (IOException | RuntimeException e) {
+                copy.discard();
+                throw e;
+            }
+            if (copy.finish()) put(key, tmp);
+        };
+    }
+
+    /** Ghi ra client, chép sang file tạm; lỗi ghi file chỉ bỏ bản chép, không làm hỏng export */
+    private static final class CopyingStream extends FilterOutputStream {
+        private final Path tmp;
+        private OutputStream file;
+
+        CopyingStream(OutputStream client, Path tmp) throws IOException {
+            super(client);
+            this.tmp = tmp;
+            this.file = new BufferedOutputStream(Files.newOutputStream(tmp));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (file != null) {
+                try {
+                    file.write(b, off, len);
+                } catch (IOException e) {
+                    discard();
+                }
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush(); // writer không đóng stream của client
+        }
+
+        /** true nếu file tạm đầy đủ */
+        boolean finish() {
+            if (file == null) return false;
+            try {
+                file.close();
+                return true;
+            } catch (IOException e) {
+                discard();
+                return false;
+            }
+        }
+
+        void discard() {
+            if (file != null) {
+                try { file.close(); } catch (IOException ignore) {}
+                file = null;
+            }
+            try { Files.deleteIfExists(tmp); } catch (IOException ignore) {}
+        }
+    }
+
+    /* ==================== index ==================== */
+
+    /** Nạp lại index từ lần chạy trước (cũ nhất trước → bị evict trước), xoá file tạm còn sót */
+    private void indexDisk() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+                    .forEach(p -> {
+                        String name = p.getFileName().toString();
+                        if (name.endsWith(".bin")) {
+                            long size = p.toFile().length();
+                            index.put(name.substring(0, name.length() - 4), size);
+                            bytes += size;
+                        } else if (name.endsWith(".part")) {
+                            p.toFile().delete();
+                        }
+                    });
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + ".bin");
+    }
+
+    private synchronized boolean contains(String key) {
+        return index.containsKey(key); // không đổi thứ tự LRU, open() mới tính là dùng
+    }
+
+    private InputStream open(String key) {
+        synchronized (this) {
+            if (index.get(key) == null) return null; // get() cũng cập nhật thứ tự LRU
+        }
+        try {
+            return new BufferedInputStream(Files.newInputStream(file(key)));
+        } catch (IOException e) {
+            synchronized (this) {
+                Long size = index.remove(key);
+                if (size != null) bytes -= size;
+            }
+            return null;
+        }
+    }
+
+    private void put(String key, Path tmp) {
+        long size;
+        try {
+            size = Files.size(tmp);
+            if (size > maxBytes) {
+                Files.deleteIfExists(tmp);
+                return;
+            }
+            // move nguyên tử: luồng đọc không thấy file ghi dở
+            Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignore) {}
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = index.remove(key);
+            if (old != null) bytes -= old;
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (bytes + size > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                bytes -= e.getValue();
+                evicted.add(e.getKey());
+                it.remove();
+            }
+            index.put(key, size);
+            bytes += size;
+        }
+        for (String k : evicted) {
+            try { Files.deleteIfExists(file(k)); } catch (IOException ignore) {}
+        }
+    }
+
+    synchronized long bytes() { return bytes; }
+}
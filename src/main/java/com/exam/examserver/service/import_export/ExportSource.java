@@ -0,0 +1,13 @@
+package com.exam.examserver.service.import_export;
+
+import java.util.List;
+
+/** Nguồn danh sách câu hỏi cho {@link ExportEngine} */
+public sealed interface ExportSource {
+
+    /** Câu hỏi theo id, giữ thứ tự đã chọn */
+    record Questions(List<Long> ids) implements ExportSource {}
+
+    /** Câu hỏi của 1 quiz theo thứ tự trong quiz */
+    record Quiz(Long quizId) implements ExportSource {}
+}
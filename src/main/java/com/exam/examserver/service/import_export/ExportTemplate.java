@@ -0,0 +1,85 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exporting.ExportSpec;
+import com.exam.examserver.model.exam.Subject;
+
+import java.util.List;
+
+/**
+ * Mẫu trình bày của 1 lần export, dùng chung cho backend PDF và DOCX: header/footer, cách đánh số,
+ * nhãn phương án. PDF hiện chưa có header nên chỉ dùng phần nhãn/tiền tố.
+ */
+public sealed interface ExportTemplate {
+
+    /** Nhãn phương án A–D (kèm khoảng trắng) */
+    default List<String> optionLabels() {
+        return List.of("a) ", "b) ", "c) ", "d) ");
+    }
+
+    /** Tiền tố dòng đầu của nội dung câu hỏi */
+    default String contentPrefix() {
+        return "";
+    }
+
+    /** Ngân hàng ôn tập: header bảng học phần, câu xếp theo chương ("CHƯƠNG n", "n.k") */
+    record Practice(
+            String bankTitle,    // "NGÂN HÀNG CÂU HỎI THI TỰ LUẬN" | "… TRẮC NGHIỆM"
+            String subjectName,  // Tên học phần
+            String subjectCode,  // Mã học phần
+            String faculty,      // Ngành đào tạo (nullable)
+            String level         // Trình độ đào tạo
+    ) implements ExportTemplate {}
+
+    /** Đề thi: header/footer chuẩn học viện, "Câu n" theo thứ tự chọn */
+    record Exam(
+            String institute,   // ví dụ: "HỌC VIỆN CÔNG NGHỆ BƯU CHÍNH VIỄN THÔNG"
+            String faculty,     // KHOA: (vd "Công nghệ thông tin")
+            String program,     // BỘ MÔN / Chuyên ngành (vd "Khoa học máy tính")
+            String subjectName,
+            String subjectCode,
+            String semester,    // "I", "II", "Hè", ...
+            String academicYear,// "2024-2025"
+            String classes,     // "D18CN, D18AT"
+            String duration,    // "90 phút"
+            Integer paperNo,    // null -> ẩn
+            String examForm,    // "Hình thức thi viết"
+            String mauLabel     // "Mẫu 3a" (có thể null)
+    ) implements ExportTemplate {}
+
+    /** Quiz: không header, "Question n", phương án "A. " */
+    record Quiz() implements ExportTemplate {
+        @Override
+        public List<String> optionLabels() {
+            return List.of("A. ", "B. ", "C. ", "D. ");
+        }
+
+        @Override
+        public String contentPrefix() {
+            return "Content: ";
+        }
+    }
+
+    /** Mẫu cho export câu hỏi theo spec; header lấy từ học phần */
+    static ExportTemplate of(Subject subj, ExportSpec spec) {
+        String department = subj.getDepartment() != null ? subj.getDepartment().getName() : "";
+        if (!spec.exam()) {
+            String bankTitle = "NGÂN HÀNG CÂU HỎI THI " +
+                    ("TRAC_NGHIEM".equalsIgnoreCase(spec.form) ? "TRẮC NGHIỆM" : "TỰ LUẬN");
+            return new Practice(bankTitle, subj.getName(), subj.getCode(), department, spec.level);
+        }
+        return new Exam(
+                "HỌC VIỆN CÔNG NGHỆ BƯU CHÍNH VIỄN THÔNG",
+                department,
+                (spec.program == null ? "" : spec.program),
+                subj.getName(),
+                subj.getCode(),
+                (spec.semester == null ? "" : spec.semester),
+                (spec.academicYear == null ? "" : spec.academicYear),
+                (spec.classes == null ? "" : spec.classes),
+                (spec.duration == null ? "" : spec.duration),
+                spec.paperNo,
+                (spec.examForm == null ? "" : spec.examForm),
+                (spec.mauLabel == null ? "" : spec.mauLabel)
+        );
+    }
+}
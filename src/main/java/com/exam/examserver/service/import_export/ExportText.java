@@ -0,0 +1,37 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.util.TextNormalize;
+
+/** Xử lý chuỗi dùng chung cho các backend export */
+final class ExportText {
+
+    private ExportText() {}
+
+    static boolean hasText(String s) {
+        return s != null && !s.isBlank() && !"null".equalsIgnoreCase(s.trim());
+    }
+
+    static String prettyMathSpaces(String s) {
+        if (s == null) return null;
+        String out = s;
+        out = out.replaceAll("\\s*([∧∨≡⇒=+\\-×÷])\\s*", " $1 ");
+        out = out.replaceAll("\\s{2,}", " ").trim();
+        return out;
+    }
+
+    static String safeText(String s) {
+        if (s == null) return "";
+        String t = TextNormalize.remapPUA(s);
+        t = TextNormalize.normalizePreserveNewlines(t);
+        t = TextNormalize.normalizeSuperSubRuns(t);
+        return t;
+    }
+
+    /** Cloudinary URL → PNG (thêm 'f_png' sau '/upload/'); URL khác giữ nguyên */
+    static String forcePng(String url) {
+        if (url == null) return null;
+        int i = url.indexOf("/upload/");
+        if (i < 0) return url;
+        return url.substring(0, i + 8) + "f_png/" + url.substring(i + 8);
+    }
+}
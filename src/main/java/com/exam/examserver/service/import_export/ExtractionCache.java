@@ -0,0 +1,158 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.ExtractResult;
+import com.exam.examserver.dto.importing.ImportPreviewStore.ImageSpill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Cache kết quả extract theo SHA-256 nội dung file: giáo viên upload lại cùng 1 file (sửa định dạng rồi thử lại)
+ * thì bỏ qua extract DOCX/PDF/OCR, vào thẳng bước parse. LRU theo tổng byte (text + ảnh) và có TTL.
+ *
+ * Heap chỉ giữ text + offset ảnh: ảnh của mỗi entry spill ra 1 file tạm mmap ({@link ImageSpill}, như
+ * session preview), chỉ copy ra byte[] trong lúc 1 request dùng. Kết quả thiếu do lỗi tạm thời
+ * ({@link ExtractResult#isPartial()}, vd OCR không chạy được) không được cache.
+ *
+ * Metrics (Micrometer global registry):
+ *  - import.extract.cache{result=hit|miss} : số lần tra cache
+ *  - import.extract.cache.bytes            : tổng byte đang giữ
+ *  - import.extract.cache.entries          : số entry
+ */
+@Component
+class ExtractionCache {
+
+    private record Entry(String text, ImageSpill images, long bytes, Instant expiresAt) {}
+
+    // access-order → duyệt từ đầu là entry ít dùng nhất (LRU)
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Path spillDir;
+    private final long maxBytes;
+    private final Duration ttl;
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    ExtractionCache(@Value("${import.extract-cache.max-bytes:67108864}") long maxBytes,
+                    @Value("${import.extract-cache.ttl-min:60}") long ttlMinutes,
+                    @Value("${import.preview.spill-dir:}") String spillDir) throws IOException {
+        this.spillDir = (spillDir == null || spillDir.isBlank())
+                ? Path.of(System.getProperty("java.io.tmpdir"))
+                : Files.createDirectories(Path.of(spillDir));
+        this.maxBytes = maxBytes;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+
+        this.hits = Counter.builder("import.extract.cache").tag("result", "hit")
+                .description("Extract lấy từ cache").register(Metrics.globalRegistry);
+        this.misses = Counter.builder("import.extract.cache").tag("result", "miss")
+                .description("Extract phải chạy lại").register(Metrics.globalRegistry);
+        Gauge.builder("import.extract.cache.bytes", this, c -> c.bytes())
+                .description("Tổng byte text (heap) + ảnh (file tạm) trong cache extract")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("import.extract.cache.entries", this, c -> c.entries())
+                .description("Số file đang có trong cache extract")
+                .register(Metrics.globalRegistry);
+    }
+
+    /** Khoá = loại extractor + SHA-256 của byte upload (cùng byte nhưng khác đuôi file thì extract khác) */
+    static String key(String kind, byte[] raw) {
+        return kind + ':' + DigestUtils.sha256Hex(raw);
+    }
+
+    ExtractResult get(String key) {
+        Entry e;
+        synchronized (this) {
+            e = map.get(key);
+            if (e != null && Instant.now().isAfter(e.expiresAt())) {
+                map.remove(key);
+                release(e);
+                e = null;
+            }
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // copy ngoài lock; entry bị evict giữa chừng vẫn đọc được (mapping còn hiệu lực sau khi xoá file)
+        List<byte[]> images = new ArrayList<>(e.images().size());
+        for (int i = 0; i < e.images().size(); i++) images.add(e.images().get(i));
+        return new ExtractResult(e.text(), images);
+    }
+
+    void put(String key, ExtractResult r) {
+        if (r.isPartial()) return; // OCR lỗi tạm thời → lần upload sau extract lại
+        long size = sizeOf(r);
+        if (size > maxBytes) return; // 1 file vượt cả ngân sách → không cache, tránh đẩy hết entry khác ra
+
+        ImageSpill spill;
+        try {
+            spill = ImageSpill.write(spillDir, r.getImages()); // IO ngoài lock
+        } catch (IOException ex) {
+            return; // cache là tuỳ chọn
+        }
+        Entry e = new Entry(r.getText(), spill, size, Instant.now().plus(ttl));
+
+        synchronized (this) {
+            Entry old = map.remove(key);
+            if (old != null) release(old);
+
+            Iterator<Entry> it = map.values().iterator();
+            while (totalBytes + size > maxBytes && it.hasNext()) {
+                Entry victim = it.next();
+                it.remove();
+                release(victim);
+            }
+            map.put(key, e);
+            totalBytes += size;
+        }
+    }
+
+    @Scheduled(fixedDelay = 300_000) // 5 phút dọn entry hết hạn
+    public synchronized void gc() {
+        Instant now = Instant.now();
+        Iterator<Entry> it = map.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (now.isAfter(e.expiresAt())) { it.remove(); release(e); }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void clear() {
+        map.values().forEach(this::release);
+        map.clear();
+    }
+
+    private void release(Entry e) {
+        totalBytes -= e.bytes();
+        e.images().delete();
+    }
+
+    synchronized long bytes() { return totalBytes; }
+
+    synchronized int entries() { return map.size(); }
+
+    private static long sizeOf(ExtractResult r) {
+        long n = (r.getText() == null ? 0 : 2L * r.getText().length());
+        for (byte[] b : r.getImages()) n += (b == null ? 0 : b.length);
+        return n;
+    }
+}
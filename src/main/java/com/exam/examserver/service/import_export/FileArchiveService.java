@@ -4,15 +4,24 @@ import com.exam.examserver.enums.ArchiveVariant;
 import com.exam.examserver.enums.ReviewStatus;
 import com.exam.examserver.model.exam.FileArchive;
 import com.exam.examserver.repo.FileArchiveRepository;
+import com.exam.examserver.service.impl.StatsChangedEvent;
+import com.exam.examserver.service.impl.StatsRollupService;
 import com.exam.examserver.storage.FileArchiveStorage;
 import com.exam.examserver.storage.GcsObjectHelper;
 import com.exam.examserver.storage.GcsSignedUrl;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
 import java.time.*;
 import java.util.Map;
 import java.util.UUID;
@@ -24,16 +33,51 @@ public class FileArchiveService {
     private final FileArchiveRepository fileRepo;
     private final GcsSignedUrl signer;
     private final GcsObjectHelper gcs;
+    private final StatsRollupService rollup;
+    private final ApplicationEventPublisher events;
     private final ObjectMapper om = new ObjectMapper();
 
     public FileArchiveService(FileArchiveStorage storage,
                               FileArchiveRepository fileRepo,
                               GcsSignedUrl signer,
-                              GcsObjectHelper gcs) {
+                              GcsObjectHelper gcs,
+                              StatsRollupService rollup,
+                              ApplicationEventPublisher events) {
         this.storage = storage;
         this.fileRepo = fileRepo;
         this.signer = signer;
         this.gcs = gcs;
+        this.rollup = rollup;
+        this.events = events;
+    }
+
+    /** Lưu record mới + cộng vào rollup thống kê */
+    private FileArchive insert(FileArchive fa) {
+        FileArchive saved = fileRepo.save(fa);
+        updateRollup(() -> rollup.archiveAdded(saved));
+        return saved;
+    }
+
+    /**
+     * Rollup ghi trong transaction riêng, sau khi file đã lưu → lỗi ở đây chỉ log, không báo lỗi cho thao tác
+     * đã thành công; đối soát hằng đêm của StatsRollupService dựng lại các ngày bị lệch.
+     */
+    private static void updateRollup(Runnable delta) {
+        try {
+            delta.run();
+        } catch (RuntimeException e) {
+            System.err.println("[stats rollup] bỏ qua delta file lưu trữ: " + e);
+        }
+    }
+
+    /** null nếu không chụp được → bỏ delta của thao tác này */
+    private StatsRollupService.ArchiveSnapshot snapshot(FileArchive fa) {
+        try {
+            return rollup.snapshot(fa);
+        } catch (RuntimeException e) {
+            System.err.println("[stats rollup] không chụp được file lưu trữ " + fa.getId() + ": " + e);
+            return null;
+        }
     }
 
     /** Lưu trực tiếp vào archives/... (APPROVED). */
@@ -56,17 +100,8 @@ public class FileArchiveService {
         fa.setPublicUrl(put.publicUrl());
         fa.setMetaJson(meta == null ? "{}" : om.writeValueAsString(meta));
 
-        if ("EXPORT".equalsIgnoreCase(kind) && meta != null) {
-            String v = String.valueOf(meta.getOrDefault("variant", "")).toUpperCase();
-            if ("EXAM".equals(v))      fa.setVariant(ArchiveVariant.EXAM);
-            else if ("PRACTICE".equals(v)) fa.setVariant(ArchiveVariant.PRACTICE);
-
-            String fmt = String.valueOf(meta.getOrDefault("format","")).toUpperCase();
-            if ("PDF".equals(fmt) || "DOCX".equals(fmt) || "WORD".equals(fmt)) {
-                fa.setExportFormat("WORD".equals(fmt) ? "DOCX" : fmt);
-            }
-        }
-        return fileRepo.save(fa);
+        if ("EXPORT".equalsIgnoreCase(kind)) applyExportMeta(fa, meta);
+        return insert(fa);
     }
 
     /** Lưu PENDING vào tmp/archives/... (khi user cần duyệt). */
@@ -89,20 +124,111 @@ public class FileArchiveService {
         fa.setPublicUrl("");
         fa.setMetaJson(meta == null ? "{}" : om.writeValueAsString(meta));
 
-        if (meta != null) {
-            String v = String.valueOf(meta.getOrDefault("variant", "")).toUpperCase();
-            if ("EXAM".equals(v))      fa.setVariant(ArchiveVariant.EXAM);
-            else if ("PRACTICE".equals(v)) fa.setVariant(ArchiveVariant.PRACTICE);
+        applyExportMeta(fa, meta);
+
+        fa.setReviewStatus(ReviewStatus.PENDING);
+        fa.setSubmittedAt(Instant.now());
+        return insert(fa);
+    }
+
+    /**
+     * Lưu export đang được stream về client mà không giữ cả file trên heap: byte ghi qua {@link ExportUpload#tee}
+     * đi thẳng vào upload resumable GCS và được băm SHA-256 dần. pending=true → tmp/archives/ (PENDING),
+     * ngược lại archives/ (APPROVED) như {@link #savePendingExport} / {@link #save}.
+     */
+    public ExportUpload openExportUpload(boolean pending, Long subjectId, Long userId,
+                                         String filename, String mimeType, Map<String, Object> meta) {
+        String safe = (filename == null || filename.isBlank()) ? "file.bin" : filename;
+        String key = (pending ? "tmp/archives/" : "archives/") + UUID.randomUUID() + "_" + safe;
+        return new ExportUpload(pending, key, subjectId, userId, filename,
+                mimeType == null ? "application/octet-stream" : mimeType, meta);
+    }
+
+    /** Không gọi {@link #finish} (lỗi giữa chừng) thì upload không được chốt → không có object, không có record */
+    public final class ExportUpload {
+        private final boolean pending;
+        private final String key;
+        private final Long subjectId;
+        private final Long userId;
+        private final String filename;
+        private final String mimeType;
+        private final Map<String, Object> meta;
+
+        private final OutputStream gcsOut;
+        private final MessageDigest sha = DigestUtils.getSha256Digest();
+        private long size;
+
+        private ExportUpload(boolean pending, String key, Long subjectId, Long userId,
+                             String filename, String mimeType, Map<String, Object> meta) {
+            this.pending = pending;
+            this.key = key;
+            this.subjectId = subjectId;
+            this.userId = userId;
+            this.filename = filename;
+            this.mimeType = mimeType;
+            this.meta = meta;
+            this.gcsOut = Channels.newOutputStream(gcs.openWriter(key, mimeType));
+        }
+
+        /** Ghi đồng thời ra {@code client} và GCS; close() không đóng client (container lo) */
+        public OutputStream tee(OutputStream client) {
+            return new FilterOutputStream(client) {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    gcsOut.write(b, off, len);
+                    sha.update(b, off, len);
+                    size += len;
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+
+        /** Chốt upload rồi tạo record với size + SHA-256 đã tính khi stream */
+        public FileArchive finish() throws Exception {
+            gcsOut.close();
 
-            String fmt = String.valueOf(meta.getOrDefault("format","")).toUpperCase();
-            if ("PDF".equals(fmt) || "DOCX".equals(fmt) || "WORD".equals(fmt)) {
-                fa.setExportFormat("WORD".equals(fmt) ? "DOCX" : fmt);
+            FileArchive fa = new FileArchive();
+            fa.setKind("EXPORT");
+            fa.setSubjectId(subjectId);
+            fa.setUserId(userId);
+            fa.setFilename(filename);
+            fa.setMimeType(mimeType);
+            fa.setSizeBytes(size);
+            fa.setSha256(Hex.encodeHexString(sha.digest()));
+            fa.setStorage("GCS");
+            fa.setStorageKey(key);
+            fa.setPublicUrl("");
+            fa.setMetaJson(meta == null ? "{}" : om.writeValueAsString(meta));
+            applyExportMeta(fa, meta);
+
+            if (pending) {
+                fa.setReviewStatus(ReviewStatus.PENDING);
+                fa.setSubmittedAt(Instant.now());
             }
+            return insert(fa);
         }
+    }
 
-        fa.setReviewStatus(ReviewStatus.PENDING);
-        fa.setSubmittedAt(Instant.now());
-        return fileRepo.save(fa);
+    private static void applyExportMeta(FileArchive fa, Map<String, Object> meta) {
+        if (meta == null) return;
+        String v = String.valueOf(meta.getOrDefault("variant", "")).toUpperCase();
+        if ("EXAM".equals(v))      fa.setVariant(ArchiveVariant.EXAM);
+        else if ("PRACTICE".equals(v)) fa.setVariant(ArchiveVariant.PRACTICE);
+
+        String fmt = String.valueOf(meta.getOrDefault("format","")).toUpperCase();
+        if ("PDF".equals(fmt) || "DOCX".equals(fmt) || "WORD".equals(fmt)) {
+            fa.setExportFormat("WORD".equals(fmt) ? "DOCX" : fmt);
+        }
     }
 
     /** Lưu record trỏ đến key đã có sẵn. */
@@ -129,7 +255,7 @@ public class FileArchiveService {
         if ("EXPORT".equalsIgnoreCase(kind) && fa.getReviewStatus() == null) {
             fa.setReviewStatus(storageKey.startsWith("tmp/") ? ReviewStatus.PENDING : ReviewStatus.APPROVED);
         }
-        return fileRepo.save(fa);
+        return insert(fa);
     }
 
     public String signUrl(Long id, Duration ttl) {
@@ -137,16 +263,25 @@ public class FileArchiveService {
         return signer.sign(fa.getStorageKey(), ttl);
     }
 
+    /** URL tải về (attachment, đúng tên file + mime) theo id record — key có thể đã đổi sau approve */
+    public String signDownload(Long id, Duration ttl) {
+        FileArchive fa = fileRepo.findById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return signer.signAttachment(fa.getStorageKey(), ttl, fa.getFilename(), fa.getMimeType());
+    }
+
     public void delete(Long id) throws Exception {
         FileArchive fa = fileRepo.findById(id).orElseThrow();
+        StatsRollupService.ArchiveSnapshot before = snapshot(fa);
         storage.delete(fa.getStorageKey());
         fileRepo.deleteById(id);
+        if (before != null) updateRollup(() -> rollup.archiveRemoved(before));
     }
 
     // ================= Moderation =================
     public void approve(Long id, Long reviewerId) {
         FileArchive fa = fileRepo.findById(id).orElseThrow();
         if (fa.getReviewStatus() != ReviewStatus.PENDING) return;
+        StatsRollupService.ArchiveSnapshot before = snapshot(fa);
 
         String fromKey = fa.getStorageKey();
         String fileName = fromKey.substring(fromKey.lastIndexOf('/') + 1);
@@ -158,11 +293,14 @@ public class FileArchiveService {
         fa.setReviewStatus(ReviewStatus.APPROVED);
         fa.setReviewedAt(Instant.now());
         if (reviewerId != null) fa.setReviewedById(reviewerId);
-        fileRepo.save(fa);
+        FileArchive saved = fileRepo.save(fa);
+        if (before != null) updateRollup(() -> rollup.archiveChanged(before, saved));
+        events.publishEvent(new StatsChangedEvent(before != null ? before.departmentId() : null, fa.getUserId()));
     }
 
     public void reject(Long id, Long reviewerId, String reason, Instant deadlineUtc) {
         FileArchive f = fileRepo.findById(id).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        StatsRollupService.ArchiveSnapshot before = snapshot(f);
 
         f.setReviewStatus(ReviewStatus.REJECTED);
         f.setReviewNote((reason == null || reason.isBlank()) ? null : reason.trim());
@@ -170,6 +308,8 @@ public class FileArchiveService {
         f.setReviewedById(reviewerId);
 
         f.setReviewDeadline(deadlineUtc); // Entity nên để kiểu Instant
-        fileRepo.save(f);
+        FileArchive saved = fileRepo.save(f);
+        if (before != null) updateRollup(() -> rollup.archiveChanged(before, saved));
+        events.publishEvent(new StatsChangedEvent(before != null ? before.departmentId() : null, f.getUserId()));
     }
 }
@@ -0,0 +1,84 @@
+package com.exam.examserver.service.import_export;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache công thức LaTeX đã render dùng chung toàn process: SVG (vector, mặc định) hoặc PNG (vẽ → trim →
+ * encode). Cùng công thức xuất hiện ở nhiều câu / nhiều lần export thì chỉ render 1 lần.
+ * Khoá = (kiểu, cỡ chữ pt, latex); kết quả render là tất định nên không cần TTL, chỉ LRU theo tổng byte.
+ *
+ * Metrics (Micrometer global registry):
+ *  - export.formula.cache{result=hit|miss} : số lần tra cache
+ *  - export.formula.cache.bytes            : tổng byte SVG/PNG đang giữ
+ *  - export.formula.cache.entries          : số công thức
+ */
+@Component
+class FormulaImageCache {
+
+    enum Kind { PNG, SVG }
+
+    /** PNG đã trim hoặc SVG (UTF-8) + kích thước pixel (chưa chia scale) */
+    record Rendered(byte[] data, int width, int height) {}
+
+    // access-order → duyệt từ đầu là entry ít dùng nhất (LRU)
+    private final LinkedHashMap<String, Rendered> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes;
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    FormulaImageCache(@Value("${export.formula-cache.max-bytes:33554432}") long maxBytes) {
+        this.maxBytes = maxBytes;
+
+        this.hits = Counter.builder("export.formula.cache").tag("result", "hit")
+                .description("Công thức lấy từ cache").register(Metrics.globalRegistry);
+        this.misses = Counter.builder("export.formula.cache").tag("result", "miss")
+                .description("Công thức phải render lại").register(Metrics.globalRegistry);
+        Gauge.builder("export.formula.cache.bytes", this, c -> c.bytes())
+                .description("Tổng byte SVG/PNG trong cache công thức")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("export.formula.cache.entries", this, c -> c.entries())
+                .description("Số công thức đang có trong cache")
+                .register(Metrics.globalRegistry);
+    }
+
+    /** Float.toString giữ đúng cỡ chữ (11.5 ≠ 11), tránh 2 cỡ khác nhau dùng chung ảnh */
+    private static String key(Kind kind, String latex, float pt) {
+        return kind.name() + '|' + pt + '|' + latex;
+    }
+
+    synchronized Rendered get(Kind kind, String latex, float pt) {
+        Rendered r = map.get(key(kind, latex, pt));
+        if (r == null) misses.increment(); else hits.increment();
+        return r;
+    }
+
+    synchronized void put(Kind kind, String latex, float pt, Rendered r) {
+        long size = r.data().length;
+        if (size > maxBytes) return;
+
+        Rendered old = map.remove(key(kind, latex, pt));
+        if (old != null) totalBytes -= old.data().length;
+
+        Iterator<Rendered> it = map.values().iterator();
+        while (totalBytes + size > maxBytes && it.hasNext()) {
+            totalBytes -= it.next().data().length;
+            it.remove();
+        }
+        map.put(key(kind, latex, pt), r);
+        totalBytes += size;
+    }
+
+    synchronized long bytes() { return totalBytes; }
+
+    synchronized int entries() { return map.size(); }
+}
@@ -0,0 +1,189 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.ImportJobStatus;
+import com.exam.examserver.dto.importing.PreviewResponse;
+import com.exam.examserver.enums.ImportPhase;
+import com.exam.examserver.enums.QuestionLabel;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Import bất đồng bộ: POST trả jobId ngay, extract + parse chạy trên pool giới hạn,
+ * client poll trạng thái (phase, %) và nhận PreviewResponse khi DONE.
+ */
+@Service
+public class ImportJobService {
+
+    private static class Job {
+        final String id;
+        final Long userId;
+        final Long subjectId;
+        volatile ImportPhase phase = ImportPhase.QUEUED;
+        volatile int percent;
+        volatile String error;
+        volatile PreviewResponse result;
+        volatile Future<?> future;
+        volatile boolean cancelRequested;
+        volatile Instant finishedAt;
+        /** Ai set được true trước quyết định: worker (chạy job) hay cancel() khi job còn trong queue (CANCELLED) */
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Job(Long userId, Long subjectId) {
+            this.id = UUID.randomUUID().toString();
+            this.userId = userId;
+            this.subjectId = subjectId;
+        }
+
+        boolean active() { return finishedAt == null; }
+    }
+
+    private final ImportQuestionService importService;
+    private final ThreadPoolExecutor executor;
+    private final int maxActivePerUser;
+    private final Duration ttl;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public ImportJobService(ImportQuestionService importService,
+                            @Value("${import.jobs.workers:2}") int workers,
+                            @Value("${import.jobs.queue-capacity:16}") int queueCapacity,
+                            @Value("${import.jobs.max-active-per-user:2}") int maxActivePerUser,
+                            @Value("${import.jobs.ttl-min:30}") long ttlMinutes) {
+        this.importService = importService;
+        this.maxActivePerUser = maxActivePerUser;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "import-job-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    public ImportJobStatus submit(Long subjectId, Long userId, MultipartFile file,
+                                  boolean saveCopy, Set<QuestionLabel> defaultLabels) {
+        // Đọc bytes ngay: MultipartFile không còn dùng được sau khi request kết thúc
+        byte[] bytes;
+        try {
+            bytes = file.getBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file", e);
+        }
+        String origName = file.getOriginalFilename();
+        String contentType = file.getContentType();
+
+        Job job = new Job(userId, subjectId);
+        synchronized (this) {
+            long active = jobs.values().stream()
+                    .filter(j -> j.active() && j.userId.equals(userId))
+                    .count();
+            if (active >= maxActivePerUser) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Bạn đang có " + active + " import chưa xong, vui lòng đợi");
+            }
+            jobs.put(job.id, job);
+        }
+
+        try {
+            job.future = executor.submit(() -> run(job, origName, contentType, bytes, saveCopy, defaultLabels));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Hệ thống import đang bận, thử lại sau");
+        }
+        return toStatus(job);
+    }
+
+    private void run(Job job, String origName, String contentType, byte[] bytes,
+                     boolean saveCopy, Set<QuestionLabel> defaultLabels) {
+        if (!job.claimed.compareAndSet(false, true)) return; // đã huỷ khi còn trong queue
+        try {
+            PreviewResponse resp = importService.buildPreview(job.subjectId, origName, contentType, bytes,
+                    saveCopy, defaultLabels, (phase, percent) -> {
+                        if (phase == ImportPhase.DONE) return; // DONE chỉ set sau khi đã có result
+                        job.phase = phase;
+                        job.percent = percent;
+                    });
+            job.result = resp;
+            job.percent = 100;
+            job.phase = ImportPhase.DONE;
+        } catch (Exception e) {
+            if (job.cancelRequested || e instanceof CancellationException) {
+                job.phase = ImportPhase.CANCELLED;
+            } else {
+                job.error = e.getMessage();
+                job.phase = ImportPhase.FAILED;
+            }
+        } finally {
+            job.finishedAt = Instant.now();
+        }
+    }
+
+    /** null nếu không tồn tại hoặc không thuộc user/subject này */
+    public ImportJobStatus status(Long subjectId, Long userId, String jobId) {
+        Job job = find(subjectId, userId, jobId);
+        return job == null ? null : toStatus(job);
+    }
+
+    public ImportJobStatus cancel(Long subjectId, Long userId, String jobId) {
+        Job job = find(subjectId, userId, jobId);
+        if (job == null) return null;
+        if (job.active()) {
+            job.cancelRequested = true;
+            Future<?> f = job.future;
+            if (job.claimed.compareAndSet(false, true)) {
+                // Chưa chạy (còn trong queue) → tự đóng job, rút task khỏi hàng đợi để trả chỗ ngay
+                job.phase = ImportPhase.CANCELLED;
+                job.finishedAt = Instant.now();
+                if (f != null) {
+                    f.cancel(false);
+                    executor.remove((Runnable) f);
+                }
+            } else if (f != null) {
+                f.cancel(true); // đang chạy → ngắt, run() tự chuyển CANCELLED
+            }
+        }
+        return toStatus(job);
+    }
+
+    private Job find(Long subjectId, Long userId, String jobId) {
+        Job job = (jobId == null) ? null : jobs.get(jobId);
+        if (job == null || !job.userId.equals(userId) || !job.subjectId.equals(subjectId)) return null;
+        return job;
+    }
+
+    private ImportJobStatus toStatus(Job job) {
+        ImportJobStatus st = new ImportJobStatus();
+        st.jobId = job.id;
+        st.phase = job.phase;
+        st.percent = job.percent;
+        st.error = job.error;
+        st.result = job.result;
+        return st;
+    }
+
+    @Scheduled(fixedDelay = 300_000) // 5 phút dọn job đã xong
+    public void gc() {
+        Instant cutoff = Instant.now().minus(ttl);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
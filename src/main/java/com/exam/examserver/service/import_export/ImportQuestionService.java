@@ -3,7 +3,7 @@ package com.exam.examserver.service.import_export;
 import com.exam.examserver.dto.exam.CreateQuestionDTO;
 import com.exam.examserver.dto.exam.QuestionDTO;
 import com.exam.examserver.dto.importing.*;
-import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.ImportPhase;
 import com.exam.examserver.enums.QuestionLabel;
 import com.exam.examserver.enums.QuestionType;
 import com.exam.examserver.service.QuestionService;
@@ -11,16 +11,18 @@ import com.exam.examserver.storage.GcsArchiveStorage;
 import com.exam.examserver.storage.GcsObjectHelper;
 import com.exam.examserver.storage.ImageStorageService;
 import com.exam.examserver.util.TextNormalize;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.codec.digest.MessageDigestAlgorithms;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
 
 import static com.exam.examserver.service.import_export.DocxOmmlExtractor.extractPdf;
-import static com.exam.examserver.util.ImportRegex.*;
 
 @Service
 public class ImportQuestionService {
@@ -31,15 +33,9 @@ public class ImportQuestionService {
     private final GcsArchiveStorage gcsArchiveStorage;
     private final GcsObjectHelper gcsObjectHelper;
     private final FileArchiveService fileArchiveService;
-
-    // ====== NEW: regex phục vụ footer + điểm ======
-    private static final Pattern P_FOOTER =
-            Pattern.compile("(?is)\\n?Ghi\\s*chú:.*?(?:\\z|\\n\\s*Họ\\s*tên\\s*SV:.*|\\n\\s*Ký\\s*tên:.*)");
-    private static final Pattern P_HEADER_POINTS =
-            Pattern.compile("^\\s*C(?:âu|au)\\s*\\d+\\s*[:\\.]?\\s*(?:\\(\\s*(\\d+)\\s*đi(?:ể|e)m\\s*\\))?",
-                    Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.MULTILINE);
-    private static final Pattern P_POINTS_INLINE =
-            Pattern.compile("\\(\\s*\\d+\\s*đi(?:ể|e)m\\s*\\)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    private final PreviewParser previewParser;
+    private final ExtractionCache extractionCache;
+    private final boolean streamingDocx;
 
     private static record PreludeCut(String body, String preludeImages) {}
 
@@ -48,94 +44,65 @@ public class ImportQuestionService {
                                  ImportPreviewStore previewStore,
                                  GcsArchiveStorage gcsArchiveStorage,
                                  GcsObjectHelper gcsObjectHelper,
-                                 FileArchiveService fileArchiveService) {
+                                 FileArchiveService fileArchiveService,
+                                 ExtractionCache extractionCache,
+                                 @Value("${import.parser:scan}") String parser,
+                                 @Value("${import.docx-engine:docx4j}") String docxEngine) {
         this.questionService = questionService;
         this.imageStorageService = imageStorageService;
         this.previewStore = previewStore;
         this.gcsArchiveStorage = gcsArchiveStorage;
         this.gcsObjectHelper = gcsObjectHelper;
         this.fileArchiveService = fileArchiveService;
+        this.extractionCache = extractionCache;
+        this.previewParser = "regex".equalsIgnoreCase(parser) ? new RegexPreviewParser() : new ScanningPreviewParser();
+        this.streamingDocx = "stax".equalsIgnoreCase(docxEngine);
     }
 
     /* ==================== PREVIEW / COMMIT ==================== */
 
-    public PreviewResponse buildPreview(Long subjectId, MultipartFile file, boolean saveCopy, Set<QuestionLabel> defaultLabels) {
-        ExtractResult ext = extractTextAndImages(file);
-
-        String full = TextNormalize.normalizePreserveNewlines(ext.getText());
-        full = compactHighlightMarkers(full);
-        full = breakChapterInline(full);
-        full = breakHeaderAnswerInline(full);
+    /** Báo tiến độ cho import job (phase + % hoàn thành) */
+    @FunctionalInterface
+    public interface Progress {
+        void update(ImportPhase phase, int percent);
 
-        List<byte[]> images = ext.getImages();
+        Progress NONE = (phase, percent) -> {};
+    }
 
-        // 1) CẮT THEO CHƯƠNG
-        String[] chapChunks = P_SPLIT_BY_CHAPTER.split(full);
+    public PreviewResponse buildPreview(Long subjectId, MultipartFile file, boolean saveCopy, Set<QuestionLabel> defaultLabels) {
+        byte[] raw;
+        try {
+            raw = file.getBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read file", e);
+        }
+        return buildPreview(subjectId, file.getOriginalFilename(), file.getContentType(), raw,
+                saveCopy, defaultLabels, Progress.NONE);
+    }
 
-        List<PreviewBlock> blocks = new ArrayList<>();
-        int idx = 0;
-        Integer currentChapter = null;
+    /**
+     * Bản không phụ thuộc MultipartFile (job chạy nền sau khi request đã kết thúc).
+     * Ném {@link CancellationException} nếu thread bị interrupt (job bị huỷ).
+     */
+    public PreviewResponse buildPreview(Long subjectId, String origName, String contentType, byte[] fileBytes,
+                                        boolean saveCopy, Set<QuestionLabel> defaultLabels, Progress progress) {
+        progress.update(ImportPhase.EXTRACTING, 0);
+        ExtractResult ext = extractTextAndImages(origName, fileBytes);
+        checkCancelled();
+
+        progress.update(ImportPhase.SPLITTING, 40);
+        List<byte[]> images = ext.getImages();
+        List<PreviewBlock> blocks = previewParser.parse(ext.getText(), images.size(), progress);
 
         Set<QuestionLabel> def = (defaultLabels == null || defaultLabels.isEmpty())
                 ? EnumSet.of(QuestionLabel.PRACTICE) : EnumSet.copyOf(defaultLabels);
-
-        for (String chapRaw : chapChunks) {
-            String chap = chapRaw.trim();
-            if (chap.isEmpty()) continue;
-
-            Integer ch = findChapterNumber(chap);
-            if (ch != null) {
-                currentChapter = ch;
-                chap = stripChapterHeader(chap);
-                chap = removeSectionHeadingLines(chap);
-                chap = cutPreludeBeforeFirstQuestion(chap); // <— thêm dòng này
-            } else {
-                // Preface không có header “Câu …” => bỏ luôn
-                Matcher hasQ = P_SPLIT_BY_HEADER.matcher(chap);
-                if (!hasQ.find()) continue;
-                chap = chap.substring(hasQ.start()).trim();
-            }
-
-            // (khuyến nghị) bỏ footer sớm
-            chap = stripFooter(chap);
-
-            // 2) Cắt theo header câu hỏi
-            String[] qChunks = P_SPLIT_BY_HEADER.split(chap);
-            for (String raw : qChunks) {
-                String block = raw.trim();
-                if (block.isEmpty()) continue;
-                PreviewBlock b = parseOneBlockForPreview(block, images);
-
-                // ——— Bộ lọc block rỗng/nhầm tiêu ngữ (xem mục 3 & 4) ———
-                if (looksLikeDocHeader(block)) continue; // bỏ block là tiêu ngữ/hành chính
-
-                boolean mcOk = (b.questionType == QuestionType.MULTIPLE_CHOICE)
-                        && b.optionA != null && b.optionB != null && b.optionC != null && b.optionD != null;
-
-                boolean hasContent =
-                        (b.content != null && !b.content.isBlank())
-                                || mcOk
-                                || (b.imageIndexes != null && !b.imageIndexes.isEmpty());
-
-                if (!hasContent) continue; // bỏ block rỗng
-
-                idx++;
-                b.labels = EnumSet.copyOf(def);
-                b.index = idx;
-                b.raw = block;
-                if (currentChapter != null) b.chapter = currentChapter;
-                blocks.add(b);
-            }
-        }
+        for (PreviewBlock b : blocks) b.labels = EnumSet.copyOf(def);
 
         var session = previewStore.create(images, blocks);
 
         if (saveCopy) {
             try {
-                byte[] raw = file.getBytes();
-                String origName = file.getOriginalFilename();
-                String contentType = file.getContentType();
-                var put = gcsArchiveStorage.putTmp(raw, contentType, (origName == null ? "import.bin" : origName));
+                var put = gcsArchiveStorage.putTmp(fileBytes, contentType, (origName == null ? "import.bin" : origName));
                 String tempKey = put.storageKey();
 
                 previewStore.attachTempUpload(
@@ -143,7 +110,7 @@ public class ImportQuestionService {
                         tempKey,
                         origName,
                         contentType,
-                        raw.length
+                        fileBytes.length
                 );
             } catch (Exception e) {
                 System.out.println("lỗi: " + e);
@@ -154,19 +121,12 @@ public class ImportQuestionService {
         resp.sessionId = session.id;
         resp.totalBlocks = blocks.size();
         resp.blocks = blocks;
+        progress.update(ImportPhase.DONE, 100);
         return resp;
     }
 
-    private boolean looksLikeDocHeader(String s) {
-        if (s == null) return false;
-        // chỉ xét vài dòng đầu để tránh “ăn” nhầm nội dung thật
-        StringBuilder head = new StringBuilder();
-        int lines = 0;
-        for (String ln : s.split("\\R", -1)) {
-            if (lines++ >= 6) break;
-            head.append(ln).append('\n');
-        }
-        return P_DOC_HEADER_HINT.matcher(head.toString()).find();
+    static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("Import cancelled");
     }
 
     public ImportResult commitPreview(Long subjectId, Long userId, CommitRequest req, boolean saveCopy) {
@@ -178,6 +138,8 @@ public class ImportQuestionService {
 
         Map<Integer, PreviewBlock> base = new HashMap<>();
         for (PreviewBlock b : session.blocks) base.put(b.index, b);
+        List<AcceptedBlock> accepted = new ArrayList<>();
+        List<PendingImages> pendingImages = new ArrayList<>();
 
         for (CommitBlock cb : req.blocks) {
             if (!cb.include) continue;
@@ -214,28 +176,43 @@ public class ImportQuestionService {
                                 : EnumSet.of(QuestionLabel.PRACTICE);
                 dto.setLabels(labels);
 
-                QuestionDTO saved = questionService.create(subjectId, dto, userId, null);
-                Long qId = saved.getId();
+                // validate từng block ở đây để lỗi vẫn báo theo block; insert thì gom 1 lần
+                questionService.validatePayload(dto);
 
-                // ảnh
+                // ảnh: gom lại, upload song song sau khi đã có id câu hỏi
                 List<Integer> imgIdxs = (cb.imageIndexes != null && !cb.imageIndexes.isEmpty())
                         ? cb.imageIndexes : orig.imageIndexes;
-                if (imgIdxs != null && !imgIdxs.isEmpty()) {
-                    List<String> urls = new ArrayList<>();
+                List<Integer> valid = new ArrayList<>();
+                if (imgIdxs != null) {
                     for (Integer i : imgIdxs) {
-                        if (i == null || i < 0 || i >= session.images.size()) continue;
-                        byte[] bytes = session.images.get(i);
-                        String url = imageStorageService.storeImage(bytes, qId, "imported.png", null);
-                        urls.add(url);
+                        if (i != null && i >= 0 && i < session.images.size()) valid.add(i);
                     }
-                    if (!urls.isEmpty()) questionService.addImages(qId, urls);
                 }
-                success++;
+                accepted.add(new AcceptedBlock(cb.index, dto, valid));
             } catch (Exception ex) {
                 errors.add("Block#" + cb.index + ": " + ex.getMessage());
             }
         }
 
+        if (!accepted.isEmpty()) {
+            try {
+                List<CreateQuestionDTO> payloads = new ArrayList<>(accepted.size());
+                for (AcceptedBlock a : accepted) payloads.add(a.dto());
+                List<QuestionDTO> saved = questionService.createBulk(subjectId, payloads, userId);
+
+                for (int i = 0; i < accepted.size(); i++) {
+                    AcceptedBlock a = accepted.get(i);
+                    if (a.imageIndexes().isEmpty()) success++;
+                    else pendingImages.add(new PendingImages(a.blockIndex(), saved.get(i).getId(), a.imageIndexes()));
+                }
+            } catch (Exception ex) {
+                // cả lô rollback → mọi block hợp lệ đều lỗi
+                for (AcceptedBlock a : accepted) errors.add("Block#" + a.blockIndex() + ": " + ex.getMessage());
+            }
+        }
+
+        success += attachImages(session, pendingImages, errors);
+
         if (saveCopy) {
             try {
                 var temp = previewStore.getTempUpload(req.sessionId);
@@ -271,133 +248,62 @@ public class ImportQuestionService {
         return new ImportResult(total, success, errors);
     }
 
-    private PreviewBlock parseOneBlockForPreview(String rawBlock, List<byte[]> allImages) {
-        PreviewBlock b = new PreviewBlock();
-
-        // A) Đọc điểm từ header để set Difficulty
-        Integer pts = null;
-        Matcher headPt = P_HEADER_POINTS.matcher(rawBlock);
-        if (headPt.find()) {
-            String g = headPt.group(1);
-            if (g != null) try { pts = Integer.parseInt(g); } catch (Exception ignore) {}
-        }
-
-        // B) cắt nhãn Answer (chưa phân loại)
-        Matcher ansM = P_ANSWER_LABEL.matcher(rawBlock);
-        String block = rawBlock;
-        String pendingAnswer = null;
-        if (ansM.find()) {
-            pendingAnswer = beautifyMath(sanitizeText(stripInlineMarkers(ansM.group(2).trim())));
-            block = block.substring(0, ansM.start()).trim();
-        }
-
-        // C) bỏ header -> body
-        String body = stripHeader(block);
-
-        // D) DÒ option chỉ để PHÂN LOẠI
-        String bodyForDetect = breakOptionsInline(body);
-        Matcher detectM = P_OPT_EXTRACT.matcher(bodyForDetect);
-        LinkedHashSet<String> keys = new LinkedHashSet<>();
-        int firstOptStart = -1;
-        while (detectM.find()) {
-            if (firstOptStart < 0) firstOptStart = detectM.start();
-            keys.add(detectM.group(1).toUpperCase(Locale.ROOT));
+    private static record AcceptedBlock(int blockIndex, CreateQuestionDTO dto, List<Integer> imageIndexes) {}
+
+    private static record PendingImages(int blockIndex, Long questionId, List<Integer> imageIndexes) {}
+
+    /**
+     * Upload toàn bộ ảnh của commit: băm SHA-256 (đọc thẳng từ vùng mmap của session) để ảnh trùng
+     * chỉ upload 1 lần, upload song song, rồi gắn URL cho mọi câu trong 1 lần persist.
+     *
+     * Câu hỏi đã commit ở createBulk (commitPreview không có transaction bao ngoài) → trả về số block đã tạo
+     * câu hỏi, kể cả khi ảnh lỗi; block thiếu ảnh được ghi vào errors. Gắn ảnh thất bại → xoá các asset
+     * vừa upload (public_id riêng của lần commit này, không câu nào khác dùng) để không bỏ rác trên Cloudinary.
+     */
+    private int attachImages(ImportPreviewStore.Session session, List<PendingImages> pending, List<String> errors) {
+        if (pending.isEmpty()) return 0;
+
+        DigestUtils sha256 = new DigestUtils(MessageDigestAlgorithms.SHA_256);
+        Map<Integer, String> hashOfIndex = new HashMap<>();
+        Map<String, Supplier<byte[]>> sources = new LinkedHashMap<>();
+        for (PendingImages p : pending) {
+            for (Integer i : p.imageIndexes()) {
+                if (hashOfIndex.containsKey(i)) continue;
+                String h = sha256.digestAsHex(session.images.buffer(i));
+                hashOfIndex.put(i, h);
+                sources.putIfAbsent(h, () -> session.images.get(i));
+            }
         }
-        boolean isMC = (keys.size() == 4);
 
-        b.questionType = isMC ? QuestionType.MULTIPLE_CHOICE : QuestionType.ESSAY;
-        b.difficulty = mapPoints(pts); // đặt theo điểm (mặc định C nếu null)
+        Map<String, String> urlByHash = imageStorageService.storeImagesByHash(sources);
 
-        // E) gán Answer đúng field
-        if (pendingAnswer != null) {
-            if (isMC) b.answer = pendingAnswer.toUpperCase(Locale.ROOT);
-            else      b.answerText = pendingAnswer;
+        Map<Long, List<String>> urlsByQuestion = new LinkedHashMap<>();
+        for (PendingImages p : pending) {
+            List<String> urls = new ArrayList<>();
+            for (Integer i : p.imageIndexes()) {
+                String url = urlByHash.get(hashOfIndex.get(i));
+                if (url != null) urls.add(url);
+            }
+            if (!urls.isEmpty()) urlsByQuestion.put(p.questionId(), urls);
+            if (urls.size() != p.imageIndexes().size()) errors.add("Block#" + p.blockIndex() + ": upload ảnh lỗi ("
+                    + (p.imageIndexes().size() - urls.size()) + "/" + p.imageIndexes().size() + ")");
         }
 
-        // F) Parse theo loại
-        if (isMC) {
-            List<String> emph = new ArrayList<>();
-            Matcher optM = P_OPT_EXTRACT.matcher(bodyForDetect);
-            while (optM.find()) {
-                String whole  = optM.group(0);
-                String key    = optM.group(1).toUpperCase(Locale.ROOT);
-                String rawVal = sanitizeText(optM.group(2).trim());
-
-                boolean highlighted = whole.contains("{hl}") || rawVal.contains("{hl}") || rawVal.contains("{/hl}");
-                String val = beautifyMath(stripInlineMarkers(removePointsInline(rawVal)).trim());
-
-                switch (key) {
-                    case "A": b.optionA = val; if (highlighted) emph.add("A"); break;
-                    case "B": b.optionB = val; if (highlighted) emph.add("B"); break;
-                    case "C": b.optionC = val; if (highlighted) emph.add("C"); break;
-                    case "D": b.optionD = val; if (highlighted) emph.add("D"); break;
+        try {
+            questionService.addImages(urlsByQuestion);
+        } catch (Exception ex) {
+            for (PendingImages p : pending) {
+                if (urlsByQuestion.containsKey(p.questionId())) {
+                    errors.add("Block#" + p.blockIndex() + ": đã tạo câu hỏi nhưng gắn ảnh lỗi: " + ex.getMessage());
                 }
             }
-            if ((b.answer == null || b.answer.isBlank()) && !emph.isEmpty()) {
-                b.answer = String.join("", emph).toUpperCase(Locale.ROOT);
-            }
-
-            String stem = (firstOptStart >= 0) ? bodyForDetect.substring(0, firstOptStart).trim() : body.trim();
-            String stemClean = removeAllImagePlaceholders(stripInlineMarkers(removePointsInline(stem)));
-            stemClean = collapseSoftBreaks(stemClean);
-            stemClean = enforceInlineListBreaks(stemClean);
-            b.content = beautifyMath(sanitizeText(stemClean));
-
-        } else {
-            String cont = removeAllImagePlaceholders(stripHl(removePointsInline(body)));
-            cont = collapseSoftBreaks(cont);
-            cont = enforceInlineListBreaks(cont);
-            b.content = beautifyMath(sanitizeText(cont));
-            if (b.answerText == null) b.answerText = "";
-            else b.answerText = beautifyMath(sanitizeText(enforceInlineListBreaks(collapseSoftBreaks(b.answerText))));
-
-        }
-
-        // Ảnh → imageIndexes (từ body sau khi đã gắn placeholder ở PDF)
-        Matcher imgM = P_IMAGE_PLACEHOLDER.matcher(body);
-        while (imgM.find()) {
-            int idx = safeIndex(imgM.group(1));
-            if (idx >= 0 && idx < allImages.size()) b.imageIndexes.add(idx);
+            for (String url : urlByHash.values()) imageStorageService.deleteImage(url);
         }
-
-        // Footer guard
-        b.content = stripFooter(b.content);
-        if (b.answerText != null) b.answerText = stripFooter(b.answerText);
-
-        if (isMC) {
-            if (b.optionA == null || b.optionB == null || b.optionC == null || b.optionD == null)
-                b.warnings.add("Thiếu option A/B/C/D.");
-        } else if (b.content == null || b.content.isBlank()) {
-            b.warnings.add("Nội dung trống.");
-        }
-
-        if (b.content != null) b.content = stripHl(b.content);
-        return b;
+        return pending.size();
     }
 
     /* ==================== helpers ==================== */
 
-    private int safeIndex(String oneBased) { try { return Integer.parseInt(oneBased) - 1; } catch (Exception e) { return -1; } }
-
-    private String removeAllImagePlaceholders(String text) { return P_IMAGE_PLACEHOLDER.matcher(text).replaceAll("").trim(); }
-
-    private String removeSectionHeadingLines(String text) {
-        StringBuilder out = new StringBuilder();
-        for (String line : text.split("\\R")) {
-            String s = sanitizeText(line).trim().toLowerCase(Locale.ROOT);
-            boolean isHeading = s.matches("^(chương|chuong|chapter|mục|muc|phần|phan|bài|bai|câu\\s*hỏi\\s*loại)\\b.*$");
-            if (!isHeading) out.append(line).append('\n');
-        }
-        return out.toString();
-    }
-
-    private String cutPreludeBeforeFirstQuestion(String fullText) {
-        Matcher m = P_SPLIT_BY_HEADER.matcher(fullText);
-        return m.find() ? fullText.substring(m.start()).trim() : fullText;
-    }
-
-    private String stripFooter(String s) { return s == null ? null : P_FOOTER.matcher(s).replaceAll("").trim(); }
-
     private String sanitizeText(String s) { return TextNormalize.normalizeSoftMath(s); }
 
 //    private String beautifyMath(String s) {
@@ -422,30 +328,29 @@ public class ImportQuestionService {
 
     private String firstNonNull(String... candidates) { for (String c : candidates) if (c != null) return c; return null; }
 
-    private static String stripHl(String s) { return s == null ? null : s.replace("{hl}", "").replace("{/hl}", ""); }
+    /* ==================== extract DOCX/PDF ==================== */
 
-    private String removePointsInline(String s) { return s == null ? null : P_POINTS_INLINE.matcher(s).replaceAll("").trim(); }
+    /** Upload lại file không đổi (cùng SHA-256) → lấy kết quả extract từ cache, bỏ qua DOCX/PDF/OCR */
+    private ExtractResult extractTextAndImages(String originalName, byte[] raw) {
+        String name = (originalName==null ? "upload" : originalName).toLowerCase(Locale.ROOT);
+        String kind = name.endsWith(".docx") ? "docx" : name.endsWith(".pdf") ? "pdf" : null;
+        if (kind == null) throw new IllegalArgumentException("Unsupported file type (only .docx/.pdf)");
 
-    private Difficulty mapPoints(Integer pts) {
-        if (pts == null) return Difficulty.C;
-        return switch (pts) {
-            case 1 -> Difficulty.E;
-            case 2 -> Difficulty.D;
-            case 3 -> Difficulty.C;
-            case 4 -> Difficulty.B;
-            case 5 -> Difficulty.A;
-            default -> Difficulty.C;
-        };
-    }
+        String key = ExtractionCache.key(kind, raw);
+        ExtractResult cached = extractionCache.get(key);
+        if (cached != null) return cached;
 
-    /* ==================== extract DOCX/PDF ==================== */
+        ExtractResult ext = extractUncached(name, raw);
+        extractionCache.put(key, ext);
+        return ext;
+    }
 
-    private ExtractResult extractTextAndImages(MultipartFile file) {
-        String name = (file.getOriginalFilename()==null ? "upload" : file.getOriginalFilename()).toLowerCase(Locale.ROOT);
-        try (InputStream is = file.getInputStream()) {
+    private ExtractResult extractUncached(String name, byte[] raw) {
+        try (InputStream is = new ByteArrayInputStream(raw)) {
             if (name.endsWith(".docx")) {
-                try { return DocxOmmlExtractor.extractWord(is); }
-                catch (Exception e) { throw new RuntimeException("DOCX/OMML extract failed", e); }
+                try {
+                    return streamingDocx ? StreamingDocxExtractor.extractWord(is) : DocxOmmlExtractor.extractWord(is);
+                } catch (Exception e) { throw new RuntimeException("DOCX/OMML extract failed", e); }
             } else if (name.endsWith(".pdf")) {
                 return extractPdf(is);
             } else {
@@ -455,49 +360,4 @@ public class ImportQuestionService {
             throw new RuntimeException("Failed to read file", e);
         }
     }
-
-    private String collapseSoftBreaks(String s) {
-        if (s == null) return null;
-        String[] lines = s.split("\\R");
-        StringBuilder out = new StringBuilder();
-        boolean first = true;
-        boolean lastBlank = false;
-
-        for (String line : lines) {
-            String t = line.trim();
-            boolean blank = t.isEmpty();
-            boolean bullet = !blank && P_BULLET_LINE.matcher(t).matches();
-
-            if (blank) {
-                if (!lastBlank && out.length() > 0) out.append("\n\n"); // đoạn mới
-                lastBlank = true;
-                continue;
-            }
-
-            if (first) {
-                out.append(t);
-            } else if (bullet || lastBlank) {
-                out.append('\n').append(t);
-            } else {
-                // nếu dòng trước kết thúc bằng dấu gạch nối -> bỏ gạch và nối liền
-                int L = out.length();
-                if (L > 0 && out.charAt(L - 1) == '-') {
-                    out.setLength(L - 1);
-                    out.append(t);
-                } else {
-                    out.append(' ').append(t);
-                }
-            }
-            first = false;
-            lastBlank = false;
-        }
-        return out.toString().replaceAll("\\s{2,}", " ").trim();
-    }
-
-    private String enforceInlineListBreaks(String s) {
-        if (s == null) return null;
-        // ...". a) ..." -> "\n a) ..."
-        s = s.replaceAll("(?<=\\.|\\?|!|:)\\s+([a-dA-D][\\)\\.])\\s+", "\n$1 ");
-        return s;
-    }
 }
@@ -0,0 +1,164 @@
+package com.exam.examserver.service.import_export;
+
+import com.sun.jna.Pointer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+import net.sourceforge.tess4j.util.LoadLibs;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool OCR dùng chung: N handle Tesseract (1/core) được init sẵn một lần (load traineddata),
+ * chạy trên N worker thread. {@code doOCR} của Tess4J init/dispose engine mỗi lần gọi — ở đây thì không.
+ *
+ * Back-pressure toàn process: tối đa 2 trang/engine (đã render, đang chờ hoặc đang OCR) nằm trong heap,
+ * bất kể có bao nhiêu PDF scan đang import cùng lúc; trang tiếp theo chỉ được render khi có permit.
+ *
+ * Metrics (Micrometer global registry):
+ *  - import.ocr.pool.size   : số handle Tesseract
+ *  - import.ocr.queue.depth : số trang đang chờ engine rảnh
+ *  - import.ocr.page        : latency OCR từng trang
+ */
+final class OcrEngine {
+
+    private static final String LANG = "eng+vie";
+    private static final int DPI = 300;
+
+    private static volatile OcrEngine shared;
+
+    /** Lazy: chỉ init native Tesseract khi thật sự có PDF scan */
+    static OcrEngine shared() {
+        OcrEngine e = shared;
+        if (e == null) {
+            synchronized (OcrEngine.class) {
+                e = shared;
+                if (e == null) shared = e = new OcrEngine(Runtime.getRuntime().availableProcessors());
+            }
+        }
+        return e;
+    }
+
+    private final int size;
+    private final BlockingQueue<TessBaseAPI> handles;
+    private final ThreadPoolExecutor workers;
+    private final Semaphore pagePermits;
+    private final Timer pageTimer;
+
+    /** Render 1 trang thành ảnh (chạy trên thread gọi, sau khi đã có permit) */
+    @FunctionalInterface
+    interface PageRenderer {
+        BufferedImage render() throws IOException;
+    }
+
+    private OcrEngine(int size) {
+        this.size = Math.max(1, size);
+        this.handles = new ArrayBlockingQueue<>(this.size);
+        this.pagePermits = new Semaphore(this.size * 2);
+
+        String datapath = resolveDatapath();
+        for (int i = 0; i < this.size; i++) {
+            TessBaseAPI h = TessAPI1.TessBaseAPICreate();
+            if (TessAPI1.TessBaseAPIInit3(h, datapath, LANG) != 0) {
+                TessAPI1.TessBaseAPIDelete(h);
+                for (TessBaseAPI prev : handles) { TessAPI1.TessBaseAPIEnd(prev); TessAPI1.TessBaseAPIDelete(prev); }
+                throw new IllegalStateException("Tesseract init failed (datapath=" + datapath + ", lang=" + LANG + ")");
+            }
+            TessAPI1.TessBaseAPISetVariable(h, "user_defined_dpi", String.valueOf(DPI));
+            handles.add(h);
+        }
+
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(this.size, this.size, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "ocr-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        Gauge.builder("import.ocr.pool.size", this, x -> x.size)
+                .description("Số Tesseract instance trong pool")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("import.ocr.queue.depth", workers, w -> w.getQueue().size())
+                .description("Số trang đang chờ OCR")
+                .register(Metrics.globalRegistry);
+        this.pageTimer = Timer.builder("import.ocr.page")
+                .description("Thời gian OCR một trang")
+                .register(Metrics.globalRegistry);
+    }
+
+    int size() { return size; }
+
+    /**
+     * Chờ permit, render trang rồi gửi vào pool; permit trả lại khi OCR xong (hoặc render lỗi).
+     * Lỗi OCR → future lỗi (PdfOmmlExtractor coi trang đó rỗng và đánh dấu kết quả thiếu).
+     */
+    CompletableFuture<String> submit(PageRenderer renderer) throws IOException, InterruptedException {
+        pagePermits.acquire();
+        BufferedImage page;
+        try {
+            page = renderer.render();
+        } catch (IOException | RuntimeException e) {
+            pagePermits.release();
+            throw e;
+        }
+        return submit(page).whenComplete((t, e) -> pagePermits.release());
+    }
+
+    private CompletableFuture<String> submit(BufferedImage page) {
+        return CompletableFuture.supplyAsync(() -> {
+            long t0 = System.nanoTime();
+            try {
+                return recognize(page);
+            } finally {
+                pageTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+            }
+        }, workers);
+    }
+
+    private String recognize(BufferedImage bi) {
+        TessBaseAPI h = handles.poll();
+        if (h == null) throw new IllegalStateException("No free Tesseract handle"); // không xảy ra: số worker == số handle
+        try {
+            BufferedImage gray = toGray(bi);
+            ByteBuffer buf = ImageIOHelper.convertImageData(gray);
+            int w = gray.getWidth();
+            TessAPI1.TessBaseAPISetImage(h, buf, w, gray.getHeight(), 1, w);
+            TessAPI1.TessBaseAPISetSourceResolution(h, DPI);
+            Pointer p = TessAPI1.TessBaseAPIGetUTF8Text(h);
+            if (p == null) return "";
+            try {
+                return p.getString(0, "UTF-8");
+            } finally {
+                TessAPI1.TessDeleteText(p);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("OCR failed", e);
+        } finally {
+            TessAPI1.TessBaseAPIClear(h);
+            handles.add(h);
+        }
+    }
+
+    /** SetImage với 1 byte/pixel → cần ảnh TYPE_BYTE_GRAY */
+    private static BufferedImage toGray(BufferedImage bi) {
+        if (bi.getType() == BufferedImage.TYPE_BYTE_GRAY) return bi;
+        BufferedImage g = new BufferedImage(bi.getWidth(), bi.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        g.getGraphics().drawImage(bi, 0, 0, null);
+        return g;
+    }
+
+    /** TESSDATA_PREFIX nếu có, không thì giải nén tessdata/ từ classpath (chạy được trong jar) */
+    private static String resolveDatapath() {
+        String env = System.getenv("TESSDATA_PREFIX");
+        if (env != null && !env.isBlank()) return env;
+        return LoadLibs.extractTessResources("tessdata").getPath();
+    }
+}
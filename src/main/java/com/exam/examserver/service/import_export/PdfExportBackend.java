@@ -0,0 +1,470 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.enums.QuestionType;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.xobject.PdfFormXObject;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.properties.Property;
+import com.itextpdf.svg.converter.SvgConverter;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGeneratorContext;
+import org.apache.batik.svggen.SVGGraphics2D;
+import org.scilab.forge.jlatexmath.TeXFormula;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.exam.examserver.service.import_export.ExportText.*;
+import static com.exam.examserver.util.MathOmmlRenderer.splitTopLevel;
+
+/**
+ * Backend PDF (iText): "Question n", font đề Noto Sans, công thức lite (frac/sqrt/root/overline/cases)
+ * render qua jlatexmath và cache trong {@link FormulaImageCache}.
+ *
+ * Công thức mặc định là vector: jlatexmath vẽ lên Batik SVGGraphics2D (chữ thành path) → iText svg đổi
+ * sang PdfFormXObject; trong 1 document mỗi công thức chỉ có 1 XObject, các lần lặp lại chỉ tham chiếu.
+ * {@code export.pdf.formula-mode=png} quay về ảnh PNG (render gấp 3 rồi thu nhỏ); SVG lỗi cũng rơi về PNG.
+ */
+@Component
+class PdfExportBackend implements ExportBackend {
+
+    private final FormulaImageCache formulaCache;
+    private final PdfFontRegistry fonts;
+    private final boolean vectorFormulas;
+
+    PdfExportBackend(FormulaImageCache formulaCache, PdfFontRegistry fonts,
+                     @Value("${export.pdf.formula-mode:vector}") String formulaMode) {
+        this.formulaCache = formulaCache;
+        this.fonts = fonts;
+        this.vectorFormulas = !"png".equalsIgnoreCase(formulaMode);
+    }
+
+    @Override
+    public String imageUrl(String url) {
+        return forcePng(url);
+    }
+
+    @Override
+    public String renderVariant() {
+        return vectorFormulas ? "formula=vector" : "formula=png";
+    }
+
+    @Override
+    public void write(ExportTemplate template, List<QuestionDTO> questions, ExportImageFetcher.Prefetched images,
+                      boolean includeAnswers, OutputStream out) {
+        try (PdfWriter writer = new PdfWriter(out);
+             PdfDocument pdf = new PdfDocument(writer);
+             Document doc = new Document(pdf)) {
+            writer.setCloseStream(false); // stream của caller (response / tee GCS)
+
+            doc.setFontProvider(fonts.examFontProvider());
+            doc.setProperty(Property.FONT, PdfFontRegistry.EXAM_FAMILIES);
+            Formulas formulas = new Formulas(pdf);
+
+            final float PT_TEXT     = 11f;
+            final float PT_LEADING  = 15.5f;
+            final float PT_EQ_SIZE  = 11.5f;
+            final List<String> labels = template.optionLabels();
+
+            int idx = 0;
+            for (QuestionDTO q : questions) {
+                doc.add(new Paragraph("Question " + (++idx))
+                        .setBold().setFontSize(14)
+                        .setMarginTop(6).setMarginBottom(4));
+
+                String text1 = template.contentPrefix() + prettyMathSpaces(normalizeForPdfKeepNewlines(q.getContent()));
+                for (String line : text1.split("\\R", -1)) {
+                    Paragraph p = buildLineParagraph(PT_LEADING);
+                    addInlineTeXLite(formulas, p, line, PT_EQ_SIZE);
+                    doc.add(p);
+                }
+
+                if (q.getImages() != null && !q.getImages().isEmpty()) {
+                    for (var imgDto : q.getImages()) addPdfImage(doc, images, imgDto.getUrl());
+                } else if (q.getImageUrl() != null) {
+                    addPdfImage(doc, images, q.getImageUrl());
+                }
+
+                if (q.getQuestionType() == QuestionType.MULTIPLE_CHOICE) {
+                    String[] opts = {q.getOptionA(), q.getOptionB(), q.getOptionC(), q.getOptionD()};
+                    for (int k = 0; k < opts.length; k++) {
+                        addOptionLine(doc, formulas, labels.get(k) + prettyMathSpaces(normalizeForPdfKeepNewlines(opts[k])), PT_EQ_SIZE, PT_LEADING);
+                    }
+                }
+
+                if (includeAnswers) {
+                    String ans = (q.getQuestionType() == QuestionType.MULTIPLE_CHOICE)
+                            ? q.getAnswer() : q.getAnswerText();
+                    if (hasText(ans)) {
+                        Paragraph p = buildLineParagraph(PT_LEADING);
+                        addInlineTeXLite(formulas, p, "Answer: " + prettyMathSpaces(safeText(ans)), PT_EQ_SIZE);
+                        doc.add(p);
+                    }
+                }
+
+                doc.add(new Paragraph().setFixedLeading(6f).setMargin(0).setPadding(0));
+            }
+
+            doc.close();
+        } catch (Exception e) {
+            throw new RuntimeException("PDF export failed", e);
+        }
+    }
+
+    // ======= PDF helpers =======
+
+    private void addInlineTeXLite(Formulas formulas, Paragraph par, String line, float eqPt) {
+        if (line == null) { par.add(""); return; }
+
+        int pos = 0;
+        while (pos < line.length()) {
+            int best = line.length();
+            String token = null;
+
+            int iOver = indexOfCI(line, "overline(", pos);
+            int iFrac = indexOfCI(line, "frac(", pos);
+            int iSqrt = indexOfCI(line, "sqrt(", pos);
+            int iRoot = indexOfCI(line, "root(", pos);
+            int iCases= indexOfCI(line, "cases(", pos);
+
+            if (iOver >= 0 && iOver < best) { best = iOver; token = "overline"; }
+            if (iFrac >= 0 && iFrac < best) { best = iFrac; token = "frac"; }
+            if (iSqrt >= 0 && iSqrt < best) { best = iSqrt; token = "sqrt"; }
+            if (iRoot >= 0 && iRoot < best) { best = iRoot; token = "root"; }
+            if (iCases>= 0 && iCases< best) { best = iCases; token = "cases"; }
+
+            if (token == null) {
+                par.add(line.substring(pos));
+                return;
+            }
+
+            if (best > pos) par.add(line.substring(pos, best));
+
+            switch (token) {
+                case "overline": {
+                    int start = best + "overline(".length();
+                    int end = findMatchingParen(line, start);
+                    if (end < 0) { par.add(line.substring(best)); return; }
+                    String body = line.substring(start, end);
+                    Image img = formulas.image("\\overline{" + normalizeBodyForLatex(body) + "}", eqPt);
+                    if (img != null) { img.setMarginTop(-1.2f); img.setMarginBottom(-1.2f); par.add(img); }
+                    else par.add(line.substring(best, end+1));
+                    pos = end + 1;
+                    break;
+                }
+                case "sqrt": {
+                    int start = best + "sqrt(".length();
+                    int end = findMatchingParen(line, start);
+                    if (end < 0) { par.add(line.substring(best)); return; }
+                    String arg = line.substring(start, end);
+                    Image img = formulas.image("\\sqrt{" + normalizeBodyForLatex(arg) + "}", eqPt);
+                    if (img != null) { img.setMarginTop(-1.2f); img.setMarginBottom(-1.2f); par.add(img); }
+                    else par.add(line.substring(best, end+1));
+                    pos = end + 1;
+                    break;
+                }
+                case "root": {
+                    int startDeg = best + "root(".length();
+                    int endDeg = findMatchingParen(line, startDeg);
+                    if (endDeg < 0 || endDeg+1 >= line.length() || line.charAt(endDeg+1)!='(') { par.add(line.substring(best)); return; }
+                    int startBody = endDeg + 2;
+                    int endBody = findMatchingParen(line, startBody);
+                    if (endBody < 0) { par.add(line.substring(best)); return; }
+                    String deg  = line.substring(startDeg, endDeg);
+                    String body = line.substring(startBody, endBody);
+                    Image img = formulas.image("\\sqrt[" + normalizeBodyForLatex(deg) + "]{" + normalizeBodyForLatex(body) + "}", eqPt);
+                    if (img != null) { img.setMarginTop(-1.2f); img.setMarginBottom(-1.2f); par.add(img); }
+                    else par.add(line.substring(best, endBody+1));
+                    pos = endBody + 1;
+                    break;
+                }
+                case "frac": {
+                    int start = best + "frac(".length();
+                    int end = findMatchingParen(line, start);
+                    if (end < 0) { par.add(line.substring(best)); return; }
+                    String inside = line.substring(start, end);
+                    List<String> ab = splitTopLevel(inside, ',');
+                    if (ab.size() != 2) { par.add(line.substring(best, end+1)); pos = end+1; break; }
+                    Image img = formulas.image("\\frac{" + normalizeBodyForLatex(ab.get(0)) + "}{" + normalizeBodyForLatex(ab.get(1)) + "}", eqPt);
+                    if (img != null) { img.setMarginTop(-1.2f); img.setMarginBottom(-1.2f); par.add(img); }
+                    else par.add(line.substring(best, end+1));
+                    pos = end + 1;
+                    break;
+                }
+                case "cases": {
+                    int start = best + "cases(".length();
+                    int end = findMatchingParen(line, start);
+                    if (end < 0) { par.add(line.substring(best)); return; }
+                    List<String> ls = splitTopLevel(line.substring(start, end), ';');
+                    StringBuilder latex = new StringBuilder("\\left\\{\\begin{array}{l}");
+                    for (int k=0;k<ls.size();k++){
+                        if (k>0) latex.append("\\\\");
+                        latex.append(normalizeBodyForLatex(ls.get(k)));
+                    }
+                    latex.append("\\end{array}\\right.");
+                    Image img = formulas.image(latex.toString(), eqPt);
+                    if (img != null) { img.setMarginTop(-1.2f); img.setMarginBottom(-1.2f); par.add(img); }
+                    else par.add(line.substring(best, end+1));
+                    pos = end + 1;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static BufferedImage trimTransparent(BufferedImage src, int pad) {
+        java.awt.Rectangle ink = inkBounds(src, pad);
+        return (ink == null) ? src : src.getSubimage(ink.x, ink.y, ink.width, ink.height);
+    }
+
+    /** Vùng có mực (alpha khác 0) nới thêm pad px, kẹp trong ảnh; null nếu ảnh trống */
+    private static java.awt.Rectangle inkBounds(BufferedImage src, int pad) {
+        int w = src.getWidth(), h = src.getHeight();
+        int top = 0, bottom = h - 1, left = 0, right = w - 1;
+
+        outer:
+        for (; top < h; top++) {
+            for (int x = 0; x < w; x++) if ((src.getRGB(x, top) >>> 24) != 0) break outer;
+        }
+        outer:
+        for (; bottom >= 0; bottom--) {
+            for (int x = 0; x < w; x++) if ((src.getRGB(x, bottom) >>> 24) != 0) break outer;
+        }
+        outer:
+        for (; left < w; left++) {
+            for (int y = top; y <= bottom; y++) if ((src.getRGB(left, y) >>> 24) != 0) break outer;
+        }
+        outer:
+        for (; right >= 0; right--) {
+            for (int y = top; y <= bottom; y++) if ((src.getRGB(right, y) >>> 24) != 0) break outer;
+        }
+
+        if (top > bottom || left > right) return null;
+        top = Math.max(0, top - pad);
+        left = Math.max(0, left - pad);
+        bottom = Math.min(h - 1, bottom + pad);
+        right = Math.min(w - 1, right + pad);
+
+        return new java.awt.Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    private Paragraph buildLineParagraph(float fixedLeading) {
+        return new Paragraph()
+                .setFixedLeading(fixedLeading)
+                .setMarginTop(0).setMarginBottom(2)
+                .setPaddingTop(0).setPaddingBottom(0);
+    }
+
+    private void addOptionLine(Document doc, Formulas formulas, String text, float eqPt, float fixedLeading) {
+        if (!hasText(text)) return;
+        Paragraph p = buildLineParagraph(fixedLeading);
+        addInlineTeXLite(formulas, p, text, eqPt);
+        doc.add(p);
+    }
+
+    private static final float LATEX_SCALE = 3.0f; // render gấp 3 rồi thu nhỏ khi đặt vào PDF cho nét
+
+    /** Công thức của 1 document: XObject theo (cỡ chữ, latex) để công thức lặp lại dùng chung 1 bản */
+    private final class Formulas {
+        private final PdfDocument pdf;
+        private final Map<String, PdfFormXObject> xobjects = new HashMap<>();
+
+        Formulas(PdfDocument pdf) {
+            this.pdf = pdf;
+        }
+
+        Image image(String latex, float targetPt) {
+            if (vectorFormulas) {
+                Image img = vectorImage(latex, targetPt);
+                if (img != null) return img;
+            }
+            return latexToPngImageTight(latex, targetPt);
+        }
+
+        private Image vectorImage(String latex, float targetPt) {
+            FormulaImageCache.Rendered r = rendered(FormulaImageCache.Kind.SVG, latex, targetPt);
+            if (r == null) return null;
+            String key = Float.toString(targetPt) + '|' + latex;
+            PdfFormXObject xobj;
+            if (xobjects.containsKey(key)) {
+                xobj = xobjects.get(key); // null = SVG không đổi được, lần trước đã thử
+            } else {
+                try {
+                    xobj = SvgConverter.convertToXObject(new String(r.data(), StandardCharsets.UTF_8), pdf);
+                } catch (Exception e) {
+                    xobj = null;
+                }
+                xobjects.put(key, xobj);
+            }
+            if (xobj == null) return null;
+            return sized(new Image(xobj), r);
+        }
+    }
+
+    private Image latexToPngImageTight(String latex, float targetPt) {
+        FormulaImageCache.Rendered r = rendered(FormulaImageCache.Kind.PNG, latex, targetPt);
+        if (r == null) return null;
+        return sized(new Image(ImageDataFactory.create(r.data())), r);
+    }
+
+    private static Image sized(Image img, FormulaImageCache.Rendered r) {
+        img.setAutoScale(false);
+        img.setHeight(r.height() / LATEX_SCALE);
+        img.setWidth(r.width() / LATEX_SCALE);
+        return img;
+    }
+
+    private FormulaImageCache.Rendered rendered(FormulaImageCache.Kind kind, String latex, float targetPt) {
+        FormulaImageCache.Rendered r = formulaCache.get(kind, latex, targetPt);
+        if (r == null) {
+            r = (kind == FormulaImageCache.Kind.SVG) ? renderLatexSvg(latex, targetPt) : renderLatexPng(latex, targetPt);
+            if (r == null) return null;
+            formulaCache.put(kind, latex, targetPt, r);
+        }
+        return r;
+    }
+
+    /**
+     * Vẽ cùng cỡ với PNG (gấp LATEX_SCALE), khung SVG = đúng vùng mực mà PNG cắt ra (trimTransparent, pad 2)
+     * → kích thước đặt vào trang và khoảng cách dòng như PNG. Vùng mực lấy từ 1 lần raster (kết quả được cache).
+     * Chữ thành path, không cần font.
+     */
+    private static FormulaImageCache.Rendered renderLatexSvg(String latex, float targetPt) {
+        try {
+            TeXFormula f = new TeXFormula(latex);
+            org.scilab.forge.jlatexmath.TeXIcon icon =
+                    f.createTeXIcon(org.scilab.forge.jlatexmath.TeXConstants.STYLE_TEXT, targetPt * LATEX_SCALE);
+            icon.setInsets(new java.awt.Insets(0,0,0,0));
+
+            BufferedImage bi = rasterize(icon);
+            java.awt.Rectangle ink = inkBounds(bi, 2);
+            if (ink == null) ink = new java.awt.Rectangle(0, 0, bi.getWidth(), bi.getHeight());
+
+            int w = ink.width;
+            int h = ink.height;
+            org.w3c.dom.Document dom = GenericDOMImplementation.getDOMImplementation()
+                    .createDocument("http://www.w3.org/2000/svg", "svg", null);
+            SVGGraphics2D g2 = new SVGGraphics2D(SVGGeneratorContext.createDefault(dom), true);
+            g2.setSVGCanvasSize(new java.awt.Dimension(w, h));
+            g2.setColor(java.awt.Color.BLACK);
+            icon.paintIcon(new javax.swing.JLabel(), g2, -ink.x, -ink.y);
+
+            StringWriter sw = new StringWriter();
+            g2.stream(sw, true);
+            g2.dispose();
+            return new FormulaImageCache.Rendered(sw.toString().getBytes(StandardCharsets.UTF_8), w, h);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static FormulaImageCache.Rendered renderLatexPng(String latex, float targetPt) {
+        try {
+            float jlmSize = targetPt * LATEX_SCALE;
+
+            TeXFormula f = new TeXFormula(latex);
+            org.scilab.forge.jlatexmath.TeXIcon icon =
+                    f.createTeXIcon(org.scilab.forge.jlatexmath.TeXConstants.STYLE_TEXT, jlmSize);
+            icon.setInsets(new java.awt.Insets(0,0,0,0));
+
+            BufferedImage trimmed = trimTransparent(rasterize(icon), 2);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            javax.imageio.ImageIO.write(trimmed, "png", bos);
+            return new FormulaImageCache.Rendered(bos.toByteArray(), trimmed.getWidth(), trimmed.getHeight());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Raster icon lên ảnh ARGB trong suốt (khử răng cưa) */
+    private static BufferedImage rasterize(org.scilab.forge.jlatexmath.TeXIcon icon) {
+        int w = Math.max(1, icon.getIconWidth());
+        int h = Math.max(1, icon.getIconHeight());
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        java.awt.Graphics2D g2 = bi.createGraphics();
+        g2.setRenderingHint(java.awt.RenderingHints.KEY_ANTIALIASING, java.awt.RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(java.awt.RenderingHints.KEY_RENDERING, java.awt.RenderingHints.VALUE_RENDER_QUALITY);
+        g2.setRenderingHint(java.awt.RenderingHints.KEY_TEXT_ANTIALIASING, java.awt.RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setRenderingHint(java.awt.RenderingHints.KEY_FRACTIONALMETRICS, java.awt.RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        g2.setColor(java.awt.Color.BLACK);
+        icon.paintIcon(new javax.swing.JLabel(), g2, 0, 0);
+        g2.dispose();
+        return bi;
+    }
+
+    private int indexOfCI(String s, String needle, int from) {
+        int n = needle.length();
+        for (int i = from; i + n <= s.length(); i++)
+            if (s.regionMatches(true, i, needle, 0, n)) return i;
+        return -1;
+    }
+
+    private int findMatchingParen(String s, int start) {
+        int depth = 1;
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')' && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    private String normalizeBodyForLatex(String s) {
+        if (s == null) return "";
+        String t = s.trim().replaceAll("\\s+", " ");
+        t = t.replaceAll("([A-Za-z0-9])\\s*\\^\\s*([A-Za-z0-9])", "$1^{$2}");
+        t = t.replaceAll("([A-Za-z0-9])\\s*_\\s*([A-Za-z0-9])", "$1_{$2}");
+        return t.replace("∧","\\wedge").replace("∨","\\vee")
+                .replace("⇒","\\Rightarrow").replace("≡","\\equiv")
+                .replace("≤","\\leq").replace("≥","\\geq");
+    }
+
+    private void addPdfImage(Document doc, ExportImageFetcher.Prefetched images, String url) {
+        try {
+            Image img = new Image(ImageDataFactory.create(images.bytes(forcePng(url))));
+            img.scaleToFit(400, 300);
+            doc.add(img);
+        } catch (Exception e) {
+            doc.add(new Paragraph("Error loading image: " + url));
+        }
+    }
+
+    private static String normalizeForPdfKeepNewlines(String s) {
+        if (s == null) return "";
+        s = java.text.Normalizer.normalize(s, java.text.Normalizer.Form.NFC);
+
+        s = s.replace('\u00A0',' ')
+                .replace('\u1680',' ')
+                .replace('\u2000',' ').replace('\u2001',' ').replace('\u2002',' ')
+                .replace('\u2003',' ').replace('\u2004',' ').replace('\u2005',' ')
+                .replace('\u2006',' ').replace('\u2007',' ').replace('\u2008',' ')
+                .replace('\u2009',' ').replace('\u200A',' ')
+                .replace('\u202F',' ').replace('\u205F',' ').replace('\u3000',' ');
+
+        s = s.replaceAll("[\\u0000-\\u0008\\u000B\\u000C\\u000E-\\u001F\\u007F]", "");
+
+        s = s.replace("\uFEFF","")
+                .replace("\u200B","")
+                .replace("\u2060","");
+
+        s = s.replace('','∨').replace('','∧').replace('','≥')
+                .replace('','≤').replace('','=').replace('','→')
+                .replace('','↔').replace('','≡').replace('','≈').replace('',' ');
+
+        return s;
+    }
+}
@@ -0,0 +1,50 @@
+package com.exam.examserver.service.import_export;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Font cho export PDF: đọc từ classpath (chạy được trong jar/Docker, không phụ thuộc thư mục src/)
+ * và parse thành FontProgram đúng 1 lần lúc khởi động.
+ *
+ * PdfFont và FontProvider gắn với từng PdfDocument (FontProvider cache PdfFont theo document) nên
+ * mỗi document lấy bản mới qua {@link #examFontProvider()}; phần đắt là parse TTF thì dùng chung
+ * qua FontSet chứa sẵn FontProgram.
+ */
+@Component
+class PdfFontRegistry {
+
+    static final String NOTO_SANS = "fonts/NotoSans-Regular.ttf";
+    static final String NOTO_SANS_MATH = "fonts/NotoSansMath-Regular.ttf";
+    static final String NOTO_SANS_SYMBOLS2 = "fonts/NotoSansSymbols2-Regular.ttf";
+
+    /** Thứ tự family cho đề (Property.FONT): chữ → ký hiệu → toán */
+    static final String[] EXAM_FAMILIES = {"Noto Sans", "Noto Sans Symbols 2", "Noto Sans Math"};
+
+    private final FontSet examFonts = new FontSet();
+
+    PdfFontRegistry() throws IOException {
+        examFonts.addFont(load(NOTO_SANS), PdfEncodings.IDENTITY_H);
+        examFonts.addFont(load(NOTO_SANS_MATH), PdfEncodings.IDENTITY_H);
+        examFonts.addFont(load(NOTO_SANS_SYMBOLS2), PdfEncodings.IDENTITY_H);
+    }
+
+    /** FontProvider mới cho 1 document, dùng chung FontProgram đã parse */
+    FontProvider examFontProvider() {
+        return new FontProvider(examFonts);
+    }
+
+    private static FontProgram load(String path) throws IOException {
+        try (InputStream in = PdfFontRegistry.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) throw new IOException("Font not found on classpath: " + path);
+            return FontProgramFactory.createFont(in.readAllBytes(), false);
+        }
+    }
+}
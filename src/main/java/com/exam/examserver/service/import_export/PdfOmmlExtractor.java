@@ -25,20 +25,54 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class PdfOmmlExtractor {
 
+    /** Số trang tối thiểu của 1 dải khi chạy song song */
+    static final int PAGES_PER_CHUNK = 8;
+    /** Tài liệu từ số trang này trở lên mới chia dải (tài liệu nhỏ chạy tuần tự nhanh hơn) */
+    static final int PARALLEL_MIN_PAGES = 2 * PAGES_PER_CHUNK;
+
+    /** Số worker extract theo trang = số dải tối đa của 1 tài liệu */
+    private static final int PAGE_WORKERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /** Pool giới hạn cho extract theo trang — dùng chung cho mọi request import */
+    private static final ExecutorService PAGE_POOL = newPagePool();
+
+    private static ExecutorService newPagePool() {
+        int n = PAGE_WORKERS;
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "pdf-extract-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
     /** API cũ: DocxOmmlExtractor.extractPdf sẽ gọi vào đây */
     public static ExtractResult extractPdf(InputStream is) throws IOException {
-        try (PDDocument doc = PDDocument.load(is)) {
+        return extractPdf(is.readAllBytes(), true);
+    }
+
+    /**
+     * @param parallel true → tài liệu lớn được chia thành tối đa {@link #PAGE_WORKERS} dải trang liên tiếp
+     *                 (mỗi dải ≥ {@link #PAGES_PER_CHUNK} trang) chạy song song;
+     *                 false → chạy tuần tự như cũ. Kết quả (text, thứ tự {{imageN}}) giống hệt nhau.
+     */
+    public static ExtractResult extractPdf(byte[] pdf, boolean parallel) throws IOException {
+        try (PDDocument doc = PDDocument.load(pdf)) {
             // 1) Thử strip text “sống”
-            NativeTextAndImages out = extractNative(doc);
+            int pageCount = doc.getNumberOfPages();
+            NativeTextAndImages out = (parallel && pageCount >= PARALLEL_MIN_PAGES)
+                    ? extractNativeParallel(pdf, doc, pageCount)
+                    : extractNative(doc);
 
             if (looksLikeScanned(out)) {
                 // 2) Fallback OCR nếu text quá ít / vô nghĩa
                 NativeTextAndImages ocr = extractByOCR(doc);
-                return new ExtractResult(ocr.text, ocr.images);
+                return new ExtractResult(ocr.text, ocr.images, ocr.partial);
             }
             return new ExtractResult(out.text, out.images);
         }
@@ -51,27 +85,104 @@ public class PdfOmmlExtractor {
     private static class NativeTextAndImages {
         String text;
         List<byte[]> images = new ArrayList<>();
+        boolean partial;   // OCR không chạy được / lỗi ở ít nhất 1 trang
+    }
+
+    /** Kết quả thô của một dải trang [fromPage, toPage) — ảnh đánh số cục bộ từ 1 */
+    private static class PageChunk {
+        String raw;
+        Map<Integer, List<LayoutStripper.Line>> pageLines;
+        Map<Integer, List<ImageCollector.ImageToken>> pageImages;
+        List<byte[]> images;
     }
 
     private static NativeTextAndImages extractNative(PDDocument doc) throws IOException {
+        return mergeChunks(List.of(extractChunk(doc, 0, doc.getNumberOfPages())));
+    }
+
+    /**
+     * Chia tài liệu thành vài dải trang liên tiếp (1 dải / worker) rồi ghép kết quả theo đúng thứ tự trang.
+     * PDDocument không thread-safe: dải đầu chạy trên thread gọi với {@code doc} đã load, mỗi dải còn lại
+     * load PDF đúng 1 lần trên worker của nó → tài liệu chỉ bị parse tối đa {@link #PAGE_WORKERS} lần.
+     */
+    private static NativeTextAndImages extractNativeParallel(byte[] pdf, PDDocument doc, int pageCount) throws IOException {
+        int ranges = Math.min(PAGE_WORKERS, pageCount / PAGES_PER_CHUNK);
+        int[] bounds = new int[ranges + 1];
+        for (int i = 0; i <= ranges; i++) bounds[i] = (int) ((long) pageCount * i / ranges);
+
+        List<Future<PageChunk>> futures = new ArrayList<>();
+        for (int i = 1; i < ranges; i++) {
+            final int f = bounds[i];
+            final int t = bounds[i + 1];
+            futures.add(PAGE_POOL.submit(() -> {
+                try (PDDocument part = PDDocument.load(pdf)) {
+                    return extractChunk(part, f, t);
+                }
+            }));
+        }
+
+        List<PageChunk> chunks = new ArrayList<>(ranges);
+        try {
+            chunks.add(extractChunk(doc, bounds[0], bounds[1]));
+            for (Future<PageChunk> fu : futures) chunks.add(fu.get());
+        } catch (IOException | RuntimeException e) {
+            futures.forEach(fu -> fu.cancel(true));
+            throw e;
+        } catch (InterruptedException e) {
+            futures.forEach(fu -> fu.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("PDF extract interrupted");
+        } catch (ExecutionException e) {
+            futures.forEach(fu -> fu.cancel(true));
+            Throwable c = e.getCause();
+            if (c instanceof IOException io) throw io;
+            throw new IOException("PDF extract failed", c);
+        }
+        return mergeChunks(chunks);
+    }
+
+    private static PageChunk extractChunk(PDDocument doc, int fromPage, int toPage) throws IOException {
         // A) thu ảnh + toạ độ theo trang
         ImageCollector collector = new ImageCollector(doc);
-        collector.collect();
+        collector.collect(fromPage, toPage);
 
         // B) strip text + thu lines
-        LayoutStripper stripper = new LayoutStripper();
+        LayoutStripper stripper = new LayoutStripper(fromPage);
         stripper.setSortByPosition(true);
         stripper.setLineSeparator("\n");
         stripper.setWordSeparator(" ");
-        String raw = stripper.getText(doc);
+        stripper.setStartPage(fromPage + 1);   // PDFBox đánh số trang từ 1
+        stripper.setEndPage(toPage);
+
+        PageChunk c = new PageChunk();
+        c.raw = stripper.getText(doc);
+        c.pageLines = stripper.pageLines;
+        c.pageImages = collector.pageImages;
+        c.images = collector.images;
+        return c;
+    }
 
-        // C) chèn placeholder theo dòng (cuối dòng)
-        String merged = insertImagePlaceholders(raw, collector, stripper);
+    /** Ghép các chunk theo thứ tự; đánh lại số ảnh = offset + số cục bộ để {{imageN}} giống bản tuần tự */
+    private static NativeTextAndImages mergeChunks(List<PageChunk> chunks) {
+        StringBuilder raw = new StringBuilder();
+        Map<Integer, List<LayoutStripper.Line>> pageLines = new HashMap<>();
+        Map<Integer, List<ImageCollector.ImageToken>> pageImages = new HashMap<>();
+        NativeTextAndImages res = new NativeTextAndImages();
 
+        for (PageChunk c : chunks) {
+            int offset = res.images.size();
+            raw.append(c.raw);
+            pageLines.putAll(c.pageLines);
+            for (var e : c.pageImages.entrySet()) {
+                for (var tok : e.getValue()) tok.index += offset;
+                pageImages.put(e.getKey(), e.getValue());
+            }
+            res.images.addAll(c.images);
+        }
 
-        NativeTextAndImages res = new NativeTextAndImages();
+        // C) chèn placeholder theo dòng (cuối dòng)
+        String merged = insertImagePlaceholders(raw.toString(), pageLines, pageImages);
         res.text = postNormalize(merged);
-        res.images.addAll(collector.images);
         return res;
     }
 
@@ -115,10 +226,13 @@ public class PdfOmmlExtractor {
             Line(String text, double y) { this.text = text; this.y = y; }
         }
         final Map<Integer, List<Line>> pageLines = new HashMap<>();
-        private int pageIndex = -1;
+        private int pageIndex;   // index tuyệt đối (0-based) của trang đang strip
         private final StringBuilder pageBuf = new StringBuilder();
 
-        LayoutStripper() throws IOException { super(); }
+        LayoutStripper(int firstPage) throws IOException {
+            super();
+            this.pageIndex = firstPage - 1;
+        }
 
         @Override protected void startPage(PDPage page) throws IOException {
             pageIndex++;
@@ -190,12 +304,12 @@ public class PdfOmmlExtractor {
             addOperator(new DrawObject());
         }
 
-        void collect() throws IOException {
-            int i = 0;
-            for (PDPage page : doc.getPages()) {
-                currentPage = i++;
+        /** Thu ảnh của các trang [fromPage, toPage) — index trang tuyệt đối, index ảnh cục bộ */
+        void collect(int fromPage, int toPage) throws IOException {
+            for (int i = fromPage; i < toPage; i++) {
+                currentPage = i;
                 pageImages.put(currentPage, new ArrayList<>());
-                processPage(page);
+                processPage(doc.getPage(i));
             }
         }
 
@@ -246,13 +360,15 @@ public class PdfOmmlExtractor {
     /* ===============================
        Chèn {{imageN}} theo thứ tự đọc
        =============================== */
-    private static String insertImagePlaceholders(String rawByPages, ImageCollector collector, LayoutStripper stripper) {
+    private static String insertImagePlaceholders(String rawByPages,
+                                                  Map<Integer, List<LayoutStripper.Line>> pageLines,
+                                                  Map<Integer, List<ImageCollector.ImageToken>> pageImages) {
         String[] pages = rawByPages.split("\f");
         StringBuilder out = new StringBuilder();
 
         for (int p = 0; p < pages.length; p++) {
-            List<LayoutStripper.Line> lines = stripper.pageLines.getOrDefault(p, Collections.emptyList());
-            List<ImageCollector.ImageToken> imgs = collector.pageImages.getOrDefault(p, Collections.emptyList());
+            List<LayoutStripper.Line> lines = pageLines.getOrDefault(p, Collections.emptyList());
+            List<ImageCollector.ImageToken> imgs = pageImages.getOrDefault(p, Collections.emptyList());
 
             if (lines.isEmpty()) {
                 // không có dòng – chèn tất cả ảnh đầu/trước rồi text
@@ -304,19 +420,48 @@ public class PdfOmmlExtractor {
 
     private static NativeTextAndImages extractByOCR(PDDocument doc) throws IOException {
         NativeTextAndImages res = new NativeTextAndImages();
-        StringBuilder text = new StringBuilder();
+
+        OcrEngine engine;
+        try {
+            engine = OcrEngine.shared();
+        } catch (Exception | LinkageError e) {
+            // Không có native Tesseract / traineddata → như cũ: OCR rỗng
+            res.text = "";
+            res.partial = true;
+            return res;
+        }
+
+        // Back-pressure dùng chung cả process: engine.submit chờ permit trước khi render trang
+        List<CompletableFuture<String>> pages = new ArrayList<>();
 
         org.apache.pdfbox.rendering.PDFRenderer renderer = new org.apache.pdfbox.rendering.PDFRenderer(doc);
         int pageCount = doc.getNumberOfPages();
-        for (int i = 0; i < pageCount; i++) {
-            BufferedImage bi = renderer.renderImageWithDPI(i, 300); // 300dpi cho OCR
-            // Lưu ảnh trang làm “ảnh nguồn” nếu bạn muốn — nhưng ta không cần.
-            // Tách các hình trong trang? OCR không cần, nhưng bạn vẫn có thể detect block ảnh sau này.
-
-            // OCR trang
-            String pageText = ocrImage(bi);
-            // Chèn ảnh nhúng (nếu có) – ở đây với OCR fallback, ta không có vị trí ảnh, chỉ có thể bỏ qua,
-            // hoặc render toàn trang thành 1 ảnh và không chèn placeholder. Thực tế: giữ nguyên text là đủ.
+        try {
+            for (int i = 0; i < pageCount; i++) {
+                final int page = i;
+                // PDFRenderer không thread-safe → render tuần tự; GRAY đủ cho OCR và nhẹ heap hơn RGB 3 lần
+                pages.add(engine.submit(() ->
+                        renderer.renderImageWithDPI(page, 300, org.apache.pdfbox.rendering.ImageType.GRAY)));
+            }
+        } catch (IOException | RuntimeException e) {
+            pages.forEach(f -> f.cancel(true));
+            throw e;
+        } catch (InterruptedException e) {
+            pages.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("OCR interrupted");
+        }
+
+        // Chèn ảnh nhúng (nếu có) – với OCR fallback ta không có vị trí ảnh, giữ nguyên text là đủ.
+        StringBuilder text = new StringBuilder();
+        for (CompletableFuture<String> f : pages) {
+            String pageText;
+            try {
+                pageText = f.join();
+            } catch (CompletionException | CancellationException e) {
+                pageText = "";   // lỗi OCR 1 trang → trang rỗng như cũ
+                res.partial = true;
+            }
             text.append(pageText == null ? "" : pageText.trim()).append("\n\n");
         }
         res.text = postNormalize(text.toString());
@@ -324,21 +469,6 @@ public class PdfOmmlExtractor {
         return res;
     }
 
-    // Tess4J (cần thư viện + traineddata: eng, vie nếu cần)
-    private static String ocrImage(BufferedImage bi) {
-        try {
-            net.sourceforge.tess4j.Tesseract t = new net.sourceforge.tess4j.Tesseract();
-            // Thêm đường dẫn data nếu cần:
-            // t.setDatapath("/path/to/tessdata");
-            t.setLanguage("eng+vie"); // bạn có thể đổi theo input
-            // một số cấu hình cải chất lượng:
-            t.setTessVariable("user_defined_dpi", "300");
-            return t.doOCR(bi);
-        } catch (Exception e) {
-            return "";
-        }
-    }
-
     // Ảnh gần như trắng: phần lớn pixel trắng/transparent và độ biến thiên sáng rất thấp
     private static boolean isNearlyBlank(BufferedImage bi) {
         int w = bi.getWidth(), h = bi.getHeight();
@@ -0,0 +1,18 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.PreviewBlock;
+
+import java.util.List;
+
+/**
+ * Tách text đã extract (DOCX/PDF) thành các PreviewBlock: chương → câu → option/đáp án/ảnh.
+ * Block trả về đã có index (1-based), raw, chapter; labels do caller gán.
+ */
+interface PreviewParser {
+
+    /**
+     * @param text       text thô từ extractor (chưa normalize)
+     * @param imageCount số ảnh đã extract — placeholder {{imageN}} ngoài khoảng này bị bỏ qua
+     */
+    List<PreviewBlock> parse(String text, int imageCount, ImportQuestionService.Progress progress);
+}
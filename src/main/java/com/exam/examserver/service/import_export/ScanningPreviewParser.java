@@ -0,0 +1,430 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.PreviewBlock;
+import com.exam.examserver.enums.ImportPhase;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.util.ImportScanner;
+import com.exam.examserver.util.ImportScanner.OptMatch;
+import com.exam.examserver.util.TextNormalize;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static com.exam.examserver.util.ImportRegex.P_DOC_HEADER_HINT;
+import static com.exam.examserver.util.ImportScanner.*;
+
+/**
+ * Parser preview quét tuần tự bằng {@link ImportScanner}: mỗi pass là 1 vòng duyệt tuyến tính thay cho
+ * chuỗi replaceAll/split/find regex (vốn backtrack nặng ở HL lồng \s* và ở option .+? DOTALL).
+ * Kết quả phải y hệt {@link RegexPreviewParser} — xem PreviewParserGoldenTest.
+ */
+final class ScanningPreviewParser implements PreviewParser {
+
+    private static final String KW_CAU_HDR = foldCase("âu");
+    private static final String KW_AU      = foldCase("au");
+    private static final String KW_DI      = foldCase("đi");
+
+    // Chỉ chạy cho dòng có thể là tiêu đề mục (chữ đầu c/m/p/b), giữ nguyên điều kiện của parser cũ
+    private static final Pattern P_SECTION_HEADING =
+            Pattern.compile("^(chương|chuong|chapter|mục|muc|phần|phan|bài|bai|câu\\s*hỏi\\s*loại)\\b.*$");
+
+    private final RegexPreviewParser fallback = new RegexPreviewParser();
+
+    @Override
+    public List<PreviewBlock> parse(String text, int imageCount, ImportQuestionService.Progress progress) {
+        String full = TextNormalize.normalizePreserveNewlines(text);
+        // \u0085/\u2028/\u2029 là xuống dòng với ^/$ của regex → để parser cũ xử lý cho đúng
+        if (hasExoticLineBreaks(full)) return fallback.parse(text, imageCount, progress);
+
+        full = compactHighlightMarkers(full);
+        full = breakHeaderLines(full);
+
+        // 1) CẮT THEO CHƯƠNG
+        List<String> chapChunks = split(full, ImportScanner::isChapterStart);
+        progress.update(ImportPhase.PARSING, 50);
+
+        List<PreviewBlock> blocks = new ArrayList<>();
+        int idx = 0;
+        Integer currentChapter = null;
+
+        for (int ci = 0; ci < chapChunks.size(); ci++) {
+            ImportQuestionService.checkCancelled();
+            progress.update(ImportPhase.PARSING, 50 + 50 * ci / chapChunks.size());
+            String chap = chapChunks.get(ci);
+
+            int[] head = findChapterHeader(chap);
+            Integer ch = (head == null) ? null : parseIntOrNull(chap.substring(head[1], head[2]));
+            if (ch != null) {
+                currentChapter = ch;
+                chap = (chap.substring(0, head[0]) + chap.substring(head[3])).trim();
+                chap = removeSectionHeadingLines(chap);
+                int q = firstStart(chap, ImportScanner::isHeaderStart);
+                if (q >= 0) chap = chap.substring(q).trim();
+            } else {
+                // Preface không có header “Câu …” => bỏ luôn
+                int q = firstStart(chap, ImportScanner::isHeaderStart);
+                if (q < 0) continue;
+                chap = chap.substring(q).trim();
+            }
+
+            chap = stripFooter(chap);
+
+            // 2) Cắt theo header câu hỏi
+            for (String block : split(chap, ImportScanner::isHeaderStart)) {
+                if (looksLikeDocHeader(block)) continue; // bỏ block là tiêu ngữ/hành chính
+                PreviewBlock b = parseOneBlockForPreview(block, imageCount);
+
+                boolean mcOk = (b.questionType == QuestionType.MULTIPLE_CHOICE)
+                        && b.optionA != null && b.optionB != null && b.optionC != null && b.optionD != null;
+
+                boolean hasContent =
+                        (b.content != null && !b.content.isBlank())
+                                || mcOk
+                                || (b.imageIndexes != null && !b.imageIndexes.isEmpty());
+
+                if (!hasContent) continue; // bỏ block rỗng
+
+                idx++;
+                b.index = idx;
+                b.raw = block;
+                if (currentChapter != null) b.chapter = currentChapter;
+                blocks.add(b);
+            }
+        }
+        return blocks;
+    }
+
+    /** 6 dòng đầu (mỗi dòng kèm '\n') như split("\\R", -1) của parser cũ */
+    private boolean looksLikeDocHeader(String s) {
+        int end = -1;
+        for (int k = 0; k < 6; k++) {
+            end = s.indexOf('\n', end + 1);
+            if (end < 0) break;
+        }
+        String head = (end < 0) ? s + "\n" : s.substring(0, end + 1);
+        return P_DOC_HEADER_HINT.matcher(head).find();
+    }
+
+    PreviewBlock parseOneBlockForPreview(String rawBlock, int imageCount) {
+        PreviewBlock b = new PreviewBlock();
+
+        // A) Đọc điểm từ header để set Difficulty
+        Integer pts = headerPoints(rawBlock);
+
+        // B) cắt nhãn Answer (chưa phân loại)
+        String block = rawBlock;
+        String pendingAnswer = null;
+        int[] ans = findAnswerLabel(rawBlock);
+        if (ans != null) {
+            pendingAnswer = beautifyMath(sanitizeText(stripInlineMarkers(rawBlock.substring(ans[1], ans[2]).trim())));
+            block = block.substring(0, ans[0]).trim();
+        }
+
+        // C) bỏ header -> body
+        String body = stripHeader(block);
+
+        // D) DÒ option: 1 lần quét dùng cho cả phân loại lẫn tách giá trị
+        String bodyForDetect = breakOptionsInline(body);
+        List<OptMatch> opts = findOptions(bodyForDetect);
+        int keyMask = 0;
+        for (OptMatch m : opts) keyMask |= 1 << (m.key() - 'A');
+        boolean isMC = (keyMask == 0b1111);
+
+        b.questionType = isMC ? QuestionType.MULTIPLE_CHOICE : QuestionType.ESSAY;
+        b.difficulty = RegexPreviewParser.mapPoints(pts); // đặt theo điểm (mặc định C nếu null)
+
+        // E) gán Answer đúng field
+        if (pendingAnswer != null) {
+            if (isMC) b.answer = pendingAnswer.toUpperCase(Locale.ROOT);
+            else      b.answerText = pendingAnswer;
+        }
+
+        // F) Parse theo loại
+        if (isMC) {
+            List<String> emph = new ArrayList<>();
+            for (OptMatch m : opts) {
+                String rawVal = sanitizeText(bodyForDetect.substring(m.valueStart(), m.end()).trim());
+                int hl = bodyForDetect.indexOf("{hl}", m.start());
+                boolean highlighted = (hl >= 0 && hl + 4 <= m.end()) || rawVal.contains("{hl}") || rawVal.contains("{/hl}");
+                String val = beautifyMath(stripInlineMarkers(removePointsInline(rawVal)).trim());
+
+                switch (m.key()) {
+                    case 'A': b.optionA = val; if (highlighted) emph.add("A"); break;
+                    case 'B': b.optionB = val; if (highlighted) emph.add("B"); break;
+                    case 'C': b.optionC = val; if (highlighted) emph.add("C"); break;
+                    case 'D': b.optionD = val; if (highlighted) emph.add("D"); break;
+                }
+            }
+            if ((b.answer == null || b.answer.isBlank()) && !emph.isEmpty()) {
+                b.answer = String.join("", emph);
+            }
+
+            String stem = bodyForDetect.substring(0, opts.get(0).start()).trim();
+            String stemClean = removeAllImagePlaceholders(stripInlineMarkers(removePointsInline(stem)));
+            stemClean = collapseSoftBreaks(stemClean);
+            stemClean = enforceInlineListBreaks(stemClean);
+            b.content = beautifyMath(sanitizeText(stemClean));
+
+        } else {
+            String cont = removeAllImagePlaceholders(stripHl(removePointsInline(body)));
+            cont = collapseSoftBreaks(cont);
+            cont = enforceInlineListBreaks(cont);
+            b.content = beautifyMath(sanitizeText(cont));
+            if (b.answerText == null) b.answerText = "";
+            else b.answerText = beautifyMath(sanitizeText(enforceInlineListBreaks(collapseSoftBreaks(b.answerText))));
+        }
+
+        // Ảnh → imageIndexes (từ body sau khi đã gắn placeholder ở PDF)
+        for (String n : imageNumbers(body)) {
+            Integer one = parseIntOrNull(n);
+            int i = (one == null) ? -1 : one - 1;
+            if (i >= 0 && i < imageCount) b.imageIndexes.add(i);
+        }
+
+        // Footer guard
+        b.content = stripFooter(b.content);
+        if (b.answerText != null) b.answerText = stripFooter(b.answerText);
+
+        if (isMC) {
+            if (b.optionA == null || b.optionB == null || b.optionC == null || b.optionD == null)
+                b.warnings.add("Thiếu option A/B/C/D.");
+        } else if (b.content == null || b.content.isBlank()) {
+            b.warnings.add("Nội dung trống.");
+        }
+
+        if (b.content != null) b.content = stripHl(b.content);
+        return b;
+    }
+
+    /* ==================== helpers (cùng ngữ nghĩa với RegexPreviewParser) ==================== */
+
+    private static Integer parseIntOrNull(String digits) {
+        try { return Integer.parseInt(digits); } catch (NumberFormatException e) { return null; }
+    }
+
+    /** P_HEADER_POINTS: dòng đầu tiên dạng "Câu 3 (2 điểm)" → 2; khớp "Câu 3" mà không có điểm → null */
+    private static Integer headerPoints(String s) {
+        int n = s.length();
+        int p = 0;
+        while (p < n) {
+            int y = skipWs(s, p);
+            if (y < n && eqCI(s.charAt(y), 'c')) {
+                int j = y + 1;
+                if (regionCI(s, j, KW_CAU_HDR)) j += KW_CAU_HDR.length();
+                else if (regionCI(s, j, KW_AU)) j += KW_AU.length();
+                else j = -1;
+                if (j >= 0) {
+                    j = skipWs(s, j);
+                    int d = skipDigits(s, j);
+                    if (d > j) {
+                        j = skipWs(s, d);
+                        if (j < n && (s.charAt(j) == ':' || s.charAt(j) == '.')) j++;
+                        j = skipWs(s, j);
+                        int[] pts = pointsAt(s, j);
+                        return pts == null ? null : parseIntOrNull(s.substring(pts[1], pts[2]));
+                    }
+                }
+            }
+            int nl = s.indexOf('\n', y);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        return null;
+    }
+
+    /** \(\s*(\d+)\s*đi(?:ể|e)m\s*\) tại i → {end, digitsStart, digitsEnd}, null nếu không khớp */
+    private static int[] pointsAt(String s, int i) {
+        int n = s.length();
+        if (i >= n || s.charAt(i) != '(') return null;
+        int d0 = skipWs(s, i + 1), d1 = skipDigits(s, d0);
+        if (d1 == d0) return null;
+        int j = skipWs(s, d1);
+        if (!regionCI(s, j, KW_DI)) return null;
+        j += KW_DI.length();
+        if (j >= n || !(eqCI(s.charAt(j), 'ể') || eqCI(s.charAt(j), 'e'))) return null;
+        j++;
+        if (j >= n || !eqCI(s.charAt(j), 'm')) return null;
+        j = skipWs(s, j + 1);
+        if (j >= n || s.charAt(j) != ')') return null;
+        return new int[]{j + 1, d0, d1};
+    }
+
+    private static String removePointsInline(String s) {
+        if (s == null) return null;
+        int i = s.indexOf('(');
+        if (i < 0) return s.trim();
+        StringBuilder out = new StringBuilder(s.length());
+        int from = 0;
+        while (i >= 0) {
+            int[] m = pointsAt(s, i);
+            if (m != null) {
+                out.append(s, from, i);
+                from = m[0];
+                i = s.indexOf('(', m[0]);
+            } else {
+                i = s.indexOf('(', i + 1);
+            }
+        }
+        return out.append(s, from, s.length()).toString().trim();
+    }
+
+    private static String removeAllImagePlaceholders(String text) { return removeImagePlaceholders(text).trim(); }
+
+    private String removeSectionHeadingLines(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 1);
+        if (text.isEmpty()) return "\n"; // "".split(...) = [""]
+        // split("\\R") bỏ các dòng rỗng ở cuối
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') end--;
+        int i = 0;
+        while (i < end) {
+            int j = text.indexOf('\n', i);
+            if (j < 0 || j > end) j = end;
+            String line = text.substring(i, j);
+            if (!isSectionHeading(line)) out.append(line).append('\n');
+            i = j + 1;
+        }
+        return out.toString();
+    }
+
+    private boolean isSectionHeading(String line) {
+        // Ký tự đầu tiên còn lại sau sanitize + trim: mọi từ khoá đều bắt đầu bằng c/m/p/b
+        for (int k = 0; k < line.length(); k++) {
+            char c = line.charAt(k);
+            if (c <= ' ' || c == '\u00A0' || c == '\u00AD' || c == '\uFEFF' || (c >= '\u200B' && c <= '\u200D')) continue;
+            if (c >= '\uE000' && c <= '\uF8FF') {
+                String rep = TextNormalize.PUA_REMAP.get(c);
+                if (rep == null || rep.equals(" ")) continue;
+            }
+            if ("cCmMpPbB".indexOf(c) < 0) return false;
+            String s = sanitizeText(line).trim().toLowerCase(Locale.ROOT);
+            return P_SECTION_HEADING.matcher(s).matches();
+        }
+        return false;
+    }
+
+    /** P_FOOTER: cắt từ "Ghi chú:" đầu tiên tới hết ((?i) chỉ ASCII nên 'ú' phải đúng chữ thường) */
+    private static String stripFooter(String s) {
+        if (s == null) return null;
+        int n = s.length();
+        for (int i = 0; i + 3 <= n; i++) {
+            char g = s.charAt(i);
+            if ((g != 'g' && g != 'G') || !asciiCI(s.charAt(i + 1), 'h') || !asciiCI(s.charAt(i + 2), 'i')) continue;
+            int j = skipWs(s, i + 3);
+            if (j + 4 <= n && asciiCI(s.charAt(j), 'c') && asciiCI(s.charAt(j + 1), 'h')
+                    && s.charAt(j + 2) == 'ú' && s.charAt(j + 3) == ':') {
+                return s.substring(0, i).trim();
+            }
+        }
+        return s.trim();
+    }
+
+    private static boolean asciiCI(char c, char lower) { return c == lower || c == Character.toUpperCase(lower); }
+
+    private static String sanitizeText(String s) { return TextNormalize.normalizeSoftMath(s); }
+
+    private static String beautifyMath(String s) {
+        if (s == null) return null;
+        return squeezeWs(s.replace('−', '-')).trim();
+    }
+
+    private static String stripHl(String s) { return s == null ? null : s.replace("{hl}", "").replace("{/hl}", ""); }
+
+    /** \s{2,} → " " (khoảng trắng đơn lẻ giữ nguyên, kể cả '\n') */
+    private static String squeezeWs(String s) {
+        int n = s.length();
+        StringBuilder out = null;
+        int from = 0;
+        for (int i = 0; i < n; ) {
+            if (!isWs(s.charAt(i))) { i++; continue; }
+            int e = skipWs(s, i);
+            if (e - i >= 2) {
+                if (out == null) out = new StringBuilder(n);
+                out.append(s, from, i).append(' ');
+                from = e;
+            }
+            i = e;
+        }
+        return out == null ? s : out.append(s, from, n).toString();
+    }
+
+    private static String collapseSoftBreaks(String s) {
+        if (s == null) return null;
+        StringBuilder out = new StringBuilder(s.length());
+        boolean first = true;
+        boolean lastBlank = false;
+
+        int n = s.length();
+        for (int i = 0; i <= n; ) {
+            int j = s.indexOf('\n', i);
+            if (j < 0) j = n;
+            String t = s.substring(i, j).trim();
+            i = j + 1;
+            boolean blank = t.isEmpty();
+
+            if (blank) {
+                if (!lastBlank && out.length() > 0) out.append("\n\n"); // đoạn mới
+                lastBlank = true;
+                continue;
+            }
+
+            if (first) {
+                out.append(t);
+            } else if (lastBlank || isBulletLine(t)) {
+                out.append('\n').append(t);
+            } else {
+                // nếu dòng trước kết thúc bằng dấu gạch nối -> bỏ gạch và nối liền
+                int L = out.length();
+                if (L > 0 && out.charAt(L - 1) == '-') {
+                    out.setLength(L - 1);
+                    out.append(t);
+                } else {
+                    out.append(' ').append(t);
+                }
+            }
+            first = false;
+            lastBlank = false;
+        }
+        return squeezeWs(out.toString()).trim();
+    }
+
+    /** P_BULLET_LINE trên dòng đã trim: "- ", "• ", "a) ", "b. ", "(c) " */
+    private static boolean isBulletLine(String t) {
+        int n = t.length();
+        char c = t.charAt(0);
+        int j;
+        if (c == '-' || c == '•') j = 1;
+        else if (isListLetter(c) && n > 1 && (t.charAt(1) == ')' || t.charAt(1) == '.')) j = 2;
+        else if (c == '(' && n > 2 && isListLetter(t.charAt(1)) && t.charAt(2) == ')') j = 3;
+        else return false;
+        return j < n && isWs(t.charAt(j));
+    }
+
+    private static boolean isListLetter(char c) { return (c >= 'a' && c <= 'd') || (c >= 'A' && c <= 'D'); }
+
+    /** ...". a) ..." -> "\n a) ..." */
+    private static String enforceInlineListBreaks(String s) {
+        if (s == null) return null;
+        int n = s.length();
+        StringBuilder out = null;
+        int from = 0;
+        for (int i = 1; i < n; ) {
+            char prev = s.charAt(i - 1);
+            if (!isWs(s.charAt(i)) || isWs(prev)) { i++; continue; }
+            int b = skipWs(s, i);
+            if ((prev == '.' || prev == '?' || prev == '!' || prev == ':')
+                    && b + 2 < n && isListLetter(s.charAt(b))
+                    && (s.charAt(b + 1) == ')' || s.charAt(b + 1) == '.')
+                    && isWs(s.charAt(b + 2))) {
+                int e = skipWs(s, b + 2);
+                if (out == null) out = new StringBuilder(n);
+                out.append(s, from, i).append('\n').append(s, b, b + 2).append(' ');
+                from = e;
+                i = e;
+            } else {
+                i = b;
+            }
+        }
+        return out == null ? s : out.append(s, from, n).toString();
+    }
+}
@@ -0,0 +1,742 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.ExtractResult;
+import com.exam.examserver.util.OmmlConverter;
+import com.exam.examserver.util.TextNormalize;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Engine DOCX thay cho {@link DocxOmmlExtractor}: đọc thẳng word/document.xml bằng StAX thay vì unmarshal cả
+ * tài liệu thành cây JAXB (heap gấp nhiều lần file, sách dày thì OOM). Heap chỉ giữ 1 paragraph + kết quả.
+ *
+ * Cho ra cùng text / numbering / OMML→LaTeX / {{imageN}} theo thứ tự tài liệu như engine docx4j:
+ *  - chỉ duyệt w:p, w:tbl ở body (ô bảng: " | ", mỗi hàng 1 dòng), run trong hyperlink/ins/del/fldSimple...
+ *  - run đậm/màu/highlight → {hl}…{/hl}; vertAlign → _{…} / ^{…}
+ *  - ảnh VML (w:object, w:pict) của cả paragraph đứng đầu paragraph, trước ảnh DrawingML
+ *  - numbering mô phỏng như Word: counter theo abstractNum, lvlOverride/startOverride tách counter riêng
+ * Chọn engine qua import.docx-engine=stax.
+ */
+public final class StreamingDocxExtractor {
+
+    private static final String NS_W     = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String NS_R     = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_MATH  = OmmlConverter.NS_MATH;
+    private static final String NS_VML   = "urn:schemas-microsoft-com:vml";
+    private static final String NS_WP    = "http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing";
+    private static final String NS_A     = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    private static final String NS_PIC   = "http://schemas.openxmlformats.org/drawingml/2006/picture";
+    private static final String NS_PKG_R = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String NS_CT    = "http://schemas.openxmlformats.org/package/2006/content-types";
+
+    /** Ký tự đánh dấu chỗ ảnh DrawingML trong buffer paragraph (U+FFFF không hợp lệ trong XML nên không đụng text) */
+    private static final char IMG = '\uFFFF';
+
+    /** Container trong paragraph mà docx4j duyệt như ContentAccessor */
+    private static final Set<String> P_CONTAINERS = Set.of(
+            "hyperlink", "fldSimple", "smartTag", "customXml", "ins", "del", "moveFrom", "moveTo");
+    private static final Set<String> TEXT_ELEMENTS = Set.of("t", "delText", "instrText", "delInstrText");
+
+    private static final XMLInputFactory XIF = newInputFactory();
+    private static final DocumentBuilderFactory DBF = newDocumentBuilderFactory();
+
+    private StreamingDocxExtractor() {}
+
+    /** Cùng API với {@link DocxOmmlExtractor#extractWord}; stream được spill ra file tạm để đọc zip theo entry */
+    public static ExtractResult extractWord(InputStream is) throws Exception {
+        Path tmp = Files.createTempFile("import-", ".docx");
+        try {
+            Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+            try (ZipFile zip = new ZipFile(tmp.toFile())) {
+                return new Extraction(zip).read();
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory f = XMLInputFactory.newInstance();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        f.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return f;
+    }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+        f.setNamespaceAware(true);
+        return f;
+    }
+
+    /* ==================== package (zip + rels + content types) ==================== */
+
+    private record Rel(String type, String part, boolean external) {}
+
+    /** Trạng thái 1 lần extract */
+    private static final class Extraction {
+        private final ZipFile zip;
+        private final Map<String, ZipEntry> entries = new HashMap<>(); // tên part lowercase, không có '/' đầu
+        private final Map<String, String> defaultTypes = new HashMap<>();
+        private final Map<String, String> overrideTypes = new HashMap<>();
+        private Map<String, Rel> docRels = Map.of();
+        private Numbering numbering = Numbering.EMPTY;
+        private DocumentBuilder domBuilder;
+
+        private final StringBuilder sb = new StringBuilder();
+        private final List<byte[]> images = new ArrayList<>();
+        /** paragraph đang đọc (null ngoài paragraph) — nhận mọi v:imagedata gặp trong cây con */
+        private Para cur;
+
+        Extraction(ZipFile zip) {
+            this.zip = zip;
+            for (Enumeration<? extends ZipEntry> en = zip.entries(); en.hasMoreElements(); ) {
+                ZipEntry e = en.nextElement();
+                entries.putIfAbsent(e.getName().toLowerCase(Locale.ROOT), e);
+            }
+        }
+
+        ExtractResult read() throws IOException, XMLStreamException {
+            readContentTypes();
+            String main = null;
+            for (Rel r : readRels("", "_rels/.rels").values()) {
+                if (!r.external() && r.type().endsWith("/officeDocument")) { main = r.part(); break; }
+            }
+            if (main == null || !entries.containsKey(main.toLowerCase(Locale.ROOT))) {
+                throw new IOException("Not a DOCX package (missing main document part)");
+            }
+
+            int slash = main.lastIndexOf('/');
+            String dir = main.substring(0, slash + 1);
+            docRels = readRels(dir, dir + "_rels/" + main.substring(slash + 1) + ".rels");
+            for (Rel r : docRels.values()) {
+                if (!r.external() && r.type().endsWith("/numbering")) {
+                    numbering = readNumbering(r.part());
+                    break;
+                }
+            }
+
+            XMLStreamReader x = open(main);
+            try {
+                while (x.hasNext()) {
+                    if (x.next() == START_ELEMENT && isW(x, "body")) {
+                        body(x);
+                        break;
+                    }
+                }
+            } finally {
+                x.close();
+            }
+            return new ExtractResult(sb.toString(), images);
+        }
+
+        private XMLStreamReader open(String part) throws IOException, XMLStreamException {
+            ZipEntry e = entries.get(part.toLowerCase(Locale.ROOT));
+            if (e == null) return null;
+            return XIF.createXMLStreamReader(new BufferedInputStream(zip.getInputStream(e)));
+        }
+
+        private void readContentTypes() throws IOException, XMLStreamException {
+            XMLStreamReader x = open("[Content_Types].xml");
+            if (x == null) return;
+            try {
+                while (x.hasNext()) {
+                    if (x.next() != START_ELEMENT || !NS_CT.equals(x.getNamespaceURI())) continue;
+                    String ct = x.getAttributeValue(null, "ContentType");
+                    if (ct == null) continue;
+                    if ("Default".equals(x.getLocalName())) {
+                        String ext = x.getAttributeValue(null, "Extension");
+                        if (ext != null) defaultTypes.put(ext.toLowerCase(Locale.ROOT), ct);
+                    } else if ("Override".equals(x.getLocalName())) {
+                        String pn = x.getAttributeValue(null, "PartName");
+                        if (pn != null) overrideTypes.put(stripSlash(pn).toLowerCase(Locale.ROOT), ct);
+                    }
+                }
+            } finally {
+                x.close();
+            }
+        }
+
+        private String contentType(String part) {
+            String key = part.toLowerCase(Locale.ROOT);
+            String ct = overrideTypes.get(key);
+            if (ct != null) return ct;
+            int dot = key.lastIndexOf('.');
+            return dot < 0 ? null : defaultTypes.get(key.substring(dot + 1));
+        }
+
+        private Map<String, Rel> readRels(String baseDir, String relsPart) throws IOException, XMLStreamException {
+            XMLStreamReader x = open(relsPart);
+            if (x == null) return Map.of();
+            Map<String, Rel> out = new HashMap<>();
+            try {
+                while (x.hasNext()) {
+                    if (x.next() != START_ELEMENT || !NS_PKG_R.equals(x.getNamespaceURI())
+                            || !"Relationship".equals(x.getLocalName())) continue;
+                    String id = x.getAttributeValue(null, "Id");
+                    String target = x.getAttributeValue(null, "Target");
+                    if (id == null || target == null) continue;
+                    boolean external = "External".equals(x.getAttributeValue(null, "TargetMode"));
+                    String type = Objects.toString(x.getAttributeValue(null, "Type"), "");
+                    out.put(id, new Rel(type, external ? target : resolve(baseDir, target), external));
+                }
+            } finally {
+                x.close();
+            }
+            return out;
+        }
+
+        /** Ảnh của relationship rId → PNG (null nếu không phải part ảnh hoặc không đọc được) */
+        private byte[] image(String rId) {
+            Rel r = (rId == null ? null : docRels.get(rId));
+            if (r == null || r.external()) return null;
+            String ct = contentType(r.part());
+            ZipEntry e = entries.get(r.part().toLowerCase(Locale.ROOT));
+            if (ct == null || !ct.startsWith("image/") || e == null) return null;
+            try (InputStream in = zip.getInputStream(e)) {
+                return DocxOmmlExtractor.toPng(r.part(), in.readAllBytes());
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+        /* ==================== document.xml ==================== */
+
+        /** Mọi bước đọc trong paragraph đi qua đây để không sót v:imagedata ở bất kỳ độ sâu nào */
+        private int next(XMLStreamReader x) throws XMLStreamException {
+            int ev = x.next();
+            if (ev == START_ELEMENT && cur != null && "imagedata".equals(x.getLocalName())
+                    && NS_VML.equals(x.getNamespaceURI())) {
+                String rId = x.getAttributeValue(NS_R, "id");
+                if (rId == null || rId.isBlank()) rId = attrByQName(x, "r:id");
+                if (rId != null && !rId.isBlank()) cur.vml.add(rId);
+            }
+            return ev;
+        }
+
+        /** Tới START_ELEMENT con kế tiếp; false khi gặp END_ELEMENT của cha */
+        private boolean nextChild(XMLStreamReader x) throws XMLStreamException {
+            while (true) {
+                int ev = next(x);
+                if (ev == START_ELEMENT) return true;
+                if (ev == END_ELEMENT || ev == END_DOCUMENT) return false;
+            }
+        }
+
+        private void skip(XMLStreamReader x) throws XMLStreamException {
+            for (int depth = 1; depth > 0; ) {
+                int ev = next(x);
+                if (ev == START_ELEMENT) depth++;
+                else if (ev == END_ELEMENT) depth--;
+                else if (ev == END_DOCUMENT) return;
+            }
+        }
+
+        private void body(XMLStreamReader x) throws XMLStreamException {
+            while (nextChild(x)) {
+                if (isW(x, "p")) paragraph(x);
+                else if (isW(x, "tbl")) table(x);
+                else skip(x);
+            }
+        }
+
+        private void table(XMLStreamReader x) throws XMLStreamException {
+            while (nextChild(x)) {
+                if (!isW(x, "tr")) { skip(x); continue; }
+                boolean firstCell = true;
+                while (nextChild(x)) {
+                    if (!isW(x, "tc")) { skip(x); continue; }
+                    if (!firstCell) sb.append(" | ");     // phân tách cột
+                    firstCell = false;
+
+                    boolean firstPara = true;
+                    while (nextChild(x)) {
+                        if (!isW(x, "p")) { skip(x); continue; } // bảng lồng: engine cũ cũng bỏ qua
+                        if (!firstPara) sb.append('\n');      // giữ xuống dòng trong 1 ô
+                        paragraph(x);
+                        firstPara = false;
+                    }
+                }
+                sb.append('\n'); // kết thúc 1 hàng
+            }
+        }
+
+        /* ==================== paragraph ==================== */
+
+        private static final class Para {
+            String numId;
+            int ilvl;
+            final StringBuilder body = new StringBuilder();
+            final List<byte[]> drawings = new ArrayList<>(); // PNG theo thứ tự các dấu IMG trong body
+            final List<String> vml = new ArrayList<>();      // rId v:imagedata trong cả paragraph
+        }
+
+        private void paragraph(XMLStreamReader x) throws XMLStreamException {
+            Para p = new Para();
+            cur = p;
+            try {
+                while (nextChild(x)) {
+                    if (isW(x, "pPr")) paragraphProps(x, p);
+                    else content(x, p.body);
+                }
+            } finally {
+                cur = null;
+            }
+
+            // 1) numbering
+            String num = (p.numId == null ? null : numbering.next(p.numId, p.ilvl));
+            if (num != null && !num.isBlank()) sb.append(num).append(' ');
+
+            // 2) ảnh VML của paragraph (engine cũ tìm trên toàn paragraph nên đứng trước nội dung)
+            for (String rId : p.vml) appendImage(image(rId));
+
+            // 3) nội dung, thay dấu IMG bằng placeholder theo đúng thứ tự
+            int d = 0;
+            for (int i = 0, n = p.body.length(); i < n; i++) {
+                char c = p.body.charAt(i);
+                if (c == IMG) appendImage(p.drawings.get(d++));
+                else sb.append(c);
+            }
+            sb.append('\n');
+        }
+
+        private void appendImage(byte[] png) {
+            if (png == null) return;
+            images.add(png);
+            sb.append("{{image").append(images.size()).append("}}");
+        }
+
+        private void paragraphProps(XMLStreamReader x, Para p) throws XMLStreamException {
+            while (nextChild(x)) {
+                if (!isW(x, "numPr")) { skip(x); continue; }
+                while (nextChild(x)) {
+                    if (isW(x, "numId")) p.numId = wVal(x);
+                    else if (isW(x, "ilvl")) {
+                        try { p.ilvl = Integer.parseInt(Objects.toString(wVal(x), "0").trim()); }
+                        catch (NumberFormatException e) { p.ilvl = -1; }
+                    }
+                    skip(x);
+                }
+            }
+        }
+
+        /** Phần tử nội dung của paragraph (hoặc của container trong paragraph) */
+        private void content(XMLStreamReader x, StringBuilder out) throws XMLStreamException {
+            if (isW(x, "r")) {
+                run(x, out);
+            } else if (NS_MATH.equals(x.getNamespaceURI())
+                    && ("oMath".equals(x.getLocalName()) || "oMathPara".equals(x.getLocalName()))) {
+                math(x, out);
+            } else if (NS_W.equals(x.getNamespaceURI()) && P_CONTAINERS.contains(x.getLocalName())) {
+                while (nextChild(x)) content(x, out);
+            } else {
+                skip(x); // w:sdt, bookmark, proofErr, mc:AlternateContent... (engine cũ cũng không duyệt)
+            }
+        }
+
+        private void run(XMLStreamReader x, StringBuilder out) throws XMLStreamException {
+            boolean emph = false;
+            String vertAlign = null;
+            StringBuilder tmp = new StringBuilder();
+
+            while (nextChild(x)) {
+                if (!NS_W.equals(x.getNamespaceURI())) { skip(x); continue; }
+                String ln = x.getLocalName();
+                if ("rPr".equals(ln)) {
+                    while (nextChild(x)) {
+                        String p = NS_W.equals(x.getNamespaceURI()) ? x.getLocalName() : "";
+                        switch (p) {
+                            case "b", "bCs" -> emph |= isOn(wVal(x));
+                            case "color" -> {
+                                String v = wVal(x);
+                                emph |= v != null && !v.isBlank() && !"auto".equalsIgnoreCase(v);
+                            }
+                            case "highlight" -> {
+                                String v = wVal(x);
+                                emph |= v != null && !"none".equalsIgnoreCase(v);
+                            }
+                            case "vertAlign" -> vertAlign = wVal(x);
+                            default -> { }
+                        }
+                        skip(x);
+                    }
+                } else if (TEXT_ELEMENTS.contains(ln)) {
+                    String v = TextNormalize.normalizeHard(x.getElementText());
+                    v = TextNormalize.normalizeSuperSubRuns(v);
+                    if (v != null) tmp.append(v);
+                } else if ("br".equals(ln)) {
+                    tmp.append('\n');
+                    skip(x);
+                } else if ("tab".equals(ln)) {
+                    tmp.append(' ');
+                    skip(x);
+                } else if ("drawing".equals(ln)) {
+                    drawing(x, tmp);
+                } else {
+                    skip(x); // object/pict: ảnh VML đã được next() ghi nhận cho paragraph
+                }
+            }
+
+            String text = tmp.toString();
+            if ("subscript".equals(vertAlign)) text = "_{" + text + "}";
+            else if ("superscript".equals(vertAlign)) text = "^{" + text + "}";
+
+            if (!text.isEmpty()) {
+                if (emph) out.append("{hl}").append(text).append("{/hl}");
+                else out.append(text);
+            }
+        }
+
+        /** w:drawing → wp:inline|wp:anchor → a:graphic → a:graphicData → pic:pic (chỉ ảnh, không shape/chart) */
+        private void drawing(XMLStreamReader x, StringBuilder out) throws XMLStreamException {
+            while (nextChild(x)) {
+                if (!is(x, NS_WP, "inline") && !is(x, NS_WP, "anchor")) { skip(x); continue; }
+                while (nextChild(x)) {
+                    if (!is(x, NS_A, "graphic")) { skip(x); continue; }
+                    while (nextChild(x)) {
+                        if (!is(x, NS_A, "graphicData")) { skip(x); continue; }
+                        while (nextChild(x)) {
+                            if (is(x, NS_PIC, "pic")) picture(x, out);
+                            else skip(x);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void picture(XMLStreamReader x, StringBuilder out) throws XMLStreamException {
+            String rId = null;
+            while (nextChild(x)) {
+                if (!is(x, NS_PIC, "blipFill")) { skip(x); continue; }
+                while (nextChild(x)) {
+                    if (is(x, NS_A, "blip")) rId = x.getAttributeValue(NS_R, "embed");
+                    skip(x);
+                }
+            }
+            byte[] png = image(rId);
+            if (png != null) {
+                cur.drawings.add(png);
+                out.append(IMG);
+            }
+        }
+
+        /** m:oMath / m:oMathPara → DOM nhỏ của riêng công thức → OmmlConverter (như engine cũ) */
+        private void math(XMLStreamReader x, StringBuilder out) throws XMLStreamException {
+            Document d = mathDom(x);
+            String math = OmmlConverter.ommlNodeToText(d);
+            if (math == null || math.isBlank()) math = DocxOmmlExtractor.mathTokens(d);
+            if (math != null && !math.isBlank()) out.append(math);
+        }
+
+        /**
+         * Dựng DOM từ phần tử hiện tại tới END tương ứng. Chỉ giữ text trong m:t — giống DOM marshal từ JAXB
+         * (không có text node khoảng trắng giữa các phần tử, vì OmmlConverter đọc m:r bằng getTextContent).
+         */
+        private Document mathDom(XMLStreamReader x) throws XMLStreamException {
+            if (domBuilder == null) {
+                try {
+                    domBuilder = DBF.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            Document d = domBuilder.newDocument();
+            Node node = d;
+            int depth = 0;
+            for (int ev = START_ELEMENT; ; ev = next(x)) {
+                if (ev == START_ELEMENT) {
+                    Element e = d.createElementNS(emptyToNull(x.getNamespaceURI()), qName(x.getPrefix(), x.getLocalName()));
+                    for (int i = 0; i < x.getAttributeCount(); i++) {
+                        e.setAttributeNS(emptyToNull(x.getAttributeNamespace(i)),
+                                qName(x.getAttributePrefix(i), x.getAttributeLocalName(i)), x.getAttributeValue(i));
+                    }
+                    node.appendChild(e);
+                    node = e;
+                    depth++;
+                } else if (ev == END_ELEMENT) {
+                    node = node.getParentNode();
+                    if (--depth == 0) return d;
+                } else if ((ev == CHARACTERS || ev == CDATA || ev == SPACE)
+                        && "t".equals(node.getLocalName()) && NS_MATH.equals(node.getNamespaceURI())) {
+                    node.appendChild(d.createTextNode(x.getText()));
+                } else if (ev == END_DOCUMENT) {
+                    return d;
+                }
+            }
+        }
+
+        /* ==================== numbering.xml ==================== */
+
+        private Numbering readNumbering(String part) throws IOException, XMLStreamException {
+            XMLStreamReader x = open(part);
+            if (x == null) return Numbering.EMPTY;
+            Numbering n = new Numbering();
+            try {
+                while (x.hasNext()) {
+                    if (x.next() != START_ELEMENT) continue;
+                    if (isW(x, "abstractNum")) {
+                        String id = wAttr(x, "abstractNumId");
+                        Numbering.Level[] lv = new Numbering.Level[9];
+                        while (x.nextTag() == START_ELEMENT) {
+                            if (isW(x, "lvl")) readLevel(x, lv);
+                            else skipPlain(x);
+                        }
+                        if (id != null) n.abstracts.put(id.trim(), lv);
+                    } else if (isW(x, "num")) {
+                        String id = wAttr(x, "numId");
+                        String abs = null;
+                        Map<Integer, Integer> startOverride = new HashMap<>();
+                        Numbering.Level[] lvlOverride = new Numbering.Level[9];
+                        while (x.nextTag() == START_ELEMENT) {
+                            if (isW(x, "abstractNumId")) {
+                                abs = wVal(x);
+                                skipPlain(x);
+                            } else if (isW(x, "lvlOverride")) {
+                                int k = parseInt(wAttr(x, "ilvl"), -1);
+                                while (x.nextTag() == START_ELEMENT) {
+                                    if (isW(x, "startOverride") && k >= 0 && k < 9) {
+                                        startOverride.put(k, parseInt(wVal(x), 0));
+                                        skipPlain(x);
+                                    } else if (isW(x, "lvl")) {
+                                        readLevel(x, lvlOverride);
+                                    } else {
+                                        skipPlain(x);
+                                    }
+                                }
+                            } else {
+                                skipPlain(x);
+                            }
+                        }
+                        if (id != null && abs != null) n.nums.put(id.trim(), new Numbering.NumDef(abs.trim(), startOverride, lvlOverride));
+                    }
+                }
+            } finally {
+                x.close();
+            }
+            return n;
+        }
+
+        /** Đang ở START w:lvl → đọc vào lv[ilvl], dừng ở END w:lvl */
+        private static void readLevel(XMLStreamReader x, Numbering.Level[] lv) throws XMLStreamException {
+            int k = parseInt(wAttr(x, "ilvl"), -1);
+            Numbering.Level l = new Numbering.Level();
+            while (x.nextTag() == START_ELEMENT) {
+                if (isW(x, "start")) l.start = parseInt(wVal(x), l.start);
+                else if (isW(x, "numFmt")) l.fmt = Objects.toString(wVal(x), l.fmt);
+                else if (isW(x, "lvlText")) l.text = Objects.toString(wVal(x), "");
+                else if (isW(x, "isLgl")) l.legal = isOn(wVal(x));
+                skipPlain(x);
+            }
+            if (k >= 0 && k < 9) lv[k] = l;
+        }
+    }
+
+    /**
+     * Mô phỏng numbering như Word: các w:num dùng chung abstractNum thì chung counter (đánh số tiếp),
+     * level có startOverride/lvl override thì có counter riêng của num đó.
+     */
+    private static final class Numbering {
+        static final Numbering EMPTY = new Numbering();
+
+        static final class Level {
+            int start = 1;
+            String fmt = "decimal";
+            String text = "%1.";
+            boolean legal;
+            int value = Integer.MIN_VALUE; // chưa dùng
+
+            Level copy(int newStart) {
+                Level l = new Level();
+                l.start = newStart;
+                l.fmt = fmt;
+                l.text = text;
+                l.legal = legal;
+                return l;
+            }
+
+            void reset() { value = Integer.MIN_VALUE; }
+
+            int current() { return value == Integer.MIN_VALUE ? start : value; }
+        }
+
+        record NumDef(String abstractId, Map<Integer, Integer> startOverride, Level[] lvlOverride) {}
+
+        final Map<String, Level[]> abstracts = new HashMap<>();
+        final Map<String, NumDef> nums = new HashMap<>();
+        /** level hiệu lực của từng numId (dựng lần đầu dùng) */
+        private final Map<String, Level[]> resolved = new HashMap<>();
+
+        /** Tăng counter của (numId, ilvl) và trả nhãn ("1.", "a)", "1.2.", bullet...); null nếu không có numbering */
+        String next(String numId, int ilvl) {
+            if (ilvl < 0 || ilvl > 8) return null;
+            Level[] levels = levels(numId.trim());
+            if (levels == null) return null;
+            Level cur = levels[ilvl];
+            if (cur == null) levels[ilvl] = cur = new Level(); // level không khai báo: mặc định "%1." thập phân
+
+            cur.value = (cur.value == Integer.MIN_VALUE) ? cur.start : cur.value + 1;
+            for (int j = ilvl + 1; j < 9; j++) if (levels[j] != null) levels[j].reset();
+
+            if ("bullet".equals(cur.fmt)) return cur.text.isBlank() ? null : cur.text.trim();
+
+            StringBuilder out = new StringBuilder();
+            String t = cur.text;
+            for (int i = 0; i < t.length(); i++) {
+                char c = t.charAt(i);
+                if (c == '%' && i + 1 < t.length() && t.charAt(i + 1) >= '1' && t.charAt(i + 1) <= '9') {
+                    int k = t.charAt(++i) - '1';
+                    if (k > ilvl) continue; // level sâu hơn level hiện tại: Word để trống
+                    Level ref = levels[k];
+                    int v = (ref == null ? 1 : ref.current());
+                    String fmt = (ref == null || (cur.legal && k < ilvl)) ? "decimal" : ref.fmt;
+                    out.append(format(v, fmt));
+                } else {
+                    out.append(c);
+                }
+            }
+            String s = out.toString().trim();
+            return s.isEmpty() ? null : s;
+        }
+
+        private Level[] levels(String numId) {
+            Level[] r = resolved.get(numId);
+            if (r != null) return r;
+            NumDef def = nums.get(numId);
+            if (def == null) return null;
+            Level[] abs = abstracts.get(def.abstractId());
+            if (abs == null) return null;
+
+            r = new Level[9];
+            for (int k = 0; k < 9; k++) {
+                if (def.lvlOverride()[k] != null) r[k] = def.lvlOverride()[k];
+                else if (def.startOverride().containsKey(k) && abs[k] != null) r[k] = abs[k].copy(def.startOverride().get(k));
+                else r[k] = abs[k]; // dùng chung counter với các num khác của abstractNum
+            }
+            resolved.put(numId, r);
+            return r;
+        }
+
+        static String format(int n, String fmt) {
+            return switch (fmt) {
+                case "lowerLetter" -> letters(n, 'a');
+                case "upperLetter" -> letters(n, 'A');
+                case "lowerRoman" -> roman(n).toLowerCase(Locale.ROOT);
+                case "upperRoman" -> roman(n);
+                case "decimalZero" -> (n >= 0 && n < 10 ? "0" : "") + n;
+                case "none" -> "";
+                default -> String.valueOf(n);
+            };
+        }
+
+        /** Kiểu Word: a..z, aa..zz, aaa... */
+        private static String letters(int n, char base) {
+            if (n <= 0) return String.valueOf(n);
+            return String.valueOf((char) (base + (n - 1) % 26)).repeat((n - 1) / 26 + 1);
+        }
+
+        private static String roman(int num) {
+            if (num <= 0) return String.valueOf(num);
+            int[] v = {1000, 900, 500, 400, 100, 90, 50, 40, 10, 9, 5, 4, 1};
+            String[] sym = {"M", "CM", "D", "CD", "C", "XC", "L", "XL", "X", "IX", "V", "IV", "I"};
+            StringBuilder r = new StringBuilder();
+            for (int i = 0; i < v.length; i++) while (num >= v[i]) { num -= v[i]; r.append(sym[i]); }
+            return r.toString();
+        }
+    }
+
+    /* ==================== helpers ==================== */
+
+    private static boolean isW(XMLStreamReader x, String local) {
+        return is(x, NS_W, local);
+    }
+
+    private static boolean is(XMLStreamReader x, String ns, String local) {
+        return local.equals(x.getLocalName()) && ns.equals(x.getNamespaceURI());
+    }
+
+    private static String wVal(XMLStreamReader x) {
+        return wAttr(x, "val");
+    }
+
+    private static String wAttr(XMLStreamReader x, String local) {
+        return x.getAttributeValue(NS_W, local);
+    }
+
+    private static String attrByQName(XMLStreamReader x, String qName) {
+        for (int i = 0; i < x.getAttributeCount(); i++) {
+            if (qName.equals(qName(x.getAttributePrefix(i), x.getAttributeLocalName(i)))) return x.getAttributeValue(i);
+        }
+        return null;
+    }
+
+    private static String qName(String prefix, String local) {
+        return (prefix == null || prefix.isEmpty()) ? local : prefix + ':' + local;
+    }
+
+    /** BooleanDefaultTrue: không có w:val → bật */
+    private static boolean isOn(String val) {
+        if (val == null) return true;
+        String v = val.trim();
+        return !("0".equals(v) || "false".equalsIgnoreCase(v) || "off".equalsIgnoreCase(v));
+    }
+
+    private static int parseInt(String s, int def) {
+        if (s == null) return def;
+        try { return Integer.parseInt(s.trim()); } catch (NumberFormatException e) { return def; }
+    }
+
+    /** Bỏ qua phần tử hiện tại (numbering.xml, không cần theo dõi VML) */
+    private static void skipPlain(XMLStreamReader x) throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int ev = x.next();
+            if (ev == START_ELEMENT) depth++;
+            else if (ev == END_ELEMENT) depth--;
+        }
+    }
+
+    private static String emptyToNull(String s) {
+        return (s == null || s.isEmpty()) ? null : s;
+    }
+
+    private static String stripSlash(String s) {
+        return s.startsWith("/") ? s.substring(1) : s;
+    }
+
+    /** Target của relationship (tương đối theo thư mục part nguồn, có thể có "../" hoặc '/' đầu) → tên entry zip */
+    private static String resolve(String baseDir, String target) {
+        String path;
+        try {
+            path = URI.create("/" + baseDir).resolve(new URI(null, null, target, null)).getPath();
+        } catch (Exception e) {
+            path = target.startsWith("/") ? target : "/" + baseDir + target;
+        }
+        Deque<String> parts = new ArrayDeque<>();
+        for (String seg : path.split("/")) {
+            if (seg.isEmpty() || ".".equals(seg)) continue;
+            if ("..".equals(seg)) parts.pollLast();
+            else parts.addLast(seg);
+        }
+        return String.join("/", parts);
+    }
+}
@@ -1,5 +1,6 @@
 package com.exam.examserver.storage;
 
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -22,6 +23,16 @@ public class GcsObjectHelper {
         return storage.create(info, data);
     }
 
+    /** Upload resumable theo chunk; object chỉ xuất hiện khi close() channel thành công */
+    public WriteChannel openWriter(String key, String contentType) {
+        BlobInfo info = BlobInfo.newBuilder(BlobId.of(bucket, key))
+                .setContentType(contentType == null ? "application/octet-stream" : contentType)
+                .build();
+        WriteChannel ch = storage.writer(info);
+        ch.setChunkSize(1 << 20); // buffer 1 MiB/chunk (bội số 256 KiB) thay vì mặc định lớn hơn nhiều
+        return ch;
+    }
+
     public Blob copyAndDelete(String fromKey, String toKey) {
         BlobId src = BlobId.of(bucket, fromKey);
         Blob srcBlob = storage.get(src);
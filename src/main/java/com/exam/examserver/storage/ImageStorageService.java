@@ -2,21 +2,36 @@ package com.exam.examserver.storage;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import jakarta.annotation.PreDestroy;
 import org.apache.tika.Tika;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @Service
 public class ImageStorageService {
+    /** Số upload Cloudinary chạy đồng thời (IO-bound) */
+    private static final int UPLOAD_CONCURRENCY = 8;
+
     private final Cloudinary cloudinary;
     private final Tika tika = new Tika();
+    private final ExecutorService uploadPool;
 
     public ImageStorageService(Cloudinary cloudinary) {
         this.cloudinary = cloudinary;
+        AtomicInteger seq = new AtomicInteger();
+        this.uploadPool = Executors.newFixedThreadPool(UPLOAD_CONCURRENCY, r -> {
+            Thread t = new Thread(r, "image-upload-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     /** Upload từ MultipartFile (giữ nguyên để tương thích) */
@@ -46,6 +61,48 @@ public class ImageStorageService {
         return (String) uploadResult.get("secure_url");
     }
 
+    /**
+     * Upload song song cho import: key là SHA-256 nội dung nên ảnh trùng trong CÙNG lần gọi chỉ upload
+     * một lần. public_id gắn id riêng của lần gọi → 2 lần import khác nhau không dùng chung asset
+     * (xoá câu này không làm hỏng ảnh câu kia); overwrite=false để không ghi đè asset đã có.
+     * Bytes được đọc lười trong worker để heap chỉ giữ tối đa {@link #UPLOAD_CONCURRENCY} ảnh.
+     * Key upload lỗi sẽ vắng mặt trong kết quả.
+     */
+    public Map<String, String> storeImagesByHash(Map<String, Supplier<byte[]>> byHash) {
+        String batch = UUID.randomUUID().toString().replace("-", "");
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (var e : byHash.entrySet()) {
+            String publicId = "questions/import_" + batch + "_" + e.getKey();
+            Supplier<byte[]> source = e.getValue();
+            futures.put(e.getKey(), CompletableFuture.supplyAsync(() -> {
+                try {
+                    Map uploadResult = cloudinary.uploader().upload(source.get(),
+                            ObjectUtils.asMap("public_id", publicId, "resource_type", "image",
+                                    "overwrite", false));
+                    return (String) uploadResult.get("secure_url");
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }, uploadPool));
+        }
+
+        Map<String, String> urls = new HashMap<>();
+        for (var e : futures.entrySet()) {
+            try {
+                String url = e.getValue().join();
+                if (url != null) urls.put(e.getKey(), url);
+            } catch (CompletionException | CancellationException ignore) {
+                // ảnh lỗi → caller báo lỗi theo block
+            }
+        }
+        return urls;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadPool.shutdownNow();
+    }
+
     /** Xoá 1 ảnh theo URL Cloudinary (giữ nguyên folder 'questions/...'). */
     public void deleteImage(String imageUrl) {
         String publicId = extractCloudinaryPublicId(imageUrl);
@@ -0,0 +1,672 @@
+package com.exam.examserver.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bản quét tuần tự (không regex, không backtracking) của các pattern trong {@link ImportRegex}.
+ * Mỗi hàm cho đúng kết quả của pattern tương ứng — kể cả chỗ khớp "lạ" do thứ tự backtracking
+ * của java.util.regex — để parser mới ra PreviewBlock y hệt parser regex.
+ *
+ * Chỉ coi '\n' là xuống dòng: text còn \u0085/\u2028/\u2029 (regex coi là xuống dòng cho ^/$)
+ * phải đi đường regex, xem {@link #hasExoticLineBreaks}.
+ * "Khoảng trắng" = \s của Java (ASCII): space, \t, \n, \x0B, \f, \r.
+ */
+public final class ImportScanner {
+    private ImportScanner(){}
+
+    /** Điều kiện tại 1 vị trí (đầu dòng sau \s*) để cắt block */
+    @FunctionalInterface
+    public interface StartTest {
+        boolean at(String s, int i);
+    }
+
+    /** Một match của P_OPT_EXTRACT: group(0) = [start, end), group(1) = key, group(2) = [valueStart, end) */
+    public record OptMatch(int start, int end, char key, int valueStart) {}
+
+    /* ===== từ khoá (đã fold như Pattern CASE_INSENSITIVE|UNICODE_CASE) ===== */
+    private static final String KW_QUESTION = foldCase("question");
+    private static final String KW_CAU      = foldCase("câu");
+    private static final String KW_HOI      = foldCase("hỏi");
+    private static final String KW_BAI      = foldCase("bài");
+    private static final String KW_SO       = foldCase("số");
+    private static final String KW_CHUONG   = foldCase("chương");
+    private static final String KW_CHUONG2  = foldCase("chuong");
+    private static final String KW_CHAPTER  = foldCase("chapter");
+    private static final String KW_DAP      = foldCase("đáp");
+    private static final String KW_AN       = foldCase("án");
+    private static final String KW_ANSWER   = foldCase("answer");
+    private static final String KW_GIAI     = foldCase("giải");
+    private static final String KW_THICH    = foldCase("thích");
+    private static final String KW_GOI      = foldCase("gợi");
+    private static final String KW_Y        = foldCase("ý");
+
+    /* ===================== ký tự ===================== */
+
+    public static boolean isWs(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    public static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
+
+    public static int skipWs(String s, int i) {
+        int n = s.length();
+        while (i < n && isWs(s.charAt(i))) i++;
+        return i;
+    }
+
+    public static int skipDigits(String s, int i) {
+        int n = s.length();
+        while (i < n && isDigit(s.charAt(i))) i++;
+        return i;
+    }
+
+    /** Cuối dòng chứa i ('\n' đầu tiên từ i, hoặc hết chuỗi) */
+    public static int lineEnd(String s, int i) {
+        int nl = s.indexOf('\n', i);
+        return nl < 0 ? s.length() : nl;
+    }
+
+    public static boolean hasExoticLineBreaks(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') return true;
+        }
+        return false;
+    }
+
+    /** Fold từ khoá 1 lần để dùng với {@link #regionCI} */
+    public static String foldCase(String kw) {
+        StringBuilder b = new StringBuilder(kw.length());
+        for (int i = 0; i < kw.length(); i++) b.append(fold(kw.charAt(i)));
+        return b.toString();
+    }
+
+    private static char fold(char c) { return Character.toLowerCase(Character.toUpperCase(c)); }
+
+    /** So khớp 1 ký tự như Pattern CASE_INSENSITIVE|UNICODE_CASE (lower đã fold) */
+    public static boolean eqCI(char c, char lower) { return c == lower || fold(c) == lower; }
+
+    /** So khớp literal (đã fold) tại i, không phân biệt hoa thường kiểu UNICODE_CASE */
+    public static boolean regionCI(String s, int i, String folded) {
+        int len = folded.length();
+        if (i < 0 || i + len > s.length()) return false;
+        for (int k = 0; k < len; k++) {
+            if (fold(s.charAt(i + k)) != folded.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    /* ===================== {hl} ===================== */
+
+    /** \{/?hl\} tại i → vị trí sau marker, -1 nếu không có */
+    private static int markerEnd(String s, int i, boolean ci) {
+        int n = s.length();
+        if (i >= n || s.charAt(i) != '{') return -1;
+        int j = i + 1;
+        if (j < n && s.charAt(j) == '/') j++;
+        if (j + 3 > n) return -1;
+        char h = s.charAt(j), l = s.charAt(j + 1);
+        boolean hl = ci ? (eqCI(h, 'h') && eqCI(l, 'l')) : (h == 'h' && l == 'l');
+        return (hl && s.charAt(j + 2) == '}') ? j + 3 : -1;
+    }
+
+    /** HL = (?:\{/?hl\}\s*)* ăn tối đa */
+    public static int skipHl(String s, int i, boolean ci) {
+        while (true) {
+            int m = markerEnd(s, i, ci);
+            if (m < 0) return i;
+            i = skipWs(s, m);
+        }
+    }
+
+    /* ===================== HEADER_CORE ===================== */
+
+    /**
+     * Vị trí kết thúc của HEADER_CORE khớp tại i (nhánh chữ → nhánh 'q' → nhánh số, như regex), -1 nếu không khớp.
+     * Đây là phần bị backtrack nặng ở regex (HL lồng \s*); ở đây mỗi phần ăn tối đa một lần,
+     * chỉ nhánh số cần thử lại vài lựa chọn có hạn.
+     */
+    public static int headerEnd(String s, int i) {
+        int r = wordHeaderEnd(s, i);
+        if (r >= 0) return r;
+        r = qHeaderEnd(s, i);
+        if (r >= 0) return r;
+        return numberedHeaderEnd(s, skipHl(s, i, true), true);
+    }
+
+    /** HEADER_BREAK_CORE: chỉ nhánh chữ + 'q' (không có số thuần) */
+    public static boolean isHeaderBreak(String s, int i) {
+        return wordHeaderEnd(s, i) >= 0 || qHeaderEnd(s, i) >= 0;
+    }
+
+    public static boolean isHeaderStart(String s, int i) { return headerEnd(s, i) >= 0; }
+
+    /** HL (question|câu\s?hỏi|câu|bài) HL \s* (số)? HL \s* \d+(\.\d+)* HL \s* [:.)-]? */
+    private static int wordHeaderEnd(String s, int i) {
+        int n = s.length();
+        int j = skipHl(s, i, true);
+        int k;
+        if (regionCI(s, j, KW_QUESTION)) {
+            k = j + KW_QUESTION.length();
+        } else if (regionCI(s, j, KW_CAU)) {
+            // "câu\s?hỏi" thắng trước "câu"; khớp được "câu hỏi" thì nhánh "câu" chắc chắn trượt
+            int t = j + KW_CAU.length();
+            int h = (t < n && isWs(s.charAt(t))) ? t + 1 : t;
+            k = regionCI(s, h, KW_HOI) ? h + KW_HOI.length() : t;
+        } else if (regionCI(s, j, KW_BAI)) {
+            k = j + KW_BAI.length();
+        } else {
+            return -1;
+        }
+        j = skipWs(s, skipHl(s, k, true));
+        if (regionCI(s, j, KW_SO)) j += KW_SO.length();
+        j = skipWs(s, skipHl(s, j, true));
+        if (j >= n || !isDigit(s.charAt(j))) return -1;
+        j = skipDigits(s, j);
+        while (j + 1 < n && s.charAt(j) == '.' && isDigit(s.charAt(j + 1))) j = skipDigits(s, j + 1);
+        return optClosing(s, skipWs(s, skipHl(s, j, true)));
+    }
+
+    /** HL q HL [.:\-]? HL \s* \d+ HL \s* [:.)-]? */
+    private static int qHeaderEnd(String s, int i) {
+        int n = s.length();
+        int j = skipHl(s, i, true);
+        if (j >= n || !eqCI(s.charAt(j), 'q')) return -1;
+        j = skipHl(s, j + 1, true);
+        if (j < n && (s.charAt(j) == '.' || s.charAt(j) == ':' || s.charAt(j) == '-')) j++;
+        j = skipWs(s, skipHl(s, j, true));
+        if (j >= n || !isDigit(s.charAt(j))) return -1;
+        j = skipDigits(s, j);
+        return optClosing(s, skipWs(s, skipHl(s, j, true)));
+    }
+
+    /** [:.)-]? */
+    private static int optClosing(String s, int j) {
+        if (j < s.length()) {
+            char c = s.charAt(j);
+            if (c == ':' || c == '.' || c == ')' || c == '-') return j + 1;
+        }
+        return j;
+    }
+
+    /**
+     * NUM_ANY (HL)? (HL [.)\-:] HL \s* | \s+) tại i (i đã qua HL đầu).
+     * NUM_ANY = \d{1,3}\. | \d{1,3}(?:\.[1-9]?\d){1,2}\.? — thử đúng thứ tự backtrack của regex.
+     */
+    public static int numberedHeaderEnd(String s, int i, boolean ci) {
+        int n = s.length();
+        int p = skipDigits(s, i);
+        // \d{1,3} rồi bắt buộc '.': dãy số dài hơn 3 thì không cách cắt nào có '.' theo sau
+        if (p == i || p - i > 3 || p >= n || s.charAt(p) != '.') return -1;
+
+        int r = numberTail(s, p + 1, ci);          // NUM_SIMPLE_DOT
+        if (r >= 0) return r;
+
+        for (int a : hierGroupEnds(s, p)) {         // NUM_HIER: lần lặp 1
+            if (a < 0) continue;
+            for (int b : hierGroupEnds(s, a)) {     // lần lặp 2
+                if (b < 0) continue;
+                r = hierTail(s, b, ci);
+                if (r >= 0) return r;
+            }
+            r = hierTail(s, a, ci);
+            if (r >= 0) return r;
+        }
+        return -1;
+    }
+
+    /** Các điểm kết thúc của \.[1-9]?\d tại p, theo thứ tự thử ([1-9]? tham lam trước) */
+    private static int[] hierGroupEnds(String s, int p) {
+        int n = s.length();
+        if (p + 1 >= n || s.charAt(p) != '.' || !isDigit(s.charAt(p + 1))) return new int[]{-1, -1};
+        char d1 = s.charAt(p + 1);
+        int two = (d1 != '0' && p + 2 < n && isDigit(s.charAt(p + 2))) ? p + 3 : -1;
+        return new int[]{two, p + 2};
+    }
+
+    /** \.? rồi phần đuôi */
+    private static int hierTail(String s, int b, boolean ci) {
+        if (b < s.length() && s.charAt(b) == '.') {
+            int r = numberTail(s, b + 1, ci);
+            if (r >= 0) return r;
+        }
+        return numberTail(s, b, ci);
+    }
+
+    /**
+     * (?:HL)? (?:HL [\.)\-:] HL \s* | \s+) tại p.
+     * Khi HL tối đa không dẫn tới dấu ngăn/khoảng trắng, regex lùi vào khoảng trắng sau marker gần nhất
+     * (\s+ khớp ở đó) — nên "1.{hl} x" vẫn là header, kết thúc ngay trước "x".
+     */
+    private static int numberTail(String s, int p, boolean ci) {
+        int n = s.length();
+        int q = p;
+        int lastWsEnd = -1;
+        while (true) {
+            int m = markerEnd(s, q, ci);
+            if (m < 0) break;
+            int w = skipWs(s, m);
+            if (w > m) lastWsEnd = w;
+            q = w;
+        }
+        if (q < n) {
+            char c = s.charAt(q);
+            if (c == '.' || c == ')' || c == '-' || c == ':') return skipWs(s, skipHl(s, q + 1, ci));
+            if (isWs(c)) return skipWs(s, q);
+        }
+        return lastWsEnd;
+    }
+
+    /** P_NUM_HEADER_LINE trên 1 dòng (không phân biệt hoa thường cho {hl}: pattern không có cờ i) */
+    public static boolean isNumericHeaderLine(String line) {
+        int j = skipHl(line, skipWs(line, 0), false);
+        return numberedHeaderEnd(line, j, false) >= 0;
+    }
+
+    /* ===================== CHAPTER ===================== */
+
+    /** CHAPTER_CORE tại i tới hết phần chữ: trả vị trí đầu dãy số chương, -1 nếu không khớp */
+    public static int chapterDigitsAt(String s, int i) {
+        int n = s.length();
+        int j = skipHl(s, i, true);
+        int k;
+        if (regionCI(s, j, KW_CHUONG)) k = j + KW_CHUONG.length();
+        else if (regionCI(s, j, KW_CHUONG2)) k = j + KW_CHUONG2.length();
+        else if (regionCI(s, j, KW_CHAPTER)) k = j + KW_CHAPTER.length();
+        else return -1;
+        j = skipWs(s, skipHl(s, k, true));
+        if (regionCI(s, j, KW_SO)) j += KW_SO.length();
+        j = skipWs(s, skipHl(s, j, true));
+        return (j < n && isDigit(s.charAt(j))) ? j : -1;
+    }
+
+    public static boolean isChapterStart(String s, int i) { return chapterDigitsAt(s, i) >= 0; }
+
+    /**
+     * P_CHAPTER_ANCHORED.find(): {start, digitsStart, digitsEnd, end} hoặc null.
+     * Như regex, \s* sau số chương được phép vượt xuống dòng nên "Chương 1" đứng riêng một dòng
+     * sẽ ăn luôn dòng kế tiếp.
+     */
+    public static int[] findChapterHeader(String s) {
+        int n = s.length();
+        int p = 0;
+        while (p < n) {
+            int y = skipWs(s, p);
+            int d = chapterDigitsAt(s, y);
+            if (d >= 0) {
+                int e = skipDigits(s, d);
+                int t = optClosing(s, skipWs(s, skipHl(s, e, true)));
+                return new int[]{p, d, e, lineEnd(s, t)};
+            }
+            int nl = s.indexOf('\n', y);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        return null;
+    }
+
+    /* ===================== ANSWER ===================== */
+
+    /** ANSWER_CORE = HL (đáp\s*án|answer|giải\s*thích|gợi\s*ý) → vị trí sau từ khoá, -1 nếu không khớp */
+    private static int answerKeywordEnd(String s, int i) {
+        int j = skipHl(s, i, true);
+        if (regionCI(s, j, KW_DAP)) {
+            int t = skipWs(s, j + KW_DAP.length());
+            return regionCI(s, t, KW_AN) ? t + KW_AN.length() : -1;
+        }
+        if (regionCI(s, j, KW_ANSWER)) return j + KW_ANSWER.length();
+        if (regionCI(s, j, KW_GIAI)) {
+            int t = skipWs(s, j + KW_GIAI.length());
+            return regionCI(s, t, KW_THICH) ? t + KW_THICH.length() : -1;
+        }
+        if (regionCI(s, j, KW_GOI)) {
+            int t = skipWs(s, j + KW_GOI.length());
+            return regionCI(s, t, KW_Y) ? t + KW_Y.length() : -1;
+        }
+        return -1;
+    }
+
+    /** BR_ANSWER: ANSWER_CORE \s* [:\-] */
+    public static boolean isAnswerBreak(String s, int i) {
+        int k = answerKeywordEnd(s, i);
+        if (k < 0) return false;
+        int c = skipWs(s, k);
+        return c < s.length() && (s.charAt(c) == ':' || s.charAt(c) == '-');
+    }
+
+    /**
+     * P_ANSWER_LABEL.find(): {start, valueStart, valueEnd} (group 2 = [valueStart, valueEnd)) hoặc null.
+     * Phần \s*[:\-]?\s*(.+)$ được giải đúng như regex: "Đáp án:" ở cuối block cho giá trị ":".
+     */
+    public static int[] findAnswerLabel(String s) {
+        int n = s.length();
+        int p = 0;
+        while (p < n) {
+            int y = skipWs(s, p);
+            int k = answerKeywordEnd(s, y);
+            if (k >= 0) {
+                int r = answerValueStart(s, k);
+                if (r >= 0) return new int[]{p, r, lineEnd(s, r)};
+            }
+            int nl = s.indexOf('\n', y);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        return null;
+    }
+
+    private static int answerValueStart(String s, int k) {
+        int n = s.length();
+        int c = skipWs(s, k);
+        if (c < n) {
+            char ch = s.charAt(c);
+            if (ch == ':' || ch == '-') {
+                int d = c + 1, e = skipWs(s, d);
+                if (e < n) return e;
+                for (int r = e - 1; r >= d; r--) if (s.charAt(r) != '\n') return r;
+                return c;
+            }
+            return c;
+        }
+        // hết chuỗi ngay sau khoảng trắng: (.+) lùi về khoảng trắng (không phải \n) cuối cùng
+        for (int r = n - 1; r >= k; r--) if (s.charAt(r) != '\n') return r;
+        return -1;
+    }
+
+    /* ===================== OPTIONS ===================== */
+
+    /** (?:\{hl\}\s*)?[A-D]\s*[.\)] tại i → vị trí sau dấu ngăn, -1 nếu không khớp (letter = s[trả về - ...]) */
+    private static int optionHeadEnd(String s, int i) {
+        int n = s.length();
+        int j = s.startsWith("{hl}", i) ? skipWs(s, i + 4) : i;
+        if (j >= n || s.charAt(j) < 'A' || s.charAt(j) > 'D') return -1;
+        int z = skipWs(s, j + 1);
+        if (z >= n || (s.charAt(z) != '.' && s.charAt(z) != ')')) return -1;
+        return z + 1;
+    }
+
+    /** OPT_HEAD_CORE: (?:\{hl\}\s*)?[A-D]\s*[.\)]\s+\S */
+    public static boolean isOptionBreak(String s, int i) {
+        int v = optionHeadEnd(s, i);
+        if (v < 0) return false;
+        int w = skipWs(s, v);
+        return w > v && w < s.length();
+    }
+
+    /** breakOptionsInline: khoảng trắng trước option inline → xuống dòng */
+    public static String breakOptionsInline(String s) {
+        if (s == null) return null;
+        return breakRuns(s, ImportScanner::isOptionBreak);
+    }
+
+    /**
+     * Toàn bộ match của P_OPT_EXTRACT theo thứ tự find().
+     * Giá trị option kéo tới đầu dòng có option kế tiếp hoặc hết chuỗi; "A." trống ngay trước
+     * "B. ..." ở dòng sau sẽ nuốt luôn B (giống regex: .+? cần ít nhất 1 ký tự sau \s* tham lam).
+     */
+    public static List<OptMatch> findOptions(String s) {
+        List<OptMatch> out = new ArrayList<>();
+        int n = s.length();
+        int p = 0;
+        while (p < n) {
+            if (p == 0 || s.charAt(p - 1) == '\n') {
+                OptMatch m = optionAt(s, p);
+                if (m != null) {
+                    out.add(m);
+                    p = m.end();
+                    continue;
+                }
+            }
+            int nl = s.indexOf('\n', p);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        return out;
+    }
+
+    private static OptMatch optionAt(String s, int p) {
+        int n = s.length();
+        int y = skipWs(s, p);
+        int v0 = optionHeadEnd(s, y);
+        if (v0 < 0) return null;
+        char key = s.charAt(s.startsWith("{hl}", y) ? skipWs(s, y + 4) : y);
+        int v = skipWs(s, v0);
+        if (v >= n) return (v > v0) ? new OptMatch(p, n, key, n - 1) : null;
+
+        int e = v + 1;
+        while (e < n) {
+            if (s.charAt(e - 1) == '\n' && optionHeadEnd(s, skipWs(s, e)) >= 0) break;   // ^\s*option
+            if (e == n - 1 && s.charAt(e) == '\n') break;                                // \Z
+            int nl = s.indexOf('\n', e);
+            if (nl < 0) { e = n; break; }
+            e = (nl == n - 1) ? nl : nl + 1;
+        }
+        return new OptMatch(p, e, key, v);
+    }
+
+    /* ===================== IMAGE ===================== */
+
+    /** Placeholder {{imageN}} tại i → vị trí sau "}}", -1 nếu không phải */
+    public static int imagePlaceholderEnd(String s, int i) {
+        if (!s.startsWith("{{image", i)) return -1;
+        int d = i + 7, e = skipDigits(s, d);
+        return (e > d && s.startsWith("}}", e)) ? e + 2 : -1;
+    }
+
+    /** Các số N (chuỗi) trong {{imageN}} theo thứ tự xuất hiện */
+    public static List<String> imageNumbers(String s) {
+        List<String> out = new ArrayList<>();
+        int i = s.indexOf("{{image");
+        while (i >= 0) {
+            int e = imagePlaceholderEnd(s, i);
+            if (e >= 0) {
+                out.add(s.substring(i + 7, e - 2));
+                i = s.indexOf("{{image", e);
+            } else {
+                i = s.indexOf("{{image", i + 1);
+            }
+        }
+        return out;
+    }
+
+    public static String removeImagePlaceholders(String s) {
+        int i = s.indexOf("{{image");
+        if (i < 0) return s;
+        StringBuilder out = new StringBuilder(s.length());
+        int from = 0;
+        while (i >= 0) {
+            int e = imagePlaceholderEnd(s, i);
+            if (e >= 0) {
+                out.append(s, from, i);
+                from = e;
+                i = s.indexOf("{{image", e);
+            } else {
+                i = s.indexOf("{{image", i + 1);
+            }
+        }
+        return out.append(s, from, s.length()).toString();
+    }
+
+    /* ===================== biến đổi cả text ===================== */
+
+    /** = ImportRegex.compactHighlightMarkers, bằng thay literal (không regex) */
+    public static String compactHighlightMarkers(String s) {
+        if (s == null || s.indexOf('{') < 0) return s;
+        s = s.replace("{/hl}{hl}", "");
+        s = collapseRepeats(s, "{hl}");
+        s = collapseRepeats(s, "{/hl}");
+        return s.replace("{hl}{/hl}", "");
+    }
+
+    /** (tok){2,} → tok */
+    private static String collapseRepeats(String s, String tok) {
+        int k = s.indexOf(tok);
+        if (k < 0) return s;
+        int len = tok.length();
+        StringBuilder out = new StringBuilder(s.length());
+        int i = 0;
+        while (k >= 0) {
+            int j = k + len;
+            out.append(s, i, j);
+            while (s.startsWith(tok, j)) j += len;
+            i = j;
+            k = s.indexOf(tok, j);
+        }
+        return out.append(s, i, s.length()).toString();
+    }
+
+    /**
+     * breakChapterInline + breakHeaderAnswerInline trong 1 lượt.
+     * Ba pass BR_* đều thay cả dải khoảng trắng (không bắt đầu sau \r\n) bằng '\n' khi ngay sau nó là
+     * header chương / câu / đáp án, và việc thay ở pass trước không đổi kết quả kiểm tra của pass sau
+     * → gộp được. Sau đó trim các dòng header số như smartBreakNumericHeaders.
+     */
+    public static String breakHeaderLines(String s) {
+        if (s == null) return null;
+        String broken = breakRuns(s, (t, i) -> mayStartHeaderWord(t.charAt(i))
+                && (isChapterStart(t, i) || isHeaderBreak(t, i) || isAnswerBreak(t, i)));
+        return trimNumericHeaderLines(broken);
+    }
+
+    /** Chữ đầu có thể của chương/câu/đáp án: {hl}, c(hương|âu), q(uestion), b(ài), đ(áp án), a(nswer), g(iải thích|ợi ý) */
+    private static boolean mayStartHeaderWord(char c) {
+        if (c == '{') return true;
+        char f = fold(c);
+        return f == 'c' || f == 'q' || f == 'b' || f == 'a' || f == 'g' || f == 'đ';
+    }
+
+    /**
+     * (?<![\r\n])\s+(?=X) → "\n": lookahead X luôn bắt đầu bằng ký tự không phải khoảng trắng nên
+     * match luôn là trọn một dải khoảng trắng tối đa (ký tự trước nó không thể là \n).
+     */
+    private static String breakRuns(String s, StartTest next) {
+        int n = s.length();
+        StringBuilder out = null;
+        int from = 0;
+        int i = 0;
+        while (i < n) {
+            if (!isWs(s.charAt(i))) { i++; continue; }
+            int b = skipWs(s, i);
+            if (b < n && next.at(s, b) && !(b - i == 1 && s.charAt(i) == '\n')) {
+                if (out == null) out = new StringBuilder(n);
+                out.append(s, from, i).append('\n');
+                from = b;
+            }
+            i = b;
+        }
+        return out == null ? s : out.append(s, from, n).toString();
+    }
+
+    /** smartBreakNumericHeaders: chỉ dòng có khoảng trắng đầu/cuối mới có thể đổi khi trim */
+    private static String trimNumericHeaderLines(String s) {
+        int n = s.length();
+        StringBuilder out = null;
+        int i = 0;
+        while (i <= n) {
+            int j = s.indexOf('\n', i);
+            if (j < 0) j = n;
+            if (j > i && (s.charAt(i) <= ' ' || s.charAt(j - 1) <= ' ')) {
+                String line = s.substring(i, j);
+                if (isNumericHeaderLine(line)) {
+                    if (out == null) out = new StringBuilder(n).append(s, 0, i);
+                    out.append(line.trim());
+                } else if (out != null) {
+                    out.append(line);
+                }
+            } else if (out != null) {
+                out.append(s, i, j);
+            }
+            if (out != null && j < n) out.append('\n');
+            i = j + 1;
+        }
+        return out == null ? s : out.toString();
+    }
+
+    /**
+     * Pattern.split theo (?=^\s*X), đã trim và bỏ phần rỗng.
+     * Cắt ngay tại X (sau khoảng trắng đầu dòng) thay vì đầu dòng: khác biệt chỉ là khoảng trắng, bị trim.
+     */
+    public static List<String> split(String s, StartTest test) {
+        List<String> out = new ArrayList<>();
+        int n = s.length();
+        int from = 0;
+        int p = 0;
+        while (p < n) {
+            int y = skipWs(s, p);
+            if (y < n && test.at(s, y)) {
+                addTrimmed(out, s.substring(from, y));
+                from = y;
+            }
+            int nl = s.indexOf('\n', y);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        addTrimmed(out, s.substring(from));
+        return out;
+    }
+
+    /** Vị trí X đầu tiên (sau khoảng trắng đầu dòng) — tương đương find() của (?=^\s*X) rồi trim */
+    public static int firstStart(String s, StartTest test) {
+        int n = s.length();
+        int p = 0;
+        while (p < n) {
+            int y = skipWs(s, p);
+            if (y < n && test.at(s, y)) return y;
+            int nl = s.indexOf('\n', y);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        return -1;
+    }
+
+    private static void addTrimmed(List<String> out, String chunk) {
+        String t = chunk.trim();
+        if (!t.isEmpty()) out.add(t);
+    }
+
+    /** = ImportRegex.stripHeader */
+    public static String stripHeader(String block) {
+        String s = block;
+        int n = block.length();
+        int p = 0;
+        while (p < n) {
+            int y = skipWs(block, p);
+            int e = headerEnd(block, y);
+            if (e >= 0) {
+                s = block.substring(0, p) + block.substring(e);
+                break;
+            }
+            int nl = block.indexOf('\n', y);
+            if (nl < 0) break;
+            p = nl + 1;
+        }
+        s = s.trim();
+        // Ăn nốt {/hl} nếu header được bọc {hl}…{/hl}
+        return s.startsWith("{/hl}") ? s.substring(skipWs(s, 5)) : s;
+    }
+
+    /** = ImportRegex.stripInlineMarkers: bỏ \{/?[a-z]+\} */
+    public static String stripInlineMarkers(String s) {
+        if (s == null) return null;
+        int i = s.indexOf('{');
+        if (i < 0) return s;
+        int n = s.length();
+        StringBuilder out = new StringBuilder(n);
+        int from = 0;
+        while (i >= 0) {
+            int j = i + 1;
+            if (j < n && s.charAt(j) == '/') j++;
+            int k = j;
+            while (k < n && s.charAt(k) >= 'a' && s.charAt(k) <= 'z') k++;
+            if (k > j && k < n && s.charAt(k) == '}') {
+                out.append(s, from, i);
+                from = k + 1;
+                i = s.indexOf('{', k + 1);
+            } else {
+                i = s.indexOf('{', i + 1);
+            }
+        }
+        return out.append(s, from, n).toString();
+    }
+}
@@ -6,6 +6,7 @@ import org.openxmlformats.schemas.officeDocument.x2006.math.CTOMath;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
 import java.util.regex.Matcher;
@@ -41,98 +42,282 @@ public final class MathOmmlRenderer {
     private static final Pattern L_INT = Pattern.compile("\\\\int(?:_\\{(.+?)\\})?(?:\\^\\{(.+?)\\})?\\s*([^\\\\].+?)");
     private static final Pattern L_CASES = Pattern.compile("\\\\begin\\{cases\\}([\\s\\S]*?)\\\\end\\{cases\\}");
 
+    private static final Pattern L_TEXT = Pattern.compile("\\\\text\\{([^}]*)\\}");
+
     /**
      * Render 1 dòng: chèn OMML cho phần match, phần còn lại là text thường (giữ style).
+     *
+     * {@link Tokens#scan} quét dòng 1 lượt, ghi vị trí bắt đầu có thể của từng construct; mỗi construct
+     * sau đó chỉ thử regex (lookingAt) tại các vị trí đó thay vì find() trên cả chuỗi. Thứ tự ưu tiên và
+     * cách emit giữ như bản regex nhiều lượt: mỗi construct emit text đứng trước match cuối của nó,
+     * construct sau chỉ xử lý phần đuôi → OMML/run ra giống hệt (xem MathOmmlGoldenTest).
      */
     public static void emitMathAware(XWPFParagraph p, String text,
                                      Function<String, XWPFRun> runFactory) {
-        if (text == null || text.isEmpty()) {
-            runFactory.apply("").setText("");
-            return;
+        prepare(text).emit(p, runFactory);
+    }
+
+    /**
+     * 1 dòng đã tách thành text run / OMML (CTOMath đã parse) nhưng chưa gắn vào document nào:
+     * tạo được trên thread bất kỳ, {@link #emit} trên thread đang dựng document.
+     */
+    public static final class Line {
+        // String = text run, CTOMath = OMML, Unparsed = XML lỗi parse (ghi thành text)
+        private final List<Object> parts = new ArrayList<>();
+
+        private void text(String s) {
+            parts.add(s);
         }
 
-        if (!text.matches("(?s).*(?:\\\\(?:frac|sqrt|overline|sum|prod|int|log|text\\{)"
-                + "|\\\\(?:\\(|\\)|\\[|\\])"
-                + "|\\$\\$?"
-                + "|cases\\("
-                + "|frac\\("
-                + "|sqrt\\("
-                + "|root\\("
-                + "|sum_"
-                + "|prod_"
-                + "|int_"
-                + "|overline\\()"
-                + ".*")) {
-            runFactory.apply(text).setText(text);
-            return;
+        private void omml(String xml) {
+            try {
+                parts.add(CTOMath.Factory.parse(xml));
+            } catch (Exception e) {
+                System.err.println("[OMML parse error] " + e.getMessage());
+                parts.add(new Unparsed(xml)); // fallback
+            }
+        }
+
+        public void emit(XWPFParagraph p, Function<String, XWPFRun> runFactory) {
+            for (Object o : parts) {
+                if (o instanceof String s) {
+                    runFactory.apply(s).setText(s);
+                } else if (o instanceof CTOMath m) {
+                    p.getCTP().addNewOMath().set(m);
+                } else {
+                    p.createRun().setText(((Unparsed) o).xml());
+                }
+            }
+        }
+    }
+
+    private record Unparsed(String xml) {
+    }
+
+    /** Tách 1 dòng thành {@link Line}; không đụng POI document nên gọi song song được */
+    public static Line prepare(String text) {
+        Line out = new Line();
+        if (text == null || text.isEmpty()) {
+            out.text("");
+            return out;
         }
 
-        String s = text;
+        if (!hasMathTrigger(text)) {
+            out.text(text);
+            return out;
+        }
 
-        // 0) Gỡ delimiter nhẹ: \( \) \[ \] $$ $
-        s = s.replaceAll("\\\\\\(", "")
-                .replaceAll("\\\\\\)", "")
-                .replaceAll("\\\\\\[", "")
-                .replaceAll("\\\\\\]", "")
-                .replaceAll("\\$\\$", "")
-                .replaceAll("\\$", "");
+        // 0) Gỡ delimiter nhẹ: \( \) \[ \] $$ $ (đúng thứ tự thay thế cũ)
+        String s = text.replace("\\(", "")
+                .replace("\\)", "")
+                .replace("\\[", "")
+                .replace("\\]", "")
+                .replace("$$", "")
+                .replace("$", "");
+        Tokens t = Tokens.scan(s);
+        int from = 0;
 
         // 1) LaTeX blocks trước (cases, sqrt/root, frac, overline, n-ary)
-        s = replaceWithOmml(p, s, L_CASES, m -> {
+        from = pass(out, s, from, t, Tokens.L_CASES, L_CASES, m -> {
             String body = m.group(1);
             // tách theo "\\"
             String[] rows = body.split("\\\\\\\\");
             List<String> lines = new ArrayList<>();
             for (String ln : rows) {
-                String t = ln.trim();
-                if (!t.isEmpty()) lines.add(t);
+                String tr = ln.trim();
+                if (!tr.isEmpty()) lines.add(tr);
             }
             return ommlCases(lines);
-        }, runFactory);
+        });
 
-        s = replaceWithOmml(p, s, L_ROOT, m -> ommlRoot(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = replaceWithOmml(p, s, L_SQRT, m -> ommlSqrt(renderPlain(m.group(1))), runFactory);
+        from = pass(out, s, from, t, Tokens.L_ROOT, L_ROOT, m -> ommlRoot(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        from = pass(out, s, from, t, Tokens.L_SQRT, L_SQRT, m -> ommlSqrt(renderPlain(m.group(1))));
 
-        s = replaceWithOmml(p, s, L_FRAC, m -> ommlFrac(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = replaceWithOmml(p, s, L_OVERLINE, m -> ommlBarTop(renderPlain(m.group(1))), runFactory);
+        from = pass(out, s, from, t, Tokens.L_FRAC, L_FRAC, m -> ommlFrac(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        from = pass(out, s, from, t, Tokens.L_OVERLINE, L_OVERLINE, m -> ommlBarTop(renderPlain(m.group(1))));
 
-        s = replaceWithOmml(p, s, L_SUM, m -> {
+        from = pass(out, s, from, t, Tokens.L_SUM, L_SUM, m -> {
             String lo = nz(m.group(1)), hi = nz(m.group(2)), e = nz(m.group(3));
             return ommlNary("∑", renderPlain(lo), renderPlain(hi), renderPlain(e));
-        }, runFactory);
-        s = replaceWithOmml(p, s, L_PROD, m -> {
+        });
+        from = pass(out, s, from, t, Tokens.L_PROD, L_PROD, m -> {
             String lo = nz(m.group(1)), hi = nz(m.group(2)), e = nz(m.group(3));
             return ommlNary("∏", renderPlain(lo), renderPlain(hi), renderPlain(e));
-        }, runFactory);
-        s = replaceWithOmml(p, s, L_INT, m -> {
+        });
+        from = pass(out, s, from, t, Tokens.L_INT, L_INT, m -> {
             String lo = nz(m.group(1)), hi = nz(m.group(2)), e = nz(m.group(3));
             return ommlNary("∫", renderPlain(lo), renderPlain(hi), renderPlain(e));
-        }, runFactory);
+        });
 
         // 2) TeX-lite cũ (tương thích ngược)
-        s = replaceCasesWithOmml(p, s, runFactory);
-        s = replaceWithOmml(p, s, P_OVERLINE, m -> ommlBarTop(renderPlain(m.group(1))), runFactory);
-        s = replaceWithOmml(p, s, P_FRAC, m -> ommlFrac(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = replaceWithOmml(p, s, P_ROOT, m -> ommlRoot(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = replaceWithOmml(p, s, P_SQRT, m -> ommlSqrt(renderPlain(m.group(1))), runFactory);
-        s = replaceWithOmml(p, s, P_SUM, m -> ommlNary("∑", renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))), runFactory);
-        s = replaceWithOmml(p, s, P_PROD, m -> ommlNary("∏", renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))), runFactory);
-        s = replaceWithOmml(p, s, P_INT, m -> ommlNary("∫", renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))), runFactory);
-        s = replaceWithOmml(p, s, P_LOGBASE, m -> ommlLogWithBase(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = replaceWithOmml(p, s, P_SUBSUP, m -> ommlSubSup(renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))), runFactory);
-        s = replaceWithOmml(p, s, P_SUP, m -> ommlSup(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = replaceWithOmml(p, s, P_SUB, m -> ommlSub(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
-        s = s.replaceAll("\\\\text\\{([^}]*)\\}", "$1"); // (tuỳ chọn)
-        s = replaceWithOmml(p, s, L_LOGB,
-                m -> ommlLogWithBase(renderPlain(m.group(1)), renderPlain(m.group(2))), runFactory);
+        if (t.after(Tokens.CASES, from)) {
+            // cases(...) bỏ phần match ở giữa chuỗi → chuỗi mới, quét lại
+            s = replaceCasesWithOmml(out, s.substring(from));
+            t = Tokens.scan(s);
+            from = 0;
+        }
+        from = pass(out, s, from, t, Tokens.P_OVERLINE, P_OVERLINE, m -> ommlBarTop(renderPlain(m.group(1))));
+        from = pass(out, s, from, t, Tokens.P_FRAC, P_FRAC, m -> ommlFrac(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        from = pass(out, s, from, t, Tokens.P_ROOT, P_ROOT, m -> ommlRoot(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        from = pass(out, s, from, t, Tokens.P_SQRT, P_SQRT, m -> ommlSqrt(renderPlain(m.group(1))));
+        from = pass(out, s, from, t, Tokens.P_SUM, P_SUM, m -> ommlNary("∑", renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))));
+        from = pass(out, s, from, t, Tokens.P_PROD, P_PROD, m -> ommlNary("∏", renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))));
+        from = pass(out, s, from, t, Tokens.P_INT, P_INT, m -> ommlNary("∫", renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))));
+        from = pass(out, s, from, t, Tokens.P_LOGBASE, P_LOGBASE, m -> ommlLogWithBase(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        from = pass(out, s, from, t, Tokens.SUB, P_SUBSUP, m -> ommlSubSup(renderPlain(m.group(1)), renderPlain(m.group(2)), renderPlain(m.group(3))));
+        from = pass(out, s, from, t, Tokens.SUP, P_SUP, m -> ommlSup(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        from = pass(out, s, from, t, Tokens.SUB, P_SUB, m -> ommlSub(renderPlain(m.group(1)), renderPlain(m.group(2))));
+        if (t.after(Tokens.L_TEXT, from)) { // (tuỳ chọn)
+            s = L_TEXT.matcher(s.substring(from)).replaceAll("$1");
+            t = Tokens.scan(s);
+            from = 0;
+        }
+        from = pass(out, s, from, t, Tokens.L_LOGB, L_LOGB,
+                m -> ommlLogWithBase(renderPlain(m.group(1)), renderPlain(m.group(2))));
         // 3) Phần còn lại là text thường
-        if (!s.isEmpty()) runFactory.apply(s).setText(s);
+        if (from < s.length()) out.text(s.substring(from));
+        return out;
+    }
+
+    /** Tương đương regex kiểm tra cũ {@code (?s).*(?:\\frac|...|overline\().*}, không tạo Pattern mỗi dòng */
+    private static boolean hasMathTrigger(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            boolean hit = switch (s.charAt(i)) {
+                case '$' -> true;
+                case '\\' -> i + 1 < n && ("()[]".indexOf(s.charAt(i + 1)) >= 0
+                        || s.startsWith("frac", i + 1) || s.startsWith("sqrt", i + 1)
+                        || s.startsWith("overline", i + 1) || s.startsWith("sum", i + 1)
+                        || s.startsWith("prod", i + 1) || s.startsWith("int", i + 1)
+                        || s.startsWith("log", i + 1) || s.startsWith("text{", i + 1));
+                case 'c' -> s.startsWith("cases(", i);
+                case 'f' -> s.startsWith("frac(", i);
+                case 's' -> s.startsWith("sqrt(", i) || s.startsWith("sum_", i);
+                case 'r' -> s.startsWith("root(", i);
+                case 'p' -> s.startsWith("prod_", i);
+                case 'i' -> s.startsWith("int_", i);
+                case 'o' -> s.startsWith("overline(", i);
+                default -> false;
+            };
+            if (hit) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Vị trí bắt đầu có thể của từng construct trong 1 chuỗi, tăng dần. Là tập cha của vị trí match
+     * thật (regex vẫn quyết định), nên thử lần lượt từ trái qua cho kết quả như Matcher.find().
+     */
+    private static final class Tokens {
+        static final int L_CASES = 0, L_ROOT = 1, L_SQRT = 2, L_FRAC = 3, L_OVERLINE = 4,
+                L_SUM = 5, L_PROD = 6, L_INT = 7, CASES = 8, P_OVERLINE = 9, P_FRAC = 10,
+                P_ROOT = 11, P_SQRT = 12, P_SUM = 13, P_PROD = 14, P_INT = 15, P_LOGBASE = 16,
+                SUB = 17, SUP = 18, L_TEXT = 19, L_LOGB = 20, KINDS = 21;
+
+        final int[][] at = new int[KINDS][];
+        final int[] count = new int[KINDS];
+
+        static Tokens scan(String s) {
+            Tokens t = new Tokens();
+            for (int i = 0, n = s.length(); i < n; i++) {
+                switch (s.charAt(i)) {
+                    case '\\' -> {
+                        int k = i + 1;
+                        if (s.startsWith("begin{cases}", k)) t.add(L_CASES, i);
+                        else if (s.startsWith("sqrt[", k)) t.add(L_ROOT, i);
+                        else if (s.startsWith("sqrt{", k)) t.add(L_SQRT, i);
+                        else if (s.startsWith("frac{", k)) t.add(L_FRAC, i);
+                        else if (s.startsWith("overline{", k)) t.add(L_OVERLINE, i);
+                        else if (s.startsWith("sum", k)) t.add(L_SUM, i);
+                        else if (s.startsWith("prod", k)) t.add(L_PROD, i);
+                        else if (s.startsWith("int", k)) t.add(L_INT, i);
+                        else if (s.startsWith("text{", k)) t.add(L_TEXT, i);
+                        else if (s.startsWith("log_{", k)) t.add(L_LOGB, i);
+                    }
+                    case 'c', 'C' -> {
+                        if (s.regionMatches(true, i, "cases(", 0, 6)) t.add(CASES, i);
+                    }
+                    case 'o' -> {
+                        if (s.startsWith("overline(", i)) t.add(P_OVERLINE, i);
+                    }
+                    case 'f' -> {
+                        if (s.startsWith("frac(", i)) t.add(P_FRAC, i);
+                    }
+                    case 'r' -> {
+                        if (s.startsWith("root(", i)) t.add(P_ROOT, i);
+                    }
+                    case 's' -> {
+                        if (s.startsWith("sqrt(", i)) t.add(P_SQRT, i);
+                        else if (s.startsWith("sum_{", i)) t.add(P_SUM, i);
+                    }
+                    case '√' -> {
+                        if (s.startsWith("√(", i)) t.add(P_SQRT, i);
+                    }
+                    case 'p' -> {
+                        if (s.startsWith("prod_{", i)) t.add(P_PROD, i);
+                    }
+                    case 'i' -> {
+                        if (s.startsWith("int_{", i)) t.add(P_INT, i);
+                    }
+                    case 'l' -> {
+                        if (s.startsWith("log_{", i)) t.add(P_LOGBASE, i);
+                    }
+                    // BASE đứng trước "_{" / "^{" là 1 code point: 1 char, hoặc 2 char nếu là cặp surrogate
+                    case '_' -> {
+                        if (s.startsWith("{", i + 1)) t.addBase(SUB, i);
+                    }
+                    case '^' -> {
+                        if (s.startsWith("{", i + 1)) t.addBase(SUP, i);
+                    }
+                    default -> {
+                    }
+                }
+            }
+            return t;
+        }
+
+        private void addBase(int kind, int i) {
+            if (i >= 2) add(kind, i - 2);
+            if (i >= 1) add(kind, i - 1);
+        }
+
+        private void add(int kind, int pos) {
+            int[] a = at[kind];
+            if (a == null) at[kind] = a = new int[4];
+            else if (count[kind] == a.length) at[kind] = a = Arrays.copyOf(a, a.length * 2);
+            a[count[kind]++] = pos;
+        }
+
+        /** Có construct {@code kind} bắt đầu từ {@code from} trở đi */
+        boolean after(int kind, int from) {
+            int n = count[kind];
+            return n > 0 && at[kind][n - 1] >= from;
+        }
+    }
+
+    /**
+     * 1 construct trên đuôi {@code s[from..]}: emit text trước mỗi match + OMML của match,
+     * trả về vị trí sau match cuối (= from nếu không match) cho construct kế tiếp.
+     */
+    private static int pass(Line out, String s, int from, Tokens t, int kind, Pattern pat,
+                            Function<Matcher, String> toOmml) {
+        if (!t.after(kind, from)) return from;
+        int[] at = t.at[kind];
+        Matcher m = pat.matcher(s);
+        int last = from;
+        for (int k = 0, n = t.count[kind]; k < n; k++) {
+            int start = at[k];
+            if (start < last) continue;
+            m.region(start, s.length());
+            if (!m.lookingAt()) continue;
+            if (start > last) out.text(s.substring(last, start));
+            out.omml(toOmml.apply(m));
+            last = m.end();
+        }
+        return last;
     }
 
     /* ---------------- TeX-lite: cases(...) scanner cũ ---------------- */
-    private static String replaceCasesWithOmml(
-            XWPFParagraph p, String s,
-            Function<String, XWPFRun> runFactory) {
+    private static String replaceCasesWithOmml(Line out, String s) {
 
         final String needle = "cases(";
         int pos = 0;
@@ -156,7 +341,7 @@ public final class MathOmmlRenderer {
             }
 
             List<String> lines = splitTopLevel(s.substring(start, end), ';');
-            appendOMathXml(p, ommlCases(lines));
+            out.omml(ommlCases(lines));
             pos = end + 1;
         }
         return found ? nonCase.toString() : s;
@@ -318,17 +503,6 @@ public final class MathOmmlRenderer {
         return s == null ? "" : s;
     }
 
-    private static void appendOMathXml(XWPFParagraph p, String ommlXml) {
-        try {
-            CTOMath src = (CTOMath) CTOMath.Factory.parse(ommlXml);
-            CTOMath slot = p.getCTP().addNewOMath();
-            slot.set(src);
-        } catch (Exception e) {
-            System.err.println("[OMML parse error] " + e.getMessage());
-            p.createRun().setText(ommlXml); // fallback
-        }
-    }
-
     // ---------- inline TeX-lite -> chuỗi OMML ----------
     private static String stripOMath(String x) {
         return x.replaceFirst("^<m:oMath[^>]*>", "").replaceFirst("</m:oMath>$", "");
@@ -453,23 +627,4 @@ public final class MathOmmlRenderer {
         flushPlain(text, out);
         return out.toString();
     }
-
-    private static String replaceWithOmml(XWPFParagraph p, String s, Pattern pat,
-                                          java.util.function.Function<Matcher, String> toOmml,
-                                          Function<String, XWPFRun> runFactory) {
-        Matcher m = pat.matcher(s);
-        int last = 0;
-        StringBuilder rest = new StringBuilder();
-        while (m.find()) {
-            if (m.start() > last) {
-                String head = s.substring(last, m.start());
-                if (!head.isEmpty()) runFactory.apply(head).setText(head);
-            }
-            String xml = toOmml.apply(m);
-            appendOMathXml(p, xml);
-            last = m.end();
-        }
-        if (last < s.length()) rest.append(s.substring(last));
-        return rest.toString();
-    }
-}
\ No newline at end of file
+}
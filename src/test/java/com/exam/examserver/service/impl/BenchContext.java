@@ -0,0 +1,48 @@
+package com.exam.examserver.service.impl;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spring context tối thiểu cho benchmark JMH của package này: auto-config JPA như @DataJpaTest trên H2 in-memory,
+ * cộng các bean truyền vào. Không đọc application.properties (datasource PostgreSQL, show-sql...).
+ */
+final class BenchContext {
+
+    @SpringBootConfiguration
+    @AutoConfigureDataJpa
+    @EntityScan("com.exam.examserver.model")
+    @EnableJpaRepositories("com.exam.examserver.repo")
+    static class Config {}
+
+    private BenchContext() {}
+
+    /** properties: "key=value" bổ sung / ghi đè */
+    static ConfigurableApplicationContext start(String db, List<Class<?>> beans, String... properties) {
+        List<Class<?>> sources = new ArrayList<>(beans);
+        sources.add(0, Config.class);
+        List<String> props = new ArrayList<>(List.of(
+                "spring.config.name=bench",
+                "spring.datasource.url=jdbc:h2:mem:" + db + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "spring.datasource.driver-class-name=org.h2.Driver",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "spring.jpa.show-sql=false"));
+        props.addAll(List.of(properties));
+        return new SpringApplicationBuilder(sources.toArray(Class<?>[]::new))
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties(props.toArray(String[]::new))
+                .run();
+    }
+}
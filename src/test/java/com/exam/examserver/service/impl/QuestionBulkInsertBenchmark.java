@@ -0,0 +1,145 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.dto.exam.CreateQuestionDTO;
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.mapper.QuestionMapperImpl;
+import com.exam.examserver.mapper.UserMapperImpl;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.model.user.Department;
+import com.exam.examserver.model.user.User;
+import com.exam.examserver.storage.ImageStorageService;
+import jakarta.persistence.EntityManager;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput tạo câu hỏi trên H2: create() từng câu (cùng 1 transaction) vs createBulk() (batch JDBC).
+ * Mỗi lần đo ghi n câu vào bảng rỗng (xoá sau mỗi lần).
+ * Chạy: {@code mvn -Pbench verify -Dbench.include=QuestionBulkInsertBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QuestionBulkInsertBenchmark {
+
+    @Param({"1000", "10000"})
+    public int n;
+
+    @Param({"false", "true"})
+    public boolean bulk;
+
+    /** Không upload ảnh (payload không có ảnh) → không cần Cloudinary */
+    @Configuration
+    static class Storage {
+        @Bean
+        ImageStorageService imageStorageService() {
+            return Mockito.mock(ImageStorageService.class);
+        }
+    }
+
+    private ConfigurableApplicationContext ctx;
+    private QuestionServiceImpl service;
+    private EntityManager em;
+    private TransactionTemplate tx;
+    private Long subjectId, userId;
+    private List<CreateQuestionDTO> payloads;
+
+    @Setup
+    public void setup() {
+        ctx = BenchContext.start("bench",
+                List.of(QuestionServiceImpl.class, StatsRollupService.class, QuestionMapperImpl.class,
+                        UserMapperImpl.class, Storage.class),
+                "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+                "spring.jpa.properties.hibernate.order_inserts=true");
+        service = ctx.getBean(QuestionServiceImpl.class);
+        em = ctx.getBean(EntityManager.class);
+        tx = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class));
+        tx.executeWithoutResult(s -> {
+            Department dep = new Department();
+            dep.setName("Bench");
+            em.persist(dep);
+            Subject subject = new Subject();
+            subject.setName("Bench");
+            subject.setCode("BENCH");
+            subject.setDepartment(dep);
+            em.persist(subject);
+            User user = new User();
+            user.setUsername("bench");
+            user.setPassword("x");
+            em.persist(user);
+            subjectId = subject.getId();
+            userId = user.getId();
+        });
+    }
+
+    @Setup(Level.Invocation)
+    public void preparePayloads() {
+        payloads = payloads(n);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteQuestions() {
+        tx.executeWithoutResult(s -> {
+            em.createNativeQuery("delete from question_labels").executeUpdate();
+            em.createNativeQuery("delete from question").executeUpdate();
+            em.createNativeQuery("delete from stats_question_rollup").executeUpdate();
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public int create() {
+        if (bulk) return service.createBulk(subjectId, payloads, userId).size();
+        Integer created = tx.execute(s -> {
+            for (CreateQuestionDTO p : payloads) service.create(subjectId, p, userId, null);
+            return payloads.size();
+        });
+        if (created == null || created != n) throw new IllegalStateException("created " + created + " / " + n);
+        return created;
+    }
+
+    private static List<CreateQuestionDTO> payloads(int n) {
+        List<CreateQuestionDTO> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            CreateQuestionDTO p = new CreateQuestionDTO();
+            p.setQuestionType(QuestionType.MULTIPLE_CHOICE);
+            p.setContent("Câu " + i + ": 1 + " + i + " = ?");
+            p.setDifficulty(Difficulty.values()[i % Difficulty.values().length]);
+            p.setChapter(i % 10);
+            p.setOptionA(String.valueOf(i + 1));
+            p.setOptionB(String.valueOf(i + 2));
+            p.setOptionC(String.valueOf(i + 3));
+            p.setOptionD(String.valueOf(i + 4));
+            p.setAnswer("A");
+            out.add(p);
+        }
+        return out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(QuestionBulkInsertBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
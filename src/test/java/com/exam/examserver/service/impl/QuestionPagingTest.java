@@ -0,0 +1,144 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.dto.exam.QuestionFilter;
+import com.exam.examserver.dto.exam.QuestionPageDTO;
+import com.exam.examserver.dto.exam.QuestionSummaryDTO;
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.mapper.QuestionMapperImpl;
+import com.exam.examserver.mapper.UserMapperImpl;
+import com.exam.examserver.model.exam.Question;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.model.user.Department;
+import com.exam.examserver.model.user.User;
+import com.exam.examserver.storage.ImageStorageService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Phân trang keyset listSummaries: đi hết các trang theo nextCursor phải ra đúng thứ tự
+ * (createdAt, id) giảm dần, không trùng, không sót — kể cả khi nhiều câu cùng createdAt.
+ */
+@DataJpaTest
+@Import({QuestionServiceImpl.class, StatsRollupService.class, QuestionMapperImpl.class, UserMapperImpl.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:questionpaging;MODE=PostgreSQL",
+        "spring.jpa.show-sql=false"
+})
+class QuestionPagingTest {
+
+    private static final QuestionFilter NO_FILTER = new QuestionFilter(null, null, null, null);
+
+    /** Chặn @DataJpaTest dò lên ExamserverApplication (CommandLineRunner cần cả context) */
+    @SpringBootConfiguration
+    @EntityScan("com.exam.examserver.model")
+    @EnableJpaRepositories("com.exam.examserver.repo")
+    static class Config {}
+
+    @MockitoBean
+    ImageStorageService imageStorageService;
+
+    @Autowired QuestionServiceImpl service;
+    @Autowired EntityManager em;
+
+    private Subject subject;
+    private List<Question> originals;
+
+    @BeforeEach
+    void seed() {
+        Department dep = new Department();
+        dep.setName("Test");
+        em.persist(dep);
+        subject = new Subject();
+        subject.setName("Test");
+        subject.setCode("TEST");
+        subject.setDepartment(dep);
+        em.persist(subject);
+        Subject other = new Subject();
+        other.setName("Other");
+        other.setCode("OTHER");
+        other.setDepartment(dep);
+        em.persist(other);
+        User user = new User();
+        user.setUsername("teacher");
+        user.setPassword("x");
+        em.persist(user);
+
+        // 5 mốc thời gian cho 23 câu → nhiều câu trùng createdAt, ranh giới trang rơi giữa nhóm trùng
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 8, 0);
+        originals = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            LocalDateTime at = (i % 5 == 4) ? QuestionCreatedAtBackfill.LEGACY_CREATED_AT : base.plusHours(i % 4);
+            Question q = question(subject, user, at, "Câu " + i);
+            em.persist(q);
+            originals.add(q);
+        }
+        // bản clone và câu của môn khác không được lọt vào danh sách
+        Question clone = question(subject, user, base.plusDays(1), "Clone");
+        clone.setParent(originals.get(0));
+        clone.setCloneIndex(1);
+        em.persist(clone);
+        em.persist(question(other, user, base.plusDays(1), "Môn khác"));
+        em.flush();
+        em.clear();
+    }
+
+    private static Question question(Subject s, User u, LocalDateTime createdAt, String content) {
+        Question q = new Question();
+        q.setSubject(s);
+        q.setCreatedBy(u);
+        q.setCreatedAt(createdAt);
+        q.setDifficulty(Difficulty.A);
+        q.setQuestionType(QuestionType.ESSAY);
+        q.setContent(content);
+        q.setLabels(new HashSet<>());
+        return q;
+    }
+
+    @Test
+    void cursorWalkCoversEveryQuestionOnceInOrder() {
+        List<Long> expected = originals.stream()
+                .sorted(Comparator.comparing(Question::getCreatedAt).thenComparing(Question::getId).reversed())
+                .map(Question::getId)
+                .toList();
+
+        for (int limit : new int[]{1, 4, 5, 23, 50}) {
+            List<Long> seen = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                QuestionPageDTO page = service.listSummaries(subject.getId(), NO_FILTER, cursor, limit);
+                assertTrue(page.getItems().size() <= limit);
+                page.getItems().stream().map(QuestionSummaryDTO::getId).forEach(seen::add);
+                cursor = page.getNextCursor();
+                assertTrue(++pages <= expected.size(), "cursor không tiến");
+            } while (cursor != null);
+
+            assertEquals(expected, seen, "limit=" + limit);
+            assertEquals((expected.size() + limit - 1) / limit, pages, "limit=" + limit);
+        }
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.listSummaries(subject.getId(), NO_FILTER, "không-phải-cursor", 10));
+    }
+}
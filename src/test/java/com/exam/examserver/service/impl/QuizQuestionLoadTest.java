@@ -0,0 +1,146 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.dto.exam.AddQuizQuestionDTO;
+import com.exam.examserver.dto.exam.CreateQuizDTO;
+import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.dto.exam.QuizDTO;
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.mapper.QuestionMapperImpl;
+import com.exam.examserver.mapper.QuizMapperImpl;
+import com.exam.examserver.mapper.QuizQuestionMapperImpl;
+import com.exam.examserver.mapper.UserMapperImpl;
+import com.exam.examserver.model.exam.Question;
+import com.exam.examserver.model.exam.QuestionImage;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.model.user.Department;
+import com.exam.examserver.model.user.User;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Số câu SQL khi nạp quiz 100 câu (mỗi câu có nhãn + ảnh) phải cố định, không tăng theo số câu hỏi.
+ */
+@DataJpaTest
+@Import({QuizServiceImpl.class, StatsRollupService.class, QuizMapperImpl.class, QuizQuestionMapperImpl.class,
+        QuestionMapperImpl.class, UserMapperImpl.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:quizload;MODE=PostgreSQL",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class QuizQuestionLoadTest {
+
+    private static final int N = 100;
+
+    /** Chặn @DataJpaTest dò lên ExamserverApplication (CommandLineRunner cần cả context) */
+    @SpringBootConfiguration
+    @EntityScan("com.exam.examserver.model")
+    @EnableJpaRepositories("com.exam.examserver.repo")
+    static class Config {}
+
+    @Autowired QuizServiceImpl service;
+    @Autowired EntityManager em;
+
+    private Statistics stats;
+    private Subject subject;
+    private User user;
+    private List<Long> questionIds;
+
+    @BeforeEach
+    void seed() {
+        stats = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+
+        Department dep = new Department();
+        dep.setName("Test");
+        em.persist(dep);
+        subject = new Subject();
+        subject.setName("Test");
+        subject.setCode("TEST");
+        subject.setDepartment(dep);
+        em.persist(subject);
+        user = new User();
+        user.setUsername("teacher");
+        user.setPassword("x");
+        em.persist(user);
+
+        questionIds = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            Question q = new Question();
+            q.setSubject(subject);
+            q.setCreatedBy(user);
+            q.setCreatedAt(LocalDateTime.now());
+            q.setDifficulty(Difficulty.A);
+            q.setQuestionType(QuestionType.MULTIPLE_CHOICE);
+            q.setContent("Câu " + i);
+            q.setLabels(new HashSet<>(Set.of(QuestionLabel.PRACTICE, QuestionLabel.EXAM)));
+            QuestionImage img = new QuestionImage();
+            img.setQuestion(q);
+            img.setUrl("https://img/" + i + ".png");
+            q.getImages().add(img);
+            em.persist(q);
+            questionIds.add(q.getId());
+        }
+        em.flush();
+        em.clear();
+    }
+
+    private CreateQuizDTO payload() {
+        CreateQuizDTO dto = new CreateQuizDTO();
+        dto.setTitle("Quiz");
+        List<AddQuizQuestionDTO> items = new ArrayList<>();
+        for (Long id : questionIds) {
+            AddQuizQuestionDTO item = new AddQuizQuestionDTO();
+            item.setQuestionId(id);
+            items.add(item);
+        }
+        dto.setQuestions(items);
+        return dto;
+    }
+
+    @Test
+    void createLoadsQuestionsInOneQuery() {
+        stats.clear();
+        QuizDTO quiz = service.create(subject.getId(), payload(), user.getId());
+
+        assertEquals(N, quiz.getNumOfQuestions());
+        // subject + user + 1 query câu hỏi + sequence id + ảnh theo lô @BatchSize; trước đây > N
+        long statements = stats.getPrepareStatementCount();
+        assertTrue(statements <= 15, "create: " + statements + " câu SQL cho " + N + " câu hỏi");
+    }
+
+    @Test
+    void getQuestionsByQuizUsesBoundedStatements() {
+        Long quizId = service.create(subject.getId(), payload(), user.getId()).getId();
+        em.flush();
+        em.clear();
+
+        stats.clear();
+        List<QuestionDTO> out = service.getQuestionsByQuiz(quizId, false);
+
+        assertEquals(questionIds, out.stream().map(QuestionDTO::getId).toList()); // giữ thứ tự orderIndex
+        assertTrue(out.stream().allMatch(d -> d.getLabels().size() == 2 && d.getImages().size() == 1));
+        // quiz + câu hỏi + người tạo | labels | images
+        long statements = stats.getPrepareStatementCount();
+        assertTrue(statements <= 3, "getQuestionsByQuiz: " + statements + " câu SQL cho " + N + " câu hỏi");
+    }
+}
@@ -0,0 +1,110 @@
+package com.exam.examserver.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dashboard trên H2 đã seed 100k câu hỏi: StatsService (đọc bảng rollup, chạy song song) vs LegacyStatsService
+ * (mỗi chỉ số 1 câu trên bảng gốc, tuần tự), từng overview có / không khoảng ngày. Cache tắt → đo query.
+ * Setup kiểm 2 bên trả DTO giống hệt (kiểm ở quy mô nhỏ trong mvn test: StatsOverviewTest).
+ * Chạy: {@code mvn -Pbench verify -Dbench.include=StatsOverviewBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StatsOverviewBenchmark {
+
+    private static final int QUESTIONS = 100_000;
+    private static final int ARCHIVES = 2_000;
+    private static final LocalDate FROM = LocalDate.of(2025, 1, 1), TO = LocalDate.of(2025, 3, 31);
+
+    @Param({"admin", "head", "teacher"})
+    public String overview;
+
+    @Param({"false", "true"})
+    public boolean range;
+
+    private ConfigurableApplicationContext ctx;
+    private StatsService stats;
+    private LegacyStatsService legacyStats;
+    private StatsSeed.Seed seed;
+    private LocalDate from, to;
+
+    @Setup
+    public void setup() throws Exception {
+        ctx = BenchContext.start("statsbench",
+                List.of(StatsService.class, StatsQueryExecutor.class, StatsOverviewCache.class,
+                        StatsRollupService.class, LegacyStatsService.class),
+                "stats.cache.ttl-seconds=0");
+        stats = ctx.getBean(StatsService.class);
+        legacyStats = ctx.getBean(LegacyStatsService.class);
+        EntityManager em = ctx.getBean(EntityManager.class);
+        seed = new TransactionTemplate(ctx.getBean(PlatformTransactionManager.class))
+                .execute(s -> StatsSeed.seed(em, QUESTIONS, ARCHIVES));
+        ctx.getBean(StatsRollupService.class).rebuildAll();
+        from = range ? FROM : null;
+        to = range ? TO : null;
+
+        ObjectMapper json = JsonMapper.builder()
+                .findAndAddModules()
+                .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+                .build();
+        if (!json.writeValueAsString(legacyOverview()).equals(json.writeValueAsString(rollupOverview()))) {
+            throw new IllegalStateException("Legacy/rollup overview mismatch: " + overview + " range=" + range);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public Object legacy() {
+        return legacyOverview();
+    }
+
+    @Benchmark
+    public Object rollup() {
+        return rollupOverview();
+    }
+
+    private Object legacyOverview() {
+        return switch (overview) {
+            case "admin" -> legacyStats.getAdminOverview(from, to);
+            case "head" -> legacyStats.getHeadOverview(seed.deptId(), from, to);
+            default -> legacyStats.getTeacherOverview(seed.teacherId(), from, to);
+        };
+    }
+
+    private Object rollupOverview() {
+        return switch (overview) {
+            case "admin" -> stats.getAdminOverview(from, to);
+            case "head" -> stats.getHeadOverview(seed.deptId(), from, to);
+            default -> stats.getTeacherOverview(seed.teacherId(), from, to);
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(StatsOverviewBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,145 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.enums.Difficulty;
+import com.exam.examserver.enums.QuestionLabel;
+import com.exam.examserver.enums.QuestionType;
+import com.exam.examserver.enums.ReviewStatus;
+import com.exam.examserver.model.exam.FileArchive;
+import com.exam.examserver.model.exam.Question;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.model.user.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * StatsService (cộng bảng rollup, query song song) phải trả DTO giống hệt LegacyStatsService (đếm trên bảng gốc)
+ * cho mọi dashboard: sau khi dựng lại rollup, và sau khi ghi thêm dòng delta (thêm câu hỏi, thêm / duyệt / xoá file).
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // query chạy trên thread khác → dữ liệu seed phải commit
+@Import({StatsService.class, StatsQueryExecutor.class, StatsOverviewCache.class, StatsRollupService.class,
+        LegacyStatsService.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statsoverview;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "stats.cache.ttl-seconds=0" // mỗi lần so sánh phải đọc lại rollup
+})
+class StatsOverviewTest {
+
+    private static final LocalDate FROM = LocalDate.of(2025, 1, 1), TO = LocalDate.of(2025, 3, 31);
+
+    /** Chặn @DataJpaTest dò lên ExamserverApplication (CommandLineRunner cần cả context) */
+    @SpringBootConfiguration
+    @EntityScan("com.exam.examserver.model")
+    @EnableJpaRepositories("com.exam.examserver.repo")
+    static class Config {}
+
+    @Autowired StatsService stats;
+    @Autowired StatsRollupService rollup;
+    @Autowired LegacyStatsService legacy;
+    @Autowired EntityManager em;
+    @Autowired PlatformTransactionManager txManager;
+
+    private final ObjectMapper json = JsonMapper.builder()
+            .findAndAddModules()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    @Test
+    void rollupMatchesLegacyAfterRebuildAndDeltas() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        StatsSeed.Seed seed = tx.execute(s -> StatsSeed.seed(em, 3_000, 1_000));
+        rollup.rebuildAll();
+        compareAll("rebuild", seed);
+
+        tx.executeWithoutResult(s -> writeDeltas(seed));
+        compareAll("delta", seed);
+    }
+
+    /** Ghi như service nghiệp vụ: sửa bảng gốc rồi gọi rollup trong cùng transaction */
+    private void writeDeltas(StatsSeed.Seed seed) {
+        Subject subject = em.createQuery("select s from Subject s where s.department.id = :d order by s.id", Subject.class)
+                .setParameter("d", seed.deptId()).setMaxResults(1).getSingleResult();
+        User teacher = em.find(User.class, seed.teacherId());
+
+        Question q = new Question();
+        q.setSubject(subject);
+        q.setCreatedBy(teacher);
+        q.setCreatedAt(LocalDateTime.of(2025, 2, 15, 9, 30));
+        q.setDifficulty(Difficulty.B);
+        q.setQuestionType(QuestionType.ESSAY);
+        q.setContent("Câu mới");
+        q.setLabels(new HashSet<>(Set.of(QuestionLabel.EXAM)));
+        em.persist(q);
+        rollup.questionsAdded(List.of(q));
+
+        FileArchive added = new FileArchive();
+        added.setKind("EXPORT");
+        added.setSubjectId(subject.getId());
+        added.setUserId(teacher.getId());
+        added.setFilename("moi.pdf");
+        added.setMimeType("application/pdf");
+        added.setStorageKey("k/moi");
+        added.setCreatedAt(Instant.parse("2025-02-10T03:00:00Z"));
+        added.setReviewStatus(ReviewStatus.PENDING);
+        em.persist(added);
+        rollup.archiveAdded(added);
+
+        List<FileArchive> pending = em.createQuery("select f from FileArchive f where f.reviewStatus = :st " +
+                        "and f.id <> :added order by f.id", FileArchive.class)
+                .setParameter("st", ReviewStatus.PENDING).setParameter("added", added.getId())
+                .setMaxResults(2).getResultList();
+
+        FileArchive approved = pending.get(0);
+        StatsRollupService.ArchiveSnapshot before = rollup.snapshot(approved);
+        approved.setReviewStatus(ReviewStatus.APPROVED);
+        approved.setReviewedAt(approved.getCreatedAt().plusSeconds(3_600));
+        rollup.archiveChanged(before, approved);
+
+        FileArchive removed = pending.get(1);
+        StatsRollupService.ArchiveSnapshot gone = rollup.snapshot(removed);
+        em.remove(removed);
+        rollup.archiveRemoved(gone);
+    }
+
+    private void compareAll(String phase, StatsSeed.Seed seed) throws Exception {
+        compare(phase + " admin", () -> legacy.getAdminOverview(null, null), () -> stats.getAdminOverview(null, null));
+        compare(phase + " admin range", () -> legacy.getAdminOverview(FROM, TO), () -> stats.getAdminOverview(FROM, TO));
+        compare(phase + " head", () -> legacy.getHeadOverview(seed.deptId(), null, null),
+                () -> stats.getHeadOverview(seed.deptId(), null, null));
+        compare(phase + " head range", () -> legacy.getHeadOverview(seed.deptId(), FROM, TO),
+                () -> stats.getHeadOverview(seed.deptId(), FROM, TO));
+        compare(phase + " teacher", () -> legacy.getTeacherOverview(seed.teacherId(), null, null),
+                () -> stats.getTeacherOverview(seed.teacherId(), null, null));
+        compare(phase + " teacher range", () -> legacy.getTeacherOverview(seed.teacherId(), FROM, TO),
+                () -> stats.getTeacherOverview(seed.teacherId(), FROM, TO));
+    }
+
+    private void compare(String name, Supplier<Object> before, Supplier<Object> after) throws Exception {
+        assertEquals(json.writeValueAsString(before.get()), json.writeValueAsString(after.get()), name);
+    }
+}
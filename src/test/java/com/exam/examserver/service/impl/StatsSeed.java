@@ -0,0 +1,130 @@
+package com.exam.examserver.service.impl;
+
+import com.exam.examserver.enums.ReviewStatus;
+import com.exam.examserver.enums.RoleType;
+import com.exam.examserver.model.exam.FileArchive;
+import com.exam.examserver.model.exam.Subject;
+import com.exam.examserver.model.user.Department;
+import com.exam.examserver.model.user.Role;
+import com.exam.examserver.model.user.TeacherSubject;
+import com.exam.examserver.model.user.User;
+import com.exam.examserver.model.user.UserRole;
+import jakarta.persistence.EntityManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dữ liệu dashboard thống kê dùng chung cho StatsOverviewTest (nhỏ, chạy mặc định) và StatsOverviewBenchmark (100k câu).
+ * Câu hỏi ghi thẳng bằng SQL H2 (không qua service) → gọi StatsRollupService.rebuildAll() sau khi seed.
+ * Phải chạy trong transaction.
+ */
+final class StatsSeed {
+
+    static final int SUBJECTS = 20;
+
+    /** Khoa đầu tiên (có trưởng khoa) và 1 giáo viên được phân công môn */
+    record Seed(Long deptId, Long teacherId) {}
+
+    private StatsSeed() {}
+
+    /** questions: bội của SUBJECTS, ≥ 95 câu / môn */
+    static Seed seed(EntityManager em, int questions, int archives) {
+        Role admin = new Role(1L, RoleType.ADMIN), head = new Role(2L, RoleType.HEAD), teacherRole = new Role(3L, RoleType.TEACHER);
+        em.persist(admin);
+        em.persist(head);
+        em.persist(teacherRole);
+
+        List<User> teachers = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            User u = new User();
+            u.setUsername("u" + i);
+            u.setPassword("x");
+            u.setFirstName("Giáo viên");
+            u.setLastName(String.valueOf(i));
+            em.persist(u);
+            UserRole ur = new UserRole();
+            ur.setUser(u);
+            ur.setRole(i == 0 ? admin : i < 3 ? head : teacherRole);
+            em.persist(ur);
+            teachers.add(u);
+        }
+
+        List<Department> depts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Department d = new Department();
+            d.setName("Khoa " + i);
+            if (i < 2) d.setHeadUser(teachers.get(i + 1)); // khoa cuối chưa có trưởng khoa
+            em.persist(d);
+            depts.add(d);
+        }
+
+        List<Subject> subjects = new ArrayList<>();
+        for (int i = 0; i < SUBJECTS; i++) {
+            Subject s = new Subject();
+            s.setName("Môn " + i);
+            s.setCode("S" + i);
+            s.setDepartment(depts.get(i % depts.size()));
+            em.persist(s);
+            subjects.add(s);
+            if (i % 4 != 3) em.persist(new TeacherSubject(null, teachers.get(3 + i % 27), s)); // 1/4 môn chưa phân công
+        }
+        em.flush();
+
+        // môn i có perSubject - 95 + 10*i câu (số lượng khác nhau → top môn/giáo viên không hoà),
+        // mỗi môn 3 người tạo; createdAt cách nhau 5 phút ngược từ 30/06/2025
+        int perSubject = questions / SUBJECTS;
+        long hi = 0;
+        for (int i = 0; i < SUBJECTS; i++) {
+            long lo = hi + 1;
+            hi += perSubject - 95 + 10L * i;
+            em.createNativeQuery("""
+                    insert into question(id, subject_id, difficulty, chapter, question_type, content,
+                                         created_by, created_at, updated_at)
+                    select x, :sid, substring('ABCDE', mod(x, 5) + 1, 1), mod(x, 10),
+                           case when mod(x, 3) = 0 then 'ESSAY' else 'MULTIPLE_CHOICE' end,
+                           concat('Câu ', x),
+                           case mod(x, 3) when 0 then :t0 when 1 then :t1 else :t2 end,
+                           dateadd('MINUTE', -5 * x, timestamp '2025-06-30 00:00:00'),
+                           dateadd('MINUTE', -5 * x, timestamp '2025-06-30 00:00:00')
+                    from system_range(:lo, :hi)
+                    """)
+                    .setParameter("sid", subjects.get(i).getId())
+                    .setParameter("t0", teachers.get(3 + i % 27).getId())
+                    .setParameter("t1", teachers.get(3 + (i + 1) % 27).getId())
+                    .setParameter("t2", teachers.get(1 + i % 2).getId())
+                    .setParameter("lo", lo)
+                    .setParameter("hi", hi)
+                    .executeUpdate();
+        }
+        em.createNativeQuery("insert into question_labels(question_id, label) " +
+                "select x, 'PRACTICE' from system_range(1, " + questions + ") where mod(x, 2) = 0").executeUpdate();
+        em.createNativeQuery("insert into question_labels(question_id, label) " +
+                "select x, 'EXAM' from system_range(1, " + questions + ") where mod(x, 3) = 0").executeUpdate();
+        // id câu ghi bằng SQL không lấy từ sequence → đẩy sequence qua (pooled: 50 id / lần) để persist sau seed không trùng
+        em.createNativeQuery("alter sequence question_seq restart with " + (questions + 100)).executeUpdate();
+
+        Instant base = Instant.parse("2025-06-30T00:00:00Z");
+        ReviewStatus[] statuses = ReviewStatus.values();
+        for (int i = 0; i < archives; i++) {
+            FileArchive f = new FileArchive();
+            f.setKind("EXPORT");
+            f.setSubjectId(subjects.get(i % SUBJECTS).getId());
+            f.setUserId(teachers.get(3 + i % 27).getId());
+            f.setFilename("f" + i + ".pdf");
+            f.setMimeType("application/pdf");
+            f.setStorageKey("k/" + i);
+            f.setCreatedAt(base.minus(Duration.ofHours(4L * i)));
+            ReviewStatus st = statuses[i % statuses.length];
+            f.setReviewStatus(st);
+            if (st != ReviewStatus.PENDING) f.setReviewedAt(f.getCreatedAt().plus(Duration.ofMinutes(37L * (i % 50))));
+            else f.setReviewDeadline(f.getCreatedAt().plus(Duration.ofDays(i % 7)));
+            em.persist(f);
+        }
+        em.flush();
+        em.clear();
+        return new Seed(depts.get(0).getId(), teachers.get(3).getId());
+    }
+}
@@ -0,0 +1,73 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.ExtractResult;
+import com.exam.examserver.util.OmmlConverter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.w3c.dom.Element;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OMML -> text (node DOM và JAXB) và extract DOCX đầy đủ (engine docx4j vs StAX) trên file tổng hợp
+ * (run nhấn mạnh, PUA, công thức).
+ * Chạy: {@code mvn -Pbench verify -Dbench.include=DocxExtractBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocxExtractBenchmark {
+
+    @Param({"100"})
+    public int questions;
+
+    private Element ommlDom;
+    private Object ommlJaxb;
+    private byte[] docx;
+
+    @Setup
+    public void setup() throws Exception {
+        ommlDom = ImportBenchCorpus.ommlElement();
+        ommlJaxb = ImportBenchCorpus.ommlJaxb();
+        docx = ImportBenchCorpus.examDocx(questions);
+
+        String a = OmmlConverter.ommlNodeToText(ommlDom), b = OmmlConverter.ommlNodeToText(ommlJaxb);
+        // converter nuốt lỗi và trả "" nên phải kiểm tra cả rỗng
+        if (a.isEmpty() || !a.equals(b)) throw new IllegalStateException("DOM/JAXB OMML mismatch: " + a + " vs " + b);
+    }
+
+    @Benchmark
+    public String ommlDom() {
+        return OmmlConverter.ommlNodeToText(ommlDom);
+    }
+
+    @Benchmark
+    public String ommlJaxb() {
+        return OmmlConverter.ommlNodeToText(ommlJaxb);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ExtractResult extractWord() throws Exception {
+        return DocxOmmlExtractor.extractWord(new ByteArrayInputStream(docx));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ExtractResult extractWordStreaming() throws Exception {
+        return StreamingDocxExtractor.extractWord(new ByteArrayInputStream(docx));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(DocxExtractBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
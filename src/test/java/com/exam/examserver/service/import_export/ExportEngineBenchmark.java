@@ -0,0 +1,171 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.dto.exam.QuestionImageDTO;
+import com.exam.examserver.enums.QuestionType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Độ trễ export theo kích thước đề (10/100/1000 câu), đi qua đúng backend PDF/DOCX của {@link ExportEngine}
+ * với câu hỏi tổng hợp (công thức lite, phương án, chương, 1 ảnh mỗi 10 câu); không DB/mạng.
+ *
+ *  - grid  : từng ô size × format × template
+ *  - suite : cả 3 size × 2 định dạng trong 1 lần đo → 1 con số để theo dõi hiệu năng export
+ *
+ * Chạy từ thư mục gốc project: {@code mvn -Pbench verify -Dbench.include=ExportEngineBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportEngineBenchmark {
+
+    private static final int[] SIZES = {10, 100, 1000};
+
+    @State(Scope.Benchmark)
+    public static class Backends {
+        PdfExportBackend pdf;
+        DocxExportBackend docx;
+        ExportImageFetcher.Prefetched images;
+        Map<Integer, List<QuestionDTO>> questions = new HashMap<>();
+
+        @Setup
+        public void setup() throws IOException {
+            pdf = new PdfExportBackend(new FormulaImageCache(32L << 20), new PdfFontRegistry(), "vector");
+            docx = new DocxExportBackend(0);
+            byte[] png = png();
+            Map<String, byte[]> byUrl = new HashMap<>();
+            for (int size : SIZES) {
+                List<QuestionDTO> qs = questions(size);
+                questions.put(size, qs);
+                // PDF và DOCX cùng ép PNG → 1 bản Prefetched dùng chung
+                for (String url : ExportImageFetcher.imageUrls(qs, docx::imageUrl)) byUrl.put(url, png);
+            }
+            images = new ExportImageFetcher.Prefetched(byUrl);
+        }
+
+        @TearDown
+        public void tearDown() {
+            docx.shutdown();
+        }
+
+        void write(ExportBackend backend, ExportTemplate template, int size, OutputStream out) throws IOException {
+            backend.write(template, questions.get(size), images, true, out);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Grid {
+        @Param({"10", "100", "1000"})
+        public int size;
+
+        @Param({"PDF", "DOCX"})
+        public ExportEngine.Format format;
+
+        @Param({"EXAM"})
+        public String template;   // PRACTICE | EXAM | QUIZ
+
+        ExportTemplate tpl;
+
+        @Setup
+        public void setup() {
+            tpl = template(template);
+        }
+    }
+
+    @Benchmark
+    public long grid(Backends b, Grid g) throws IOException {
+        CountingStream out = new CountingStream();
+        b.write(g.format == ExportEngine.Format.DOCX ? b.docx : b.pdf, g.tpl, g.size, out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long suite(Backends b) throws IOException {
+        ExportTemplate tpl = template("EXAM");
+        CountingStream out = new CountingStream();
+        for (int size : SIZES) {
+            b.write(b.pdf, tpl, size, out);
+            b.write(b.docx, tpl, size, out);
+        }
+        return out.count;
+    }
+
+    private static ExportTemplate template(String name) {
+        return switch (name) {
+            case "PRACTICE" -> new ExportTemplate.Practice("NGÂN HÀNG CÂU HỎI THI TỰ LUẬN",
+                    "Toán rời rạc", "INT1359", "Công nghệ thông tin", "Đại học chính quy");
+            case "QUIZ" -> new ExportTemplate.Quiz();
+            default -> new ExportTemplate.Exam("HỌC VIỆN CÔNG NGHỆ BƯU CHÍNH VIỄN THÔNG",
+                    "Công nghệ thông tin", "Khoa học máy tính", "Toán rời rạc", "INT1359",
+                    "I", "2024-2025", "D23CN", "90 phút", 1, "Hình thức thi viết", "Mẫu 3a");
+        };
+    }
+
+    private static List<QuestionDTO> questions(int n) {
+        Random rnd = new Random(42);
+        List<QuestionDTO> out = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            QuestionDTO q = new QuestionDTO();
+            q.setId((long) i);
+            q.setChapter(1 + i % 5);
+            boolean mc = rnd.nextBoolean();
+            q.setQuestionType(mc ? QuestionType.MULTIPLE_CHOICE : QuestionType.ESSAY);
+            q.setContent("Câu hỏi " + i + ": cho biểu thức frac(x^2 + " + i + ", sqrt(y + 1)) với x ∧ y ⇒ z.\n"
+                    + "Tính giá trị root(3)(x_1 + x_2) khi cases(x = 1; y = 2) và chứng minh overline(A ∨ B) ≡ ¬A ∧ ¬B.");
+            if (mc) {
+                q.setOptionA("frac(1, " + i + ")");
+                q.setOptionB("sqrt(" + i + ")");
+                q.setOptionC("x^2 + y^2 = " + i);
+                q.setOptionD("Không xác định");
+                q.setAnswer("A");
+            } else {
+                q.setAnswerText("Áp dụng định lý De Morgan: overline(A ∨ B) = overline(A) ∧ overline(B).");
+            }
+            if (i % 10 == 0) {
+                QuestionImageDTO img = new QuestionImageDTO();
+                img.setUrl("https://res.cloudinary.com/demo/image/upload/q" + i + ".webp");
+                q.setImages(List.of(img));
+            }
+            out.add(q);
+        }
+        return out;
+    }
+
+    private static byte[] png() throws IOException {
+        BufferedImage bi = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(bi, "png", bos);
+        return bos.toByteArray();
+    }
+
+    /** Bỏ byte, chỉ đếm: đo render chứ không đo copy bộ nhớ */
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) { count++; }
+
+        @Override
+        public void write(byte[] b, int off, int len) { count += len; }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ExportEngineBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
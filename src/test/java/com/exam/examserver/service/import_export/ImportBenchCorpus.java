@@ -0,0 +1,142 @@
+package com.exam.examserver.service.import_export;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.docx4j.XmlUtils;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dữ liệu đầu vào dùng chung cho các benchmark import: đề tiếng Việt tổng hợp có {hl}, ký tự PUA
+ * (font Symbol), super/subscript Unicode, ảnh placeholder; cùng nội dung dạng DOCX (có OMML) và PDF.
+ */
+final class ImportBenchCorpus {
+    private ImportBenchCorpus() {}
+
+    static final String NS_W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    static final String NS_M = "http://schemas.openxmlformats.org/officeDocument/2006/math";
+
+    /** (x+1)/2 + x² − √y + Σ_{i=1}^{n} i */
+    static final String OMML = "<m:oMath xmlns:m=\"" + NS_M + "\">"
+            + "<m:f><m:num><m:r><m:t>x+1</m:t></m:r></m:num><m:den><m:r><m:t>2</m:t></m:r></m:den></m:f>"
+            + "<m:r><m:t>+</m:t></m:r>"
+            + "<m:sSup><m:e><m:r><m:t>x</m:t></m:r></m:e><m:sup><m:r><m:t>2</m:t></m:r></m:sup></m:sSup>"
+            + "<m:r><m:t>−</m:t></m:r>"
+            + "<m:rad><m:radPr><m:degHide m:val=\"1\"/></m:radPr><m:deg/><m:e><m:r><m:t>y</m:t></m:r></m:e></m:rad>"
+            + "<m:nary><m:naryPr><m:chr m:val=\"∑\"/></m:naryPr>"
+            + "<m:sub><m:r><m:t>i=1</m:t></m:r></m:sub><m:sup><m:r><m:t>n</m:t></m:r></m:sup>"
+            + "<m:e><m:r><m:t>i</m:t></m:r></m:e></m:nary>"
+            + "</m:oMath>";
+
+    /** Đề trắc nghiệm + tự luận + chương, dạng text như extractor trả về */
+    static String examText(int questions) {
+        StringBuilder sb = new StringBuilder("TRƯỜNG ĐẠI HỌC X\nĐỀ THI CUỐI KỲ\n\n");
+        for (int i = 1; i <= questions; i++) {
+            if (i % 50 == 1) sb.append("Chương ").append(i / 50 + 1).append(": Nội dung chương\n");
+            switch (i % 4) {
+                case 0 -> sb.append("Câu ").append(i).append(" (2 điểm). Cho hàm số f(x) = x² − ").append(i)
+                        .append(". Giá trị f(1) là:\nA. 1\n{hl}B. ").append(1 - i).append("{/hl}\nC. ").append(i)
+                        .append("\nD. 0\n");
+                case 1 -> sb.append("Câu ").append(i).append(": Số tập con của tập có ").append(i % 7)
+                        .append(" phần tử là A. 2 B. 4 C. 8 D. 16\nĐáp án: C\n");
+                case 2 -> sb.append(i).append(". Trình bày khái niệm đồ thị liên thông. Nêu ví dụ\nminh hoạ cho")
+                        .append(" trường hợp: a) đồ thị vô hướng b) đồ thị có hướng. {{image").append(i % 8 + 1)
+                        .append("}}\nGiải thích: Đồ thị liên thông khi mọi cặp đỉnh đều có đường đi.\n");
+                default -> sb.append("{hl}Câu ").append(i).append(".{/hl} Chứng minh rằng p \uF0DE q \uF0BA")
+                        .append(" \uF0D8p \uF0DA q và H₂O có aⁿ⁺¹ \uF0B3 0. Câu hỏi phụ: vì sao?\n\n");
+            }
+        }
+        return sb.append("Ghi chú: Sinh viên không được sử dụng tài liệu.\nHọ tên SV: ......\n").toString();
+    }
+
+    /** Node OMML dạng DOM (như khi duyệt DOCX bằng DOM) */
+    static Element ommlElement() throws Exception {
+        DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+        f.setNamespaceAware(true);
+        return f.newDocumentBuilder()
+                .parse(new ByteArrayInputStream(OMML.getBytes(StandardCharsets.UTF_8)))
+                .getDocumentElement();
+    }
+
+    /** Node OMML dạng JAXB (như docx4j trả về trong DocxOmmlExtractor) */
+    static Object ommlJaxb() throws Exception {
+        return XmlUtils.unmarshalString(OMML);
+    }
+
+    /** DOCX: mỗi câu 1 đoạn có run nhấn mạnh, ký tự PUA và 1 công thức OMML, kèm 4 đoạn option */
+    static byte[] examDocx(int questions) throws Exception {
+        WordprocessingMLPackage pkg = WordprocessingMLPackage.createPackage();
+        MainDocumentPart mdp = pkg.getMainDocumentPart();
+        for (int i = 1; i <= questions; i++) {
+            String p = "<w:p xmlns:w=\"" + NS_W + "\" xmlns:m=\"" + NS_M + "\">"
+                    + "<w:r><w:rPr><w:b/></w:rPr><w:t xml:space=\"preserve\">Câu " + i + ". </w:t></w:r>"
+                    + "<w:r><w:t xml:space=\"preserve\">Cho biểu thức \uF0DE </w:t></w:r>"
+                    + OMML.replace(" xmlns:m=\"" + NS_M + "\"", "")
+                    + "<w:r><w:rPr><w:highlight w:val=\"yellow\"/></w:rPr><w:t xml:space=\"preserve\"> với n \uF0B3 1</w:t></w:r>"
+                    + "</w:p>";
+            mdp.getContent().add(XmlUtils.unmarshalString(p));
+            for (char o = 'A'; o <= 'D'; o++) mdp.addParagraphOfText(o + ". Phương án " + o + " của câu " + i);
+        }
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            pkg.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** PDF mỗi trang: vài câu hỏi trắc nghiệm + 1 ảnh nhỏ (đủ lớn để không bị lọc icon) */
+    static byte[] syntheticPdf(int pages) throws IOException {
+        try (PDDocument doc = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+
+                PDImageXObject img = LosslessFactory.createFromImage(doc, sampleImage(p));
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    float y = 800;
+                    for (int q = 0; q < 6; q++) {
+                        int no = p * 6 + q + 1;
+                        cs.beginText();
+                        cs.setFont(PDType1Font.HELVETICA, 11);
+                        cs.newLineAtOffset(50, y);
+                        cs.showText("Cau " + no + ": (2 diem) Cho ham so f(x) = x^2 + " + no + "x. Tinh f(" + q + ").");
+                        cs.newLineAtOffset(0, -14);
+                        cs.showText("A. " + (q + 1) + "   B. " + (q + 2) + "   C. " + (q + 3) + "   D. " + (q + 4));
+                        cs.endText();
+                        y -= 44;
+                        if (q == 2) {
+                            cs.drawImage(img, 60, y - 80, 120, 80);
+                            y -= 100;
+                        }
+                    }
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static BufferedImage sampleImage(int seed) {
+        BufferedImage bi = new BufferedImage(120, 80, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = bi.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 120, 80);
+        g.setColor(new Color((seed * 37) % 200, 80, 160));
+        g.fillOval(10, 10, 60 + seed % 40, 50);
+        g.dispose();
+        return bi;
+    }
+}
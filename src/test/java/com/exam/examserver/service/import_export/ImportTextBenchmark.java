@@ -0,0 +1,108 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.util.ImportRegex;
+import com.exam.examserver.util.TextNormalize;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Các hàm nóng của bước preview import trên đề tiếng Việt tổng hợp ({hl}, PUA, super/subscript).
+ * Chạy: {@code mvn -Pbench verify -Dbench.include=ImportTextBenchmark}
+ * (kết quả JSON ở target/jmh-result.json, so sánh giữa các lần build để bắt hồi quy)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportTextBenchmark {
+
+    @Param({"100", "1000"})
+    public int questions;
+
+    private final RegexPreviewParser regex = new RegexPreviewParser();
+    private final ScanningPreviewParser scan = new ScanningPreviewParser();
+
+    private String raw;
+    /** text sau normalize + các pass break, như đầu vào P_SPLIT_BY_HEADER */
+    private String prepared;
+    /** các block câu hỏi đã tách, như đầu vào parseOneBlockForPreview */
+    private String[] blocks;
+
+    @Setup
+    public void setup() {
+        raw = ImportBenchCorpus.examText(questions);
+        prepared = breakAll(TextNormalize.normalizePreserveNewlines(raw));
+        List<String> bs = new ArrayList<>();
+        for (String b : ImportRegex.P_SPLIT_BY_HEADER.split(prepared)) {
+            if (!b.isBlank()) bs.add(b.trim());
+        }
+        blocks = bs.toArray(String[]::new);
+        for (String b : blocks) {
+            if (!PreviewParserGoldenTest.dump(List.of(regex.parseOneBlockForPreview(b, 8)))
+                    .equals(PreviewParserGoldenTest.dump(List.of(scan.parseOneBlockForPreview(b, 8))))) {
+                throw new IllegalStateException("Regex/scan block mismatch: " + b);
+            }
+        }
+    }
+
+    private static String breakAll(String s) {
+        s = ImportRegex.compactHighlightMarkers(s);
+        s = ImportRegex.breakChapterInline(s);
+        return ImportRegex.breakHeaderAnswerInline(s);
+    }
+
+    @Benchmark
+    public String normalizePreserveNewlines() {
+        return TextNormalize.normalizePreserveNewlines(raw);
+    }
+
+    @Benchmark
+    public String normalizeSoftMath() {
+        return TextNormalize.normalizeSoftMath(raw);
+    }
+
+    @Benchmark
+    public String regexBreakInline() {
+        return breakAll(raw);
+    }
+
+    @Benchmark
+    public String[] regexSplitByHeader() {
+        return ImportRegex.P_SPLIT_BY_HEADER.split(prepared);
+    }
+
+    @Benchmark
+    public void regexOptExtract(Blackhole bh) {
+        for (String b : blocks) {
+            Matcher m = ImportRegex.P_OPT_EXTRACT.matcher(b);
+            while (m.find()) bh.consume(m.start());
+        }
+    }
+
+    @Benchmark
+    public void parseBlocksRegex(Blackhole bh) {
+        for (String b : blocks) bh.consume(regex.parseOneBlockForPreview(b, 8));
+    }
+
+    @Benchmark
+    public void parseBlocksScan(Blackhole bh) {
+        for (String b : blocks) bh.consume(scan.parseOneBlockForPreview(b, 8));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ImportTextBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,52 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.ExtractResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh thời gian extract PDF tuần tự vs song song theo chunk trang trên PDF tổng hợp 200 trang.
+ * Chạy: {@code mvn -Pbench verify -Dbench.include=PdfExtractBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PdfExtractBenchmark {
+
+    private static final int PAGES = 200;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private byte[] pdf;
+
+    @Setup
+    public void setup() throws Exception {
+        pdf = ImportBenchCorpus.syntheticPdf(PAGES);
+        // 2 chế độ phải cho cùng kết quả
+        ExtractResult serial = PdfOmmlExtractor.extractPdf(pdf, false);
+        ExtractResult par = PdfOmmlExtractor.extractPdf(pdf, true);
+        if (!serial.getText().equals(par.getText()) || serial.getImages().size() != par.getImages().size()) {
+            throw new IllegalStateException("Serial/parallel output mismatch");
+        }
+    }
+
+    @Benchmark
+    public ExtractResult extract() throws Exception {
+        return PdfOmmlExtractor.extractPdf(pdf, parallel);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(PdfExtractBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
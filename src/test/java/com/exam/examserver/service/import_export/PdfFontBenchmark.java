@@ -0,0 +1,77 @@
+package com.exam.examserver.service.import_export;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+import com.itextpdf.layout.properties.Property;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Độ trễ export PDF nhỏ (vài câu): nạp font theo từng document như trước (FontSet.addFont(path) →
+ * parse lại TTF) so với {@link PdfFontRegistry} (FontProgram parse sẵn, mỗi document chỉ tạo FontProvider).
+ * Chạy từ thư mục gốc project: {@code mvn -Pbench verify -Dbench.include=PdfFontBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfFontBenchmark {
+
+    private static final String DIR = "src/main/resources/";
+
+    @Param({"5"})
+    public int questions;
+
+    private PdfFontRegistry registry;
+    private String text;
+
+    @Setup
+    public void setup() throws Exception {
+        registry = new PdfFontRegistry();
+        text = ImportBenchCorpus.examText(questions);
+    }
+
+    @Benchmark
+    public byte[] perDocumentFonts() throws Exception {
+        FontSet fs = new FontSet();
+        fs.addFont(DIR + PdfFontRegistry.NOTO_SANS);
+        fs.addFont(DIR + PdfFontRegistry.NOTO_SANS_MATH);
+        fs.addFont(DIR + PdfFontRegistry.NOTO_SANS_SYMBOLS2);
+        return render(new FontProvider(fs));
+    }
+
+    @Benchmark
+    public byte[] sharedRegistry() throws Exception {
+        return render(registry.examFontProvider());
+    }
+
+    private byte[] render(FontProvider provider) throws Exception {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            try (PdfDocument pdf = new PdfDocument(new PdfWriter(baos));
+                 Document doc = new Document(pdf)) {
+                doc.setFontProvider(provider);
+                doc.setProperty(Property.FONT, PdfFontRegistry.EXAM_FAMILIES);
+                for (String line : text.split("\n")) doc.add(new Paragraph(line));
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(PdfFontBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,99 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.exam.QuestionDTO;
+import com.exam.examserver.enums.QuestionType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export PDF nhiều công thức: công thức PNG (raster gấp 3 + trim) so với vector (SVG → XObject dùng lại
+ * trong document). cacheBytes = 0 → mỗi lần đều render lại công thức (lần export đầu / cache nguội);
+ * mặc định 32 MB như cấu hình chạy thật. Thời gian ở target/jmh-result.json; kích thước file mỗi trial in ra
+ * ("pdf bytes") và ghi thêm vào target/pdf-formula-sizes.csv (mode,cacheBytes,questions,bytes) để so 2 chế độ.
+ * Chạy từ thư mục gốc project: {@code mvn -Pbench verify -Dbench.include=PdfFormulaBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfFormulaBenchmark {
+
+    @Param({"png", "vector"})
+    public String mode;
+
+    @Param({"0", "33554432"})
+    public long cacheBytes;
+
+    @Param({"100"})
+    public int questions;
+
+    private PdfExportBackend backend;
+    private List<QuestionDTO> qs;
+    private final ExportTemplate template = new ExportTemplate.Quiz();
+    private final ExportImageFetcher.Prefetched images = new ExportImageFetcher.Prefetched(Map.of());
+    private long lastSize;
+
+    @Setup
+    public void setup() throws IOException {
+        backend = new PdfExportBackend(new FormulaImageCache(cacheBytes), new PdfFontRegistry(), mode);
+        qs = new ArrayList<>(questions);
+        for (int i = 1; i <= questions; i++) {
+            QuestionDTO q = new QuestionDTO();
+            q.setId((long) i);
+            q.setQuestionType(QuestionType.MULTIPLE_CHOICE);
+            // ~1/3 công thức lặp lại giữa các câu (frac(1, 2), sqrt(2)...) → đo cả phần dùng lại XObject
+            q.setContent("Rút gọn frac(x^2 + " + i + ", x + 1) + sqrt(2) và tính root(3)(" + i + " + y_1).\n"
+                    + "Hệ cases(x + y = " + i + "; x - y = 1) có nghiệm khi overline(A ∨ B) ≡ 1.");
+            q.setOptionA("frac(1, 2)");
+            q.setOptionB("sqrt(" + (i % 7) + ")");
+            q.setOptionC("frac(" + i + ", 3)");
+            q.setOptionD("root(3)(8)");
+            q.setAnswer("A");
+            qs.add(q);
+        }
+    }
+
+    @Benchmark
+    public int export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        backend.write(template, qs, images, true, out);
+        lastSize = out.size();
+        return out.size();
+    }
+
+    @TearDown
+    public void report() {
+        System.out.printf("%n[%s, cacheBytes=%d, questions=%d] pdf bytes: %d%n", mode, cacheBytes, questions, lastSize);
+        try {
+            Path csv = Path.of("target", "pdf-formula-sizes.csv");
+            Files.createDirectories(csv.getParent());
+            Files.writeString(csv, mode + "," + cacheBytes + "," + questions + "," + lastSize + "\n",
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(PdfFormulaBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
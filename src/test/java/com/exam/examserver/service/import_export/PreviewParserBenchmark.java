@@ -0,0 +1,57 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.PreviewBlock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser preview regex cũ vs quét tuần tự trên đề tổng hợp (trắc nghiệm + tự luận + chương).
+ * Chạy: {@code mvn -Pbench verify -Dbench.include=PreviewParserBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreviewParserBenchmark {
+
+    @Param({"100", "1000"})
+    public int questions;
+
+    private final PreviewParser regex = new RegexPreviewParser();
+    private final PreviewParser scan = new ScanningPreviewParser();
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = ImportBenchCorpus.examText(questions);
+        // 2 parser phải ra cùng kết quả thì số đo mới có nghĩa
+        if (!PreviewParserGoldenTest.dump(regex.parse(text, 8, ImportQuestionService.Progress.NONE))
+                .equals(PreviewParserGoldenTest.dump(scan.parse(text, 8, ImportQuestionService.Progress.NONE)))) {
+            throw new IllegalStateException("Regex/scan output mismatch");
+        }
+    }
+
+    @Benchmark
+    public List<PreviewBlock> regex() {
+        return regex.parse(text, 8, ImportQuestionService.Progress.NONE);
+    }
+
+    @Benchmark
+    public List<PreviewBlock> scan() {
+        return scan.parse(text, 8, ImportQuestionService.Progress.NONE);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(PreviewParserBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
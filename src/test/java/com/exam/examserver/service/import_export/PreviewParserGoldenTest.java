@@ -0,0 +1,121 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.PreviewBlock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ScanningPreviewParser phải cho PreviewBlock y hệt RegexPreviewParser.
+ * File *.expected sinh từ parser regex (dump bên dưới); sửa parser thì sinh lại bằng {@link #main}.
+ */
+class PreviewParserGoldenTest {
+
+    private static final String DIR = "/import/golden/";
+
+    private final PreviewParser regex = new RegexPreviewParser();
+    private final PreviewParser scan = new ScanningPreviewParser();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"mc_basic", "essay_chapters", "numeric_headers", "edge_cases"})
+    void matchesGolden(String name) throws IOException {
+        String text = read(name + ".txt");
+        String expected = read(name + ".expected");
+
+        assertEquals(expected, dump(regex.parse(text, 3, ImportQuestionService.Progress.NONE)), "regex");
+        assertEquals(expected, dump(scan.parse(text, 3, ImportQuestionService.Progress.NONE)), "scan");
+    }
+
+    @Test
+    void randomDocumentsMatchRegexParser() {
+        for (long seed = 1; seed <= 3000; seed++) {
+            long s = seed;
+            String doc = randomDocument(new Random(seed));
+            assertEquals(dump(regex.parse(doc, 3, ImportQuestionService.Progress.NONE)),
+                    dump(scan.parse(doc, 3, ImportQuestionService.Progress.NONE)),
+                    () -> "seed " + s + ": " + doc);
+        }
+    }
+
+    @Test
+    void exoticLineBreaksFallBackToRegex() {
+        String doc = "Câu 1. Chọn:\u2028A. một\u2029B. hai\u0085C. ba\nD. bốn\nĐáp án: B";
+        assertEquals(dump(regex.parse(doc, 0, ImportQuestionService.Progress.NONE)),
+                dump(scan.parse(doc, 0, ImportQuestionService.Progress.NONE)));
+    }
+
+    /* ==================== helpers ==================== */
+
+    static String dump(List<PreviewBlock> blocks) {
+        StringBuilder sb = new StringBuilder();
+        for (PreviewBlock b : blocks) {
+            sb.append('#').append(b.index).append(" chapter=").append(b.chapter)
+                    .append(" type=").append(b.questionType).append(" difficulty=").append(b.difficulty).append('\n')
+                    .append("raw=").append(q(b.raw)).append('\n')
+                    .append("content=").append(q(b.content)).append('\n')
+                    .append("A=").append(q(b.optionA)).append(" B=").append(q(b.optionB))
+                    .append(" C=").append(q(b.optionC)).append(" D=").append(q(b.optionD)).append('\n')
+                    .append("answer=").append(q(b.answer)).append(" answerText=").append(q(b.answerText)).append('\n')
+                    .append("images=").append(b.imageIndexes).append(" warnings=").append(b.warnings).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String q(String s) {
+        return s == null ? "null" : '"' + s.replace("\\", "\\\\").replace("\n", "\\n") + '"';
+    }
+
+    private static String read(String name) throws IOException {
+        try (InputStream in = PreviewParserGoldenTest.class.getResourceAsStream(DIR + name)) {
+            assertNotNull(in, "missing " + DIR + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final String[] HEADERS = {"Câu %d.", "Câu %d:", "câu %d)", "Câu hỏi %d:", "Question %d.", "Q%d.",
+            "Bài %d -", "%d.", "%d.1", "{hl}Câu %d.{/hl}", "{hl}%d.{/hl}", "Câu số %d:", "Câu %d (2 điểm):", "CÂU %d(5 điem)"};
+    private static final String[] OPTIONS = {"A.", "B.", "C.", "D.", "A)", "B)", "C )", "{hl}D."};
+    private static final String[] WORDS = {"x", "giá trị", "tính", "Chương 2", "chapter 3:", "Đáp án: B", "answer - c",
+            "Giải thích:", "{hl}", "{/hl}", "{{image1}}", "{{image5}}", "(3 điểm)", "1.", "1.10", "q.2", "−", "x²",
+            "a)", "(b)", "•", "Ghi chú:", "TRƯỜNG", "A.", "D)", "Mục 1", "\uF020", "\u00A0"};
+    private static final String[] GAPS = {" ", " ", "  ", "\n", "\n", "\n\n", " \n ", "\t", "\r\n", ""};
+
+    private static String randomDocument(Random r) {
+        StringBuilder b = new StringBuilder();
+        int questions = 1 + r.nextInt(6);
+        for (int qi = 1; qi <= questions; qi++) {
+            b.append(HEADERS[r.nextInt(HEADERS.length)].formatted(qi)).append(GAPS[r.nextInt(GAPS.length)]);
+            for (int i = r.nextInt(8); i > 0; i--) b.append(WORDS[r.nextInt(WORDS.length)]).append(GAPS[r.nextInt(GAPS.length)]);
+            if (r.nextBoolean()) {
+                for (int o = 0; o < 4; o++) {
+                    b.append(r.nextBoolean() ? "\n" : " ").append(OPTIONS[r.nextInt(10) == 0 ? r.nextInt(OPTIONS.length) : o]);
+                    for (int i = r.nextInt(3); i > 0; i--) b.append(' ').append(WORDS[r.nextInt(WORDS.length)]);
+                }
+            }
+            b.append(GAPS[r.nextInt(GAPS.length)]);
+        }
+        return b.toString();
+    }
+
+    /** Sinh lại các file .expected từ parser regex: chạy với đối số là thư mục src/test/resources/import/golden */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args[0]);
+        try (var files = Files.list(dir)) {
+            for (Path txt : files.filter(p -> p.toString().endsWith(".txt")).toList()) {
+                String text = Files.readString(txt);
+                String out = dump(new RegexPreviewParser().parse(text, 3, ImportQuestionService.Progress.NONE));
+                Files.writeString(dir.resolve(txt.getFileName().toString().replace(".txt", ".expected")), out);
+            }
+        }
+    }
+}
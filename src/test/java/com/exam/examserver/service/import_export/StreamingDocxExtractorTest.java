@@ -0,0 +1,154 @@
+package com.exam.examserver.service.import_export;
+
+import com.exam.examserver.dto.importing.ExtractResult;
+import org.docx4j.XmlUtils;
+import org.docx4j.dml.wordprocessingDrawing.Inline;
+import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.WordprocessingML.BinaryPartAbstractImage;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.openpackaging.parts.WordprocessingML.NumberingDefinitionsPart;
+import org.docx4j.wml.Drawing;
+import org.docx4j.wml.Numbering;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.P;
+import org.docx4j.wml.R;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Engine StAX phải cho text + ảnh y hệt engine docx4j trên cùng file.
+ * (VML/w:object và content control không có ở đây: engine cũ xử lý chúng qua marshal JAXB, xem javadoc engine.)
+ */
+class StreamingDocxExtractorTest {
+
+    private static final String NS = "xmlns:w=\"" + ImportBenchCorpus.NS_W + "\""
+            + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"";
+
+    @Test
+    void matchesDocx4jOnBenchCorpus() throws Exception {
+        assertSameExtraction(ImportBenchCorpus.examDocx(20));
+    }
+
+    @Test
+    void matchesDocx4jOnListsTablesAndImages() throws Exception {
+        assertSameExtraction(richDocx());
+    }
+
+    private static void assertSameExtraction(byte[] docx) throws Exception {
+        ExtractResult expected = DocxOmmlExtractor.extractWord(new ByteArrayInputStream(docx));
+        ExtractResult actual = StreamingDocxExtractor.extractWord(new ByteArrayInputStream(docx));
+
+        assertEquals(expected.getText(), actual.getText());
+        assertEquals(expected.getImages().size(), actual.getImages().size(), "image count");
+        for (int i = 0; i < expected.getImages().size(); i++) {
+            assertArrayEquals(expected.getImages().get(i), actual.getImages().get(i), "image " + (i + 1));
+        }
+    }
+
+    /* ==================== corpus ==================== */
+
+    private static final String NUMBERING = "<w:numbering " + NS + ">"
+            + "<w:abstractNum w:abstractNumId=\"0\">"
+            + "<w:lvl w:ilvl=\"0\"><w:start w:val=\"1\"/><w:numFmt w:val=\"decimal\"/><w:lvlText w:val=\"%1.\"/></w:lvl>"
+            + "<w:lvl w:ilvl=\"1\"><w:start w:val=\"1\"/><w:numFmt w:val=\"lowerLetter\"/><w:lvlText w:val=\"%2)\"/></w:lvl>"
+            + "</w:abstractNum>"
+            + "<w:abstractNum w:abstractNumId=\"1\">"
+            + "<w:lvl w:ilvl=\"0\"><w:start w:val=\"1\"/><w:numFmt w:val=\"upperLetter\"/><w:lvlText w:val=\"%1.\"/></w:lvl>"
+            + "<w:lvl w:ilvl=\"1\"><w:start w:val=\"1\"/><w:numFmt w:val=\"lowerRoman\"/><w:lvlText w:val=\"%1.%2.\"/></w:lvl>"
+            + "</w:abstractNum>"
+            + "<w:abstractNum w:abstractNumId=\"2\">"
+            + "<w:lvl w:ilvl=\"0\"><w:start w:val=\"1\"/><w:numFmt w:val=\"bullet\"/><w:lvlText w:val=\"•\"/></w:lvl>"
+            + "</w:abstractNum>"
+            + "<w:num w:numId=\"1\"><w:abstractNumId w:val=\"0\"/></w:num>"
+            + "<w:num w:numId=\"2\"><w:abstractNumId w:val=\"1\"/></w:num>"
+            + "<w:num w:numId=\"3\"><w:abstractNumId w:val=\"2\"/></w:num>"
+            + "</w:numbering>";
+
+    /** Danh sách nhiều cấp, bullet, run nhấn mạnh/vertAlign/tab/br, hyperlink, bảng, ảnh PNG + JPEG */
+    private static byte[] richDocx() throws Exception {
+        WordprocessingMLPackage pkg = WordprocessingMLPackage.createPackage();
+        MainDocumentPart mdp = pkg.getMainDocumentPart();
+        NumberingDefinitionsPart ndp = new NumberingDefinitionsPart();
+        mdp.addTargetPart(ndp);
+        ndp.setJaxbElement((Numbering) XmlUtils.unmarshalString(NUMBERING));
+
+        for (int q = 1; q <= 3; q++) {
+            p(mdp, "<w:pPr><w:numPr><w:ilvl w:val=\"0\"/><w:numId w:val=\"1\"/></w:numPr></w:pPr>"
+                    + "<w:r><w:rPr><w:b/></w:rPr><w:t xml:space=\"preserve\">Câu hỏi " + q + ": </w:t></w:r>"
+                    + "<w:r><w:rPr><w:b w:val=\"0\"/><w:color w:val=\"auto\"/></w:rPr><w:t>Tính x</w:t></w:r>"
+                    + "<w:r><w:rPr><w:vertAlign w:val=\"superscript\"/></w:rPr><w:t>2</w:t></w:r>"
+                    + "<w:r><w:t xml:space=\"preserve\"> + H</w:t></w:r>"
+                    + "<w:r><w:rPr><w:vertAlign w:val=\"subscript\"/></w:rPr><w:t>2</w:t></w:r>"
+                    + "<w:r><w:t>O</w:t><w:tab/><w:t>với x \uF0B3 0</w:t><w:br/><w:t>(xem hình)</w:t></w:r>");
+            for (int o = 0; o < 2; o++) {
+                p(mdp, "<w:pPr><w:numPr><w:ilvl w:val=\"1\"/><w:numId w:val=\"1\"/></w:numPr></w:pPr>"
+                        + "<w:r><w:rPr><w:highlight w:val=\"" + (o == 0 ? "yellow" : "none") + "\"/></w:rPr>"
+                        + "<w:t>ý " + o + "</w:t></w:r>");
+            }
+        }
+        p(mdp, "<w:pPr><w:numPr><w:ilvl w:val=\"0\"/><w:numId w:val=\"2\"/></w:numPr></w:pPr><w:r><w:t>Phần A</w:t></w:r>");
+        p(mdp, "<w:pPr><w:numPr><w:ilvl w:val=\"1\"/><w:numId w:val=\"2\"/></w:numPr></w:pPr><w:r><w:t>mục i</w:t></w:r>");
+        p(mdp, "<w:pPr><w:numPr><w:ilvl w:val=\"1\"/><w:numId w:val=\"2\"/></w:numPr></w:pPr><w:r><w:t>mục ii</w:t></w:r>");
+        p(mdp, "<w:pPr><w:numPr><w:numId w:val=\"3\"/></w:numPr></w:pPr>"
+                + "<w:r><w:t xml:space=\"preserve\">Ghi chú </w:t></w:r>"
+                + "<w:hyperlink w:anchor=\"muc-luc\"><w:r><w:rPr><w:color w:val=\"0563C1\"/></w:rPr><w:t>liên kết</w:t></w:r></w:hyperlink>");
+
+        mdp.getContent().add(XmlUtils.unmarshalString("<w:tbl " + NS + "><w:tblPr/><w:tblGrid/>"
+                + "<w:tr><w:tc><w:p><w:r><w:t>A1</w:t></w:r></w:p><w:p><w:r><w:t>dòng 2</w:t></w:r></w:p></w:tc>"
+                + "<w:tc><w:p><w:r><w:rPr><w:b/></w:rPr><w:t>B1</w:t></w:r></w:p></w:tc></w:tr>"
+                + "<w:tr><w:tc><w:p/></w:tc><w:tc><w:p><w:r><w:t>B2</w:t></w:r></w:p></w:tc></w:tr>"
+                + "</w:tbl>"));
+
+        image(pkg, mdp, sample("png", Color.RED), 1);
+        image(pkg, mdp, sample("jpeg", Color.BLUE), 3);
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            pkg.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void p(MainDocumentPart mdp, String inner) throws Exception {
+        mdp.getContent().add(XmlUtils.unmarshalString("<w:p " + NS + ">" + inner + "</w:p>"));
+    }
+
+    /** Paragraph "Hình n: <ảnh> (hết)" với ảnh inline DrawingML */
+    private static void image(WordprocessingMLPackage pkg, MainDocumentPart mdp, byte[] bytes, int id) throws Exception {
+        BinaryPartAbstractImage part = BinaryPartAbstractImage.createImagePart(pkg, bytes);
+        Inline inline = part.createImageInline("img" + id, "img" + id, id, id + 1, false);
+
+        ObjectFactory f = new ObjectFactory();
+        Drawing drawing = f.createDrawing();
+        drawing.getAnchorOrInline().add(inline);
+        R pic = f.createR();
+        pic.getContent().add(drawing);
+
+        P p = (P) XmlUtils.unmarshalString("<w:p " + NS + "><w:r><w:t xml:space=\"preserve\">Hình " + id + ": </w:t></w:r></w:p>");
+        p.getContent().add(pic);
+        p.getContent().add(XmlUtils.unmarshalString("<w:r " + NS + "><w:t xml:space=\"preserve\"> (hết)</w:t></w:r>"));
+        mdp.getContent().add(p);
+    }
+
+    private static byte[] sample(String format, Color color) throws IOException {
+        BufferedImage bi = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = bi.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 40, 30);
+        g.setColor(color);
+        g.fillOval(5, 5, 30, 20);
+        g.dispose();
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(bi, format, out);
+            return out.toByteArray();
+        }
+    }
+}
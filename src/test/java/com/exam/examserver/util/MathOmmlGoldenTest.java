@@ -0,0 +1,115 @@
+package com.exam.examserver.util;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MathOmmlRenderer (tokenizer) phải cho DOCX y hệt bản regex nhiều lượt ({@link LegacyMathOmmlRenderer}).
+ * corpus.txt: mỗi dòng 1 đoạn như ExportQuestionService.writeContentSmart; thêm mẫu vào đó khi gặp lỗi render.
+ */
+class MathOmmlGoldenTest {
+
+    static final String CORPUS = "/export/math/corpus.txt";
+
+    @FunctionalInterface
+    interface Emitter {
+        void emit(XWPFParagraph p, String text, Function<String, XWPFRun> runFactory);
+    }
+
+    @Test
+    void corpusDocxMatchesLegacy() throws IOException {
+        List<String> lines = corpus();
+        Map<String, byte[]> expected = entries(docx(LegacyMathOmmlRenderer::emitMathAware, lines));
+        Map<String, byte[]> actual = entries(docx(MathOmmlRenderer::emitMathAware, lines));
+
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String name : expected.keySet()) {
+            assertArrayEquals(expected.get(name), actual.get(name), name);
+        }
+    }
+
+    private static final String[] FRAGMENTS = {"x", "a", "A", "2", "𝑥", "đ", " ", "  ", "+", "=", ",", ";", "&", "<",
+            "(", ")", "[", "]", "{", "}", "\\", "\\\\", "$", "$$", "\\(", "\\)", "\\[", "\\]",
+            "\\frac{", "\\sqrt{", "\\sqrt[", "\\overline{", "\\sum", "\\prod", "\\int", "\\begin{cases}", "\\end{cases}",
+            "\\text{", "\\log_{", "cases(", "Cases(", "frac(", "sqrt(", "√(", "root(", "overline(",
+            "sum_{", "prod_{", "int_{", "log_{", "_{", "^{", "i=1", "n"};
+
+    @Test
+    void randomLinesMatchLegacy() {
+        for (long seed = 1; seed <= 5000; seed++) {
+            long sd = seed;
+            Random r = new Random(seed);
+            StringBuilder b = new StringBuilder();
+            for (int i = r.nextInt(14); i > 0; i--) b.append(FRAGMENTS[r.nextInt(FRAGMENTS.length)]);
+            String line = b.toString();
+            assertEquals(paragraphXml(LegacyMathOmmlRenderer::emitMathAware, line),
+                    paragraphXml(MathOmmlRenderer::emitMathAware, line),
+                    () -> "seed " + sd + ": " + line);
+        }
+    }
+
+    /* ==================== helpers ==================== */
+
+    static List<String> corpus() throws IOException {
+        try (InputStream in = MathOmmlGoldenTest.class.getResourceAsStream(CORPUS)) {
+            assertNotNull(in, "missing " + CORPUS);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+
+    /** Cùng runFactory với ExportQuestionService (Times New Roman 13) */
+    static XWPFDocument render(Emitter emitter, List<String> lines) {
+        XWPFDocument doc = new XWPFDocument();
+        for (String line : lines) {
+            XWPFParagraph p = doc.createParagraph();
+            emitter.emit(p, line, s -> {
+                XWPFRun r = p.createRun();
+                r.setFontFamily("Times New Roman");
+                r.setFontSize(13);
+                return r;
+            });
+        }
+        return doc;
+    }
+
+    private static byte[] docx(Emitter emitter, List<String> lines) throws IOException {
+        try (XWPFDocument doc = render(emitter, lines); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            doc.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    /** Nội dung từng part trong zip (bỏ qua timestamp của entry) */
+    private static Map<String, byte[]> entries(byte[] docx) throws IOException {
+        Map<String, byte[]> out = new LinkedHashMap<>();
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(docx))) {
+            for (ZipEntry e; (e = zin.getNextEntry()) != null; ) out.put(e.getName(), zin.readAllBytes());
+        }
+        return out;
+    }
+
+    private static String paragraphXml(Emitter emitter, String line) {
+        try (XWPFDocument doc = render(emitter, List.of(line))) {
+            return doc.getParagraphs().get(0).getCTP().xmlText();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
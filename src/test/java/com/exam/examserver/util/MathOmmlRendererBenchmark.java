@@ -0,0 +1,54 @@
+package com.exam.examserver.util;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render OMML cho 1 đề: bản regex nhiều lượt ({@link LegacyMathOmmlRenderer}) so với tokenizer 1 lượt
+ * ({@link MathOmmlRenderer}). Corpus lặp lại tới {@code lines} dòng, đa số là text thường như đề thật.
+ * Chạy từ thư mục gốc project: {@code mvn -Pbench verify -Dbench.include=MathOmmlRendererBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MathOmmlRendererBenchmark {
+
+    @Param({"500"})
+    public int lines;
+
+    private List<String> text;
+
+    @Setup
+    public void setup() throws Exception {
+        List<String> corpus = MathOmmlGoldenTest.corpus();
+        text = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) text.add(corpus.get(i % corpus.size()));
+    }
+
+    @Benchmark
+    public XWPFDocument legacyRegex() {
+        return MathOmmlGoldenTest.render(LegacyMathOmmlRenderer::emitMathAware, text);
+    }
+
+    @Benchmark
+    public XWPFDocument tokenizer() {
+        return MathOmmlGoldenTest.render(MathOmmlRenderer::emitMathAware, text);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(MathOmmlRendererBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}